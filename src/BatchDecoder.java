@@ -0,0 +1,509 @@
+/*
+ * Copyright (c) 2018 Titan Robotics Club (http://www.titanrobotics.com)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayDeque;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import javax.imageio.ImageIO;
+
+import com.google.zxing.Result;
+
+/**
+ * This class implements the headless batch decoder. It walks a directory tree, decodes every image file it finds
+ * on a pool of worker threads and streams one JSON line per file to the output. In unordered mode, each record is
+ * written as soon as its file is decoded so fast files never wait behind slow ones. In ordered mode, records are
+ * written in directory walk order. The number of files in flight is bounded in both modes so memory use does not
+ * grow with the size of the tree.
+ *
+ * The symbols of Structured Append sequences are reassembled across files as they are decoded. The record of such a
+ * symbol carries its place in the sequence, and the record of the symbol that completes a sequence also carries the
+ * reassembled message.
+ */
+public class BatchDecoder
+{
+    public static final String MODE_NAME = "decode-batch";
+
+    /**
+     * This specifies how each image is decoded.
+     */
+    public enum Strategy
+    {
+        //
+        // Decode the first QR code found in the full size image, with the hybrid binarizer only.
+        //
+        SINGLE,
+        //
+        // Decode the first QR code found, trying cheap decode tiers first and expensive ones only when they fail.
+        //
+        TIERED,
+        //
+        // Decode every QR code in the image and report their positions.
+        //
+        MULTI,
+        //
+        // Decode the first QR code found, searching downscaled copies of the image first.
+        //
+        PYRAMID
+    }   //enum Strategy
+
+    private static final int IN_FLIGHT_PER_THREAD = 4;
+
+    private final File rootDir;
+    private final int numThreads;
+    private final boolean ordered;
+    private final Strategy strategy;
+    private final TieredDecoder tieredDecoder;
+    private final PrintStream out;
+    private final Set<String> imageSuffixes = new HashSet<>();
+    private final LatencyHistogram latencies = new LatencyHistogram();
+    private final StructuredAppendAssembler assembler = new StructuredAppendAssembler();
+    private long numFiles = 0;
+    private long numFailed = 0;
+    private long elapsedNanos = 0;
+
+    /**
+     * This class holds the decode result of one file.
+     */
+    private static class Record
+    {
+        final String path;
+        final Result result;
+        final List<QRSymbol> symbols;
+        final String error;
+        final long nanos;
+
+        Record(String path, Result result, List<QRSymbol> symbols, String error, long nanos)
+        {
+            this.path = path;
+            this.result = result;
+            this.symbols = symbols;
+            this.error = error;
+            this.nanos = nanos;
+        }   //Record
+
+    }   //class Record
+
+    /**
+     * Constructor: Create an instance of the object.
+     *
+     * @param rootDir specifies the root of the directory tree to decode.
+     * @param numThreads specifies the number of worker threads, zero or negative to use one per processor core.
+     * @param ordered specifies true to write records in walk order, false to write them as soon as they are ready.
+     * @param strategy specifies how each image is decoded.
+     * @param tieredDecoder specifies the decoder of the TIERED strategy, null to use the shared one of QRCode.
+     * @param out specifies the stream to write the JSON lines to.
+     */
+    public BatchDecoder(
+        File rootDir, int numThreads, boolean ordered, Strategy strategy, TieredDecoder tieredDecoder,
+        PrintStream out)
+    {
+        this.rootDir = rootDir;
+        this.numThreads = numThreads > 0? numThreads: Runtime.getRuntime().availableProcessors();
+        this.ordered = ordered;
+        this.strategy = strategy;
+        this.tieredDecoder = tieredDecoder != null? tieredDecoder: QRCode.getTieredDecoder();
+        this.out = out;
+
+        for (String suffix: ImageIO.getReaderFileSuffixes())
+        {
+            imageSuffixes.add(suffix.toLowerCase(Locale.ROOT));
+        }
+    }   //BatchDecoder
+
+    /**
+     * This method walks the directory tree and decodes all the image files in it. It returns when all the files
+     * have been decoded and their records written.
+     *
+     * @throws IOException if the directory tree cannot be walked.
+     */
+    public void run() throws IOException
+    {
+        ExecutorService executor = Executors.newFixedThreadPool(numThreads);
+        int maxInFlight = numThreads*IN_FLIGHT_PER_THREAD;
+        Semaphore inFlight = new Semaphore(maxInFlight);
+        ArrayDeque<Future<Record>> pending = new ArrayDeque<>();
+        long startTime = System.nanoTime();
+
+        try
+        {
+            Files.walkFileTree(rootDir.toPath(), new SimpleFileVisitor<Path>()
+            {
+                @Override
+                public FileVisitResult visitFile(Path file, BasicFileAttributes attrs)
+                {
+                    if (attrs.isRegularFile() && isImageFile(file))
+                    {
+                        if (ordered)
+                        {
+                            //
+                            // Keep the records in walk order. When the window is full, wait for the oldest file
+                            // to finish before queuing another one.
+                            //
+                            if (pending.size() >= maxInFlight)
+                            {
+                                writeRecord(waitForRecord(pending.poll()));
+                            }
+                            pending.add(executor.submit(() -> decodeFile(file)));
+                        }
+                        else
+                        {
+                            inFlight.acquireUninterruptibly();
+                            executor.execute(() ->
+                            {
+                                try
+                                {
+                                    writeRecord(decodeFile(file));
+                                }
+                                finally
+                                {
+                                    inFlight.release();
+                                }
+                            });
+                        }
+                    }
+
+                    return FileVisitResult.CONTINUE;
+                }   //visitFile
+
+                @Override
+                public FileVisitResult visitFileFailed(Path file, IOException e)
+                {
+                    writeRecord(new Record(file.toString(), null, null, e.toString(), 0));
+                    return FileVisitResult.CONTINUE;
+                }   //visitFileFailed
+            });
+
+            while (!pending.isEmpty())
+            {
+                writeRecord(waitForRecord(pending.poll()));
+            }
+        }
+        finally
+        {
+            executor.shutdown();
+            awaitTermination(executor);
+            elapsedNanos = System.nanoTime() - startTime;
+            out.flush();
+        }
+    }   //run
+
+    /**
+     * This method prints the throughput and latency summary of the last run.
+     *
+     * @param summaryOut specifies the stream to print the summary to.
+     */
+    public void printSummary(PrintStream summaryOut)
+    {
+        double seconds = elapsedNanos/1000000000.0;
+
+        summaryOut.printf(
+            "Decoded %d files (%d failed) in %.3f sec with %d threads: %.1f files/sec, p50=%.3f ms, p99=%.3f ms\n",
+            numFiles, numFailed, seconds, numThreads, seconds > 0.0? numFiles/seconds: 0.0,
+            latencies.getPercentile(50.0)/1000000.0, latencies.getPercentile(99.0)/1000000.0);
+        if (assembler.getNumSymbols() > 0)
+        {
+            summaryOut.printf(
+                "Reassembled %d structured append messages from %d symbols (%d parity errors, %d incomplete)\n",
+                assembler.getNumAssembled(), assembler.getNumSymbols(), assembler.getNumParityErrors(),
+                assembler.getNumPending() + assembler.getNumEvicted());
+        }
+        if (strategy == Strategy.TIERED)
+        {
+            tieredDecoder.printSummary(summaryOut);
+        }
+    }   //printSummary
+
+    /**
+     * This method checks if the file has a suffix that ImageIO can read.
+     *
+     * @param file specifies the file.
+     * @return true if the file looks like an image file, false otherwise.
+     */
+    private boolean isImageFile(Path file)
+    {
+        String name = file.getFileName().toString();
+        int dotIndex = name.lastIndexOf('.');
+
+        return dotIndex != -1 && imageSuffixes.contains(name.substring(dotIndex + 1).toLowerCase(Locale.ROOT));
+    }   //isImageFile
+
+    /**
+     * This method reads and decodes one image file. It never throws, failures are reported in the record.
+     *
+     * @param file specifies the image file.
+     * @return decode record of the file.
+     */
+    private Record decodeFile(Path file)
+    {
+        Result result = null;
+        List<QRSymbol> symbols = null;
+        String error = null;
+        long startTime = System.nanoTime();
+
+        try
+        {
+            BufferedImage image = ImageIO.read(file.toFile());
+            if (image == null)
+            {
+                error = "Unsupported image format.";
+            }
+            else if (strategy == Strategy.MULTI)
+            {
+                symbols = QRCode.decodeAll(image);
+                StageMetrics.getInstance().decodeCompleted(!symbols.isEmpty());
+                if (symbols.isEmpty())
+                {
+                    error = "QR code not found in image.";
+                }
+            }
+            else
+            {
+                if (strategy == Strategy.PYRAMID)
+                {
+                    result = PyramidDecoder.getThreadDecoder().decode(image);
+                }
+                else if (strategy == Strategy.TIERED)
+                {
+                    result = tieredDecoder.decode(image);
+                }
+                else
+                {
+                    result = QRDecoderSession.getThreadSession().decode(image);
+                    StageMetrics.getInstance().decodeCompleted(result != null);
+                }
+
+                if (result == null)
+                {
+                    error = "QR code not found in image.";
+                }
+            }
+        }
+        catch (IOException | RuntimeException e)
+        {
+            error = e.getMessage() != null? e.getMessage(): e.toString();
+        }
+
+        return new Record(file.toString(), result, symbols, error, System.nanoTime() - startTime);
+    }   //decodeFile
+
+    /**
+     * This method waits for a queued decode to finish and returns its record.
+     *
+     * @param future specifies the queued decode.
+     * @return decode record.
+     */
+    private Record waitForRecord(Future<Record> future)
+    {
+        Record record;
+
+        try
+        {
+            record = future.get();
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while waiting for decode.");
+        }
+        catch (ExecutionException e)
+        {
+            throw new RuntimeException("Decode task failed: " + e.getCause());
+        }
+
+        return record;
+    }   //waitForRecord
+
+    /**
+     * This method writes a decode record as one JSON line and accumulates its statistics.
+     *
+     * @param record specifies the decode record.
+     */
+    private synchronized void writeRecord(Record record)
+    {
+        numFiles++;
+        //
+        // A file that could not be opened never reached a decode, do not let its zero time skew the latencies.
+        //
+        if (record.nanos > 0)
+        {
+            latencies.record(record.nanos);
+        }
+        if (record.error != null)
+        {
+            numFailed++;
+        }
+
+        StringBuilder sb = new StringBuilder(128);
+        sb.append("{\"path\":");
+        appendJsonString(sb, record.path);
+        if (strategy == Strategy.MULTI)
+        {
+            sb.append(",\"symbols\":[");
+            if (record.symbols != null)
+            {
+                for (int i = 0; i < record.symbols.size(); i++)
+                {
+                    QRSymbol symbol = record.symbols.get(i);
+                    Rectangle bounds = symbol.getBounds();
+
+                    sb.append(i > 0? ",{\"text\":": "{\"text\":");
+                    appendJsonString(sb, symbol.getText());
+                    sb.append(",\"x\":").append(bounds.x).append(",\"y\":").append(bounds.y);
+                    sb.append(",\"width\":").append(bounds.width).append(",\"height\":").append(bounds.height);
+                    appendSequence(sb, symbol.getResult(), assembler);
+                    sb.append('}');
+                }
+            }
+            sb.append(']');
+        }
+        else
+        {
+            sb.append(",\"text\":");
+            appendJsonString(sb, record.result != null? record.result.getText(): null);
+            appendSequence(sb, record.result, assembler);
+        }
+        sb.append(",\"ms\":").append(String.format(Locale.ROOT, "%.3f", record.nanos/1000000.0));
+        sb.append(",\"error\":");
+        appendJsonString(sb, record.error);
+        sb.append('}');
+        out.println(sb);
+    }   //writeRecord
+
+    /**
+     * This method adds a decode result to the assembler and, if it is a symbol of a Structured Append sequence,
+     * appends its place in the sequence and, once the sequence is complete, the reassembled message.
+     *
+     * @param sb specifies the string builder.
+     * @param result specifies the decode result, can be null.
+     * @param assembler specifies the assembler of the sequences.
+     */
+    static void appendSequence(StringBuilder sb, Result result, StructuredAppendAssembler assembler)
+    {
+        if (result != null && StructuredAppendAssembler.isStructuredAppend(result))
+        {
+            String msg = assembler.add(result);
+
+            sb.append(",\"sequence\":{\"index\":").append(StructuredAppendAssembler.getSequenceIndex(result));
+            sb.append(",\"total\":").append(StructuredAppendAssembler.getSequenceTotal(result));
+            sb.append(",\"parity\":").append(StructuredAppendAssembler.getSequenceParity(result)).append('}');
+            if (msg != null)
+            {
+                sb.append(",\"message\":");
+                appendJsonString(sb, msg);
+            }
+        }
+    }   //appendSequence
+
+    /**
+     * This method appends a string to the builder as a JSON string literal, or null if the string is null.
+     *
+     * @param sb specifies the string builder.
+     * @param s specifies the string to append.
+     */
+    static void appendJsonString(StringBuilder sb, String s)
+    {
+        if (s == null)
+        {
+            sb.append("null");
+            return;
+        }
+
+        sb.append('"');
+        for (int i = 0; i < s.length(); i++)
+        {
+            char c = s.charAt(i);
+            switch (c)
+            {
+                case '"':
+                    sb.append("\\\"");
+                    break;
+
+                case '\\':
+                    sb.append("\\\\");
+                    break;
+
+                case '\n':
+                    sb.append("\\n");
+                    break;
+
+                case '\r':
+                    sb.append("\\r");
+                    break;
+
+                case '\t':
+                    sb.append("\\t");
+                    break;
+
+                default:
+                    if (c < 0x20)
+                    {
+                        sb.append(String.format("\\u%04x", (int)c));
+                    }
+                    else
+                    {
+                        sb.append(c);
+                    }
+                    break;
+            }
+        }
+        sb.append('"');
+    }   //appendJsonString
+
+    /**
+     * This method waits for the executor to finish all its tasks.
+     *
+     * @param executor specifies the executor.
+     */
+    private static void awaitTermination(ExecutorService executor)
+    {
+        try
+        {
+            while (!executor.awaitTermination(1, TimeUnit.SECONDS))
+            {
+            }
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+        }
+    }   //awaitTermination
+
+}   //class BatchDecoder
@@ -0,0 +1,485 @@
+/*
+ * Copyright (c) 2018 Titan Robotics Club (http://www.titanrobotics.com)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+import java.awt.image.BufferedImage;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * This class implements the headless bulk encoder. It streams an input file one line at a time, encodes each
+ * message on a pool of worker threads and hands the images to writer threads through a bounded queue, so disk I/O
+ * overlaps with encoding and memory use stays flat no matter how large the input is.
+ *
+ * The input is either one message per line, written to files numbered by line number, or CSV records of the form
+ * name,message, written to files named after the first column. Either way the file names only depend on the input,
+ * so rerunning the same input produces the same files. A CSV name already used by an earlier record, including
+ * names that only become equal once sanitized or differ only in case, gets the line number appended (e.g.
+ * label@17), so no record overwrites another. Lines that are empty or fail to encode are reported on standard error
+ * and skipped.
+ *
+ * A message too long for one QR code is split into a Structured Append sequence, written as one file per QR code
+ * with the position in the sequence appended to the name (e.g. manifest-02of05.png).
+ */
+public class BatchEncoder
+{
+    public static final String MODE_NAME = "encode-batch";
+
+    private static final int IN_FLIGHT_PER_THREAD = 4;
+    private static final int WRITE_QUEUE_SIZE = 64;
+
+    private final File inputFile;
+    private final File outputDir;
+    private final boolean csv;
+    private final int width;
+    private final int height;
+    private final int numThreads;
+    private final int numWriters;
+    private final String formatName;
+    private final LatencyHistogram encodeLatencies = new LatencyHistogram();
+    private final AtomicLong numWritten = new AtomicLong();
+    private final AtomicLong numFailed = new AtomicLong();
+    private final AtomicLong bytesWritten = new AtomicLong();
+    private final AtomicLong numSequences = new AtomicLong();
+    private StructuredAppendEncoder sequenceEncoder = new StructuredAppendEncoder();
+    private long elapsedNanos = 0;
+
+    /**
+     * This class holds an encoded image waiting to be written.
+     */
+    private static class WriteRequest
+    {
+        final File file;
+        final BufferedImage image;
+
+        WriteRequest(File file, BufferedImage image)
+        {
+            this.file = file;
+            this.image = image;
+        }   //WriteRequest
+
+    }   //class WriteRequest
+
+    //
+    // Tells a writer thread there is nothing more to write.
+    //
+    private static final WriteRequest END_OF_WRITES = new WriteRequest(null, null);
+
+    /**
+     * Constructor: Create an instance of the object.
+     *
+     * @param inputFile specifies the input file.
+     * @param outputDir specifies the directory to write the images to, created if it does not exist.
+     * @param csv specifies true if the input is name,message CSV records, false if it is one message per line.
+     * @param width specifies the image width in pixels.
+     * @param height specifies the image height in pixels.
+     * @param numThreads specifies the number of encoder threads, zero or negative to use one per processor core.
+     * @param numWriters specifies the number of writer threads.
+     * @param formatName specifies the image format name (e.g. png), also used as the file name extension.
+     */
+    public BatchEncoder(
+        File inputFile, File outputDir, boolean csv, int width, int height, int numThreads, int numWriters,
+        String formatName)
+    {
+        this.inputFile = inputFile;
+        this.outputDir = outputDir;
+        this.csv = csv;
+        this.width = width;
+        this.height = height;
+        this.numThreads = numThreads > 0? numThreads: Runtime.getRuntime().availableProcessors();
+        this.numWriters = Math.max(1, numWriters);
+        this.formatName = formatName;
+    }   //BatchEncoder
+
+    /**
+     * This method sets the encoder of the messages too long for one QR code, e.g. to limit the size of the QR codes
+     * in a sequence. It must be called before run.
+     *
+     * @param sequenceEncoder specifies the Structured Append encoder.
+     */
+    public void setSequenceEncoder(StructuredAppendEncoder sequenceEncoder)
+    {
+        this.sequenceEncoder = sequenceEncoder;
+    }   //setSequenceEncoder
+
+    /**
+     * This method encodes the whole input file. It returns when every image has been written.
+     *
+     * @throws IOException if the input file cannot be read or the output directory cannot be created.
+     */
+    public void run() throws IOException
+    {
+        Files.createDirectories(outputDir.toPath());
+
+        ExecutorService encoders = Executors.newFixedThreadPool(numThreads);
+        Semaphore inFlight = new Semaphore(numThreads*IN_FLIGHT_PER_THREAD);
+        BlockingQueue<WriteRequest> writeQueue = new ArrayBlockingQueue<>(WRITE_QUEUE_SIZE);
+        Set<String> usedNames = new HashSet<>();
+        Thread[] writers = new Thread[numWriters];
+        long startTime = System.nanoTime();
+
+        for (int i = 0; i < writers.length; i++)
+        {
+            writers[i] = new Thread(() -> writeImages(writeQueue), "BatchEncoderWriter" + i);
+            writers[i].start();
+        }
+
+        try (BufferedReader reader = Files.newBufferedReader(inputFile.toPath(), StandardCharsets.UTF_8))
+        {
+            String line;
+            long lineNum = 0;
+
+            while ((line = reader.readLine()) != null)
+            {
+                lineNum++;
+
+                String[] record = parseRecord(line, lineNum);
+                if (record == null)
+                {
+                    reportFailure(lineNum, "empty or malformed record");
+                    continue;
+                }
+
+                String name = csv? uniqueName(record[0], lineNum, usedNames): record[0];
+                String msg = record[1];
+                long recordNum = lineNum;
+
+                inFlight.acquireUninterruptibly();
+                encoders.execute(() ->
+                {
+                    try
+                    {
+                        long encodeStart = System.nanoTime();
+                        BufferedImage image = QRCode.encodeOneSymbol(msg, width, height, null);
+                        if (image != null)
+                        {
+                            encodeLatencies.record(System.nanoTime() - encodeStart);
+                            putUninterruptibly(
+                                writeQueue, new WriteRequest(new File(outputDir, name + "." + formatName), image));
+                        }
+                        else
+                        {
+                            List<BufferedImage> images = sequenceEncoder.encodeMessage(msg, width, height);
+                            encodeLatencies.record(System.nanoTime() - encodeStart);
+                            numSequences.incrementAndGet();
+                            for (int i = 0; i < images.size(); i++)
+                            {
+                                String fileName = String.format(
+                                    "%s-%02dof%02d.%s", name, i + 1, images.size(), formatName);
+                                File file = new File(outputDir, fileName);
+                                putUninterruptibly(writeQueue, new WriteRequest(file, images.get(i)));
+                            }
+                        }
+                    }
+                    catch (RuntimeException e)
+                    {
+                        reportFailure(recordNum, e.getMessage());
+                    }
+                    finally
+                    {
+                        inFlight.release();
+                    }
+                });
+            }
+        }
+        finally
+        {
+            encoders.shutdown();
+            try
+            {
+                while (!encoders.awaitTermination(1, TimeUnit.SECONDS))
+                {
+                }
+            }
+            catch (InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+            }
+
+            for (int i = 0; i < writers.length; i++)
+            {
+                putUninterruptibly(writeQueue, END_OF_WRITES);
+            }
+            for (Thread writer: writers)
+            {
+                try
+                {
+                    writer.join();
+                }
+                catch (InterruptedException e)
+                {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            elapsedNanos = System.nanoTime() - startTime;
+        }
+    }   //run
+
+    /**
+     * This method prints the throughput summary of the last run.
+     *
+     * @param out specifies the stream to print the summary to.
+     */
+    public void printSummary(PrintStream out)
+    {
+        double seconds = elapsedNanos/1000000000.0;
+        long written = numWritten.get();
+
+        out.printf(
+            "Wrote %d images (%d failed, %.1f MB) in %.3f sec with %d encoders and %d writers: %.1f images/sec\n",
+            written, numFailed.get(), bytesWritten.get()/1048576.0, seconds, numThreads, numWriters,
+            seconds > 0.0? written/seconds: 0.0);
+        if (numSequences.get() > 0)
+        {
+            out.printf("Split %d long messages into structured append sequences\n", numSequences.get());
+        }
+        out.println("Encode latency: " + encodeLatencies);
+    }   //printSummary
+
+    /**
+     * This method runs on each writer thread. It writes images until told there is nothing more to write.
+     *
+     * @param writeQueue specifies the queue of images to write.
+     */
+    private void writeImages(BlockingQueue<WriteRequest> writeQueue)
+    {
+        while (true)
+        {
+            WriteRequest request = takeUninterruptibly(writeQueue);
+            if (request == END_OF_WRITES)
+            {
+                break;
+            }
+
+            try
+            {
+                QRCode.writeImage(request.image, request.file);
+                numWritten.incrementAndGet();
+                bytesWritten.addAndGet(request.file.length());
+            }
+            catch (IOException | RuntimeException e)
+            {
+                //
+                // An image writer can also fail with an unchecked exception, and a writer thread that dies before
+                // taking its END_OF_WRITES would leave the encoders blocked on a full queue.
+                //
+                numFailed.incrementAndGet();
+                System.err.println("Failed to write " + request.file + ": " + e);
+            }
+        }
+    }   //writeImages
+
+    /**
+     * This method parses one input line into a file name and a message.
+     *
+     * @param line specifies the input line.
+     * @param lineNum specifies the line number, starting at 1.
+     * @return file name (without extension) and message, null if the line is empty or malformed.
+     */
+    private String[] parseRecord(String line, long lineNum)
+    {
+        if (!csv)
+        {
+            return line.isEmpty()? null: new String[] {String.format("%08d", lineNum), line};
+        }
+
+        String[] fields = parseCsvLine(line);
+        if (fields.length < 2 || fields[0].isEmpty() || fields[1].isEmpty())
+        {
+            return null;
+        }
+        //
+        // The name column becomes a file name, do not let it escape the output directory.
+        //
+        fields[0] = fields[0].replaceAll("[^A-Za-z0-9._-]", "_");
+        if (fields[0].startsWith("."))
+        {
+            fields[0] = "_" + fields[0].substring(1);
+        }
+
+        return fields;
+    }   //parseRecord
+
+    /**
+     * This method makes sure no two CSV records write to the same file. Names are compared ignoring case, since
+     * some file systems do. A name seen before gets an at sign and the line number appended, the sanitized names
+     * never contain an at sign so the result is unique and still only depends on the input.
+     *
+     * @param name specifies the sanitized name of the record.
+     * @param lineNum specifies the line number of the record.
+     * @param usedNames specifies the names used so far, updated by this method.
+     * @return name to write the record to.
+     */
+    private static String uniqueName(String name, long lineNum, Set<String> usedNames)
+    {
+        if (!usedNames.add(name.toLowerCase(Locale.ROOT)))
+        {
+            String newName = name + "@" + lineNum;
+            System.err.println("Line " + lineNum + ": name " + name + " already used, writing to " + newName);
+            name = newName;
+            usedNames.add(name.toLowerCase(Locale.ROOT));
+        }
+
+        return name;
+    }   //uniqueName
+
+    /**
+     * This method splits a CSV line into its first field and the rest of the line. Fields may be quoted with double
+     * quotes, with a doubled quote standing for a literal one. Records spanning several lines are not supported.
+     *
+     * @param line specifies the CSV line.
+     * @return first field and message field, or a single element array if there is no separator.
+     */
+    static String[] parseCsvLine(String line)
+    {
+        StringBuilder[] fields = {new StringBuilder(), new StringBuilder()};
+        int fieldIndex = 0;
+        boolean quoted = false;
+        boolean sawSeparator = false;
+
+        for (int i = 0; i < line.length(); i++)
+        {
+            char c = line.charAt(i);
+
+            if (quoted)
+            {
+                if (c == '"' && i + 1 < line.length() && line.charAt(i + 1) == '"')
+                {
+                    fields[fieldIndex].append('"');
+                    i++;
+                }
+                else if (c == '"')
+                {
+                    quoted = false;
+                }
+                else
+                {
+                    fields[fieldIndex].append(c);
+                }
+            }
+            else if (c == '"')
+            {
+                quoted = true;
+            }
+            else if (c == ',' && fieldIndex == 0)
+            {
+                fieldIndex = 1;
+                sawSeparator = true;
+            }
+            else
+            {
+                fields[fieldIndex].append(c);
+            }
+        }
+
+        return sawSeparator?
+            new String[] {fields[0].toString().trim(), fields[1].toString()}: new String[] {fields[0].toString()};
+    }   //parseCsvLine
+
+    /**
+     * This method reports a record that could not be encoded.
+     *
+     * @param lineNum specifies the line number of the record.
+     * @param reason specifies why it failed.
+     */
+    private void reportFailure(long lineNum, String reason)
+    {
+        numFailed.incrementAndGet();
+        System.err.printf("%s:%d: %s\n", inputFile, lineNum, reason);
+    }   //reportFailure
+
+    /**
+     * This method puts an element into a blocking queue, waiting for space if needed and ignoring interrupts.
+     *
+     * @param queue specifies the queue.
+     * @param element specifies the element.
+     */
+    private static <T> void putUninterruptibly(BlockingQueue<T> queue, T element)
+    {
+        boolean interrupted = false;
+
+        while (true)
+        {
+            try
+            {
+                queue.put(element);
+                break;
+            }
+            catch (InterruptedException e)
+            {
+                interrupted = true;
+            }
+        }
+
+        if (interrupted)
+        {
+            Thread.currentThread().interrupt();
+        }
+    }   //putUninterruptibly
+
+    /**
+     * This method takes an element from a blocking queue, waiting for one if needed and ignoring interrupts.
+     *
+     * @param queue specifies the queue.
+     * @return element taken.
+     */
+    private static <T> T takeUninterruptibly(BlockingQueue<T> queue)
+    {
+        boolean interrupted = false;
+        T element;
+
+        while (true)
+        {
+            try
+            {
+                element = queue.take();
+                break;
+            }
+            catch (InterruptedException e)
+            {
+                interrupted = true;
+            }
+        }
+
+        if (interrupted)
+        {
+            Thread.currentThread().interrupt();
+        }
+
+        return element;
+    }   //takeUninterruptibly
+
+}   //class BatchEncoder
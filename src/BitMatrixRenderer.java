@@ -0,0 +1,86 @@
+/*
+ * Copyright (c) 2018 Titan Robotics Club (http://www.titanrobotics.com)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+import java.util.Arrays;
+
+import com.google.zxing.common.BitArray;
+import com.google.zxing.common.BitMatrix;
+
+/**
+ * This class implements a fast renderer of ZXing bit matrices into packed bilevel images. Instead of setting one
+ * pixel at a time, each matrix row is converted to packed bytes straight from the 32-bit words of the row, and a row
+ * identical to the one above it (most rows of a scaled QR code) is a single array copy.
+ */
+public class BitMatrixRenderer
+{
+    /**
+     * This method renders a bit matrix into a TYPE_BYTE_BINARY image, one pixel per matrix cell. Set bits are
+     * black, clear bits are white.
+     *
+     * @param matrix specifies the bit matrix.
+     * @return rendered image.
+     */
+    public static BufferedImage toBufferedImage(BitMatrix matrix)
+    {
+        int width = matrix.getWidth();
+        int height = matrix.getHeight();
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_BYTE_BINARY);
+        byte[] data = ((DataBufferByte)image.getRaster().getDataBuffer()).getData();
+        int stride = (width + 7)/8;
+        BitArray row = new BitArray(width);
+        BitArray prevRow = new BitArray(width);
+
+        for (int y = 0; y < height; y++)
+        {
+            int offset = y*stride;
+
+            row = matrix.getRow(y, row);
+            int[] words = row.getBitArray();
+            if (y > 0 && Arrays.equals(words, prevRow.getBitArray()))
+            {
+                System.arraycopy(data, offset - stride, data, offset, stride);
+            }
+            else
+            {
+                //
+                // The matrix keeps the leftmost pixel in the least significant bit while the image keeps it in the
+                // most significant bit, and a set bit is black which is pixel value 0 in the image.
+                //
+                for (int i = 0; i < stride; i++)
+                {
+                    int bitIndex = i << 3;
+                    int bits = (words[bitIndex >>> 5] >>> (bitIndex & 31)) & 0xff;
+                    data[offset + i] = (byte)~(Integer.reverse(bits) >>> 24);
+                }
+            }
+
+            BitArray temp = prevRow;
+            prevRow = row;
+            row = temp;
+        }
+
+        return image;
+    }   //toBufferedImage
+
+}   //class BitMatrixRenderer
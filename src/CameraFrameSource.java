@@ -0,0 +1,168 @@
+/*
+ * Copyright (c) 2018 Titan Robotics Club (http://www.titanrobotics.com)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+import org.opencv.core.Core;
+import org.opencv.core.Mat;
+import org.opencv.highgui.VideoCapture;
+
+/**
+ * This class implements a frame source reading from a camera through OpenCV. The OpenCV native library is loaded
+ * the first time a camera is opened, so a session that never uses the camera never loads native code. Frames are
+ * read into a single Mat and copied from there straight into the caller's frame bytes.
+ */
+public class CameraFrameSource implements FrameSource
+{
+    private static boolean nativeLibraryLoaded = false;
+
+    private final int cameraIndex;
+    private Mat mat = null;
+    private VideoCapture camera = null;
+    private int width = 0;
+    private int height = 0;
+    private int bytesPerPixel = 0;
+
+    /**
+     * Constructor: Create an instance of the object.
+     *
+     * @param cameraIndex specifies the OpenCV index of the camera, 0 for the default camera.
+     */
+    public CameraFrameSource(int cameraIndex)
+    {
+        this.cameraIndex = cameraIndex;
+    }   //CameraFrameSource
+
+    /**
+     * This method loads the OpenCV native library if it is not loaded yet.
+     *
+     * @return true if the library is loaded, false if it could not be found or loaded.
+     */
+    private static synchronized boolean loadNativeLibrary()
+    {
+        if (!nativeLibraryLoaded)
+        {
+            try
+            {
+                System.loadLibrary(Core.NATIVE_LIBRARY_NAME);
+                nativeLibraryLoaded = true;
+            }
+            catch (UnsatisfiedLinkError e)
+            {
+                System.err.println("Failed to load the OpenCV library: " + e.getMessage());
+            }
+        }
+
+        return nativeLibraryLoaded;
+    }   //loadNativeLibrary
+
+    /**
+     * This method opens the camera and reads one frame to find out the frame size. The OpenCV native library is
+     * loaded on the first open.
+     *
+     * @return true if the camera is open and delivering frames, false otherwise.
+     */
+    @Override
+    public boolean open()
+    {
+        if (!loadNativeLibrary())
+        {
+            return false;
+        }
+
+        if (mat == null)
+        {
+            mat = new Mat();
+        }
+        camera = new VideoCapture(cameraIndex);
+        if (!camera.isOpened() || !camera.read(mat) || mat.width() <= 0 || mat.height() <= 0)
+        {
+            close();
+            return false;
+        }
+
+        width = mat.width();
+        height = mat.height();
+        bytesPerPixel = mat.channels();
+
+        return true;
+    }   //open
+
+    @Override
+    public void close()
+    {
+        if (camera != null)
+        {
+            camera.release();
+            camera = null;
+        }
+    }   //close
+
+    @Override
+    public int getFrameWidth()
+    {
+        return width;
+    }   //getFrameWidth
+
+    @Override
+    public int getFrameHeight()
+    {
+        return height;
+    }   //getFrameHeight
+
+    @Override
+    public int getBytesPerPixel()
+    {
+        return bytesPerPixel;
+    }   //getBytesPerPixel
+
+    /**
+     * This method checks if the source has run out of frames. A camera never does.
+     *
+     * @return false.
+     */
+    @Override
+    public boolean isAtEnd()
+    {
+        return false;
+    }   //isAtEnd
+
+    /**
+     * This method reads the next camera frame into the given frame.
+     *
+     * @param frame specifies the frame to fill in.
+     * @return true if the frame was filled in, false if the camera did not deliver a frame of the expected size.
+     */
+    @Override
+    public boolean readFrame(Frame frame)
+    {
+        if (camera != null && camera.read(mat) &&
+            mat.width() == frame.getWidth() && mat.height() == frame.getHeight() &&
+            mat.channels() == frame.getBytesPerPixel())
+        {
+            frame.setTimestamp(System.nanoTime());
+            mat.get(0, 0, frame.getData());
+            return true;
+        }
+
+        return false;
+    }   //readFrame
+
+}   //class CameraFrameSource
@@ -0,0 +1,256 @@
+/*
+ * Copyright (c) 2018 Titan Robotics Club (http://www.titanrobotics.com)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBuffer;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.google.zxing.EncodeHintType;
+
+/**
+ * This class implements a bounded LRU cache of encoded QR code images keyed by message, image size and encode
+ * hints. The cache is bounded both by the number of entries and by the total bytes of the cached images, whichever
+ * is hit first evicts the least recently used entries. All methods are thread-safe, the encoding itself is done by
+ * the caller outside of the cache lock.
+ *
+ * Cached images are shared by every caller asking for the same key, so they must not be modified.
+ */
+public class EncodeCache
+{
+    private final int maxEntries;
+    private final long maxBytes;
+    private final LinkedHashMap<Key, BufferedImage> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long totalBytes = 0;
+    private final AtomicLong numHits = new AtomicLong();
+    private final AtomicLong numMisses = new AtomicLong();
+    private final AtomicLong numEvictions = new AtomicLong();
+
+    /**
+     * This class implements the cache key.
+     */
+    private static class Key
+    {
+        final String msg;
+        final int width;
+        final int height;
+        final Map<EncodeHintType, Object> hints;
+        final int hashCode;
+
+        Key(String msg, int width, int height, Map<EncodeHintType, ?> hints)
+        {
+            this.msg = msg;
+            this.width = width;
+            this.height = height;
+            this.hints = hints == null || hints.isEmpty()?
+                Collections.<EncodeHintType, Object>emptyMap(): new EnumMap<EncodeHintType, Object>(hints);
+            this.hashCode = ((msg.hashCode()*31 + width)*31 + height)*31 + this.hints.hashCode();
+        }   //Key
+
+        @Override
+        public boolean equals(Object obj)
+        {
+            if (!(obj instanceof Key))
+            {
+                return false;
+            }
+
+            Key key = (Key)obj;
+            return hashCode == key.hashCode && width == key.width && height == key.height && msg.equals(key.msg) &&
+                   hints.equals(key.hints);
+        }   //equals
+
+        @Override
+        public int hashCode()
+        {
+            return hashCode;
+        }   //hashCode
+
+    }   //class Key
+
+    /**
+     * Constructor: Create an instance of the object.
+     *
+     * @param maxEntries specifies the maximum number of cached images.
+     * @param maxBytes specifies the maximum total bytes of the cached images.
+     */
+    public EncodeCache(int maxEntries, long maxBytes)
+    {
+        this.maxEntries = maxEntries;
+        this.maxBytes = maxBytes;
+    }   //EncodeCache
+
+    /**
+     * This method looks up a cached image.
+     *
+     * @param msg specifies the encoded message.
+     * @param width specifies the requested image width.
+     * @param height specifies the requested image height.
+     * @param hints specifies the encode hints, can be null.
+     * @return cached image, null if not cached.
+     */
+    public BufferedImage get(String msg, int width, int height, Map<EncodeHintType, ?> hints)
+    {
+        BufferedImage image;
+
+        synchronized (this)
+        {
+            image = entries.get(new Key(msg, width, height, hints));
+        }
+
+        if (image != null)
+        {
+            numHits.incrementAndGet();
+        }
+        else
+        {
+            numMisses.incrementAndGet();
+        }
+
+        return image;
+    }   //get
+
+    /**
+     * This method caches an image, evicting the least recently used images if the cache goes over its bounds. An
+     * image larger than the byte bound by itself is not cached.
+     *
+     * @param msg specifies the encoded message.
+     * @param width specifies the requested image width.
+     * @param height specifies the requested image height.
+     * @param hints specifies the encode hints, can be null.
+     * @param image specifies the encoded image.
+     */
+    public void put(String msg, int width, int height, Map<EncodeHintType, ?> hints, BufferedImage image)
+    {
+        long imageBytes = getImageBytes(image);
+
+        if (imageBytes > maxBytes || maxEntries <= 0)
+        {
+            return;
+        }
+
+        Key key = new Key(msg, width, height, hints);
+        synchronized (this)
+        {
+            BufferedImage prevImage = entries.put(key, image);
+            if (prevImage != null)
+            {
+                totalBytes -= getImageBytes(prevImage);
+            }
+            totalBytes += imageBytes;
+
+            Iterator<BufferedImage> iter = entries.values().iterator();
+            while (entries.size() > maxEntries || totalBytes > maxBytes)
+            {
+                totalBytes -= getImageBytes(iter.next());
+                iter.remove();
+                numEvictions.incrementAndGet();
+            }
+        }
+    }   //put
+
+    /**
+     * This method removes all cached images. The counters are kept.
+     */
+    public synchronized void clear()
+    {
+        entries.clear();
+        totalBytes = 0;
+    }   //clear
+
+    /**
+     * This method returns the number of cached images.
+     *
+     * @return number of cached images.
+     */
+    public synchronized int getNumEntries()
+    {
+        return entries.size();
+    }   //getNumEntries
+
+    /**
+     * This method returns the total bytes of the cached images.
+     *
+     * @return total bytes cached.
+     */
+    public synchronized long getTotalBytes()
+    {
+        return totalBytes;
+    }   //getTotalBytes
+
+    /**
+     * This method returns the number of lookups that found a cached image.
+     *
+     * @return number of hits.
+     */
+    public long getNumHits()
+    {
+        return numHits.get();
+    }   //getNumHits
+
+    /**
+     * This method returns the number of lookups that did not find a cached image.
+     *
+     * @return number of misses.
+     */
+    public long getNumMisses()
+    {
+        return numMisses.get();
+    }   //getNumMisses
+
+    /**
+     * This method returns the number of images evicted to stay within the bounds.
+     *
+     * @return number of evictions.
+     */
+    public long getNumEvictions()
+    {
+        return numEvictions.get();
+    }   //getNumEvictions
+
+    @Override
+    public String toString()
+    {
+        return String.format(
+            "entries=%d, bytes=%d, hits=%d, misses=%d, evictions=%d",
+            getNumEntries(), getTotalBytes(), getNumHits(), getNumMisses(), getNumEvictions());
+    }   //toString
+
+    /**
+     * This method returns the number of bytes held by the pixels of an image.
+     *
+     * @param image specifies the image.
+     * @return image size in bytes.
+     */
+    private static long getImageBytes(BufferedImage image)
+    {
+        DataBuffer dataBuffer = image.getRaster().getDataBuffer();
+
+        return (long)dataBuffer.getSize()*dataBuffer.getNumBanks()*
+               DataBuffer.getDataTypeSize(dataBuffer.getDataType())/8;
+    }   //getImageBytes
+
+}   //class EncodeCache
@@ -0,0 +1,120 @@
+/*
+ * Copyright (c) 2018 Titan Robotics Club (http://www.titanrobotics.com)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * This class implements a bounded set of keys that expire a fixed time after they were last seen. Keys are kept in
+ * the order they were last seen, so expired keys are always at the head and are evicted by walking the head only.
+ * If the set is full, the key seen longest ago is evicted early. It is not thread-safe.
+ */
+public class ExpiringSet
+{
+    private final long ttlNanos;
+    private final int maxSize;
+    private final LinkedHashMap<String, Long> lastSeen;
+    private long numEvicted = 0;
+
+    /**
+     * Constructor: Create an instance of the object.
+     *
+     * @param ttlNanos specifies how long a key stays in the set after it was last seen, in nanoseconds.
+     * @param maxSize specifies the maximum number of keys in the set.
+     */
+    public ExpiringSet(long ttlNanos, int maxSize)
+    {
+        this.ttlNanos = ttlNanos;
+        this.maxSize = maxSize;
+        //
+        // Access order moves a key to the tail every time it is seen again.
+        //
+        this.lastSeen = new LinkedHashMap<String, Long>(16, 0.75f, true)
+        {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Long> eldest)
+            {
+                boolean full = size() > ExpiringSet.this.maxSize;
+
+                if (full)
+                {
+                    numEvicted++;
+                }
+
+                return full;
+            }   //removeEldestEntry
+        };
+    }   //ExpiringSet
+
+    /**
+     * This method records that the key was seen and tells whether it was new. A key is new if it was never seen or
+     * was last seen longer than the time to live ago. Either way, its time to live starts over.
+     *
+     * @param key specifies the key.
+     * @param now specifies the current time in System.nanoTime() units.
+     * @return true if the key is new, false if it was seen within the time to live.
+     */
+    public boolean add(String key, long now)
+    {
+        expire(now);
+        return lastSeen.put(key, now) == null;
+    }   //add
+
+    /**
+     * This method returns the number of keys in the set, including any that expired since the last add.
+     *
+     * @return number of keys.
+     */
+    public int size()
+    {
+        return lastSeen.size();
+    }   //size
+
+    /**
+     * This method returns the number of keys evicted before they expired because the set was full.
+     *
+     * @return number of early evictions.
+     */
+    public long getNumEvicted()
+    {
+        return numEvicted;
+    }   //getNumEvicted
+
+    /**
+     * This method removes the keys that were last seen longer than the time to live ago.
+     *
+     * @param now specifies the current time in System.nanoTime() units.
+     */
+    private void expire(long now)
+    {
+        Iterator<Long> iterator = lastSeen.values().iterator();
+
+        while (iterator.hasNext() && now - iterator.next() > ttlNanos)
+        {
+            iterator.remove();
+        }
+    }   //expire
+
+}   //class ExpiringSet
@@ -0,0 +1,175 @@
+/*
+ * Copyright (c) 2018 Titan Robotics Club (http://www.titanrobotics.com)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * This class implements a preallocated video frame owned by a FrameRing. The frame bytes are the backing store of
+ * a BufferedImage, so the same bytes are filled in by the capture, drawn by the display and read by the decoder
+ * without any copy. A frame is reference counted: whoever holds on to it past the call that handed it over must
+ * retain it and release it when done. When the count drops to zero, the ring may hand the frame out again.
+ */
+public class Frame
+{
+    private final BufferedImage image;
+    private final byte[] data;
+    private final int bytesPerPixel;
+    private final AtomicInteger refCount = new AtomicInteger();
+    private volatile long timestamp = 0;
+
+    /**
+     * Constructor: Create an instance of the object.
+     *
+     * @param width specifies the frame width in pixels.
+     * @param height specifies the frame height in pixels.
+     * @param bytesPerPixel specifies FrameLuminanceSource.BYTES_PER_PIXEL_GRAY or BYTES_PER_PIXEL_BGR.
+     */
+    public Frame(int width, int height, int bytesPerPixel)
+    {
+        this.image = new BufferedImage(
+            width, height,
+            bytesPerPixel == FrameLuminanceSource.BYTES_PER_PIXEL_GRAY?
+                BufferedImage.TYPE_BYTE_GRAY: BufferedImage.TYPE_3BYTE_BGR);
+        this.data = ((DataBufferByte)image.getRaster().getDataBuffer()).getData();
+        this.bytesPerPixel = bytesPerPixel;
+    }   //Frame
+
+    /**
+     * This method claims a free frame for the caller, setting its reference count to one.
+     *
+     * @return true if the frame was free and is now claimed, false if it is in use.
+     */
+    boolean tryAcquire()
+    {
+        return refCount.compareAndSet(0, 1);
+    }   //tryAcquire
+
+    /**
+     * This method adds a reference to the frame. The caller must already hold a reference.
+     *
+     * @return this frame.
+     */
+    public Frame retain()
+    {
+        //
+        // Only count up from a held frame. Counting a released frame up to one, even briefly, would let the ring
+        // see it as held and never hand it out again.
+        //
+        int count;
+
+        do
+        {
+            count = refCount.get();
+            if (count <= 0)
+            {
+                throw new IllegalStateException("Cannot retain a frame that has been released.");
+            }
+        } while (!refCount.compareAndSet(count, count + 1));
+
+        return this;
+    }   //retain
+
+    /**
+     * This method drops a reference to the frame. When the last reference is dropped, the frame returns to its ring.
+     */
+    public void release()
+    {
+        if (refCount.decrementAndGet() < 0)
+        {
+            refCount.incrementAndGet();
+            throw new IllegalStateException("Frame released more times than it was acquired.");
+        }
+    }   //release
+
+    /**
+     * This method returns the image backed by the frame bytes.
+     *
+     * @return frame image.
+     */
+    public BufferedImage getImage()
+    {
+        return image;
+    }   //getImage
+
+    /**
+     * This method returns the frame bytes, rows packed without padding.
+     *
+     * @return frame bytes.
+     */
+    public byte[] getData()
+    {
+        return data;
+    }   //getData
+
+    /**
+     * This method returns the frame width.
+     *
+     * @return frame width in pixels.
+     */
+    public int getWidth()
+    {
+        return image.getWidth();
+    }   //getWidth
+
+    /**
+     * This method returns the frame height.
+     *
+     * @return frame height in pixels.
+     */
+    public int getHeight()
+    {
+        return image.getHeight();
+    }   //getHeight
+
+    /**
+     * This method returns the number of bytes per pixel.
+     *
+     * @return FrameLuminanceSource.BYTES_PER_PIXEL_GRAY or BYTES_PER_PIXEL_BGR.
+     */
+    public int getBytesPerPixel()
+    {
+        return bytesPerPixel;
+    }   //getBytesPerPixel
+
+    /**
+     * This method sets the time the frame was captured.
+     *
+     * @param timestamp specifies the capture time in System.nanoTime() units.
+     */
+    public void setTimestamp(long timestamp)
+    {
+        this.timestamp = timestamp;
+    }   //setTimestamp
+
+    /**
+     * This method returns the time the frame was captured.
+     *
+     * @return capture time in System.nanoTime() units.
+     */
+    public long getTimestamp()
+    {
+        return timestamp;
+    }   //getTimestamp
+
+}   //class Frame
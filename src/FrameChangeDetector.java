@@ -0,0 +1,185 @@
+/*
+ * Copyright (c) 2018 Titan Robotics Club (http://www.titanrobotics.com)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+import java.util.Arrays;
+
+/**
+ * This class tells whether a camera frame differs from a reference frame enough to be worth decoding. The frame is
+ * divided into blocks and the mean brightness of each block is estimated from a sparse grid of samples. A frame has
+ * changed if any block mean moved by more than the threshold since the reference frame. Averaging each block over
+ * many samples smooths out sensor noise, while taking the largest block difference still notices a small QR code
+ * coming into view. Computing the block means of a 640x480 frame reads about 1 in 16 pixels and costs a few
+ * microseconds, far less than a decode.
+ *
+ * The reference frame is the last frame accepted as changed rather than the previous frame, so a slow drift of the
+ * lighting still adds up to a change eventually.
+ */
+public class FrameChangeDetector
+{
+    private static final int BLOCK_SIZE = 32;
+    private static final int SAMPLE_STEP = 4;
+
+    private final double threshold;
+    private int[] blockSamples = new int[0];
+    private int[] blockSums = new int[0];
+    private int[] referenceSums = new int[0];
+    private int referenceWidth = 0;
+    private int referenceHeight = 0;
+    private boolean hasReference = false;
+    private double lastScore = 0.0;
+
+    /**
+     * Constructor: Create an instance of the object.
+     *
+     * @param threshold specifies how much the mean brightness of a block (0 to 255) must move for the frame to count
+     *        as changed.
+     */
+    public FrameChangeDetector(double threshold)
+    {
+        this.threshold = threshold;
+    }   //FrameChangeDetector
+
+    /**
+     * This method forgets the reference frame, so the next frame counts as changed.
+     */
+    public void reset()
+    {
+        hasReference = false;
+    }   //reset
+
+    /**
+     * This method returns the score of the last frame checked: the largest change of a block mean from the reference
+     * frame.
+     *
+     * @return last change score.
+     */
+    public double getLastScore()
+    {
+        return lastScore;
+    }   //getLastScore
+
+    /**
+     * This method checks if the frame has changed from the reference frame. A changed frame becomes the new
+     * reference frame. The caller must hold a reference to the frame.
+     *
+     * @param frame specifies the frame.
+     * @return true if the frame has changed or there is no reference frame, false otherwise.
+     */
+    public boolean hasChanged(Frame frame)
+    {
+        int width = frame.getWidth();
+        int height = frame.getHeight();
+        int blocksPerRow = (width + BLOCK_SIZE - 1)/BLOCK_SIZE;
+        boolean changed = !hasReference;
+
+        if (width != referenceWidth || height != referenceHeight)
+        {
+            int numBlocks = blocksPerRow*((height + BLOCK_SIZE - 1)/BLOCK_SIZE);
+
+            blockSamples = new int[numBlocks];
+            blockSums = new int[numBlocks];
+            referenceSums = new int[numBlocks];
+            referenceWidth = width;
+            referenceHeight = height;
+            countBlockSamples(width, height, blocksPerRow);
+            changed = true;
+        }
+
+        computeBlockSums(frame.getData(), width, height, frame.getBytesPerPixel(), blocksPerRow);
+
+        if (changed)
+        {
+            lastScore = Double.POSITIVE_INFINITY;
+        }
+        else
+        {
+            double maxDiff = 0.0;
+
+            for (int i = 0; i < blockSums.length; i++)
+            {
+                if (blockSamples[i] > 0)
+                {
+                    maxDiff = Math.max(maxDiff, (double)Math.abs(blockSums[i] - referenceSums[i])/blockSamples[i]);
+                }
+            }
+            lastScore = maxDiff;
+            changed = maxDiff > threshold;
+        }
+
+        if (changed)
+        {
+            int[] temp = referenceSums;
+            referenceSums = blockSums;
+            blockSums = temp;
+            hasReference = true;
+        }
+
+        return changed;
+    }   //hasChanged
+
+    /**
+     * This method counts the samples taken from each block. Blocks along the right and bottom edges of the frame
+     * may be partial and have fewer samples.
+     *
+     * @param width specifies the frame width.
+     * @param height specifies the frame height.
+     * @param blocksPerRow specifies the number of blocks across the frame.
+     */
+    private void countBlockSamples(int width, int height, int blocksPerRow)
+    {
+        for (int y = SAMPLE_STEP/2; y < height; y += SAMPLE_STEP)
+        {
+            for (int x = SAMPLE_STEP/2; x < width; x += SAMPLE_STEP)
+            {
+                blockSamples[(y/BLOCK_SIZE)*blocksPerRow + x/BLOCK_SIZE]++;
+            }
+        }
+    }   //countBlockSamples
+
+    /**
+     * This method sums the sampled brightness of each block into blockSums. The green channel stands in for the
+     * luminance of BGR frames.
+     *
+     * @param data specifies the frame bytes.
+     * @param width specifies the frame width.
+     * @param height specifies the frame height.
+     * @param bytesPerPixel specifies the bytes per pixel of the frame.
+     * @param blocksPerRow specifies the number of blocks across the frame.
+     */
+    private void computeBlockSums(byte[] data, int width, int height, int bytesPerPixel, int blocksPerRow)
+    {
+        int channel = bytesPerPixel == FrameLuminanceSource.BYTES_PER_PIXEL_BGR? 1: 0;
+
+        Arrays.fill(blockSums, 0);
+        for (int y = SAMPLE_STEP/2; y < height; y += SAMPLE_STEP)
+        {
+            int blockRow = (y/BLOCK_SIZE)*blocksPerRow;
+            int rowStart = y*width*bytesPerPixel + channel;
+
+            for (int x = SAMPLE_STEP/2; x < width; x += SAMPLE_STEP)
+            {
+                blockSums[blockRow + x/BLOCK_SIZE] += data[rowStart + x*bytesPerPixel] & 0xff;
+            }
+        }
+    }   //computeBlockSums
+
+}   //class FrameChangeDetector
@@ -0,0 +1,137 @@
+/*
+ * Copyright (c) 2018 Titan Robotics Club (http://www.titanrobotics.com)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.util.Locale;
+
+import com.google.zxing.Result;
+
+/**
+ * This class implements the headless capture file decoder. It goes through a raw grayscale frame file, such as a
+ * dump from a line camera, and streams one JSON line per frame to the output. Frames are memory mapped and decoded
+ * as luminance in place, so the cost of ingesting the file is the page faults of the frames plus the decodes.
+ * Structured Append sequences are reassembled across frames, the same way the batch decoder does across files.
+ */
+public class FrameFileDecoder
+{
+    public static final String MODE_NAME = "decode-frames";
+
+    private final File file;
+    private final int width;
+    private final int height;
+    private final PrintStream out;
+    private final LatencyHistogram latencies = new LatencyHistogram();
+    private final QRDecoderSession session = new QRDecoderSession(null, false);
+    private final StructuredAppendAssembler assembler = new StructuredAppendAssembler();
+    private long numFailed = 0;
+    private long numBytes = 0;
+    private long elapsedNanos = 0;
+
+    /**
+     * Constructor: Create an instance of the object.
+     *
+     * @param file specifies the frame file, PGM images or headerless Y8 frames.
+     * @param width specifies the frame width in pixels of a Y8 file, zero for a PGM file.
+     * @param height specifies the frame height in pixels of a Y8 file, zero for a PGM file.
+     * @param out specifies the stream to write the JSON lines to.
+     */
+    public FrameFileDecoder(File file, int width, int height, PrintStream out)
+    {
+        this.file = file;
+        this.width = width;
+        this.height = height;
+        this.out = out;
+    }   //FrameFileDecoder
+
+    /**
+     * This method decodes every frame in the file.
+     *
+     * @throws IOException if the file cannot be read or is malformed.
+     */
+    public void run() throws IOException
+    {
+        long startTime = System.nanoTime();
+
+        try (RawFrameFile frames = new RawFrameFile(file, width, height))
+        {
+            ByteBuffer frame;
+
+            while ((frame = frames.nextFrame()) != null)
+            {
+                long frameStartTime = System.nanoTime();
+                Result result = session.decode(frame, frames.getFrameWidth(), frames.getFrameHeight());
+                long nanos = System.nanoTime() - frameStartTime;
+                StageMetrics.getInstance().decodeCompleted(result != null);
+                StringBuilder sb = new StringBuilder(128);
+
+                latencies.record(nanos);
+                numBytes += frame.capacity();
+                if (result == null)
+                {
+                    numFailed++;
+                }
+
+                sb.append("{\"frame\":").append(frames.getFrameIndex());
+                sb.append(",\"text\":");
+                BatchDecoder.appendJsonString(sb, result != null? result.getText(): null);
+                BatchDecoder.appendSequence(sb, result, assembler);
+                sb.append(",\"ms\":").append(String.format(Locale.ROOT, "%.3f", nanos/1000000.0));
+                sb.append(",\"error\":");
+                BatchDecoder.appendJsonString(sb, result != null? null: "QR code not found in image.");
+                sb.append('}');
+                out.println(sb);
+            }
+        }
+        finally
+        {
+            elapsedNanos = System.nanoTime() - startTime;
+        }
+    }   //run
+
+    /**
+     * This method prints the frame count, throughput and latency percentiles of the last run.
+     *
+     * @param summaryOut specifies the stream to print the summary to.
+     */
+    public void printSummary(PrintStream summaryOut)
+    {
+        long numFrames = latencies.getCount();
+        double seconds = elapsedNanos/1000000000.0;
+
+        summaryOut.printf(
+            "Decoded %d frames (%d failed) in %.3f sec: %.1f frames/sec, %.1f MB/sec, p50=%.3f ms, p99=%.3f ms\n",
+            numFrames, numFailed, seconds, seconds > 0.0? numFrames/seconds: 0.0,
+            seconds > 0.0? numBytes/seconds/(1024*1024): 0.0, latencies.getPercentile(50.0)/1000000.0,
+            latencies.getPercentile(99.0)/1000000.0);
+        if (assembler.getNumSymbols() > 0)
+        {
+            summaryOut.printf(
+                "Reassembled %d structured append messages from %d symbols (%d parity errors, %d incomplete)\n",
+                assembler.getNumAssembled(), assembler.getNumSymbols(), assembler.getNumParityErrors(),
+                assembler.getNumPending() + assembler.getNumEvicted());
+        }
+    }   //printSummary
+
+}   //class FrameFileDecoder
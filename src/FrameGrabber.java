@@ -0,0 +1,166 @@
+/*
+ * Copyright (c) 2018 Titan Robotics Club (http://www.titanrobotics.com)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * This class implements the capture stage of the video pipeline. Each call to grabFrame() reads the next frame from
+ * the source into a frame from the ring and hands it to the registered listeners. The grabber only produces frames,
+ * what happens to them (display, decode) is up to the listeners, which must not block.
+ */
+public class FrameGrabber
+{
+    //
+    // One frame being captured, one being displayed, one waiting to be painted, one waiting in the scanner mailbox,
+    // one being decoded and one spare.
+    //
+    private static final int NUM_RING_FRAMES = 6;
+
+    private final FrameSource source;
+    private final FrameRing ring;
+    private volatile FrameListener[] listeners = new FrameListener[0];
+    private final AtomicLong numCaptured = new AtomicLong();
+    private final AtomicLong numSkipped = new AtomicLong();
+    private final StageMetrics metrics = StageMetrics.getInstance();
+
+    /**
+     * Constructor: Create an instance of the object.
+     *
+     * @param source specifies the frame source, already opened.
+     */
+    public FrameGrabber(FrameSource source)
+    {
+        this.source = source;
+        this.ring = new FrameRing(
+            NUM_RING_FRAMES, source.getFrameWidth(), source.getFrameHeight(), source.getBytesPerPixel());
+    }   //FrameGrabber
+
+    /**
+     * This method returns the frame source.
+     *
+     * @return frame source.
+     */
+    public FrameSource getSource()
+    {
+        return source;
+    }   //getSource
+
+    /**
+     * This method registers a listener for captured frames.
+     *
+     * @param listener specifies the listener.
+     */
+    public synchronized void addFrameListener(FrameListener listener)
+    {
+        FrameListener[] newListeners = Arrays.copyOf(listeners, listeners.length + 1);
+        newListeners[listeners.length] = listener;
+        listeners = newListeners;
+    }   //addFrameListener
+
+    /**
+     * This method unregisters a listener for captured frames.
+     *
+     * @param listener specifies the listener.
+     */
+    public synchronized void removeFrameListener(FrameListener listener)
+    {
+        for (int i = 0; i < listeners.length; i++)
+        {
+            if (listeners[i] == listener)
+            {
+                FrameListener[] newListeners = new FrameListener[listeners.length - 1];
+                System.arraycopy(listeners, 0, newListeners, 0, i);
+                System.arraycopy(listeners, i + 1, newListeners, i, listeners.length - i - 1);
+                listeners = newListeners;
+                break;
+            }
+        }
+    }   //removeFrameListener
+
+    /**
+     * This method captures one frame and hands it to the listeners. If every frame in the ring is still held by a
+     * listener, the capture is skipped.
+     *
+     * @return true if a frame was captured, false otherwise.
+     */
+    public boolean grabFrame()
+    {
+        boolean captured = false;
+        Frame frame = ring.acquire();
+
+        if (frame == null)
+        {
+            numSkipped.incrementAndGet();
+            metrics.framesDropped(1);
+        }
+        else
+        {
+            try
+            {
+                long startTime = System.nanoTime();
+
+                if (source.readFrame(frame))
+                {
+                    metrics.record(StageMetrics.Stage.CAPTURE, startTime);
+                    numCaptured.incrementAndGet();
+                    //
+                    // Iterate over the array snapshot so delivering a frame does not allocate.
+                    //
+                    FrameListener[] currListeners = listeners;
+                    for (int i = 0; i < currListeners.length; i++)
+                    {
+                        currListeners[i].frameCaptured(frame);
+                    }
+                    captured = true;
+                }
+            }
+            finally
+            {
+                frame.release();
+            }
+        }
+
+        return captured;
+    }   //grabFrame
+
+    /**
+     * This method returns the number of frames captured.
+     *
+     * @return number of frames captured.
+     */
+    public long getNumCaptured()
+    {
+        return numCaptured.get();
+    }   //getNumCaptured
+
+    /**
+     * This method returns the number of captures skipped because no frame was free.
+     *
+     * @return number of captures skipped.
+     */
+    public long getNumSkipped()
+    {
+        return numSkipped.get();
+    }   //getNumSkipped
+
+}   //class FrameGrabber
@@ -0,0 +1,331 @@
+/*
+ * Copyright (c) 2018 Titan Robotics Club (http://www.titanrobotics.com)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+import java.nio.ByteBuffer;
+
+import com.google.zxing.LuminanceSource;
+
+/**
+ * This class implements a ZXing luminance source directly over the raw bytes of a camera frame, either BGR (three
+ * bytes per pixel, as filled in by OpenCV) or grayscale (one byte per pixel). Luminance is computed from the frame
+ * bytes on demand, so there is no intermediate BufferedImage and no per-pixel ARGB round trip. Cropping and rotating
+ * return views that share the same frame bytes instead of copying them.
+ *
+ * The frame bytes can also be in a ByteBuffer, such as a frame memory mapped from a raw frame file. ZXing works on
+ * byte arrays, so the luminance matrix of a buffer frame is always built in the scratch buffer, read straight from
+ * the buffer with bulk gets.
+ *
+ * A view maps its (x, y) coordinates to a pixel index in the frame as: origin + x*xStep + y*yStep. Cropping moves
+ * the origin, rotating swaps and negates the steps.
+ *
+ * The optional scratch buffer is used to build the luminance matrix when it cannot be returned in place. It is shared
+ * by all the views of a source, so only one view at a time may be handed to a binarizer.
+ */
+public class FrameLuminanceSource extends LuminanceSource
+{
+    public static final int BYTES_PER_PIXEL_GRAY = 1;
+    public static final int BYTES_PER_PIXEL_BGR = 3;
+
+    private final byte[] data;
+    private final ByteBuffer buffer;
+    private final int dataWidth;
+    private final int bytesPerPixel;
+    private final int origin;
+    private final int xStep;
+    private final int yStep;
+    private byte[] scratch;
+
+    /**
+     * Constructor: Create an instance of the object over a whole frame.
+     *
+     * @param data specifies the frame bytes, rows packed without padding.
+     * @param width specifies the frame width in pixels.
+     * @param height specifies the frame height in pixels.
+     * @param bytesPerPixel specifies BYTES_PER_PIXEL_GRAY or BYTES_PER_PIXEL_BGR.
+     * @param scratch specifies the buffer to build the luminance matrix in, null to allocate one when needed.
+     */
+    public FrameLuminanceSource(byte[] data, int width, int height, int bytesPerPixel, byte[] scratch)
+    {
+        this(data, null, width, bytesPerPixel, 0, 1, width, width, height, scratch);
+        checkFrame(data.length, width, height, bytesPerPixel);
+    }   //FrameLuminanceSource
+
+    /**
+     * Constructor: Create an instance of the object over a whole frame in a buffer. The frame starts at the buffer's
+     * position, the buffer's position and limit are not changed.
+     *
+     * @param buffer specifies the frame bytes, rows packed without padding.
+     * @param width specifies the frame width in pixels.
+     * @param height specifies the frame height in pixels.
+     * @param bytesPerPixel specifies BYTES_PER_PIXEL_GRAY or BYTES_PER_PIXEL_BGR.
+     * @param scratch specifies the buffer to build the luminance matrix in, null to allocate one when needed.
+     */
+    public FrameLuminanceSource(ByteBuffer buffer, int width, int height, int bytesPerPixel, byte[] scratch)
+    {
+        this(null, buffer.slice(), width, bytesPerPixel, 0, 1, width, width, height, scratch);
+        checkFrame(buffer.remaining(), width, height, bytesPerPixel);
+    }   //FrameLuminanceSource
+
+    /**
+     * Constructor: Create a view of a frame.
+     *
+     * @param data specifies the frame bytes, null if the frame is in a buffer.
+     * @param buffer specifies the frame buffer positioned at the first frame byte, null if the frame is in an array.
+     * @param dataWidth specifies the frame width in pixels.
+     * @param bytesPerPixel specifies the number of bytes per pixel.
+     * @param origin specifies the pixel index of the view's top left corner.
+     * @param xStep specifies the pixel index step when moving right in the view.
+     * @param yStep specifies the pixel index step when moving down in the view.
+     * @param width specifies the view width.
+     * @param height specifies the view height.
+     * @param scratch specifies the shared scratch buffer, can be null.
+     */
+    private FrameLuminanceSource(
+        byte[] data, ByteBuffer buffer, int dataWidth, int bytesPerPixel, int origin, int xStep, int yStep, int width,
+        int height, byte[] scratch)
+    {
+        super(width, height);
+        this.data = data;
+        //
+        // Each view reads through its own duplicate, so moving the position for a bulk get does not affect others.
+        //
+        this.buffer = buffer != null? buffer.duplicate(): null;
+        this.dataWidth = dataWidth;
+        this.bytesPerPixel = bytesPerPixel;
+        this.origin = origin;
+        this.xStep = xStep;
+        this.yStep = yStep;
+        this.scratch = scratch;
+    }   //FrameLuminanceSource
+
+    /**
+     * This method checks the frame format and size given to a public constructor.
+     *
+     * @param dataSize specifies the number of frame bytes available.
+     * @param width specifies the frame width in pixels.
+     * @param height specifies the frame height in pixels.
+     * @param bytesPerPixel specifies the number of bytes per pixel.
+     */
+    private static void checkFrame(int dataSize, int width, int height, int bytesPerPixel)
+    {
+        if (bytesPerPixel != BYTES_PER_PIXEL_GRAY && bytesPerPixel != BYTES_PER_PIXEL_BGR)
+        {
+            throw new IllegalArgumentException("Unsupported bytes per pixel: " + bytesPerPixel);
+        }
+
+        if (dataSize < width*height*bytesPerPixel)
+        {
+            throw new IllegalArgumentException("Frame data is smaller than " + width + "x" + height + ".");
+        }
+    }   //checkFrame
+
+    /**
+     * This method returns the luminance of one row of the view.
+     *
+     * @param y specifies the row.
+     * @param row specifies the array to store the row in, allocated if null or too small.
+     * @return luminance of the row.
+     */
+    @Override
+    public byte[] getRow(int y, byte[] row)
+    {
+        int width = getWidth();
+
+        if (y < 0 || y >= getHeight())
+        {
+            throw new IllegalArgumentException("Requested row is outside the image: " + y);
+        }
+
+        if (row == null || row.length < width)
+        {
+            row = new byte[width];
+        }
+        copyRow(origin + y*yStep, row, 0, width);
+
+        return row;
+    }   //getRow
+
+    /**
+     * This method returns the luminance of the whole view. For an uncropped and unrotated grayscale frame in an
+     * array, the frame bytes are returned as is.
+     *
+     * @return luminance of the view, row major with no padding.
+     */
+    @Override
+    public byte[] getMatrix()
+    {
+        int width = getWidth();
+        int height = getHeight();
+
+        if (data != null && bytesPerPixel == BYTES_PER_PIXEL_GRAY && origin == 0 && xStep == 1 && yStep == width)
+        {
+            return data;
+        }
+
+        int area = width*height;
+        if (scratch == null || scratch.length < area)
+        {
+            scratch = new byte[area];
+        }
+
+        for (int y = 0; y < height; y++)
+        {
+            copyRow(origin + y*yStep, scratch, y*width, width);
+        }
+
+        return scratch;
+    }   //getMatrix
+
+    @Override
+    public boolean isCropSupported()
+    {
+        return true;
+    }   //isCropSupported
+
+    /**
+     * This method returns a view of a rectangle of this view without copying the frame.
+     *
+     * @param left specifies the left coordinate of the rectangle.
+     * @param top specifies the top coordinate of the rectangle.
+     * @param width specifies the width of the rectangle.
+     * @param height specifies the height of the rectangle.
+     * @return cropped view.
+     */
+    @Override
+    public LuminanceSource crop(int left, int top, int width, int height)
+    {
+        if (left < 0 || top < 0 || width <= 0 || height <= 0 || left + width > getWidth() ||
+            top + height > getHeight())
+        {
+            throw new IllegalArgumentException("Crop rectangle does not fit within the image.");
+        }
+
+        return new FrameLuminanceSource(
+            data, buffer, dataWidth, bytesPerPixel, origin + left*xStep + top*yStep, xStep, yStep, width, height,
+            scratch);
+    }   //crop
+
+    @Override
+    public boolean isRotateSupported()
+    {
+        return true;
+    }   //isRotateSupported
+
+    /**
+     * This method returns a view of this view rotated 90 degrees counterclockwise without copying the frame. The top
+     * row of the rotated view is the rightmost column of this view.
+     *
+     * @return rotated view.
+     */
+    @Override
+    public LuminanceSource rotateCounterClockwise()
+    {
+        int width = getWidth();
+        int height = getHeight();
+
+        return new FrameLuminanceSource(
+            data, buffer, dataWidth, bytesPerPixel, origin + (width - 1)*xStep, yStep, -xStep, height, width,
+            scratch);
+    }   //rotateCounterClockwise
+
+    /**
+     * This method computes the luminance of a run of pixels along a view row.
+     *
+     * @param pixelIndex specifies the pixel index of the first pixel in the frame.
+     * @param dst specifies the array to store the luminance in.
+     * @param dstOffset specifies the index in dst to start storing at.
+     * @param count specifies the number of pixels.
+     */
+    private void copyRow(int pixelIndex, byte[] dst, int dstOffset, int count)
+    {
+        if (buffer != null)
+        {
+            copyBufferRow(pixelIndex, dst, dstOffset, count);
+        }
+        else if (bytesPerPixel == BYTES_PER_PIXEL_GRAY)
+        {
+            if (xStep == 1)
+            {
+                System.arraycopy(data, pixelIndex, dst, dstOffset, count);
+            }
+            else
+            {
+                for (int i = 0; i < count; i++, pixelIndex += xStep)
+                {
+                    dst[dstOffset + i] = data[pixelIndex];
+                }
+            }
+        }
+        else
+        {
+            int byteIndex = pixelIndex*BYTES_PER_PIXEL_BGR;
+            int byteStep = xStep*BYTES_PER_PIXEL_BGR;
+
+            for (int i = 0; i < count; i++, byteIndex += byteStep)
+            {
+                dst[dstOffset + i] = (byte)
+                    ((117*(data[byteIndex] & 0xff) + 601*(data[byteIndex + 1] & 0xff) +
+                      306*(data[byteIndex + 2] & 0xff) + 0x200) >> 10);
+            }
+        }
+    }   //copyRow
+
+    /**
+     * This method computes the luminance of a run of pixels along a view row of a frame in a buffer.
+     *
+     * @param pixelIndex specifies the pixel index of the first pixel in the frame.
+     * @param dst specifies the array to store the luminance in.
+     * @param dstOffset specifies the index in dst to start storing at.
+     * @param count specifies the number of pixels.
+     */
+    private void copyBufferRow(int pixelIndex, byte[] dst, int dstOffset, int count)
+    {
+        if (bytesPerPixel == BYTES_PER_PIXEL_GRAY)
+        {
+            if (xStep == 1)
+            {
+                buffer.position(pixelIndex);
+                buffer.get(dst, dstOffset, count);
+            }
+            else
+            {
+                for (int i = 0; i < count; i++, pixelIndex += xStep)
+                {
+                    dst[dstOffset + i] = buffer.get(pixelIndex);
+                }
+            }
+        }
+        else
+        {
+            int byteIndex = pixelIndex*BYTES_PER_PIXEL_BGR;
+            int byteStep = xStep*BYTES_PER_PIXEL_BGR;
+
+            for (int i = 0; i < count; i++, byteIndex += byteStep)
+            {
+                dst[dstOffset + i] = (byte)
+                    ((117*(buffer.get(byteIndex) & 0xff) + 601*(buffer.get(byteIndex + 1) & 0xff) +
+                      306*(buffer.get(byteIndex + 2) & 0xff) + 0x200) >> 10);
+            }
+        }
+    }   //copyBufferRow
+
+}   //class FrameLuminanceSource
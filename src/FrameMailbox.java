@@ -0,0 +1,118 @@
+/*
+ * Copyright (c) 2018 Titan Robotics Club (http://www.titanrobotics.com)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * This class implements a single slot, lock-free handoff of frames from a producer to one consumer thread. Posting
+ * a frame replaces any frame still waiting in the slot, so the consumer always gets the newest frame and a slow
+ * consumer never holds back the producer. The mailbox owns the reference of a posted frame until it is taken, and
+ * releases the frames it drops.
+ */
+public class FrameMailbox
+{
+    private final AtomicReference<Frame> slot = new AtomicReference<>();
+    private final AtomicLong numDropped = new AtomicLong();
+    private volatile Thread consumer = null;
+
+    /**
+     * This method posts a frame, dropping the frame waiting in the slot if any.
+     *
+     * @param frame specifies the frame, with a reference that is handed over to the mailbox.
+     */
+    public void post(Frame frame)
+    {
+        Frame staleFrame = slot.getAndSet(frame);
+
+        if (staleFrame != null)
+        {
+            staleFrame.release();
+            numDropped.incrementAndGet();
+            StageMetrics.getInstance().framesDropped(1);
+        }
+        wakeConsumer();
+    }   //post
+
+    /**
+     * This method takes the newest frame, waiting for one to be posted if the slot is empty.
+     *
+     * @param timeoutNanos specifies the maximum time to wait in nanoseconds.
+     * @return newest frame with its reference handed over to the caller, null if none arrived in time.
+     */
+    public Frame take(long timeoutNanos)
+    {
+        long deadline = System.nanoTime() + timeoutNanos;
+        Frame frame;
+
+        consumer = Thread.currentThread();
+        while ((frame = slot.getAndSet(null)) == null)
+        {
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0)
+            {
+                break;
+            }
+            LockSupport.parkNanos(this, remaining);
+        }
+
+        return frame;
+    }   //take
+
+    /**
+     * This method wakes up the consumer if it is waiting in take().
+     */
+    public void wakeConsumer()
+    {
+        Thread thread = consumer;
+
+        if (thread != null)
+        {
+            LockSupport.unpark(thread);
+        }
+    }   //wakeConsumer
+
+    /**
+     * This method releases the frame waiting in the slot if any.
+     */
+    public void clear()
+    {
+        Frame frame = slot.getAndSet(null);
+
+        if (frame != null)
+        {
+            frame.release();
+        }
+    }   //clear
+
+    /**
+     * This method returns the number of frames dropped because a newer frame replaced them.
+     *
+     * @return number of frames dropped.
+     */
+    public long getNumDropped()
+    {
+        return numDropped.get();
+    }   //getNumDropped
+
+}   //class FrameMailbox
@@ -0,0 +1,253 @@
+/*
+ * Copyright (c) 2018 Titan Robotics Club (http://www.titanrobotics.com)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * This class records captured frames with their capture times into a ring file, for ReplayFrameSource to play back
+ * later as a stand-in camera. The file is a small header followed by a fixed number of slots, each holding the
+ * capture time and the bytes of one frame. It is created at its full size and filled up front, so the file system
+ * has allocated every block before the first frame arrives, and it is memory mapped, so recording a frame is a copy
+ * into the mapping on the capture thread. Once every slot is used, each new frame overwrites the oldest one, so the
+ * file always holds the most recent frames.
+ *
+ * Header, big endian:
+ *      int magic "QRFR", int version, int width, int height, int bytesPerPixel, int capacity, long numRecorded
+ * Slot:
+ *      long capture time in System.nanoTime() units, width*height*bytesPerPixel frame bytes
+ */
+public class FrameRecorder implements FrameListener, Closeable
+{
+    public static final String FILE_SUFFIX = "qrf";
+
+    static final int MAGIC = 0x51524652;
+    static final int VERSION = 1;
+    static final int HEADER_SIZE = 64;
+    static final int WIDTH_OFFSET = 8;
+    static final int HEIGHT_OFFSET = 12;
+    static final int BYTES_PER_PIXEL_OFFSET = 16;
+    static final int CAPACITY_OFFSET = 20;
+    static final int NUM_RECORDED_OFFSET = 24;
+    static final int TIMESTAMP_SIZE = 8;
+
+    //
+    // Slots are mapped in windows of about 256MB, a mapping cannot exceed 2GB.
+    //
+    private static final long MAP_WINDOW_SIZE = 256L*1024*1024;
+    private static final int FILL_BUFFER_SIZE = 1024*1024;
+
+    private final FileChannel channel;
+    private final MappedByteBuffer header;
+    private final MappedByteBuffer[] windows;
+    private final int frameSize;
+    private final int capacity;
+    private long numRecorded = 0;
+    private boolean closed = false;
+
+    /**
+     * Constructor: Create an instance of the object. It creates the ring file, replacing any existing file, and
+     * fills it to its full size.
+     *
+     * @param file specifies the ring file.
+     * @param width specifies the frame width in pixels.
+     * @param height specifies the frame height in pixels.
+     * @param bytesPerPixel specifies FrameLuminanceSource.BYTES_PER_PIXEL_GRAY or BYTES_PER_PIXEL_BGR.
+     * @param capacity specifies the number of frames the file holds.
+     * @throws IOException if the file cannot be created or mapped.
+     */
+    public FrameRecorder(File file, int width, int height, int bytesPerPixel, int capacity) throws IOException
+    {
+        if (width <= 0 || height <= 0 || bytesPerPixel <= 0 || capacity <= 0 ||
+            (long)width*height*bytesPerPixel > Integer.MAX_VALUE - TIMESTAMP_SIZE)
+        {
+            throw new IllegalArgumentException(
+                "Invalid ring file geometry " + width + "x" + height + "x" + bytesPerPixel + ", " + capacity +
+                " frames.");
+        }
+
+        this.frameSize = width*height*bytesPerPixel;
+        this.capacity = capacity;
+        this.channel = FileChannel.open(
+            file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+            StandardOpenOption.READ, StandardOpenOption.WRITE);
+
+        try
+        {
+            long fileSize = HEADER_SIZE + (long)capacity*(TIMESTAMP_SIZE + frameSize);
+            ByteBuffer zeros = ByteBuffer.allocate(FILL_BUFFER_SIZE);
+
+            for (long offset = 0; offset < fileSize; offset += zeros.capacity())
+            {
+                zeros.clear();
+                zeros.limit((int)Math.min(zeros.capacity(), fileSize - offset));
+                while (zeros.hasRemaining())
+                {
+                    channel.write(zeros, offset + zeros.position());
+                }
+            }
+
+            header = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE);
+            header.putInt(0, MAGIC);
+            header.putInt(4, VERSION);
+            header.putInt(WIDTH_OFFSET, width);
+            header.putInt(HEIGHT_OFFSET, height);
+            header.putInt(BYTES_PER_PIXEL_OFFSET, bytesPerPixel);
+            header.putInt(CAPACITY_OFFSET, capacity);
+            header.putLong(NUM_RECORDED_OFFSET, 0);
+            windows = mapSlots(channel, FileChannel.MapMode.READ_WRITE, frameSize, capacity);
+        }
+        catch (IOException e)
+        {
+            channel.close();
+            throw e;
+        }
+    }   //FrameRecorder
+
+    /**
+     * This method maps the slots of a ring file in windows of whole slots.
+     *
+     * @param channel specifies the ring file channel.
+     * @param mode specifies the mapping mode.
+     * @param frameSize specifies the frame size in bytes.
+     * @param capacity specifies the number of slots.
+     * @return slot windows.
+     * @throws IOException if the file cannot be mapped.
+     */
+    static MappedByteBuffer[] mapSlots(FileChannel channel, FileChannel.MapMode mode, int frameSize, int capacity)
+        throws IOException
+    {
+        long slotSize = TIMESTAMP_SIZE + frameSize;
+        int slotsPerWindow = getSlotsPerWindow(frameSize);
+        MappedByteBuffer[] windows = new MappedByteBuffer[(capacity + slotsPerWindow - 1)/slotsPerWindow];
+
+        for (int i = 0; i < windows.length; i++)
+        {
+            int numSlots = Math.min(slotsPerWindow, capacity - i*slotsPerWindow);
+            windows[i] = channel.map(mode, HEADER_SIZE + i*slotsPerWindow*slotSize, numSlots*slotSize);
+        }
+
+        return windows;
+    }   //mapSlots
+
+    /**
+     * This method returns a view of one slot of a ring file, positioned at the capture time.
+     *
+     * @param windows specifies the slot windows returned by mapSlots.
+     * @param frameSize specifies the frame size in bytes.
+     * @param index specifies the slot index.
+     * @return slot view, its limit is the end of the slot.
+     */
+    static ByteBuffer getSlot(MappedByteBuffer[] windows, int frameSize, int index)
+    {
+        int slotsPerWindow = getSlotsPerWindow(frameSize);
+        int slotSize = TIMESTAMP_SIZE + frameSize;
+        ByteBuffer slot = windows[index/slotsPerWindow].duplicate();
+
+        slot.position((index%slotsPerWindow)*slotSize);
+        slot.limit(slot.position() + slotSize);
+
+        return slot;
+    }   //getSlot
+
+    /**
+     * This method returns the number of slots mapped in one window.
+     *
+     * @param frameSize specifies the frame size in bytes.
+     * @return number of slots per window, at least one.
+     */
+    private static int getSlotsPerWindow(int frameSize)
+    {
+        long slotSize = TIMESTAMP_SIZE + frameSize;
+
+        return (int)Math.max(1, Math.min(MAP_WINDOW_SIZE/slotSize, Integer.MAX_VALUE/slotSize));
+    }   //getSlotsPerWindow
+
+    /**
+     * This method returns the number of frames the file holds.
+     *
+     * @return number of slots.
+     */
+    public int getCapacity()
+    {
+        return capacity;
+    }   //getCapacity
+
+    /**
+     * This method returns the number of frames recorded, including the ones overwritten since.
+     *
+     * @return number of frames recorded.
+     */
+    public synchronized long getNumRecorded()
+    {
+        return numRecorded;
+    }   //getNumRecorded
+
+    /**
+     * This method is called on the capture thread for each captured frame. It copies the frame and its capture time
+     * into the next slot. Frames of the wrong size, or arriving after the recorder is closed, are not recorded.
+     *
+     * @param frame specifies the captured frame.
+     */
+    @Override
+    public synchronized void frameCaptured(Frame frame)
+    {
+        if (!closed && frame.getData().length == frameSize)
+        {
+            ByteBuffer slot = getSlot(windows, frameSize, (int)(numRecorded%capacity));
+
+            slot.putLong(frame.getTimestamp());
+            slot.put(frame.getData());
+            numRecorded++;
+            //
+            // Only count the frame once it is completely written.
+            //
+            header.putLong(NUM_RECORDED_OFFSET, numRecorded);
+        }
+    }   //frameCaptured
+
+    /**
+     * This method flushes the recorded frames to the file and closes it.
+     *
+     * @throws IOException if the file cannot be closed.
+     */
+    @Override
+    public synchronized void close() throws IOException
+    {
+        if (!closed)
+        {
+            closed = true;
+            for (MappedByteBuffer window: windows)
+            {
+                window.force();
+            }
+            header.force();
+            channel.close();
+        }
+    }   //close
+
+}   //class FrameRecorder
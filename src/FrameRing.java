@@ -0,0 +1,76 @@
+/*
+ * Copyright (c) 2018 Titan Robotics Club (http://www.titanrobotics.com)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * This class implements a fixed ring of preallocated frames of the same size. Frames are handed out with acquire()
+ * and come back when their last reference is released, so once the ring is built, capturing, displaying and
+ * decoding frames does not allocate. Acquiring is lock-free: it scans the ring from where the last scan stopped for
+ * a frame nobody holds.
+ */
+public class FrameRing
+{
+    private final Frame[] frames;
+    private final AtomicInteger nextIndex = new AtomicInteger();
+
+    /**
+     * Constructor: Create an instance of the object.
+     *
+     * @param numFrames specifies the number of frames in the ring.
+     * @param width specifies the frame width in pixels.
+     * @param height specifies the frame height in pixels.
+     * @param bytesPerPixel specifies FrameLuminanceSource.BYTES_PER_PIXEL_GRAY or BYTES_PER_PIXEL_BGR.
+     */
+    public FrameRing(int numFrames, int width, int height, int bytesPerPixel)
+    {
+        this.frames = new Frame[numFrames];
+
+        for (int i = 0; i < numFrames; i++)
+        {
+            frames[i] = new Frame(width, height, bytesPerPixel);
+        }
+    }   //FrameRing
+
+    /**
+     * This method hands out a free frame with a reference count of one. The caller must release it when done.
+     *
+     * @return free frame, null if every frame in the ring is in use.
+     */
+    public Frame acquire()
+    {
+        int start = nextIndex.get();
+
+        for (int i = 0; i < frames.length; i++)
+        {
+            int index = (start + i)%frames.length;
+            if (frames[index].tryAcquire())
+            {
+                nextIndex.lazySet((index + 1)%frames.length);
+                return frames[index];
+            }
+        }
+
+        return null;
+    }   //acquire
+
+}   //class FrameRing
@@ -0,0 +1,78 @@
+/*
+ * Copyright (c) 2018 Titan Robotics Club (http://www.titanrobotics.com)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+/**
+ * This interface is implemented by anything that can produce video frames, such as a camera. The frame size is
+ * fixed once the source is opened so the consumer can preallocate frames for it.
+ */
+public interface FrameSource
+{
+    /**
+     * This method opens the source.
+     *
+     * @return true if the source is open and the frame size is known, false otherwise.
+     */
+    boolean open();
+
+    /**
+     * This method closes the source.
+     */
+    void close();
+
+    /**
+     * This method returns the frame width. Only valid after the source is opened.
+     *
+     * @return frame width in pixels.
+     */
+    int getFrameWidth();
+
+    /**
+     * This method returns the frame height. Only valid after the source is opened.
+     *
+     * @return frame height in pixels.
+     */
+    int getFrameHeight();
+
+    /**
+     * This method returns the number of bytes per pixel. Only valid after the source is opened.
+     *
+     * @return FrameLuminanceSource.BYTES_PER_PIXEL_GRAY or BYTES_PER_PIXEL_BGR.
+     */
+    int getBytesPerPixel();
+
+    /**
+     * This method fills in the given frame with the next frame from the source and stamps its capture time.
+     *
+     * @param frame specifies the frame to fill in, of the size reported by the source.
+     * @return true if the frame was filled in, false if no frame is available.
+     */
+    boolean readFrame(Frame frame);
+
+    /**
+     * This method checks if the source has run out of frames for good, as a recording played to the end does. A
+     * live source never does.
+     *
+     * @return true if no more frames will come, false otherwise.
+     */
+    boolean isAtEnd();
+
+}   //interface FrameSource
@@ -20,85 +20,204 @@
  * SOFTWARE.
  */
 
+import java.awt.Color;
 import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.GraphicsConfiguration;
+import java.awt.RenderingHints;
 import java.awt.image.BufferedImage;
-import java.awt.image.DataBufferByte;
-import java.awt.image.WritableRaster;
+import java.awt.image.VolatileImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
 
 import javax.swing.JOptionPane;
 import javax.swing.JPanel;
 
-import org.opencv.core.Core;
-import org.opencv.core.Mat;
-import org.opencv.highgui.VideoCapture;
-
 /**
  * This class implements an image panel which is a JPanel for rendering the QR code image or the image from the
- * camera.
+ * camera. Camera frames come from the ring of preallocated frames of a frame grabber, shared with the scanner, so
+ * once the ring is built, the capture loop does not allocate.
+ *
+ * The camera stack is brought up the first time the camera is started: the camera thread is created then, and the
+ * default camera source loads the OpenCV native library when it is opened. Showing or decoding an image never
+ * touches native code or starts a thread. While the camera runs, its frames can also be recorded to a ring file
+ * that a ReplayFrameSource can play back in place of the camera.
+ *
+ * Painting never waits on the capture. The capture thread publishes each frame to a single slot with an atomic swap,
+ * replacing and releasing the frame before it if that one was never painted, and paint takes the newest frame from
+ * the slot. Everything else about the displayed image belongs to the event dispatch thread. The image is drawn into
+ * a cached VolatileImage the size of the panel once per new frame, so repainting an unchanged image is an
+ * accelerated blit where the platform supports it.
  */
-public class ImagePanel extends JPanel
+public class ImagePanel extends JPanel implements FrameListener
 {
     private static final long serialVersionUID = 4L;
+    private static final long REFRESH_INTERVAL = 100;
+    //
+    // While scanning with no QR code in view, capture at 2fps until one shows up.
+    //
+    private static final long IDLE_REFRESH_INTERVAL = 500;
+    private static final long IDLE_HOLDOFF = 3000;
 
-    private VideoCapture camera = null;
-    private Mat mat;
-    private RefreshThread cameraThread;
+    private FrameGrabber frameGrabber = null;
+    //
+    // The grab itself runs outside the panel lock so the event thread never waits on the camera. Grabs are
+    // serialized by their own lock instead. The grabber being grabbed from is kept here, and a source closed during
+    // the grab is closed by the grabbing thread afterwards.
+    //
+    private final Object grabLock = new Object();
+    private FrameGrabber grabbingGrabber = null;
+    private boolean closeAfterGrab = false;
+    private FrameListener scanner = null;
+    private FrameRecorder recorder = null;
+    private final AtomicReference<Frame> pendingFrame = new AtomicReference<>();
+    private volatile RefreshThread cameraThread = null;
+    private long refreshInterval = REFRESH_INTERVAL;
+    private long idleRefreshInterval = 0;
+    //
+    // Owned by the event dispatch thread.
+    //
+    private Frame frame = null;
     private BufferedImage image;
+    private boolean scaleToFit = false;
+    private VolatileImage backBuffer = null;
+    private boolean backBufferValid = false;
+    private long lastFrameTime = 0;
+
+    private final LatencyHistogram displayLatencies = new LatencyHistogram();
+    private final LatencyHistogram frameIntervals = new LatencyHistogram();
+    private final AtomicLong numFramesShown = new AtomicLong();
+    private final AtomicLong numFramesSuperseded = new AtomicLong();
 
     /**
-     * Constructor: Create an instance of the object. It initializes the camera using OpenCV library and created
-     * the camera thread.
+     * This method is called to update the QR code image. It must be called on the event dispatch thread.
+     *
+     * @param image specifies the image.
      */
-    public ImagePanel()
+    public void setImage(BufferedImage image)
     {
-        //
-        // Load OpenCV library.
-        //
-        System.loadLibrary(Core.NATIVE_LIBRARY_NAME);
-        //
-        // Preallocate some global variables.
-        //
-        mat = new Mat();
-        //
-        // Create the Refresh thread to refresh the video pane at 10fps (i.e. every 100 msec).
-        //
-        cameraThread = new RefreshThread(this, 100);
-        cameraThread.start();
-    }   //ImagePanel
+        setImage(image, false);
+    }   //setImage
 
     /**
-     * This method is called to update the QR code image.
+     * This method is called to update the QR code image, optionally scaling it up to fit the panel. A scaled image is
+     * drawn centered at the largest whole multiple of its size that fits, with nearest-neighbour scaling, so a QR
+     * code kept at module resolution is drawn with crisp modules. It must be called on the event dispatch thread.
      *
      * @param image specifies the image.
+     * @param scaleToFit specifies true to scale the image up to fit the panel, false to draw it as is.
      */
-    public synchronized void setImage(BufferedImage image)
+    public void setImage(BufferedImage image, boolean scaleToFit)
     {
+        Frame unshownFrame = pendingFrame.getAndSet(null);
+
+        if (unshownFrame != null)
+        {
+            unshownFrame.release();
+        }
+        setFrame(null);
         this.image = image;
+        this.scaleToFit = scaleToFit;
+        backBufferValid = false;
+        lastFrameTime = 0;
         repaint();
     }   //setImage
 
     /**
-     * This method returns the current image displayed.
+     * This method returns the current image displayed, or about to be displayed if a newer camera frame is waiting to
+     * be painted. It must be called on the event dispatch thread.
      *
      * @return displayed image.
      */
-    public synchronized BufferedImage getImage()
+    public BufferedImage getImage()
     {
+        takePendingFrame();
         return image;
     }   //getImage
 
     /**
-     * This method resumes the camera thread.
+     * This method returns the newest camera frame with a reference added. The caller must release it when done with
+     * it. It must be called on the event dispatch thread.
+     *
+     * @return displayed camera frame, null if the displayed image is not a camera frame.
      */
-    public synchronized void startCamera()
+    public Frame acquireFrame()
     {
-        //
-        // Open the default camera.
-        //
-        camera = new VideoCapture(0);
-        if (!camera.isOpened())
+        takePendingFrame();
+        return frame == null? null: frame.retain();
+    }   //acquireFrame
+
+    /**
+     * This method sets the interval the camera thread captures frames at. It takes effect when the camera thread is
+     * created, on the first start of the camera.
+     *
+     * @param refreshInterval specifies the capture interval in msec, zero to capture as fast as the frame source
+     *        delivers frames.
+     */
+    public synchronized void setRefreshInterval(long refreshInterval)
+    {
+        this.refreshInterval = refreshInterval;
+    }   //setRefreshInterval
+
+    /**
+     * This method returns the time from capture to the first paint of each camera frame displayed.
+     *
+     * @return capture to display latency histogram.
+     */
+    public LatencyHistogram getDisplayLatencies()
+    {
+        return displayLatencies;
+    }   //getDisplayLatencies
+
+    /**
+     * This method returns the time between the paints of successive camera frames, the frame time seen by the user.
+     *
+     * @return frame interval histogram.
+     */
+    public LatencyHistogram getFrameIntervals()
+    {
+        return frameIntervals;
+    }   //getFrameIntervals
+
+    /**
+     * This method returns the number of camera frames painted.
+     *
+     * @return number of frames shown.
+     */
+    public long getNumFramesShown()
+    {
+        return numFramesShown.get();
+    }   //getNumFramesShown
+
+    /**
+     * This method returns the number of camera frames replaced by a newer frame before they could be painted.
+     *
+     * @return number of frames superseded.
+     */
+    public long getNumFramesSuperseded()
+    {
+        return numFramesSuperseded.get();
+    }   //getNumFramesSuperseded
+
+    /**
+     * This method opens the default camera and resumes the camera thread.
+     */
+    public void startCamera()
+    {
+        startCamera(new CameraFrameSource(0));
+    }   //startCamera
+
+    /**
+     * This method opens the given frame source and resumes the camera thread, creating the thread on first use.
+     *
+     * @param source specifies the frame source.
+     */
+    public synchronized void startCamera(FrameSource source)
+    {
+        if (!source.open())
         {
-            camera = null;
             JOptionPane.showMessageDialog(
                 this, "Failed to open the camera, perhap not having the permission or is in use by another app.",
                 QRCodeApp.PROGRAM_TITLE,
@@ -106,6 +225,22 @@ public class ImagePanel extends JPanel
         }
         else
         {
+            frameGrabber = new FrameGrabber(source);
+            frameGrabber.addFrameListener(this);
+            if (scanner != null)
+            {
+                frameGrabber.addFrameListener(scanner);
+            }
+
+            if (cameraThread == null)
+            {
+                //
+                // Create the Refresh thread to refresh the video pane at 10fps (i.e. every 100 msec) by default.
+                //
+                cameraThread = new RefreshThread(this::captureImage, refreshInterval);
+                cameraThread.setIdleInterval(idleRefreshInterval, IDLE_HOLDOFF);
+                cameraThread.start();
+            }
             cameraThread.resumeThread();
         }
     }   //startCamera
@@ -115,69 +250,329 @@ public class ImagePanel extends JPanel
      */
     public synchronized void stopCamera()
     {
-        cameraThread.suspendThread();
-        if (camera != null)
+        if (cameraThread != null)
         {
-            camera.release();
-            camera = null;
+            cameraThread.suspendThread();
         }
+        stopRecording();
+        closeGrabber();
     }   //stopCamera
 
     /**
-     * This method captures an image from the camera.
+     * This method starts recording the camera frames to a ring file, replacing any recording in progress.
+     *
+     * @param file specifies the ring file, replaced if it exists.
+     * @param capacity specifies the number of frames the file holds, the most recent frames are kept.
+     * @return true if recording started, false if the camera is not running.
+     * @throws IOException if the file cannot be created.
+     */
+    public synchronized boolean startRecording(File file, int capacity) throws IOException
+    {
+        stopRecording();
+        if (frameGrabber != null)
+        {
+            FrameSource source = frameGrabber.getSource();
+
+            recorder = new FrameRecorder(
+                file, source.getFrameWidth(), source.getFrameHeight(), source.getBytesPerPixel(), capacity);
+            frameGrabber.addFrameListener(recorder);
+        }
+
+        return recorder != null;
+    }   //startRecording
+
+    /**
+     * This method stops recording the camera frames and closes the ring file.
+     */
+    public synchronized void stopRecording()
+    {
+        if (recorder != null)
+        {
+            if (frameGrabber != null)
+            {
+                frameGrabber.removeFrameListener(recorder);
+            }
+
+            try
+            {
+                recorder.close();
+            }
+            catch (IOException e)
+            {
+                System.err.println("Failed to close the recording: " + e.getMessage());
+            }
+            recorder = null;
+        }
+    }   //stopRecording
+
+    /**
+     * This method sets the scanner that captured frames are handed to in addition to the display.
+     *
+     * @param scanner specifies the scanner, null to stop handing frames to the previous one.
+     */
+    public synchronized void setScanner(FrameListener scanner)
+    {
+        if (frameGrabber != null)
+        {
+            if (this.scanner != null)
+            {
+                frameGrabber.removeFrameListener(this.scanner);
+            }
+            if (scanner != null)
+            {
+                frameGrabber.addFrameListener(scanner);
+            }
+        }
+        this.scanner = scanner;
+        //
+        // Only slow down to the idle rate when there is a scanner to tell us a QR code came into view.
+        //
+        idleRefreshInterval = scanner != null? IDLE_REFRESH_INTERVAL: 0;
+        if (cameraThread != null)
+        {
+            cameraThread.setIdleInterval(idleRefreshInterval, IDLE_HOLDOFF);
+        }
+    }   //setScanner
+
+    /**
+     * This method is called when the scanner sees a QR code so the camera ramps up to the full frame rate. It can be
+     * called from any thread.
      */
-    public synchronized void captureImage()
+    public void qrCodeInView()
     {
-        if (camera != null)
+        RefreshThread thread = cameraThread;
+
+        if (thread != null)
         {
-            camera.read(mat);
-            if (mat.height() > 0 && mat.width() > 0)
+            thread.candidateInView();
+        }
+    }   //qrCodeInView
+
+    /**
+     * This method captures an image from the camera and hands it to the display and the scanner. The panel lock is
+     * only held to pick up the grabber, not while waiting for the frame.
+     */
+    public void captureImage()
+    {
+        synchronized (grabLock)
+        {
+            FrameGrabber grabber;
+
+            synchronized (this)
             {
-                image = MatToBufferedImage(mat);
-                repaint();
+                grabber = frameGrabber;
+                grabbingGrabber = grabber;
+            }
+
+            if (grabber != null)
+            {
+                boolean closeSource;
+
+                try
+                {
+                    grabber.grabFrame();
+                }
+                finally
+                {
+                    synchronized (this)
+                    {
+                        closeSource = closeAfterGrab;
+                        closeAfterGrab = false;
+                        grabbingGrabber = null;
+                    }
+                }
+
+                if (closeSource)
+                {
+                    grabber.getSource().close();
+                }
             }
         }
     }   //captureImage
 
+    /**
+     * This method is called on the capture thread for each captured frame. It publishes the frame for the next paint
+     * without waiting, releasing the previous frame if it was never painted.
+     *
+     * @param frame specifies the captured frame.
+     */
+    @Override
+    public void frameCaptured(Frame frame)
+    {
+        Frame unshownFrame = pendingFrame.getAndSet(frame.retain());
+
+        if (unshownFrame != null)
+        {
+            unshownFrame.release();
+            numFramesSuperseded.incrementAndGet();
+        }
+        repaint();
+    }   //frameCaptured
+
     /**
      * This method terminates the camera thread and release the camera.
      */
     public synchronized void terminateCameraThread()
     {
-        cameraThread.terminateThread();
-        if (camera != null)
+        if (cameraThread != null)
         {
-            camera.release();
+            cameraThread.terminateThread();
         }
+        stopRecording();
+        closeGrabber();
     }   //terminateCameraThread
 
     /**
-     * This method converts an OpenCV image (i.e. Mat) into a BufferedImage that can be drawn on
-     * a Java graphics object.
+     * This method lets go of the frame grabber and closes its source. If a capture is grabbing from it right now,
+     * the source is closed by the capturing thread once the grab returns. It must be called with the panel locked.
+     */
+    private void closeGrabber()
+    {
+        if (frameGrabber != null)
+        {
+            if (frameGrabber == grabbingGrabber)
+            {
+                closeAfterGrab = true;
+            }
+            else
+            {
+                frameGrabber.getSource().close();
+            }
+            frameGrabber = null;
+        }
+    }   //closeGrabber
+
+    /**
+     * This method replaces the displayed camera frame, releasing the reference held on the previous one.
      *
-     * @param mat specifies an OpenCV image.
-     * @return converted BufferedImage object.
+     * @param newFrame specifies the new frame, already acquired on behalf of the panel, or null.
      */
-    private BufferedImage MatToBufferedImage(Mat mat)
+    private void setFrame(Frame newFrame)
     {
-        BufferedImage image = new BufferedImage(mat.width(), mat.height(), BufferedImage.TYPE_3BYTE_BGR);
-        WritableRaster raster = image.getRaster();
-        DataBufferByte dataBuffer = (DataBufferByte)raster.getDataBuffer();
-        byte[] data = dataBuffer.getData();
-        mat.get(0, 0, data);
+        if (frame != null)
+        {
+            frame.release();
+        }
+        frame = newFrame;
+    }   //setFrame
 
-        return image;
-    }   //MatToBufferedImage
+    /**
+     * This method makes the newest published camera frame, if any, the displayed image.
+     *
+     * @return true if there was a new frame, false otherwise.
+     */
+    private boolean takePendingFrame()
+    {
+        Frame newFrame = pendingFrame.getAndSet(null);
+
+        if (newFrame != null)
+        {
+            setFrame(newFrame);
+            image = newFrame.getImage();
+            scaleToFit = false;
+            backBufferValid = false;
+        }
+
+        return newFrame != null;
+    }   //takePendingFrame
 
     /**
-     * This method is called when the image needed a repaint.
+     * This method is called when the image needed a repaint. It picks up the newest camera frame, redraws the back
+     * buffer if the image changed or the buffer was lost, and copies the back buffer to the screen. When the panel is
+     * not on a screen, it draws the image directly.
      *
      * @param g specifies the Graphics object for the paint.
      */
     @Override
-    public synchronized void paint(Graphics g)
+    public void paint(Graphics g)
     {
-        g.drawImage(image, 0, 0, null);
+        long startTime = System.nanoTime();
+
+        takePendingFrame();
+        if (frame != null && frame.getTimestamp() != lastFrameTime)
+        {
+            long frameTime = frame.getTimestamp();
+
+            displayLatencies.record(startTime - frameTime);
+            if (lastFrameTime != 0)
+            {
+                frameIntervals.record(frameTime - lastFrameTime);
+            }
+            lastFrameTime = frameTime;
+            numFramesShown.incrementAndGet();
+        }
+
+        GraphicsConfiguration gc = getGraphicsConfiguration();
+        if (image == null)
+        {
+            //
+            // Nothing to show yet.
+            //
+        }
+        else if (gc == null || getWidth() <= 0 || getHeight() <= 0)
+        {
+            drawImage(g);
+        }
+        else
+        {
+            do
+            {
+                int status =
+                    backBuffer == null || backBuffer.getWidth() != getWidth() || backBuffer.getHeight() != getHeight()?
+                        VolatileImage.IMAGE_INCOMPATIBLE: backBuffer.validate(gc);
+
+                if (status == VolatileImage.IMAGE_INCOMPATIBLE)
+                {
+                    backBuffer = gc.createCompatibleVolatileImage(getWidth(), getHeight());
+                    backBuffer.validate(gc);
+                    backBufferValid = false;
+                }
+                else if (status == VolatileImage.IMAGE_RESTORED)
+                {
+                    backBufferValid = false;
+                }
+
+                if (!backBufferValid)
+                {
+                    Graphics2D g2d = backBuffer.createGraphics();
+                    drawImage(g2d);
+                    g2d.dispose();
+                    backBufferValid = true;
+                }
+                g.drawImage(backBuffer, 0, 0, null);
+            } while (backBuffer.contentsLost());
+        }
+        StageMetrics.getInstance().record(StageMetrics.Stage.RENDER, startTime);
     }   //paint
 
+    /**
+     * This method draws the displayed image, scaled up to fit the panel if asked to, over the panel background.
+     *
+     * @param g specifies the Graphics object to draw with.
+     */
+    private void drawImage(Graphics g)
+    {
+        if (scaleToFit)
+        {
+            int scale = Math.max(1, Math.min(getWidth()/image.getWidth(), getHeight()/image.getHeight()));
+            int width = image.getWidth()*scale;
+            int height = image.getHeight()*scale;
+            Graphics2D g2d = (Graphics2D)g;
+
+            g2d.setColor(Color.WHITE);
+            g2d.fillRect(0, 0, getWidth(), getHeight());
+            g2d.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_NEAREST_NEIGHBOR);
+            g2d.drawImage(image, (getWidth() - width)/2, (getHeight() - height)/2, width, height, null);
+        }
+        else
+        {
+            if (image.getWidth() < getWidth() || image.getHeight() < getHeight())
+            {
+                g.setColor(getBackground());
+                g.fillRect(0, 0, getWidth(), getHeight());
+            }
+            g.drawImage(image, 0, 0, null);
+        }
+    }   //drawImage
+
 }   //class ImagePanel
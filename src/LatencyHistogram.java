@@ -0,0 +1,201 @@
+/*
+ * Copyright (c) 2018 Titan Robotics Club (http://www.titanrobotics.com)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * This class implements a lock-free latency histogram. Values are recorded in nanoseconds into log-linear buckets
+ * (32 sub-buckets per power of two) so percentiles are accurate to about 3% no matter how wide the range of the
+ * recorded values is. Recording never blocks or allocates, so it is safe to call from many worker threads at once.
+ */
+public class LatencyHistogram
+{
+    private static final int SUB_BUCKET_BITS = 5;
+    private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+    private static final int NUM_BUCKETS = (64 - SUB_BUCKET_BITS)*SUB_BUCKET_COUNT;
+
+    private final AtomicLongArray buckets = new AtomicLongArray(NUM_BUCKETS);
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong sum = new AtomicLong();
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * This method records a latency value.
+     *
+     * @param nanos specifies the latency in nanoseconds (negative values are recorded as zero).
+     */
+    public void record(long nanos)
+    {
+        if (nanos < 0)
+        {
+            nanos = 0;
+        }
+
+        buckets.incrementAndGet(bucketIndex(nanos));
+        count.incrementAndGet();
+        sum.addAndGet(nanos);
+
+        long prevMax = max.get();
+        while (nanos > prevMax && !max.compareAndSet(prevMax, nanos))
+        {
+            prevMax = max.get();
+        }
+    }   //record
+
+    /**
+     * This method returns the number of recorded values.
+     *
+     * @return number of recorded values.
+     */
+    public long getCount()
+    {
+        return count.get();
+    }   //getCount
+
+    /**
+     * This method returns the largest recorded value.
+     *
+     * @return maximum latency in nanoseconds.
+     */
+    public long getMax()
+    {
+        return max.get();
+    }   //getMax
+
+    /**
+     * This method returns the average of the recorded values.
+     *
+     * @return mean latency in nanoseconds, zero if nothing was recorded.
+     */
+    public double getMean()
+    {
+        long n = count.get();
+        return n == 0? 0.0: (double)sum.get()/n;
+    }   //getMean
+
+    /**
+     * This method returns the value at the given percentile. The value returned is the midpoint of the bucket
+     * containing the percentile, capped at the recorded maximum.
+     *
+     * @param percentile specifies the percentile (0.0 to 100.0).
+     * @return latency in nanoseconds at the given percentile, zero if nothing was recorded.
+     */
+    public long getPercentile(double percentile)
+    {
+        long total = 0;
+        long[] snapshot = new long[NUM_BUCKETS];
+
+        for (int i = 0; i < NUM_BUCKETS; i++)
+        {
+            snapshot[i] = buckets.get(i);
+            total += snapshot[i];
+        }
+
+        if (total == 0)
+        {
+            return 0;
+        }
+
+        long target = Math.max(1, (long)Math.ceil(percentile/100.0*total));
+        long cumulative = 0;
+
+        for (int i = 0; i < NUM_BUCKETS; i++)
+        {
+            cumulative += snapshot[i];
+            if (cumulative >= target)
+            {
+                return Math.min(bucketMidpoint(i), max.get());
+            }
+        }
+
+        return max.get();
+    }   //getPercentile
+
+    /**
+     * This method clears all recorded values. It is not atomic with respect to concurrent recording, so values
+     * recorded while the reset is in progress may be partially lost.
+     */
+    public void reset()
+    {
+        for (int i = 0; i < NUM_BUCKETS; i++)
+        {
+            buckets.set(i, 0);
+        }
+        count.set(0);
+        sum.set(0);
+        max.set(0);
+    }   //reset
+
+    /**
+     * This method returns a one line summary of the histogram in milliseconds.
+     *
+     * @return summary string.
+     */
+    @Override
+    public String toString()
+    {
+        return String.format(
+            "n=%d, mean=%.3f ms, p50=%.3f ms, p99=%.3f ms, max=%.3f ms",
+            getCount(), getMean()/1000000.0, getPercentile(50.0)/1000000.0, getPercentile(99.0)/1000000.0,
+            getMax()/1000000.0);
+    }   //toString
+
+    /**
+     * This method maps a value to its bucket index.
+     *
+     * @param value specifies the value.
+     * @return bucket index.
+     */
+    private static int bucketIndex(long value)
+    {
+        if (value < SUB_BUCKET_COUNT)
+        {
+            return (int)value;
+        }
+
+        int msb = 63 - Long.numberOfLeadingZeros(value);
+        int shift = msb - SUB_BUCKET_BITS;
+
+        return (shift + 1)*SUB_BUCKET_COUNT + (int)((value >>> shift) & (SUB_BUCKET_COUNT - 1));
+    }   //bucketIndex
+
+    /**
+     * This method returns the midpoint value of the given bucket.
+     *
+     * @param index specifies the bucket index.
+     * @return midpoint value of the bucket.
+     */
+    private static long bucketMidpoint(int index)
+    {
+        if (index < SUB_BUCKET_COUNT)
+        {
+            return index;
+        }
+
+        int shift = index/SUB_BUCKET_COUNT - 1;
+        long lower = (long)(SUB_BUCKET_COUNT + index%SUB_BUCKET_COUNT) << shift;
+
+        return lower + ((1L << shift) >>> 1);
+    }   //bucketMidpoint
+
+}   //class LatencyHistogram
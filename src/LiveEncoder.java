@@ -0,0 +1,245 @@
+/*
+ * Copyright (c) 2018 Titan Robotics Club (http://www.titanrobotics.com)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+import java.awt.image.BufferedImage;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
+
+import javax.swing.SwingUtilities;
+
+/**
+ * This class implements encode-as-you-type for the message field. Messages are encoded at module resolution on a
+ * single background thread so the Event Dispatch Thread never waits on an encode, and requests are coalesced so
+ * only the latest message is ever encoded. A request schedules an encode after a short debounce delay, and the
+ * requests that come in before that encode starts join it, so the encode picks up whatever message is the latest
+ * when it starts. While someone keeps typing, an encode still starts every debounce delay plus encode time instead
+ * of waiting for the typing to stop. The result of an encode that a newer request overtook while it ran is
+ * discarded, so the image shown always matches the message. The encode itself is not interrupted, ZXing cannot be,
+ * so at most one stale encode runs to completion.
+ *
+ * Each result is handed to the consumer on the Event Dispatch Thread, with a null image if the message is empty or
+ * does not fit in a QR code. A result is only handed over if no newer request or cancel() came in before it got there.
+ */
+public class LiveEncoder
+{
+    public static final long DEFAULT_DEBOUNCE_MSEC = 50;
+
+    private final BiConsumer<String, BufferedImage> consumer;
+    private final long debounceMsec;
+    private final ScheduledThreadPoolExecutor executor;
+    private final AtomicLong generation = new AtomicLong();
+    private final LatencyHistogram encodeTimes = new LatencyHistogram();
+    private final AtomicLong numRequests = new AtomicLong();
+    private final AtomicLong numCoalesced = new AtomicLong();
+    private final AtomicLong numEncoded = new AtomicLong();
+    private final AtomicLong numDiscarded = new AtomicLong();
+    private String requestedMsg = null;
+    private boolean encodeScheduled = false;
+
+    /**
+     * Constructor: Create an instance of the object.
+     *
+     * @param consumer specifies the consumer of the encoded images, called on the Event Dispatch Thread with the
+     *        message and its image, or a null image if the message could not be encoded.
+     * @param debounceMsec specifies how long a request waits for a newer one before it is encoded, in msec.
+     */
+    public LiveEncoder(BiConsumer<String, BufferedImage> consumer, long debounceMsec)
+    {
+        this.consumer = consumer;
+        this.debounceMsec = debounceMsec;
+        this.executor = new ScheduledThreadPoolExecutor(
+            1,
+            runnable ->
+            {
+                Thread thread = new Thread(runnable, "LiveEncoder");
+                thread.setDaemon(true);
+                return thread;
+            });
+        executor.setRemoveOnCancelPolicy(true);
+    }   //LiveEncoder
+
+    /**
+     * This method asks for a message to be encoded, replacing any request not handed over yet. Asking again for the
+     * message already asked for does nothing. It can be called from any thread.
+     *
+     * @param msg specifies the message.
+     */
+    public synchronized void encode(String msg)
+    {
+        if (!msg.equals(requestedMsg))
+        {
+            numRequests.incrementAndGet();
+            generation.incrementAndGet();
+            requestedMsg = msg;
+            if (encodeScheduled)
+            {
+                numCoalesced.incrementAndGet();
+            }
+            else
+            {
+                encodeScheduled = true;
+                executor.schedule(this::encodeLatest, debounceMsec, TimeUnit.MILLISECONDS);
+            }
+        }
+    }   //encode
+
+    /**
+     * This method drops the request not handed over yet, if any, so a result still on its way is never handed over.
+     * It can be called from any thread, typically before the caller shows some other image.
+     */
+    public synchronized void cancel()
+    {
+        generation.incrementAndGet();
+        requestedMsg = null;
+    }   //cancel
+
+    /**
+     * This method stops the encoder thread. Requests not handed over yet are dropped.
+     */
+    public void shutdown()
+    {
+        cancel();
+        executor.shutdownNow();
+    }   //shutdown
+
+    /**
+     * This method returns the time taken by each encode.
+     *
+     * @return encode time histogram.
+     */
+    public LatencyHistogram getEncodeTimes()
+    {
+        return encodeTimes;
+    }   //getEncodeTimes
+
+    /**
+     * This method returns the number of requests made.
+     *
+     * @return number of requests.
+     */
+    public long getNumRequests()
+    {
+        return numRequests.get();
+    }   //getNumRequests
+
+    /**
+     * This method returns the number of requests that joined an encode already scheduled.
+     *
+     * @return number of requests coalesced.
+     */
+    public long getNumCoalesced()
+    {
+        return numCoalesced.get();
+    }   //getNumCoalesced
+
+    /**
+     * This method returns the number of messages encoded.
+     *
+     * @return number of encodes.
+     */
+    public long getNumEncoded()
+    {
+        return numEncoded.get();
+    }   //getNumEncoded
+
+    /**
+     * This method returns the number of encodes whose result was dropped because a newer request came in while they
+     * ran.
+     *
+     * @return number of results discarded.
+     */
+    public long getNumDiscarded()
+    {
+        return numDiscarded.get();
+    }   //getNumDiscarded
+
+    /**
+     * This method is called on the encoder thread to encode the latest message and hand the image to the consumer,
+     * unless a newer request came in. Requests coming in from here on schedule the next encode.
+     */
+    private void encodeLatest()
+    {
+        String msg;
+        long requestGeneration;
+
+        synchronized (this)
+        {
+            encodeScheduled = false;
+            msg = requestedMsg;
+            requestGeneration = generation.get();
+        }
+
+        if (msg == null)
+        {
+            //
+            // Cancelled.
+            //
+            return;
+        }
+
+        long startTime = System.nanoTime();
+        BufferedImage image;
+
+        try
+        {
+            //
+            // Every prefix of a typed message would take a slot in the shared encode cache and push out the labels
+            // it is there for, so typed messages bypass it.
+            //
+            image = QRCode.encodeMessageUncached(msg, 0, 0, null);
+        }
+        catch (RuntimeException e)
+        {
+            image = null;
+        }
+        encodeTimes.record(System.nanoTime() - startTime);
+        numEncoded.incrementAndGet();
+
+        if (generation.get() != requestGeneration)
+        {
+            numDiscarded.incrementAndGet();
+        }
+        else
+        {
+            BufferedImage result = image;
+
+            SwingUtilities.invokeLater(
+                () ->
+                {
+                    //
+                    // Check again, a newer request or a cancel may have come in while the result was on its way.
+                    //
+                    if (generation.get() == requestGeneration)
+                    {
+                        consumer.accept(msg, result);
+                    }
+                    else
+                    {
+                        numDiscarded.incrementAndGet();
+                    }
+                });
+        }
+    }   //encodeLatest
+
+}   //class LiveEncoder
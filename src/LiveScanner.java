@@ -0,0 +1,269 @@
+/*
+ * Copyright (c) 2018 Titan Robotics Club (http://www.titanrobotics.com)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.google.zxing.Result;
+
+/**
+ * This class implements the decode stage of the live scan pipeline. As a frame listener, it posts every captured
+ * frame to a single slot mailbox and returns immediately. Its own thread takes the newest frame from the mailbox and
+ * decodes it, frames that arrive while a decode is in progress replace each other in the mailbox, so a slow decode
+ * never backs up capture or the preview. Every QR code found is reported to the scan listener right away. Unless
+ * disabled, each frame is first searched only around the QR code found in the previous frame, and a frame that looks
+ * the same as the last decoded one is not decoded at all: the last result, or lack of one, is reported again. A
+ * static scene is still decoded every few seconds in case the change detector missed something.
+ */
+public class LiveScanner extends Thread implements FrameListener
+{
+    public static final double DEFAULT_CHANGE_THRESHOLD = 3.0;
+
+    private static final long POLL_INTERVAL_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+    private static final long MAX_REUSE_NANOS = TimeUnit.SECONDS.toNanos(2);
+
+    private final ScanListener listener;
+    private final FrameMailbox mailbox = new FrameMailbox();
+    private final QRDecoderSession session = new QRDecoderSession(null, false);
+    private final RegionTracker tracker;
+    private final FrameChangeDetector changeDetector;
+    private final LatencyHistogram latencies = new LatencyHistogram();
+    private final LatencyHistogram decodeTimes = new LatencyHistogram();
+    private final AtomicLong numDecoded = new AtomicLong();
+    private final AtomicLong numFound = new AtomicLong();
+    private final AtomicLong numUnchanged = new AtomicLong();
+    private volatile long cpuTimeNanos = -1;
+    private Result lastResult = null;
+    private long lastDecodeTime = 0;
+    private volatile boolean threadRunning = true;
+
+    /**
+     * Constructor: Create an instance of the object.
+     *
+     * @param listener specifies the listener to report the QR codes found to.
+     * @param trackRegion specifies true to search around the previous QR code first, false to always search the
+     *        whole frame.
+     * @param changeThreshold specifies how much the mean brightness of any part of the frame (0 to 255) must change
+     *        for the frame to be decoded again, zero to decode every frame.
+     */
+    public LiveScanner(ScanListener listener, boolean trackRegion, double changeThreshold)
+    {
+        super("LiveScanner");
+        this.listener = listener;
+        this.tracker = trackRegion? new RegionTracker(session): null;
+        this.changeDetector = changeThreshold > 0.0? new FrameChangeDetector(changeThreshold): null;
+        setDaemon(true);
+    }   //LiveScanner
+
+    /**
+     * Constructor: Create an instance of the object with region tracking and the default change threshold.
+     *
+     * @param listener specifies the listener to report the QR codes found to.
+     */
+    public LiveScanner(ScanListener listener)
+    {
+        this(listener, true, DEFAULT_CHANGE_THRESHOLD);
+    }   //LiveScanner
+
+    /**
+     * This method terminates the thread. Frames still waiting to be decoded are released.
+     */
+    public void terminateThread()
+    {
+        threadRunning = false;
+        mailbox.wakeConsumer();
+    }   //terminateThread
+
+    /**
+     * This method returns the capture to decode latency of the decoded frames.
+     *
+     * @return latency histogram.
+     */
+    public LatencyHistogram getLatencies()
+    {
+        return latencies;
+    }   //getLatencies
+
+    /**
+     * This method returns the time spent decoding each changed frame, excluding the wait in the mailbox.
+     *
+     * @return decode time histogram.
+     */
+    public LatencyHistogram getDecodeTimes()
+    {
+        return decodeTimes;
+    }   //getDecodeTimes
+
+    /**
+     * This method returns the region tracker. Its counters are updated by the scanner thread without
+     * synchronization, so they should be read after the thread is terminated.
+     *
+     * @return region tracker, null if region tracking is disabled.
+     */
+    public RegionTracker getRegionTracker()
+    {
+        return tracker;
+    }   //getRegionTracker
+
+    /**
+     * This method returns the number of frames handled, decoded or found unchanged, whether or not a QR code was
+     * found.
+     *
+     * @return number of frames decoded.
+     */
+    public long getNumDecoded()
+    {
+        return numDecoded.get();
+    }   //getNumDecoded
+
+    /**
+     * This method returns the number of frames that were not decoded because they had not changed.
+     *
+     * @return number of unchanged frames.
+     */
+    public long getNumUnchanged()
+    {
+        return numUnchanged.get();
+    }   //getNumUnchanged
+
+    /**
+     * This method returns the CPU time used by the scanner thread, available once the thread has terminated.
+     *
+     * @return CPU time in nanoseconds, -1 if not available.
+     */
+    public long getCpuTimeNanos()
+    {
+        return cpuTimeNanos;
+    }   //getCpuTimeNanos
+
+    /**
+     * This method returns the number of frames a QR code was found in.
+     *
+     * @return number of QR codes found.
+     */
+    public long getNumFound()
+    {
+        return numFound.get();
+    }   //getNumFound
+
+    /**
+     * This method returns the number of frames replaced by a newer frame before they could be decoded.
+     *
+     * @return number of frames dropped.
+     */
+    public long getNumDropped()
+    {
+        return mailbox.getNumDropped();
+    }   //getNumDropped
+
+    /**
+     * This method is called on the capture thread for each captured frame. It hands the frame to the decode thread
+     * without waiting.
+     *
+     * @param frame specifies the captured frame.
+     */
+    @Override
+    public void frameCaptured(Frame frame)
+    {
+        if (threadRunning)
+        {
+            mailbox.post(frame.retain());
+            //
+            // The thread may have stopped and cleared the mailbox between the check and the post. Check again so a
+            // frame posted after the final clear is released here instead of being left in the mailbox.
+            //
+            if (!threadRunning)
+            {
+                mailbox.clear();
+            }
+        }
+    }   //frameCaptured
+
+    /**
+     * This method runs the thread. It decodes the newest frame whenever there is one.
+     */
+    @Override
+    public void run()
+    {
+        while (threadRunning)
+        {
+            Frame frame = mailbox.take(POLL_INTERVAL_NANOS);
+
+            if (frame != null)
+            {
+                long captureTime = frame.getTimestamp();
+                long decodeStartTime = System.nanoTime();
+                boolean decoded = false;
+                Result result;
+
+                try
+                {
+                    if (changeDetector != null && !changeDetector.hasChanged(frame) &&
+                        decodeStartTime - lastDecodeTime < MAX_REUSE_NANOS)
+                    {
+                        result = lastResult;
+                    }
+                    else
+                    {
+                        result = tracker != null? tracker.decode(frame): session.decode(frame);
+                        lastResult = result;
+                        lastDecodeTime = decodeStartTime;
+                        decoded = true;
+                        StageMetrics.getInstance().decodeCompleted(result != null);
+                    }
+                }
+                finally
+                {
+                    frame.release();
+                }
+
+                long resultTime = System.nanoTime();
+                latencies.record(resultTime - captureTime);
+                if (decoded)
+                {
+                    decodeTimes.record(resultTime - decodeStartTime);
+                }
+                else
+                {
+                    numUnchanged.incrementAndGet();
+                }
+                numDecoded.incrementAndGet();
+
+                if (result != null)
+                {
+                    numFound.incrementAndGet();
+                    listener.qrCodeScanned(new ScanResult(result, captureTime, resultTime));
+                }
+            }
+        }
+        mailbox.clear();
+
+        ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+        if (threadBean.isCurrentThreadCpuTimeSupported())
+        {
+            cpuTimeNanos = threadBean.getCurrentThreadCpuTime();
+        }
+    }   //run
+
+}   //class LiveScanner
@@ -0,0 +1,252 @@
+/*
+ * Copyright (c) 2018 Titan Robotics Club (http://www.titanrobotics.com)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * This class implements a closed loop load test of the encode/decode service. A number of client threads each send
+ * one request at a time for the given duration, so the offered load grows with the number of clients. A decode test
+ * first fetches a QR code image from the encode endpoint and then posts it over and over. The summary reports the
+ * throughput and latency of the successful requests and how many were rejected with 503. A rejected client backs off
+ * briefly before its next request, as a well behaved client would, instead of spinning on the rejections.
+ */
+public class LoadTest
+{
+    public static final String MODE_NAME = "load-test";
+
+    private static final long REJECT_BACKOFF_MSEC = 10;
+
+    private final String baseUrl;
+    private final boolean decode;
+    private final String msg;
+    private final int numClients;
+    private final LatencyHistogram latencies = new LatencyHistogram();
+    private final AtomicLong numOk = new AtomicLong();
+    private final AtomicLong numRejected = new AtomicLong();
+    private final AtomicLong numFailed = new AtomicLong();
+    private final AtomicLong numResponseBytes = new AtomicLong();
+    private long elapsedNanos = 0;
+
+    /**
+     * Constructor: Create an instance of the object.
+     *
+     * @param baseUrl specifies the service URL without the endpoint, e.g. http://127.0.0.1:8080.
+     * @param decode specifies true to load the decode endpoint, false to load the encode endpoint.
+     * @param msg specifies the message to encode, or to decode from the image.
+     * @param numClients specifies the number of client threads.
+     */
+    public LoadTest(String baseUrl, boolean decode, String msg, int numClients)
+    {
+        this.baseUrl = baseUrl;
+        this.decode = decode;
+        this.msg = msg;
+        this.numClients = numClients;
+    }   //LoadTest
+
+    /**
+     * This method runs the load test for the given duration.
+     *
+     * @param durationMsec specifies how long to run in msec.
+     * @throws IOException if the decode test image cannot be fetched.
+     */
+    public void run(long durationMsec) throws IOException
+    {
+        byte[] msgBytes = msg.getBytes(StandardCharsets.UTF_8);
+        URL url;
+        byte[] body;
+
+        if (decode)
+        {
+            url = new URL(baseUrl + "/decode");
+            body = post(new URL(baseUrl + "/encode?width=640&height=480"), msgBytes, null);
+            if (body == null)
+            {
+                throw new IOException("Failed to fetch the test image from the encode endpoint.");
+            }
+        }
+        else
+        {
+            url = new URL(baseUrl + "/encode");
+            body = msgBytes;
+        }
+
+        Thread[] clients = new Thread[numClients];
+        long startTime = System.nanoTime();
+        long endTime = startTime + durationMsec*1000000L;
+
+        for (int i = 0; i < clients.length; i++)
+        {
+            clients[i] = new Thread(() ->
+            {
+                int[] status = new int[1];
+
+                while (System.nanoTime() < endTime)
+                {
+                    long requestTime = System.nanoTime();
+                    byte[] response = null;
+
+                    try
+                    {
+                        response = post(url, body, status);
+                    }
+                    catch (IOException e)
+                    {
+                        status[0] = -1;
+                    }
+
+                    if (response != null)
+                    {
+                        latencies.record(System.nanoTime() - requestTime);
+                        numOk.incrementAndGet();
+                        numResponseBytes.addAndGet(response.length);
+                    }
+                    else if (status[0] == 503)
+                    {
+                        numRejected.incrementAndGet();
+                        RefreshThread.sleep(REJECT_BACKOFF_MSEC);
+                    }
+                    else
+                    {
+                        numFailed.incrementAndGet();
+                    }
+                }
+            }, "LoadTestClient" + i);
+            clients[i].start();
+        }
+
+        for (Thread client: clients)
+        {
+            try
+            {
+                client.join();
+            }
+            catch (InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        elapsedNanos = System.nanoTime() - startTime;
+    }   //run
+
+    /**
+     * This method prints the results of the last run followed by the service's own statistics.
+     *
+     * @param out specifies the stream to print to.
+     */
+    public void printSummary(PrintStream out)
+    {
+        double seconds = elapsedNanos/1000000000.0;
+
+        out.printf(
+            "%s with %d clients for %.3f sec: %d ok (%.1f req/sec, %.1f KB/sec), %d rejected (503), %d failed\n",
+            decode? "Decode": "Encode", numClients, seconds, numOk.get(), numOk.get()/seconds,
+            numResponseBytes.get()/1024.0/seconds, numRejected.get(), numFailed.get());
+        out.println("Request latency: " + latencies);
+
+        try
+        {
+            HttpURLConnection conn = (HttpURLConnection)new URL(baseUrl + "/stats").openConnection();
+            out.println("Service stats: " + new String(readAll(conn.getInputStream()), StandardCharsets.UTF_8));
+        }
+        catch (IOException e)
+        {
+            out.println("Service stats unavailable: " + e.getMessage());
+        }
+    }   //printSummary
+
+    /**
+     * This method posts a request body and returns the response body of a successful response.
+     *
+     * @param url specifies the URL to post to.
+     * @param body specifies the request body.
+     * @param status specifies an array to return the HTTP status in, can be null.
+     * @return response body, null if the response status is not 200.
+     * @throws IOException if the request failed.
+     */
+    private static byte[] post(URL url, byte[] body, int[] status) throws IOException
+    {
+        HttpURLConnection conn = (HttpURLConnection)url.openConnection();
+        byte[] response = null;
+
+        conn.setDoOutput(true);
+        conn.setRequestMethod("POST");
+        conn.setFixedLengthStreamingMode(body.length);
+        try (OutputStream out = conn.getOutputStream())
+        {
+            out.write(body);
+        }
+
+        int code = conn.getResponseCode();
+        if (status != null)
+        {
+            status[0] = code;
+        }
+
+        if (code == HttpURLConnection.HTTP_OK)
+        {
+            response = readAll(conn.getInputStream());
+        }
+        else if (conn.getErrorStream() != null)
+        {
+            //
+            // Read the error body to the end so the connection can be reused.
+            //
+            readAll(conn.getErrorStream());
+        }
+
+        return response;
+    }   //post
+
+    /**
+     * This method reads a stream to the end and closes it.
+     *
+     * @param in specifies the stream.
+     * @return bytes read.
+     * @throws IOException if the read failed.
+     */
+    private static byte[] readAll(InputStream in) throws IOException
+    {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(1024);
+        byte[] buffer = new byte[4096];
+
+        try (InputStream stream = in)
+        {
+            int n;
+            while ((n = stream.read(buffer)) != -1)
+            {
+                bytes.write(buffer, 0, n);
+            }
+        }
+
+        return bytes.toByteArray();
+    }   //readAll
+
+}   //class LoadTest
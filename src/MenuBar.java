@@ -36,6 +36,7 @@ public class MenuBar extends JMenuBar implements ActionListener
     private static final long serialVersionUID = 2L;
     private QRCodeApp app;
     private JFileChooser fileChooser = new JFileChooser();
+    private JFileChooser recordingChooser = new JFileChooser();
 
     private JMenu menuFile = new JMenu("File");
     private JMenuItem menuItemFileOpen = new JMenuItem("Open Image");
@@ -45,6 +46,9 @@ public class MenuBar extends JMenuBar implements ActionListener
     private JMenu menuCamera = new JMenu("Camera");
     private JMenuItem menuItemCameraStart = new JMenuItem("Start Camera");
     private JMenuItem menuItemCameraCapture = new JMenuItem("Capture Image");
+    private JMenuItem menuItemCameraReplay = new JMenuItem("Replay Recording");
+    private JCheckBoxMenuItem menuItemCameraRecord = new JCheckBoxMenuItem("Record Frames");
+    private JCheckBoxMenuItem menuItemCameraLiveScan = new JCheckBoxMenuItem("Live Scan");
 
     private JMenu menuHelp = new JMenu("Help");
     private JMenuItem menuItemHelpAbout = new JMenuItem("About");
@@ -63,6 +67,11 @@ public class MenuBar extends JMenuBar implements ActionListener
         String[] formats = ImageIO.getWriterFormatNames();
         String desc = "Image file " + Arrays.toString(formats);
         fileChooser.setFileFilter(new FileNameExtensionFilter(desc, formats));
+        fileChooser.addChoosableFileFilter(
+            new FileNameExtensionFilter("Raw grayscale frame [pgm]", RawFrameFile.PGM_SUFFIX));
+        recordingChooser.setFileFilter(
+            new FileNameExtensionFilter(
+                "Frame recording [" + FrameRecorder.FILE_SUFFIX + "]", FrameRecorder.FILE_SUFFIX));
         //TODO: figure out why the line below caused an exception.
 //        fileChooser.setCurrentDirectory(new File(System.getProperty("user.dir")));
 
@@ -79,6 +88,12 @@ public class MenuBar extends JMenuBar implements ActionListener
         menuItemCameraStart.addActionListener(this);
         menuItemCameraCapture.setMnemonic(KeyEvent.VK_C);
         menuItemCameraCapture.addActionListener(this);
+        menuItemCameraReplay.setMnemonic(KeyEvent.VK_P);
+        menuItemCameraReplay.addActionListener(this);
+        menuItemCameraRecord.setMnemonic(KeyEvent.VK_E);
+        menuItemCameraRecord.addActionListener(this);
+        menuItemCameraLiveScan.setMnemonic(KeyEvent.VK_L);
+        menuItemCameraLiveScan.addActionListener(this);
 
         menuHelp.setMnemonic(KeyEvent.VK_H);
         menuItemHelpAbout.setMnemonic(KeyEvent.VK_A);
@@ -91,6 +106,10 @@ public class MenuBar extends JMenuBar implements ActionListener
 
         menuCamera.add(menuItemCameraStart);
         menuCamera.add(menuItemCameraCapture);
+        menuCamera.add(menuItemCameraReplay);
+        menuCamera.addSeparator();
+        menuCamera.add(menuItemCameraRecord);
+        menuCamera.add(menuItemCameraLiveScan);
 
         menuHelp.add(menuItemHelpAbout);
 
@@ -101,6 +120,7 @@ public class MenuBar extends JMenuBar implements ActionListener
         menuItemFileSave.setEnabled(false);
         menuItemCameraStart.setEnabled(true);
         menuItemCameraCapture.setEnabled(false);
+        menuItemCameraRecord.setEnabled(false);
     }   //MenuBar
 
     //
@@ -127,8 +147,7 @@ public class MenuBar extends JMenuBar implements ActionListener
                 //
                 // Camera was started, we must stop it first.
                 //
-                menuItemCameraCapture.setEnabled(false);
-                menuItemCameraStart.setEnabled(true);
+                setCameraRunning(false);
                 app.stopCamera();
             }
 
@@ -173,18 +192,51 @@ public class MenuBar extends JMenuBar implements ActionListener
         }
         else if (source == menuItemCameraStart)
         {
-            menuItemCameraStart.setEnabled(false);
-            menuItemCameraCapture.setEnabled(true);
-            menuItemFileSave.setEnabled(false);
+            setCameraRunning(true);
             app.startCamera();
         }
         else if (source == menuItemCameraCapture)
         {
-            menuItemCameraCapture.setEnabled(false);
-            menuItemCameraStart.setEnabled(true);
+            setCameraRunning(false);
             app.stopCamera();
             menuItemFileSave.setEnabled(app.captureImage());
         }
+        else if (source == menuItemCameraReplay)
+        {
+            //
+            // Camera->Replay Recording is clicked, play back a recording in place of the camera.
+            //
+            recordingChooser.setSelectedFile(new File(""));
+            if (recordingChooser.showOpenDialog(this) == JFileChooser.APPROVE_OPTION)
+            {
+                setCameraRunning(true);
+                app.startReplay(recordingChooser.getSelectedFile());
+            }
+        }
+        else if (source == menuItemCameraRecord)
+        {
+            //
+            // Camera->Record Frames is toggled. Frames are only recorded while the camera is running.
+            //
+            if (menuItemCameraRecord.isSelected())
+            {
+                recordingChooser.setSelectedFile(new File(""));
+                menuItemCameraRecord.setSelected(
+                    recordingChooser.showSaveDialog(this) == JFileChooser.APPROVE_OPTION &&
+                    app.startRecording(recordingChooser.getSelectedFile()));
+            }
+            else
+            {
+                app.stopRecording();
+            }
+        }
+        else if (source == menuItemCameraLiveScan)
+        {
+            //
+            // Camera->Live Scan is toggled. Frames are only scanned while the camera is running.
+            //
+            app.setLiveScan(menuItemCameraLiveScan.isSelected());
+        }
         else if (source == menuItemHelpAbout)
         {
             //
@@ -198,4 +250,23 @@ public class MenuBar extends JMenuBar implements ActionListener
         }
     }   //actionPerformed
 
+    /**
+     * This method updates the menu items for the camera being started or stopped. Stopping the camera also stops
+     * any recording.
+     *
+     * @param running specifies true if the camera is being started, false if it is being stopped.
+     */
+    private void setCameraRunning(boolean running)
+    {
+        menuItemCameraStart.setEnabled(!running);
+        menuItemCameraReplay.setEnabled(!running);
+        menuItemCameraCapture.setEnabled(running);
+        menuItemCameraRecord.setEnabled(running);
+        menuItemCameraRecord.setSelected(false);
+        if (running)
+        {
+            menuItemFileSave.setEnabled(false);
+        }
+    }   //setCameraRunning
+
 }   //class MenuBar
@@ -0,0 +1,624 @@
+/*
+ * Copyright (c) 2018 Titan Robotics Club (http://www.titanrobotics.com)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+import java.awt.Color;
+import java.awt.GradientPaint;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.awt.image.ConvolveOp;
+import java.awt.image.DataBufferByte;
+import java.awt.image.Kernel;
+import java.io.PrintStream;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Supplier;
+
+import com.google.zxing.BarcodeFormat;
+import com.google.zxing.BinaryBitmap;
+import com.google.zxing.DecodeHintType;
+import com.google.zxing.EncodeHintType;
+import com.google.zxing.MultiFormatReader;
+import com.google.zxing.NotFoundException;
+import com.google.zxing.Result;
+import com.google.zxing.client.j2se.BufferedImageLuminanceSource;
+import com.google.zxing.common.BitMatrix;
+import com.google.zxing.common.GlobalHistogramBinarizer;
+import com.google.zxing.qrcode.decoder.ErrorCorrectionLevel;
+
+/**
+ * This class implements the micro benchmark suite of the encode, decode and frame conversion hot paths. Each case
+ * runs on the calling thread for a number of warmup iterations and then a number of measured iterations of fixed
+ * duration. For every case it reports the throughput with its spread over the measured iterations, the bytes
+ * allocated per operation (from the per-thread allocation counter of the JVM) and the garbage collections during the
+ * measurement, so a change that slows a path down or makes it allocate more shows up as a number.
+ *
+ * All fixtures (messages and images) are generated from a fixed seed, so every run measures the same inputs. The
+ * images are rendered QR codes on a shaded background, optionally blurred or with sensor noise added.
+ */
+public class MicroBenchmark
+{
+    public static final String MODE_NAME = "bench";
+    public static final int DEFAULT_WARMUP_ITERATIONS = 5;
+    public static final int DEFAULT_MEASURE_ITERATIONS = 5;
+    public static final long DEFAULT_ITERATION_MSEC = 500;
+
+    private static final long FIXTURE_SEED = 17L;
+    private static final int[] PAYLOAD_SIZES = {16, 256, 1024};
+    private static final int[] SEQUENCE_PAYLOAD_SIZES = {8192, 32768};
+    //
+    // Two pixels per module keeps the largest symbols well inside what the detector finds without trying harder.
+    //
+    private static final int SEQUENCE_MODULE_PIXELS = 2;
+    private static final int[][] IMAGE_SIZES = {{320, 240}, {640, 480}, {1280, 960}};
+    private static final String[] DISTORTIONS = {"clean", "blur", "noise"};
+    //
+    // Keep the noise swing under the hybrid binarizer's minimum dynamic range of 24 so the flat background stays
+    // background instead of turning into speckle that the finder pattern search chases.
+    //
+    private static final int NOISE_AMPLITUDE = 10;
+    //
+    // Enough decodes for the tiered decoder to reorder its tiers four times.
+    //
+    private static final int ORDER_CHECK_DECODES = 256;
+
+    private final int warmupIterations;
+    private final int measureIterations;
+    private final long iterationNanos;
+    private final com.sun.management.ThreadMXBean threadBean;
+    private final List<Case> cases = new ArrayList<>();
+    private volatile int sink = 0;
+
+    /**
+     * This interface is implemented by the operation under test. It returns its result so the work cannot be
+     * optimized away.
+     */
+    private interface Operation
+    {
+        /**
+         * This method runs the operation once.
+         *
+         * @return result of the operation.
+         */
+        Object run();
+
+    }   //interface Operation
+
+    /**
+     * This class holds a benchmark case: its name and how to set up its fixture and operation.
+     */
+    private static class Case
+    {
+        final String name;
+        final Supplier<Operation> setup;
+
+        Case(String name, Supplier<Operation> setup)
+        {
+            this.name = name;
+            this.setup = setup;
+        }   //Case
+
+    }   //class Case
+
+    /**
+     * Constructor: Create an instance of the object.
+     *
+     * @param warmupIterations specifies the number of iterations to run before measuring.
+     * @param measureIterations specifies the number of measured iterations.
+     * @param iterationMsec specifies the duration of each iteration in msec.
+     */
+    public MicroBenchmark(int warmupIterations, int measureIterations, long iterationMsec)
+    {
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+
+        this.warmupIterations = warmupIterations;
+        this.measureIterations = measureIterations;
+        this.iterationNanos = iterationMsec*1000000L;
+        //
+        // The per-thread allocation counter is a HotSpot extension, without it only the throughput is reported.
+        //
+        this.threadBean = bean instanceof com.sun.management.ThreadMXBean &&
+                          ((com.sun.management.ThreadMXBean)bean).isThreadAllocatedMemorySupported()?
+                              (com.sun.management.ThreadMXBean)bean: null;
+        addEncodeCases();
+        addSequenceCases();
+        addDecodeCases();
+        addConversionCases();
+    }   //MicroBenchmark
+
+    /**
+     * This method runs the cases whose names contain the filter and prints one result line per case.
+     *
+     * @param filter specifies the substring to select cases by, null or empty to run all cases.
+     * @param out specifies the stream to print the results to.
+     */
+    public void run(String filter, PrintStream out)
+    {
+        out.printf("%-40s %12s %10s %12s %6s %8s\n", "Benchmark", "ops/s", "error", "B/op", "gc", "gc ms");
+
+        for (Case benchCase: cases)
+        {
+            if (filter == null || filter.isEmpty() || benchCase.name.contains(filter))
+            {
+                runCase(benchCase, out);
+            }
+        }
+        out.println("(*) the operation returns no result, e.g. the binarizer lost the QR code.");
+    }   //run
+
+    /**
+     * This method sets up, warms up and measures one case.
+     *
+     * @param benchCase specifies the case.
+     * @param out specifies the stream to print the result to.
+     */
+    private void runCase(Case benchCase, PrintStream out)
+    {
+        Operation op = benchCase.setup.get();
+        double[] throughputs = new double[measureIterations];
+        long totalOps = 0;
+
+        for (int i = 0; i < warmupIterations; i++)
+        {
+            runIteration(op);
+        }
+
+        long[] gcStart = getGcCounters();
+        long allocStart = getAllocatedBytes();
+        for (int i = 0; i < measureIterations; i++)
+        {
+            long startTime = System.nanoTime();
+            long ops = runIteration(op);
+
+            throughputs[i] = ops*1000000000.0/(System.nanoTime() - startTime);
+            totalOps += ops;
+        }
+        long allocatedBytes = getAllocatedBytes() - allocStart;
+        long[] gcEnd = getGcCounters();
+
+        double mean = Arrays.stream(throughputs).average().orElse(0.0);
+        double variance = Arrays.stream(throughputs).map(t -> (t - mean)*(t - mean)).sum()/
+                          Math.max(1, measureIterations - 1);
+
+        out.printf(
+            Locale.ROOT, "%-40s %12.1f %10.1f %12s %6d %8d\n",
+            op.run() != null? benchCase.name: benchCase.name + " (*)", mean, Math.sqrt(variance),
+            threadBean != null? String.format(Locale.ROOT, "%.0f", (double)allocatedBytes/totalOps): "n/a",
+            gcEnd[0] - gcStart[0], gcEnd[1] - gcStart[1]);
+    }   //runCase
+
+    /**
+     * This method runs the operation over and over for one iteration.
+     *
+     * @param op specifies the operation.
+     * @return number of operations run.
+     */
+    private long runIteration(Operation op)
+    {
+        long endTime = System.nanoTime() + iterationNanos;
+        long ops = 0;
+        int hash = 0;
+
+        do
+        {
+            Object result = op.run();
+            hash += result != null? System.identityHashCode(result): 0;
+            ops++;
+        } while (System.nanoTime() < endTime);
+        sink += hash;
+
+        return ops;
+    }   //runIteration
+
+    /**
+     * This method returns the bytes allocated so far by the calling thread.
+     *
+     * @return allocated bytes, 0 if not supported.
+     */
+    private long getAllocatedBytes()
+    {
+        return threadBean != null? threadBean.getThreadAllocatedBytes(Thread.currentThread().getId()): 0;
+    }   //getAllocatedBytes
+
+    /**
+     * This method returns the total number of garbage collections and the total collection time so far.
+     *
+     * @return array of collection count and collection time in msec.
+     */
+    private static long[] getGcCounters()
+    {
+        long[] counters = new long[2];
+
+        for (GarbageCollectorMXBean gc: ManagementFactory.getGarbageCollectorMXBeans())
+        {
+            counters[0] += Math.max(0, gc.getCollectionCount());
+            counters[1] += Math.max(0, gc.getCollectionTime());
+        }
+
+        return counters;
+    }   //getGcCounters
+
+    /**
+     * This method adds the encode cases: every payload size at every error correction level, rendered at module
+     * resolution so the case measures the encoder rather than the scaling. The encode cache is bypassed.
+     */
+    private void addEncodeCases()
+    {
+        for (int size: PAYLOAD_SIZES)
+        {
+            for (ErrorCorrectionLevel level: ErrorCorrectionLevel.values())
+            {
+                cases.add(new Case(
+                    String.format("encode/%dB-EC%s", size, level),
+                    () ->
+                    {
+                        String msg = randomMessage(new Random(FIXTURE_SEED + size), size);
+                        Map<EncodeHintType, Object> hints = new EnumMap<>(EncodeHintType.class);
+                        hints.put(EncodeHintType.ERROR_CORRECTION, level);
+                        return () -> QRCode.encodeMessageUncached(msg, 0, 0, hints);
+                    }));
+            }
+        }
+    }   //addEncodeCases
+
+    /**
+     * This method adds the Structured Append cases for large payloads: encoding the sequence with the symbols in
+     * parallel on the common pool and one at a time on a single thread pool, decoding and reassembling the symbol
+     * images, and reassembling alone from decode results. The allocation figures of the parallel case only count the
+     * calling thread.
+     */
+    private void addSequenceCases()
+    {
+        for (int size: SEQUENCE_PAYLOAD_SIZES)
+        {
+            String payloadName = String.format("%dKB", size/1024);
+
+            cases.add(new Case(
+                "sequence/encode-" + payloadName + "-parallel",
+                () ->
+                {
+                    byte[] data = randomMessage(new Random(FIXTURE_SEED + size), size).getBytes(StandardCharsets.UTF_8);
+                    StructuredAppendEncoder encoder = new StructuredAppendEncoder();
+                    return () -> encoder.encode(data, 0, 0);
+                }));
+            cases.add(new Case(
+                "sequence/encode-" + payloadName + "-serial",
+                () ->
+                {
+                    byte[] data = randomMessage(new Random(FIXTURE_SEED + size), size).getBytes(StandardCharsets.UTF_8);
+                    StructuredAppendEncoder encoder = new StructuredAppendEncoder(
+                        ErrorCorrectionLevel.L, StructuredAppendEncoder.MAX_VERSION, new ForkJoinPool(1));
+                    return () -> encoder.encode(data, 0, 0);
+                }));
+            cases.add(new Case(
+                "sequence/decode-" + payloadName,
+                () ->
+                {
+                    List<BufferedImage> images = createSequenceImages(size);
+                    QRDecoderSession session = new QRDecoderSession(null, false);
+                    StructuredAppendAssembler assembler = new StructuredAppendAssembler();
+                    return () ->
+                    {
+                        String msg = null;
+                        for (BufferedImage image: images)
+                        {
+                            Result result = session.decode(image);
+                            msg = result != null? assembler.add(result): null;
+                        }
+                        return msg;
+                    };
+                }));
+            cases.add(new Case(
+                "sequence/assemble-" + payloadName,
+                () ->
+                {
+                    List<Result> results = new ArrayList<>();
+                    QRDecoderSession session = new QRDecoderSession(null, false);
+                    StructuredAppendAssembler assembler = new StructuredAppendAssembler();
+
+                    for (BufferedImage image: createSequenceImages(size))
+                    {
+                        results.add(session.decode(image));
+                    }
+                    return () ->
+                    {
+                        String msg = null;
+                        for (Result result: results)
+                        {
+                            msg = assembler.add(result);
+                        }
+                        return msg;
+                    };
+                }));
+        }
+    }   //addSequenceCases
+
+    /**
+     * This method adds the decode cases: every image size with every distortion, binarized by ZXing's hybrid
+     * binarizer (the decoder session, as used by QRCode.decodeMessage) or its global histogram binarizer.
+     */
+    private void addDecodeCases()
+    {
+        for (int[] size: IMAGE_SIZES)
+        {
+            for (String distortion: DISTORTIONS)
+            {
+                String fixtureName = String.format("%dx%d-%s", size[0], size[1], distortion);
+
+                cases.add(new Case(
+                    "decode/" + fixtureName + "-hybrid",
+                    () ->
+                    {
+                        BufferedImage image = checkDecodable(
+                            fixtureName, createImage(size[0], size[1], distortion, BufferedImage.TYPE_3BYTE_BGR));
+                        QRDecoderSession session = new QRDecoderSession(null, false);
+                        return () -> session.decode(image);
+                    }));
+                cases.add(new Case(
+                    "decode/" + fixtureName + "-global",
+                    () ->
+                    {
+                        BufferedImage image = checkDecodable(
+                            fixtureName, createImage(size[0], size[1], distortion, BufferedImage.TYPE_3BYTE_BGR));
+                        QRDecoderSession session = new QRDecoderSession(null, false);
+                        MultiFormatReader reader = new MultiFormatReader();
+                        Map<DecodeHintType, Object> hints = new EnumMap<>(DecodeHintType.class);
+                        byte[] luma = new byte[size[0]*size[1]];
+
+                        hints.put(DecodeHintType.POSSIBLE_FORMATS, EnumSet.of(BarcodeFormat.QR_CODE));
+                        reader.setHints(hints);
+                        return () ->
+                        {
+                            session.toLuminance(image, luma);
+                            try
+                            {
+                                return reader.decodeWithState(new BinaryBitmap(new GlobalHistogramBinarizer(
+                                    new FrameLuminanceSource(
+                                        luma, size[0], size[1], FrameLuminanceSource.BYTES_PER_PIXEL_GRAY, null))));
+                            }
+                            catch (NotFoundException e)
+                            {
+                                return null;
+                            }
+                        };
+                    }));
+                if (distortion.equals("clean"))
+                {
+                    cases.add(new Case(
+                        "decode/" + fixtureName + "-tiered",
+                        () ->
+                        {
+                            BufferedImage image = checkDecodable(
+                                fixtureName, createImage(size[0], size[1], distortion, BufferedImage.TYPE_3BYTE_BGR));
+                            TieredDecoder decoder = checkStableOrder(fixtureName, image);
+                            return () -> decoder.decode(image);
+                        }));
+                }
+            }
+        }
+    }   //addDecodeCases
+
+    /**
+     * This method adds the frame to luminance conversion cases on a 640x480 frame: a raw BGR camera frame through
+     * FrameLuminanceSource, BGR and RGB images through the decoder session, and ZXing's own image luminance source
+     * for comparison.
+     */
+    private void addConversionCases()
+    {
+        int width = IMAGE_SIZES[1][0];
+        int height = IMAGE_SIZES[1][1];
+
+        cases.add(new Case(
+            "convert/frame-bgr-source",
+            () ->
+            {
+                BufferedImage image = createImage(width, height, "noise", BufferedImage.TYPE_3BYTE_BGR);
+                byte[] data = ((DataBufferByte)image.getRaster().getDataBuffer()).getData();
+                byte[] scratch = new byte[width*height];
+                return () -> new FrameLuminanceSource(
+                    data, width, height, FrameLuminanceSource.BYTES_PER_PIXEL_BGR, scratch).getMatrix();
+            }));
+        cases.add(new Case(
+            "convert/image-bgr-session",
+            () ->
+            {
+                BufferedImage image = createImage(width, height, "noise", BufferedImage.TYPE_3BYTE_BGR);
+                QRDecoderSession session = new QRDecoderSession(null, false);
+                byte[] luma = new byte[width*height];
+                return () ->
+                {
+                    session.toLuminance(image, luma);
+                    return luma;
+                };
+            }));
+        cases.add(new Case(
+            "convert/image-rgb-session",
+            () ->
+            {
+                BufferedImage image = createImage(width, height, "noise", BufferedImage.TYPE_INT_RGB);
+                QRDecoderSession session = new QRDecoderSession(null, false);
+                byte[] luma = new byte[width*height];
+                return () ->
+                {
+                    session.toLuminance(image, luma);
+                    return luma;
+                };
+            }));
+        cases.add(new Case(
+            "convert/image-bgr-zxing",
+            () ->
+            {
+                BufferedImage image = createImage(width, height, "noise", BufferedImage.TYPE_3BYTE_BGR);
+                return () -> new BufferedImageLuminanceSource(image).getMatrix();
+            }));
+    }   //addConversionCases
+
+    /**
+     * This method generates a random message of printable ASCII characters.
+     *
+     * @param random specifies the random generator.
+     * @param length specifies the message length.
+     * @return random message.
+     */
+    private static String randomMessage(Random random, int length)
+    {
+        StringBuilder sb = new StringBuilder(length);
+
+        for (int i = 0; i < length; i++)
+        {
+            sb.append((char)(' ' + random.nextInt(95)));
+        }
+
+        return sb.toString();
+    }   //randomMessage
+
+    /**
+     * This method renders the symbols of a Structured Append sequence of a random message in shuffled order, and
+     * checks that every one of them decodes.
+     *
+     * @param size specifies the payload size in bytes.
+     * @return symbol images in shuffled order.
+     */
+    private static List<BufferedImage> createSequenceImages(int size)
+    {
+        Random random = new Random(FIXTURE_SEED + size);
+        byte[] data = randomMessage(random, size).getBytes(StandardCharsets.UTF_8);
+        List<BufferedImage> images = new ArrayList<>();
+        int imageSize = SEQUENCE_MODULE_PIXELS*(4*StructuredAppendEncoder.MAX_VERSION + 17 + 8);
+
+        for (BitMatrix symbol: new StructuredAppendEncoder().encode(data, imageSize, imageSize))
+        {
+            images.add(checkDecodable("sequence-" + size, BitMatrixRenderer.toBufferedImage(symbol)));
+        }
+        Collections.shuffle(images, random);
+
+        return images;
+    }   //createSequenceImages
+
+    /**
+     * This method renders a decode fixture: a QR code of a 64 byte message covering 60% of the shorter side, off
+     * center on a shaded background, then blurred with a 3x3 box filter or with uniform noise added if asked for.
+     *
+     * @param width specifies the image width.
+     * @param height specifies the image height.
+     * @param distortion specifies "clean", "blur" or "noise".
+     * @param imageType specifies the BufferedImage type.
+     * @return fixture image.
+     */
+    private static BufferedImage createImage(int width, int height, String distortion, int imageType)
+    {
+        Random random = new Random(FIXTURE_SEED + width);
+        int codeSize = Math.min(width, height)*3/5;
+        BufferedImage image = new BufferedImage(width, height, imageType);
+        Graphics2D g = image.createGraphics();
+
+        g.setPaint(new GradientPaint(0, 0, Color.GRAY, width, height, Color.WHITE));
+        g.fillRect(0, 0, width, height);
+        g.drawImage(
+            QRCode.encodeMessageUncached(randomMessage(random, 64), codeSize, codeSize, null),
+            (width - codeSize)/3, (height - codeSize)/2, null);
+        g.dispose();
+
+        if (distortion.equals("blur"))
+        {
+            float[] kernel = new float[9];
+            Arrays.fill(kernel, 1.0f/kernel.length);
+            image = new ConvolveOp(new Kernel(3, 3, kernel), ConvolveOp.EDGE_NO_OP, null).filter(image, null);
+        }
+        else if (distortion.equals("noise"))
+        {
+            for (int y = 0; y < height; y++)
+            {
+                for (int x = 0; x < width; x++)
+                {
+                    int rgb = image.getRGB(x, y);
+                    int noise = random.nextInt(2*NOISE_AMPLITUDE + 1) - NOISE_AMPLITUDE;
+                    int r = Math.max(0, Math.min(255, ((rgb >> 16) & 0xff) + noise));
+                    int gr = Math.max(0, Math.min(255, ((rgb >> 8) & 0xff) + noise));
+                    int b = Math.max(0, Math.min(255, (rgb & 0xff) + noise));
+                    image.setRGB(x, y, (r << 16) | (gr << 8) | b);
+                }
+            }
+        }
+
+        return image;
+    }   //createImage
+
+    /**
+     * This method makes sure a decode fixture decodes, so a case never silently measures the not found path.
+     *
+     * @param fixtureName specifies the fixture name.
+     * @param image specifies the fixture image.
+     * @return the fixture image.
+     */
+    private static BufferedImage checkDecodable(String fixtureName, BufferedImage image)
+    {
+        if (new QRDecoderSession(null, false).decode(image) == null)
+        {
+            throw new RuntimeException("Decode fixture " + fixtureName + " has no decodable QR code.");
+        }
+
+        return image;
+    }   //checkDecodable
+
+    /**
+     * This method makes sure an adaptive tiered decoder keeps its configured tier order on an easy image, since the
+     * cheapest tier always finds the QR code and the other tiers have nothing to show for themselves.
+     *
+     * @param fixtureName specifies the fixture name.
+     * @param image specifies the fixture image, decodable by the cheapest tier.
+     * @return tiered decoder that has decoded the image ORDER_CHECK_DECODES times.
+     */
+    private static TieredDecoder checkStableOrder(String fixtureName, BufferedImage image)
+    {
+        TieredDecoder decoder = new TieredDecoder();
+        List<TieredDecoder.Tier> initialOrder = decoder.getOrder();
+
+        for (int i = 0; i < ORDER_CHECK_DECODES; i++)
+        {
+            if (decoder.decode(image) == null)
+            {
+                throw new RuntimeException("Decode fixture " + fixtureName + " has no decodable QR code.");
+            }
+
+            if (!decoder.getOrder().equals(initialOrder))
+            {
+                throw new RuntimeException(
+                    "Tier order of " + fixtureName + " changed to " + decoder.getOrder() + " after " + (i + 1) +
+                    " easy decodes.");
+            }
+        }
+
+        return decoder;
+    }   //checkStableOrder
+
+}   //class MicroBenchmark
@@ -0,0 +1,159 @@
+/*
+ * Copyright (c) 2018 Titan Robotics Club (http://www.titanrobotics.com)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+import java.awt.Dimension;
+import java.awt.Graphics2D;
+import java.awt.GraphicsEnvironment;
+import java.awt.image.BufferedImage;
+import java.io.PrintStream;
+import java.lang.reflect.InvocationTargetException;
+
+import javax.swing.JFrame;
+import javax.swing.SwingUtilities;
+import javax.swing.Timer;
+import javax.swing.WindowConstants;
+
+/**
+ * This class implements the display benchmark. It runs the camera display of the user interface against a synthetic
+ * source delivering frames at a fixed rate, captured as fast as they come, and measures the frame time and paint
+ * cost seen on the event dispatch thread and how long the thread takes to get to other work. With a display, the
+ * panel is shown in a window and painted by Swing as usual. Headless, the panel is painted into an offscreen image
+ * at the display refresh rate instead.
+ */
+public class PaintBenchmark
+{
+    public static final String MODE_NAME = "paint-bench";
+    public static final double DEFAULT_FRAME_RATE = 60.0;
+
+    private static final int DISPLAY_INTERVAL = 16;
+    private static final long PROBE_INTERVAL = 5;
+
+    private final int width;
+    private final int height;
+    private final double frameRate;
+    private final LatencyHistogram dispatchLatencies = new LatencyHistogram();
+    private ImagePanel panel = null;
+    private boolean headless = false;
+    private long elapsedNanos = 0;
+
+    /**
+     * Constructor: Create an instance of the object.
+     *
+     * @param width specifies the frame width in pixels, also the panel width.
+     * @param height specifies the frame height in pixels, also the panel height.
+     * @param frameRate specifies the frame rate of the source in frames per second.
+     */
+    public PaintBenchmark(int width, int height, double frameRate)
+    {
+        this.width = width;
+        this.height = height;
+        this.frameRate = frameRate;
+    }   //PaintBenchmark
+
+    /**
+     * This method runs the display for the given duration.
+     *
+     * @param durationMsec specifies how long to run in msec.
+     * @throws InterruptedException if the thread is interrupted while waiting for the event dispatch thread.
+     * @throws InvocationTargetException if the display cannot be set up.
+     */
+    public void run(long durationMsec) throws InterruptedException, InvocationTargetException
+    {
+        JFrame[] window = new JFrame[1];
+        BufferedImage screen = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        Timer displayTimer = new Timer(
+            DISPLAY_INTERVAL,
+            event ->
+            {
+                Graphics2D g = screen.createGraphics();
+                panel.paint(g);
+                g.dispose();
+            });
+
+        headless = GraphicsEnvironment.isHeadless();
+        panel = new ImagePanel();
+        panel.setRefreshInterval(0);
+        SwingUtilities.invokeAndWait(
+            () ->
+            {
+                if (headless)
+                {
+                    panel.setSize(width, height);
+                    displayTimer.start();
+                }
+                else
+                {
+                    window[0] = new JFrame(QRCodeApp.PROGRAM_TITLE + " " + MODE_NAME);
+                    window[0].setDefaultCloseOperation(WindowConstants.DISPOSE_ON_CLOSE);
+                    panel.setPreferredSize(new Dimension(width, height));
+                    window[0].add(panel);
+                    window[0].pack();
+                    window[0].setVisible(true);
+                }
+            });
+
+        long startTime = System.nanoTime();
+        long endTime = startTime + durationMsec*1000000L;
+        panel.startCamera(new SyntheticFrameSource(QRCodeApp.PROGRAM_TITLE, width, height, 30, true, frameRate));
+        //
+        // Keep asking the event dispatch thread to run a trivial task to see how long other work waits for it.
+        //
+        while (System.nanoTime() < endTime)
+        {
+            long postTime = System.nanoTime();
+            SwingUtilities.invokeLater(() -> dispatchLatencies.record(System.nanoTime() - postTime));
+            Thread.sleep(PROBE_INTERVAL);
+        }
+        panel.terminateCameraThread();
+        elapsedNanos = System.nanoTime() - startTime;
+
+        SwingUtilities.invokeAndWait(
+            () ->
+            {
+                displayTimer.stop();
+                if (window[0] != null)
+                {
+                    window[0].dispose();
+                }
+            });
+    }   //run
+
+    /**
+     * This method prints the frame rates and latencies of the last run.
+     *
+     * @param out specifies the stream to print to.
+     */
+    public void printSummary(PrintStream out)
+    {
+        double seconds = elapsedNanos/1000000000.0;
+
+        out.printf(
+            "Source at %.1f fps, %s display: %d frames shown in %.3f sec (%.1f fps), %d superseded before paint\n",
+            frameRate, headless? "offscreen": "on screen", panel.getNumFramesShown(), seconds,
+            panel.getNumFramesShown()/seconds, panel.getNumFramesSuperseded());
+        out.println("Frame time: " + panel.getFrameIntervals());
+        out.println("Capture to display latency: " + panel.getDisplayLatencies());
+        out.println("Paint time: " + StageMetrics.getInstance().getLatencies(StageMetrics.Stage.RENDER));
+        out.println("Event dispatch latency: " + dispatchLatencies);
+    }   //printSummary
+
+}   //class PaintBenchmark
@@ -0,0 +1,278 @@
+/*
+ * Copyright (c) 2018 Titan Robotics Club (http://www.titanrobotics.com)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+import java.awt.image.BufferedImage;
+
+import com.google.zxing.Result;
+import com.google.zxing.ResultPoint;
+
+/**
+ * This class implements a coarse to fine decode strategy for large images. The image is seen as a pyramid of levels,
+ * level 0 being full size and each level above it half the size of the one below. Most QR codes in large images have
+ * modules several pixels wide and decode from a half or quarter scale level at a fraction of the cost, so the levels
+ * are tried from coarse to fine and the finer levels are only needed when the coarser ones fail. Each level is
+ * sampled straight from the image when it is first needed, so converting the full size image to luminance, which
+ * costs more than decoding a coarse level, is only paid for when the full size level is searched.
+ *
+ * The decoder remembers which level each image decoded at. The search starts at the coarsest level that succeeded
+ * recently, so a run of images that only decode at full size does not keep paying for the coarse levels, and every
+ * few images the search starts from the coarsest level again to notice when coarser levels start to work. All level
+ * buffers are kept between calls. A pyramid decoder is not thread-safe, getThreadDecoder() returns a lazily created
+ * decoder for the calling thread.
+ */
+public class PyramidDecoder
+{
+    //
+    // Halving stops before a level gets smaller than this, below which QR codes of typical versions and sizes no
+    // longer have enough pixels per module.
+    //
+    private static final int MIN_LEVEL_SIZE = 240;
+    private static final int MAX_LEVELS = 6;
+    //
+    // A level that has not succeeded within this many decodes is no longer a starting level, and every so many
+    // decodes the search starts at the coarsest level regardless.
+    //
+    private static final int ADAPT_WINDOW = 32;
+    private static final int PROBE_INTERVAL = 16;
+
+    private static final ThreadLocal<PyramidDecoder> threadDecoder =
+        ThreadLocal.withInitial(() -> new PyramidDecoder(QRDecoderSession.getThreadSession()));
+
+    private final QRDecoderSession session;
+    private final byte[][] levels = new byte[MAX_LEVELS][];
+    private final int[] levelWidths = new int[MAX_LEVELS];
+    private final int[] levelHeights = new int[MAX_LEVELS];
+    private final boolean[] levelBuilt = new boolean[MAX_LEVELS];
+    private final long[] lastSuccess = new long[MAX_LEVELS];
+    private final long[] numSuccesses = new long[MAX_LEVELS];
+    private long numDecodes = 0;
+    private long numFailures = 0;
+    private long numLevelsTried = 0;
+
+    /**
+     * Constructor: Create an instance of the object.
+     *
+     * @param session specifies the decoder session to decode the levels with.
+     */
+    public PyramidDecoder(QRDecoderSession session)
+    {
+        this.session = session;
+    }   //PyramidDecoder
+
+    /**
+     * This method returns the pyramid decoder of the calling thread, creating it on first use.
+     *
+     * @return pyramid decoder of the calling thread.
+     */
+    public static PyramidDecoder getThreadDecoder()
+    {
+        return threadDecoder.get();
+    }   //getThreadDecoder
+
+    /**
+     * This method returns the number of images decoded at the given level.
+     *
+     * @param level specifies the pyramid level, 0 being full size.
+     * @return number of successful decodes at the level.
+     */
+    public long getNumSuccesses(int level)
+    {
+        return numSuccesses[level];
+    }   //getNumSuccesses
+
+    /**
+     * This method returns the number of images no level could be decoded at.
+     *
+     * @return number of failed decodes.
+     */
+    public long getNumFailures()
+    {
+        return numFailures;
+    }   //getNumFailures
+
+    /**
+     * This method returns the average number of levels searched per image.
+     *
+     * @return levels searched per decode.
+     */
+    public double getLevelsPerDecode()
+    {
+        return numDecodes > 0? (double)numLevelsTried/numDecodes: 0.0;
+    }   //getLevelsPerDecode
+
+    /**
+     * This method decodes the QR code from the given image, searching the pyramid levels from coarse to fine.
+     *
+     * @param image specifies the image.
+     * @return decode result with result points in full size image coordinates, null if there is no QR code found.
+     */
+    public Result decode(BufferedImage image)
+    {
+        int numLevels = getNumLevels(image);
+        int startLevel = numDecodes % PROBE_INTERVAL == 0? numLevels - 1: getStartLevel(numLevels);
+        Result result = null;
+        int foundLevel = -1;
+
+        numDecodes++;
+        //
+        // Search from the starting level down to full size, then the coarser levels skipped at the start.
+        //
+        for (int level = startLevel; result == null && level >= 0; level--)
+        {
+            result = decodeLevel(image, level);
+            foundLevel = level;
+        }
+
+        for (int level = startLevel + 1; result == null && level < numLevels; level++)
+        {
+            result = decodeLevel(image, level);
+            foundLevel = level;
+        }
+
+        if (result != null)
+        {
+            lastSuccess[foundLevel] = numDecodes;
+            numSuccesses[foundLevel]++;
+        }
+        else
+        {
+            numFailures++;
+        }
+        StageMetrics.getInstance().decodeCompleted(result != null);
+
+        return result;
+    }   //decode
+
+    /**
+     * This method decodes a QR code image and returns the resulting message.
+     * Note: if there is no QR code in the image, it will throw a RuntimeException.
+     *
+     * @param image specifies the QR code image to be decoded.
+     * @return decoded message.
+     */
+    public String decodeMessage(BufferedImage image)
+    {
+        Result result = decode(image);
+
+        if (result == null)
+        {
+            throw new RuntimeException("QR code not found in image.");
+        }
+
+        return result.getText();
+    }   //decodeMessage
+
+    /**
+     * This method returns the level to start the search at: the coarsest level that succeeded recently, or the
+     * coarsest level if none did.
+     *
+     * @param numLevels specifies the number of levels of the current image.
+     * @return starting level.
+     */
+    private int getStartLevel(int numLevels)
+    {
+        for (int level = numLevels - 1; level >= 0; level--)
+        {
+            if (lastSuccess[level] > 0 && numDecodes - lastSuccess[level] < ADAPT_WINDOW)
+            {
+                return level;
+            }
+        }
+
+        return numLevels - 1;
+    }   //getStartLevel
+
+    /**
+     * This method searches one level and scales the result points back to full size.
+     *
+     * @param image specifies the image.
+     * @param level specifies the pyramid level.
+     * @return decode result, null if there is no QR code found.
+     */
+    private Result decodeLevel(BufferedImage image, int level)
+    {
+        if (!levelBuilt[level])
+        {
+            levels[level] = ensureCapacity(levels[level], levelWidths[level]*levelHeights[level]);
+            session.toLuminance(image, levels[level], 1 << level);
+            levelBuilt[level] = true;
+        }
+
+        numLevelsTried++;
+        Result result = session.decode(
+            levels[level], levelWidths[level], levelHeights[level], FrameLuminanceSource.BYTES_PER_PIXEL_GRAY);
+
+        if (result != null && level > 0 && result.getResultPoints() != null)
+        {
+            ResultPoint[] points = result.getResultPoints();
+            int scale = 1 << level;
+
+            for (int i = 0; i < points.length; i++)
+            {
+                if (points[i] != null)
+                {
+                    points[i] = new ResultPoint(points[i].getX()*scale, points[i].getY()*scale);
+                }
+            }
+        }
+
+        return result;
+    }   //decodeLevel
+
+    /**
+     * This method works out the levels of the pyramid of the image. The levels are not built until needed.
+     *
+     * @param image specifies the image.
+     * @return number of levels.
+     */
+    private int getNumLevels(BufferedImage image)
+    {
+        int width = image.getWidth();
+        int height = image.getHeight();
+        int numLevels = 0;
+
+        do
+        {
+            levelWidths[numLevels] = width;
+            levelHeights[numLevels] = height;
+            levelBuilt[numLevels] = false;
+            numLevels++;
+            width /= 2;
+            height /= 2;
+        } while (numLevels < MAX_LEVELS && Math.min(width, height) >= MIN_LEVEL_SIZE);
+
+        return numLevels;
+    }   //getNumLevels
+
+    /**
+     * This method returns a buffer of at least the given size, reusing the given one if it is big enough.
+     *
+     * @param buffer specifies the current buffer, can be null.
+     * @param size specifies the required size.
+     * @return buffer of at least the required size.
+     */
+    private static byte[] ensureCapacity(byte[] buffer, int size)
+    {
+        return buffer != null && buffer.length >= size? buffer: new byte[size];
+    }   //ensureCapacity
+
+}   //class PyramidDecoder
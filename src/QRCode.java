@@ -23,18 +23,19 @@
 import java.awt.image.BufferedImage;
 import java.io.File;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
 
 import javax.imageio.ImageIO;
 
 import com.google.zxing.BarcodeFormat;
-import com.google.zxing.BinaryBitmap;
-import com.google.zxing.MultiFormatReader;
+import com.google.zxing.EncodeHintType;
 import com.google.zxing.MultiFormatWriter;
-import com.google.zxing.NotFoundException;
+import com.google.zxing.Result;
 import com.google.zxing.WriterException;
-import com.google.zxing.client.j2se.BufferedImageLuminanceSource;
-import com.google.zxing.client.j2se.MatrixToImageWriter;
-import com.google.zxing.common.HybridBinarizer;
 
 /**
  * This class implements a simple QR Code encoder/decoder providing easy to use methods to encode messages into
@@ -43,8 +44,28 @@ import com.google.zxing.common.HybridBinarizer;
  */
 public class QRCode
 {
+    //
+    // Label printers keep asking for the same few thousand codes, keep that many around. A 640x480 bilevel image
+    // takes 38400 bytes, so the byte bound fits the entry bound at that size.
+    //
+    private static final int ENCODE_CACHE_MAX_ENTRIES = 4096;
+    private static final long ENCODE_CACHE_MAX_BYTES = 160L*1024*1024;
+    private static final EncodeCache encodeCache = new EncodeCache(ENCODE_CACHE_MAX_ENTRIES, ENCODE_CACHE_MAX_BYTES);
+    //
+    // Byte mode capacity of the largest QR code at the default error correction level. ZXing writes at most one byte
+    // per character, so a message whose UTF-8 form fits is sure to fit in one QR code. Numeric and alphanumeric
+    // messages pack tighter and can fit up to the numeric mode capacity, so those are found by trying the encode.
+    //
+    private static final int MAX_SINGLE_SYMBOL_BYTES = 2953;
+    private static final int MAX_SINGLE_SYMBOL_CHARS = 7089;
+    private static final StructuredAppendEncoder sequenceEncoder = new StructuredAppendEncoder();
+    private static final TiledDecoder tiledDecoder = new TiledDecoder();
+    private static final TieredDecoder tieredDecoder = new TieredDecoder();
+
     /**
-     * This method encodes a message into QR code and returns the resulting image.
+     * This method encodes a message into QR code and returns the resulting image. The image is a packed bilevel
+     * image. With a width and height of zero, the image is at module resolution (one pixel per module, plus the
+     * quiet zone) and is meant to be scaled up with nearest-neighbour when drawn.
      * Note: if the message size is greater than the QR code capacity, it will throw a RuntimeException.
      *
      * @param msg specifies the message to be encoded.
@@ -54,45 +75,190 @@ public class QRCode
      */
     public static BufferedImage encodeMessage(String msg, int width, int height)
     {
-        BufferedImage image = null;
+        return encodeMessage(msg, width, height, null);
+    }   //encodeMessage
+
+    /**
+     * This method encodes a message into QR code with the given encode hints and returns the resulting image.
+     * Repeated requests are served from the encode cache, so the returned image is shared and must not be modified.
+     * A width and height of zero give an image at module resolution.
+     * Note: if the message size is greater than the QR code capacity, it will throw a RuntimeException.
+     *
+     * @param msg specifies the message to be encoded.
+     * @param width specifies the resulting image width in pixels.
+     * @param height specifies the resulting image height in pixels.
+     * @param hints specifies the encode hints (e.g. error correction level, margin), can be null.
+     * @return QR code image.
+     */
+    public static BufferedImage encodeMessage(String msg, int width, int height, Map<EncodeHintType, ?> hints)
+    {
+        BufferedImage image = encodeCache.get(msg, width, height, hints);
+
+        if (image == null)
+        {
+            image = encodeMessageUncached(msg, width, height, hints);
+            encodeCache.put(msg, width, height, hints, image);
+        }
 
+        return image;
+    }   //encodeMessage
+
+    /**
+     * This method encodes a message into QR code without going through the encode cache. It is meant for bulk work
+     * where every message is encoded once, so caching would only push out the entries worth keeping.
+     * Note: if the message size is greater than the QR code capacity, it will throw a RuntimeException.
+     *
+     * @param msg specifies the message to be encoded.
+     * @param width specifies the resulting image width in pixels.
+     * @param height specifies the resulting image height in pixels.
+     * @param hints specifies the encode hints, can be null.
+     * @return QR code image.
+     */
+    public static BufferedImage encodeMessageUncached(String msg, int width, int height, Map<EncodeHintType, ?> hints)
+    {
         try
         {
-            image = MatrixToImageWriter.toBufferedImage(
-                new MultiFormatWriter().encode(msg, BarcodeFormat.QR_CODE, width, height));
+            return BitMatrixRenderer.toBufferedImage(
+                new MultiFormatWriter().encode(msg, BarcodeFormat.QR_CODE, width, height, hints));
         }
         catch (WriterException e)
         {
             throw new RuntimeException("Failed to encode message: " + e.getMessage());
         }
+    }   //encodeMessageUncached
 
-        return image;
-    }   //encodeMessage
+    /**
+     * This method encodes a message of any size up to the capacity of a Structured Append sequence. A message that
+     * fits in one QR code is encoded by encodeMessage, anything larger is split into a sequence of QR codes encoded
+     * in parallel, which a reader puts back together with StructuredAppendAssembler.
+     * Note: if the message size is greater than the sequence capacity, it will throw a RuntimeException.
+     *
+     * @param msg specifies the message to be encoded.
+     * @param width specifies the width in pixels of each image.
+     * @param height specifies the height in pixels of each image.
+     * @return QR code images, a single one if the message fits in one QR code, the sequence in order otherwise.
+     */
+    public static List<BufferedImage> encodeMessages(String msg, int width, int height)
+    {
+        if (fitsOneSymbol(msg))
+        {
+            return Collections.singletonList(encodeMessage(msg, width, height));
+        }
+
+        BufferedImage image = encodeOneSymbol(msg, width, height, null);
+        return image != null? Collections.singletonList(image): sequenceEncoder.encodeMessage(msg, width, height);
+    }   //encodeMessages
 
     /**
-     * This method decodes a QR code image and returns the resulting message.
-     * Note: if there is no QR code in the image, it will throw a RuntimeException.
+     * This method encodes a message into one QR code without going through the encode cache, or returns null if the
+     * message is too big for one QR code and needs a Structured Append sequence.
+     * Note: if the encode fails for any other reason, it will throw a RuntimeException.
      *
-     * @param image specifies the QR code image to be decoded.
-     * @return decoded message.
+     * @param msg specifies the message to be encoded.
+     * @param width specifies the resulting image width in pixels.
+     * @param height specifies the resulting image height in pixels.
+     * @param hints specifies the encode hints, can be null.
+     * @return QR code image, null if the message does not fit in one QR code.
      */
-    public static String decodeMessage(BufferedImage image)
+    public static BufferedImage encodeOneSymbol(String msg, int width, int height, Map<EncodeHintType, ?> hints)
     {
-        String msg = null;
+        if (msg.length() > MAX_SINGLE_SYMBOL_CHARS)
+        {
+            return null;
+        }
 
         try
         {
-            msg = new MultiFormatReader().decode(
-                    new BinaryBitmap(new HybridBinarizer(new BufferedImageLuminanceSource(image)))).getText();
+            return BitMatrixRenderer.toBufferedImage(
+                new MultiFormatWriter().encode(msg, BarcodeFormat.QR_CODE, width, height, hints));
         }
-        catch (NotFoundException e)
+        catch (WriterException e)
         {
-            throw new RuntimeException("QR code not found in image: " + e.getMessage());
+            //
+            // ZXing reports a message over the capacity of the largest version as "Data too big".
+            //
+            if (fitsOneSymbol(msg) || e.getMessage() == null || !e.getMessage().startsWith("Data too big"))
+            {
+                throw new RuntimeException("Failed to encode message: " + e.getMessage());
+            }
+            return null;
         }
+    }   //encodeOneSymbol
+
+    /**
+     * This method checks if a message is sure to fit in one QR code at the default error correction level. A
+     * numeric or alphanumeric message can still fit when this returns false, encodeOneSymbol gives the final answer.
+     *
+     * @param msg specifies the message.
+     * @return true if the message is sure to fit in one QR code.
+     */
+    public static boolean fitsOneSymbol(String msg)
+    {
+        return msg.length() <= MAX_SINGLE_SYMBOL_BYTES &&
+               msg.getBytes(StandardCharsets.UTF_8).length <= MAX_SINGLE_SYMBOL_BYTES;
+    }   //fitsOneSymbol
 
-        return msg;
+    /**
+     * This method returns the cache of encoded images, mainly to read its counters.
+     *
+     * @return encode cache.
+     */
+    public static EncodeCache getEncodeCache()
+    {
+        return encodeCache;
+    }   //getEncodeCache
+
+    /**
+     * This method returns the shared tiered decoder used by decodeMessage.
+     *
+     * @return tiered decoder.
+     */
+    public static TieredDecoder getTieredDecoder()
+    {
+        return tieredDecoder;
+    }   //getTieredDecoder
+
+    /**
+     * This method decodes a QR code image and returns the resulting message. It goes through the shared tiered
+     * decoder, so an easy image is decoded by a cheap tier and a hard one still gets the expensive tiers. Each thread
+     * reuses its own decoder session and luminance buffers.
+     * Note: if there is no QR code in the image, it will throw a RuntimeException.
+     *
+     * @param image specifies the QR code image to be decoded.
+     * @return decoded message.
+     */
+    public static String decodeMessage(BufferedImage image)
+    {
+        return tieredDecoder.decodeMessage(image);
     }   //decodeMessage
 
+    /**
+     * This method decodes a QR code image and returns the resulting message, searching half, quarter and smaller
+     * scale copies of the image before the full size one. It is much faster for large images of QR codes with wide
+     * modules. It uses the pyramid decoder of the calling thread, which adapts its starting scale to the images it
+     * has decoded.
+     * Note: if there is no QR code in the image, it will throw a RuntimeException.
+     *
+     * @param image specifies the QR code image to be decoded.
+     * @return decoded message.
+     */
+    public static String decodeMessagePyramid(BufferedImage image)
+    {
+        return PyramidDecoder.getThreadDecoder().decodeMessage(image);
+    }   //decodeMessagePyramid
+
+    /**
+     * This method finds every QR code in an image and returns their messages and positions. Large images are split
+     * into overlapping tiles searched in parallel on the common fork-join pool.
+     *
+     * @param image specifies the image to be decoded.
+     * @return QR codes found, an empty list if there is none.
+     */
+    public static List<QRSymbol> decodeAll(BufferedImage image)
+    {
+        return tiledDecoder.decodeAll(image);
+    }   //decodeAll
+
     /**
      * This method encodes a message into QR code and writes the resulting image to the specified file.
      *
@@ -104,14 +270,35 @@ public class QRCode
      */
     public static void writeMessage(String msg, int width, int height, String filePath) throws IOException
     {
-        ImageIO.write(
-            encodeMessage(msg, width, height),
-            filePath.substring(filePath.lastIndexOf('.') + 1),
-            new File(filePath));
+        writeImage(encodeMessage(msg, width, height), new File(filePath));
     }   //writeMessage
 
     /**
-     * This method decodes a QR code image file and returns the resulting message.
+     * This method writes an image to a file in the format given by the file name extension. Black and white PNGs
+     * (such as the QR code images encoded by this class) go through the specialised 1-bit PNG writer, anything else
+     * goes through ImageIO.
+     *
+     * @param image specifies the image.
+     * @param file specifies the file to write to.
+     * @throws IOException if the operation failed (e.g. invalid file path or unknown format).
+     */
+    public static void writeImage(BufferedImage image, File file) throws IOException
+    {
+        String formatName = file.getName().substring(file.getName().lastIndexOf('.') + 1);
+
+        if (formatName.equalsIgnoreCase("png") && QRPngWriter.canWrite(image))
+        {
+            QRPngWriter.getThreadWriter().write(image, file);
+        }
+        else if (!ImageIO.write(image, formatName, file))
+        {
+            throw new IOException("No image writer for format " + formatName);
+        }
+    }   //writeImage
+
+    /**
+     * This method decodes a QR code image file and returns the resulting message. A PGM file is memory mapped and
+     * decoded as raw luminance instead of going through ImageIO.
      * 
      * @param filePath specifies the QR code image file.
      * @return decoded message.
@@ -119,7 +306,40 @@ public class QRCode
      */
     public static String readMessage(String filePath) throws IOException
     {
-        return decodeMessage(ImageIO.read(new File(filePath)));
+        return RawFrameFile.isPgmFile(filePath)?
+            readRawMessage(new File(filePath), 0, 0): decodeMessage(ImageIO.read(new File(filePath)));
     }   //readMessage
 
+    /**
+     * This method decodes the first frame of a raw grayscale frame file and returns the resulting message. The frame
+     * is memory mapped and handed to the decoder as luminance, with no image decoding and no intermediate image.
+     * Note: if there is no QR code in the frame, it will throw a RuntimeException.
+     *
+     * @param file specifies the raw frame file.
+     * @param width specifies the frame width in pixels of a headerless Y8 file, zero for a PGM file.
+     * @param height specifies the frame height in pixels of a headerless Y8 file, zero for a PGM file.
+     * @return decoded message.
+     * @throws IOException if the operation failed (e.g. invalid file path or malformed file).
+     */
+    public static String readRawMessage(File file, int width, int height) throws IOException
+    {
+        try (RawFrameFile frames = new RawFrameFile(file, width, height))
+        {
+            ByteBuffer frame = frames.nextFrame();
+            if (frame == null)
+            {
+                throw new IOException(file + " has no frames.");
+            }
+
+            Result result = QRDecoderSession.getThreadSession().decode(
+                frame, frames.getFrameWidth(), frames.getFrameHeight());
+            if (result == null)
+            {
+                throw new RuntimeException("QR code not found in image.");
+            }
+
+            return result.getText();
+        }
+    }   //readRawMessage
+
 }   //class QRCode
@@ -25,8 +25,19 @@ import java.awt.event.ActionListener;
 import java.awt.event.WindowEvent;
 import java.awt.event.WindowListener;
 import java.awt.image.BufferedImage;
+import java.io.BufferedOutputStream;
 import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.PrintStream;
+import java.lang.reflect.InvocationTargetException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
 
 import javax.imageio.ImageIO;
 import javax.swing.JApplet;
@@ -34,6 +45,12 @@ import javax.swing.JFrame;
 import javax.swing.JLabel;
 import javax.swing.JOptionPane;
 import javax.swing.JTextField;
+import javax.swing.SwingUtilities;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
+
+import com.google.zxing.Result;
+import com.google.zxing.qrcode.decoder.ErrorCorrectionLevel;
 
 /**
  * This program can take a text message and generate a QR code or it can take a QR code image and decode the
@@ -44,10 +61,35 @@ import javax.swing.JTextField;
  * or
  *      java -jar qrcodeapp.jar msg="<MessageText>"
  *
+ * It can also run headless to decode all the image files in a directory tree:
+ *      java -jar qrcodeapp.jar decode-batch dir=<Dir> [threads=<n>] [ordered=true|false]
+ *                              [strategy=single|tiered|multi|pyramid] [tiers=<Tier>,...] [limit=<msec>]
+ *                              [out=<JsonlFile>]
+ * or to decode every frame of a raw grayscale capture file, PGM images or headerless Y8 frames of the given size:
+ *      java -jar qrcodeapp.jar decode-frames file=<File> [width=<n> height=<n>] [out=<JsonlFile>]
+ * or to encode a whole file of messages, one per line or as name,message CSV records, splitting the messages too
+ * long for one QR code into Structured Append sequences of QR codes up to the given version (40 by default):
+ *      java -jar qrcodeapp.jar encode-batch in=<File> dir=<OutputDir> [csv=true|false] [width=<n>] [height=<n>]
+ *                              [threads=<n>] [writers=<n>] [format=<ImageFormat>] [version=<n>]
+ * or measure the live scan pipeline against a stand-in camera, either synthetic frames or a recording played back,
+ * optionally recording the frames captured:
+ *      java -jar qrcodeapp.jar scan-bench [msg=<Message>] [interval=<msec>] [idle=<msec>] [duration=<msec>]
+ *                              [roi=true|false] [change=<levels>] [static=true|false]
+ *                              [replay=<RingFile> [pace=original|fixed|max] [fps=<n>] [loop=true|false]]
+ *                              [record=<RingFile> [frames=<n>]]
+ * or measure the frame time and paint cost of the camera display against a synthetic camera:
+ *      java -jar qrcodeapp.jar paint-bench [fps=<n>] [duration=<msec>]
+ * or run the micro benchmarks of the encode, decode and frame conversion hot paths:
+ *      java -jar qrcodeapp.jar bench [filter=<Substring>] [warmup=<n>] [iterations=<n>] [time=<msec>]
+ * or serve encode and decode requests over HTTP, and load test the service:
+ *      java -jar qrcodeapp.jar serve [port=<n>] [bind=<Address>] [threads=<n>] [queue=<n>]
+ *      java -jar qrcodeapp.jar load-test [url=<BaseUrl>] [endpoint=encode|decode] [clients=<n>] [duration=<msec>]
+ *                              [msg=<Message>]
+ *
  * When the program starts up, it will display the message and the corresponding QR code image. It also allows the
  * user to save the QR code image to a file by doing "File->Save Image".
  */
-public class QRCodeApp extends JApplet implements ActionListener, WindowListener
+public class QRCodeApp extends JApplet implements ActionListener, DocumentListener, WindowListener, ScanListener
 {
     private static final long serialVersionUID = 1L;
     public static final String PROGRAM_TITLE = "QR Code Application";
@@ -57,6 +99,7 @@ public class QRCodeApp extends JApplet implements ActionListener, WindowListener
     private static final int ERROR_NONE = 0;
     private static final int ERROR_INVALID_NUM_ARGUMENTS = -1;
     private static final int ERROR_INVALID_ARGUMENT = -2;
+    private static final int ERROR_OPERATION_FAILED = -3;
 
     private static final int IMAGE_WIDTH = 640;
     private static final int IMAGE_HEIGHT = 480;
@@ -74,6 +117,10 @@ public class QRCodeApp extends JApplet implements ActionListener, WindowListener
     private static final int MSG_LABEL_Y = FRAME_HEIGHT - MSG_HEIGHT - BORDER_SIZE - 50;
     private static final int MSG_X = BORDER_SIZE + MSG_LABEL_WIDTH;
     private static final int MSG_Y = MSG_LABEL_Y;
+    //
+    // A recording keeps the last 300 frames, 30 seconds of camera frames at 10fps.
+    //
+    private static final int RECORD_CAPACITY = 300;
 
     private static String imageFile = null;
     private static String msg = null;
@@ -82,6 +129,13 @@ public class QRCodeApp extends JApplet implements ActionListener, WindowListener
     private ImagePanel imagePanel = new ImagePanel();
     private JLabel msgLabel = new JLabel("Message:");
     private JTextField msgPanel = new JTextField();
+    private String encodedMsg = null;
+    private final LiveEncoder liveEncoder = new LiveEncoder(this::messageEncoded, LiveEncoder.DEFAULT_DEBOUNCE_MSEC);
+    private boolean settingMessageText = false;
+    private LiveScanner liveScanner = null;
+    private final ScanEventBus scanEvents = new ScanEventBus();
+    private final StructuredAppendAssembler sequenceAssembler = new StructuredAppendAssembler();
+    private boolean scanEventsStarted = false;
 
     /**
      * This is the entry point of the program. It parses the parameters, creates the main window of the program,
@@ -93,7 +147,39 @@ public class QRCodeApp extends JApplet implements ActionListener, WindowListener
     {
         int exitCode = ERROR_NONE;
 
-        if (args.length > 1)
+        if (args.length > 0 && args[0].equalsIgnoreCase(BatchDecoder.MODE_NAME))
+        {
+            exitCode = decodeBatch(args);
+        }
+        else if (args.length > 0 && args[0].equalsIgnoreCase(FrameFileDecoder.MODE_NAME))
+        {
+            exitCode = decodeFrames(args);
+        }
+        else if (args.length > 0 && args[0].equalsIgnoreCase(BatchEncoder.MODE_NAME))
+        {
+            exitCode = encodeBatch(args);
+        }
+        else if (args.length > 0 && args[0].equalsIgnoreCase(ScanBenchmark.MODE_NAME))
+        {
+            exitCode = scanBench(args);
+        }
+        else if (args.length > 0 && args[0].equalsIgnoreCase(PaintBenchmark.MODE_NAME))
+        {
+            exitCode = paintBench(args);
+        }
+        else if (args.length > 0 && args[0].equalsIgnoreCase(MicroBenchmark.MODE_NAME))
+        {
+            exitCode = microBench(args);
+        }
+        else if (args.length > 0 && args[0].equalsIgnoreCase(QRServer.MODE_NAME))
+        {
+            exitCode = serve(args);
+        }
+        else if (args.length > 0 && args[0].equalsIgnoreCase(LoadTest.MODE_NAME))
+        {
+            exitCode = loadTest(args);
+        }
+        else if (args.length > 1)
         {
             //
             // Must have zero or one parameter.
@@ -164,8 +250,496 @@ public class QRCodeApp extends JApplet implements ActionListener, WindowListener
     {
         System.out.printf("%s %s\n%s\n", PROGRAM_TITLE, PROGRAM_VERSION, COPYRIGHT_MSG);
         System.out.println("Usage: %s [file=<ImageFile> | msg=<Message>]");
+        System.out.printf(
+            "       %s dir=<Dir> [threads=<n>] [ordered=true|false] [strategy=single|tiered|multi|pyramid]" +
+            " [tiers=<Tier>,...] [limit=<msec>] [out=<JsonlFile>]\n",
+            BatchDecoder.MODE_NAME);
+        System.out.printf(
+            "       %s file=<File> [width=<n> height=<n>] [out=<JsonlFile>]\n", FrameFileDecoder.MODE_NAME);
+        System.out.printf(
+            "       %s in=<File> dir=<OutputDir> [csv=true|false] [width=<n>] [height=<n>] [threads=<n>]" +
+            " [writers=<n>] [format=<ImageFormat>] [version=<n>]\n",
+            BatchEncoder.MODE_NAME);
+        System.out.printf(
+            "       %s [msg=<Message>] [interval=<msec>] [idle=<msec>] [duration=<msec>] [roi=true|false]" +
+            " [change=<levels>] [static=true|false]\n" +
+            "           [replay=<RingFile> [pace=original|fixed|max] [fps=<n>] [loop=true|false]]" +
+            " [record=<RingFile> [frames=<n>]]\n",
+            ScanBenchmark.MODE_NAME);
+        System.out.printf("       %s [fps=<n>] [duration=<msec>]\n", PaintBenchmark.MODE_NAME);
+        System.out.printf(
+            "       %s [filter=<Substring>] [warmup=<n>] [iterations=<n>] [time=<msec>]\n", MicroBenchmark.MODE_NAME);
+        System.out.printf(
+            "       %s [port=<n>] [bind=<Address>] [threads=<n>] [queue=<n>]\n", QRServer.MODE_NAME);
+        System.out.printf(
+            "       %s [url=<BaseUrl>] [endpoint=encode|decode] [clients=<n>] [duration=<msec>] [msg=<Message>]\n",
+            LoadTest.MODE_NAME);
     }   //printUsage
 
+    /**
+     * This method parses the parameters of a headless mode. Each parameter must be in the form of:
+     *  <name>=<value>
+     *
+     * @param args specifies the command line parameters.
+     * @param startIndex specifies the index of the first parameter to parse.
+     * @return map of lower case parameter names to values, null if any parameter is malformed.
+     */
+    private static Map<String, String> parseParams(String[] args, int startIndex)
+    {
+        Map<String, String> params = new HashMap<>();
+
+        for (int i = startIndex; i < args.length; i++)
+        {
+            int sepIndex = args[i].indexOf('=');
+            if (sepIndex <= 0)
+            {
+                return null;
+            }
+            params.put(args[i].substring(0, sepIndex).toLowerCase(), args[i].substring(sepIndex + 1));
+        }
+
+        return params;
+    }   //parseParams
+
+    /**
+     * This method runs the headless batch decode mode. The JSON lines go to the output file or standard output,
+     * the summary goes to standard error so it never mixes with the records.
+     *
+     * @param args specifies the command line parameters, the first one being the mode name.
+     * @return exit code.
+     */
+    private static int decodeBatch(String[] args)
+    {
+        Map<String, String> params = parseParams(args, 1);
+        if (params == null || !params.containsKey("dir"))
+        {
+            return ERROR_INVALID_ARGUMENT;
+        }
+
+        int exitCode = ERROR_NONE;
+        File dir = new File(params.get("dir"));
+        String outFile = params.get("out");
+        int numThreads;
+        BatchDecoder.Strategy strategy;
+        TieredDecoder tieredDecoder = null;
+
+        try
+        {
+            numThreads = Integer.parseInt(params.getOrDefault("threads", "0"));
+            strategy = BatchDecoder.Strategy.valueOf(
+                params.getOrDefault("strategy", "single").toUpperCase(Locale.ROOT));
+            if (params.containsKey("tiers") || params.containsKey("limit"))
+            {
+                tieredDecoder = new TieredDecoder(
+                    params.containsKey("tiers")?
+                        TieredDecoder.parseTiers(params.get("tiers")): Arrays.asList(TieredDecoder.Tier.values()),
+                    Long.parseLong(params.getOrDefault("limit", Long.toString(TieredDecoder.DEFAULT_TIME_LIMIT_MSEC))),
+                    true);
+            }
+        }
+        catch (IllegalArgumentException e)
+        {
+            return ERROR_INVALID_ARGUMENT;
+        }
+
+        try (PrintStream out = new PrintStream(
+                new BufferedOutputStream(outFile != null? new FileOutputStream(outFile): System.out), false, "UTF-8"))
+        {
+            BatchDecoder decoder = new BatchDecoder(
+                dir, numThreads, Boolean.parseBoolean(params.getOrDefault("ordered", "false")), strategy,
+                tieredDecoder, out);
+            decoder.run();
+            decoder.printSummary(System.err);
+        }
+        catch (IOException e)
+        {
+            System.err.println("Batch decode failed: " + e.getMessage());
+            exitCode = ERROR_OPERATION_FAILED;
+        }
+
+        return exitCode;
+    }   //decodeBatch
+
+    /**
+     * This method runs the headless capture file decode mode. Records go to the output file or standard output, the
+     * summary goes to standard error.
+     *
+     * @param args specifies the command line parameters, the first one being the mode name.
+     * @return exit code.
+     */
+    private static int decodeFrames(String[] args)
+    {
+        Map<String, String> params = parseParams(args, 1);
+        if (params == null || !params.containsKey("file"))
+        {
+            return ERROR_INVALID_ARGUMENT;
+        }
+
+        int exitCode = ERROR_NONE;
+        String outFile = params.get("out");
+        int width;
+        int height;
+
+        try
+        {
+            width = Integer.parseInt(params.getOrDefault("width", "0"));
+            height = Integer.parseInt(params.getOrDefault("height", "0"));
+        }
+        catch (NumberFormatException e)
+        {
+            return ERROR_INVALID_ARGUMENT;
+        }
+
+        if (width < 0 || height < 0 || (width == 0) != (height == 0))
+        {
+            return ERROR_INVALID_ARGUMENT;
+        }
+
+        try (PrintStream out = new PrintStream(
+                new BufferedOutputStream(outFile != null? new FileOutputStream(outFile): System.out), false, "UTF-8"))
+        {
+            FrameFileDecoder decoder = new FrameFileDecoder(new File(params.get("file")), width, height, out);
+            decoder.run();
+            out.flush();
+            decoder.printSummary(System.err);
+        }
+        catch (IOException e)
+        {
+            System.err.println("Frame decode failed: " + e.getMessage());
+            exitCode = ERROR_OPERATION_FAILED;
+        }
+
+        return exitCode;
+    }   //decodeFrames
+
+    /**
+     * This method runs the headless bulk encode mode. Failed records are reported on standard error as they happen,
+     * the summary goes to standard output at the end.
+     *
+     * @param args specifies the command line parameters, the first one being the mode name.
+     * @return exit code.
+     */
+    private static int encodeBatch(String[] args)
+    {
+        Map<String, String> params = parseParams(args, 1);
+        if (params == null || !params.containsKey("in") || !params.containsKey("dir"))
+        {
+            return ERROR_INVALID_ARGUMENT;
+        }
+
+        int exitCode = ERROR_NONE;
+        BatchEncoder encoder;
+
+        try
+        {
+            encoder = new BatchEncoder(
+                new File(params.get("in")), new File(params.get("dir")),
+                Boolean.parseBoolean(params.getOrDefault("csv", "false")),
+                Integer.parseInt(params.getOrDefault("width", Integer.toString(IMAGE_WIDTH))),
+                Integer.parseInt(params.getOrDefault("height", Integer.toString(IMAGE_HEIGHT))),
+                Integer.parseInt(params.getOrDefault("threads", "0")),
+                Integer.parseInt(params.getOrDefault("writers", "2")),
+                params.getOrDefault("format", "png"));
+            if (params.containsKey("version"))
+            {
+                encoder.setSequenceEncoder(new StructuredAppendEncoder(
+                    ErrorCorrectionLevel.L, Integer.parseInt(params.get("version")), ForkJoinPool.commonPool()));
+            }
+        }
+        catch (IllegalArgumentException e)
+        {
+            //
+            // Also catches NumberFormatException.
+            //
+            return ERROR_INVALID_ARGUMENT;
+        }
+
+        try
+        {
+            encoder.run();
+            encoder.printSummary(System.out);
+        }
+        catch (IOException e)
+        {
+            System.err.println("Batch encode failed: " + e.getMessage());
+            exitCode = ERROR_OPERATION_FAILED;
+        }
+
+        return exitCode;
+    }   //encodeBatch
+
+    /**
+     * This method runs the headless live scan benchmark with a synthetic frame source or a recording played back.
+     *
+     * @param args specifies the command line parameters, the first one being the mode name.
+     * @return exit code.
+     */
+    private static int scanBench(String[] args)
+    {
+        Map<String, String> params = parseParams(args, 1);
+        if (params == null)
+        {
+            return ERROR_INVALID_ARGUMENT;
+        }
+
+        FrameSource source;
+        long interval;
+        long idleInterval;
+        long duration;
+        double changeThreshold;
+        int recordCapacity;
+
+        try
+        {
+            if (params.containsKey("replay"))
+            {
+                //
+                // A recording paces itself, so capture as fast as it delivers frames by default.
+                //
+                source = new ReplayFrameSource(
+                    new File(params.get("replay")),
+                    ReplayFrameSource.Pace.valueOf(params.getOrDefault("pace", "original").toUpperCase(Locale.ROOT)),
+                    params.containsKey("fps")?
+                        Double.parseDouble(params.get("fps")): ReplayFrameSource.DEFAULT_FRAME_RATE,
+                    Boolean.parseBoolean(params.getOrDefault("loop", "false")));
+                interval = Long.parseLong(params.getOrDefault("interval", "0"));
+            }
+            else
+            {
+                source = new SyntheticFrameSource(
+                    params.getOrDefault("msg", PROGRAM_TITLE), IMAGE_WIDTH, IMAGE_HEIGHT, 30,
+                    !Boolean.parseBoolean(params.getOrDefault("static", "false")));
+                interval = Long.parseLong(params.getOrDefault("interval", "100"));
+            }
+            idleInterval = Long.parseLong(params.getOrDefault("idle", "0"));
+            duration = Long.parseLong(params.getOrDefault("duration", "10000"));
+            changeThreshold = params.containsKey("change")?
+                Double.parseDouble(params.get("change")): LiveScanner.DEFAULT_CHANGE_THRESHOLD;
+            recordCapacity = Integer.parseInt(params.getOrDefault("frames", "300"));
+        }
+        catch (IllegalArgumentException e)
+        {
+            return ERROR_INVALID_ARGUMENT;
+        }
+
+        if (interval < 0 || recordCapacity <= 0)
+        {
+            return ERROR_INVALID_ARGUMENT;
+        }
+
+        ScanBenchmark benchmark = new ScanBenchmark(
+            source, interval, idleInterval, Boolean.parseBoolean(params.getOrDefault("roi", "true")), changeThreshold);
+        if (params.containsKey("record"))
+        {
+            benchmark.setRecording(new File(params.get("record")), recordCapacity);
+        }
+
+        try
+        {
+            if (!benchmark.run(duration))
+            {
+                System.err.println("Failed to open the frame source.");
+                return ERROR_OPERATION_FAILED;
+            }
+        }
+        catch (IOException e)
+        {
+            System.err.println("Failed to record frames: " + e.getMessage());
+            return ERROR_OPERATION_FAILED;
+        }
+        benchmark.printSummary(System.out);
+
+        return ERROR_NONE;
+    }   //scanBench
+
+    /**
+     * This method runs the display benchmark with a synthetic camera.
+     *
+     * @param args specifies the command line parameters, the first one being the mode name.
+     * @return exit code.
+     */
+    private static int paintBench(String[] args)
+    {
+        Map<String, String> params = parseParams(args, 1);
+        if (params == null)
+        {
+            return ERROR_INVALID_ARGUMENT;
+        }
+
+        double frameRate;
+        long duration;
+
+        try
+        {
+            frameRate = params.containsKey("fps")?
+                Double.parseDouble(params.get("fps")): PaintBenchmark.DEFAULT_FRAME_RATE;
+            duration = Long.parseLong(params.getOrDefault("duration", "10000"));
+        }
+        catch (NumberFormatException e)
+        {
+            return ERROR_INVALID_ARGUMENT;
+        }
+
+        if (!(frameRate > 0.0))
+        {
+            return ERROR_INVALID_ARGUMENT;
+        }
+
+        PaintBenchmark benchmark = new PaintBenchmark(IMAGE_WIDTH, IMAGE_HEIGHT, frameRate);
+        try
+        {
+            benchmark.run(duration);
+        }
+        catch (InterruptedException | InvocationTargetException e)
+        {
+            System.err.println("Display benchmark failed: " + e);
+            return ERROR_OPERATION_FAILED;
+        }
+        benchmark.printSummary(System.out);
+
+        return ERROR_NONE;
+    }   //paintBench
+
+    /**
+     * This method runs the micro benchmarks.
+     *
+     * @param args specifies the command line parameters, the first one being the mode name.
+     * @return exit code.
+     */
+    private static int microBench(String[] args)
+    {
+        Map<String, String> params = parseParams(args, 1);
+        if (params == null)
+        {
+            return ERROR_INVALID_ARGUMENT;
+        }
+
+        int warmupIterations;
+        int measureIterations;
+        long iterationMsec;
+
+        try
+        {
+            warmupIterations = Integer.parseInt(
+                params.getOrDefault("warmup", Integer.toString(MicroBenchmark.DEFAULT_WARMUP_ITERATIONS)));
+            measureIterations = Integer.parseInt(
+                params.getOrDefault("iterations", Integer.toString(MicroBenchmark.DEFAULT_MEASURE_ITERATIONS)));
+            iterationMsec = Long.parseLong(
+                params.getOrDefault("time", Long.toString(MicroBenchmark.DEFAULT_ITERATION_MSEC)));
+        }
+        catch (NumberFormatException e)
+        {
+            return ERROR_INVALID_ARGUMENT;
+        }
+
+        if (warmupIterations < 0 || measureIterations <= 0 || iterationMsec <= 0)
+        {
+            return ERROR_INVALID_ARGUMENT;
+        }
+
+        new MicroBenchmark(warmupIterations, measureIterations, iterationMsec).run(params.get("filter"), System.out);
+
+        return ERROR_NONE;
+    }   //microBench
+
+    /**
+     * This method starts the HTTP encode/decode service. The service keeps running after this method returns, until
+     * the program is terminated.
+     *
+     * @param args specifies the command line parameters, the first one being the mode name.
+     * @return exit code.
+     */
+    private static int serve(String[] args)
+    {
+        Map<String, String> params = parseParams(args, 1);
+        if (params == null)
+        {
+            return ERROR_INVALID_ARGUMENT;
+        }
+
+        int port;
+        int numThreads;
+        int queueLimit;
+
+        try
+        {
+            port = Integer.parseInt(params.getOrDefault("port", Integer.toString(QRServer.DEFAULT_PORT)));
+            numThreads = Integer.parseInt(params.getOrDefault("threads", "0"));
+            queueLimit = Integer.parseInt(params.getOrDefault("queue", Integer.toString(QRServer.DEFAULT_QUEUE_LIMIT)));
+        }
+        catch (NumberFormatException e)
+        {
+            return ERROR_INVALID_ARGUMENT;
+        }
+
+        try
+        {
+            QRServer server = new QRServer(
+                new InetSocketAddress(params.getOrDefault("bind", "127.0.0.1"), port), numThreads, queueLimit);
+            server.start();
+            StageMetrics.getInstance().registerMBeans();
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> server.stop(1)));
+            System.out.println("Serving on " + server.getAddress());
+        }
+        catch (IOException e)
+        {
+            System.err.println("Failed to start the service: " + e.getMessage());
+            return ERROR_OPERATION_FAILED;
+        }
+
+        return ERROR_NONE;
+    }   //serve
+
+    /**
+     * This method runs the load test against a running HTTP encode/decode service.
+     *
+     * @param args specifies the command line parameters, the first one being the mode name.
+     * @return exit code.
+     */
+    private static int loadTest(String[] args)
+    {
+        Map<String, String> params = parseParams(args, 1);
+        if (params == null)
+        {
+            return ERROR_INVALID_ARGUMENT;
+        }
+
+        String endpoint = params.getOrDefault("endpoint", "encode");
+        int numClients;
+        long duration;
+
+        try
+        {
+            numClients = Integer.parseInt(params.getOrDefault("clients", "8"));
+            duration = Long.parseLong(params.getOrDefault("duration", "10000"));
+        }
+        catch (NumberFormatException e)
+        {
+            return ERROR_INVALID_ARGUMENT;
+        }
+
+        if (numClients <= 0 || !endpoint.equalsIgnoreCase("encode") && !endpoint.equalsIgnoreCase("decode"))
+        {
+            return ERROR_INVALID_ARGUMENT;
+        }
+
+        LoadTest loadTest = new LoadTest(
+            params.getOrDefault("url", "http://127.0.0.1:" + QRServer.DEFAULT_PORT),
+            endpoint.equalsIgnoreCase("decode"), params.getOrDefault("msg", PROGRAM_TITLE), numClients);
+        try
+        {
+            loadTest.run(duration);
+        }
+        catch (IOException e)
+        {
+            System.err.println("Load test failed: " + e.getMessage());
+            return ERROR_OPERATION_FAILED;
+        }
+        loadTest.printSummary(System.out);
+
+        return ERROR_NONE;
+    }   //loadTest
+
     /**
      * Constructor: Creates an instance of the application.
      *
@@ -186,6 +760,19 @@ public class QRCodeApp extends JApplet implements ActionListener, WindowListener
         msgLabel.setBounds(MSG_LABEL_X, MSG_LABEL_Y, MSG_LABEL_WIDTH, MSG_LABEL_HEIGHT);
         msgPanel.setBounds(MSG_X, MSG_Y, MSG_WIDTH, MSG_HEIGHT);
         msgPanel.addActionListener(this);
+        msgPanel.getDocument().addDocumentListener(this);
+        //
+        // The message shows each QR code once per pass, like any other subscriber to the scan events. The QR codes of
+        // a Structured Append sequence show nothing until the last one of the sequence is in.
+        //
+        scanEvents.addScanListener(result ->
+        {
+            String scannedMsg = sequenceAssembler.add(result.getResult());
+            if (scannedMsg != null)
+            {
+                SwingUtilities.invokeLater(() -> showMessageText(scannedMsg));
+            }
+        });
 
         if (imageFile != null)
         {
@@ -215,9 +802,28 @@ public class QRCodeApp extends JApplet implements ActionListener, WindowListener
 
         try
         {
-            BufferedImage image = ImageIO.read(imageFile);
+            BufferedImage image;
+
+            if (RawFrameFile.isPgmFile(imageFile.getName()))
+            {
+                try (RawFrameFile frames = new RawFrameFile(imageFile))
+                {
+                    ByteBuffer frame = frames.nextFrame();
+                    if (frame == null)
+                    {
+                        throw new IOException(imageFile + " has no frames.");
+                    }
+                    image = RawFrameFile.toImage(frame, frames.getFrameWidth(), frames.getFrameHeight());
+                }
+            }
+            else
+            {
+                image = ImageIO.read(imageFile);
+            }
+            liveEncoder.cancel();
             imagePanel.setImage(image);
-            msgPanel.setText(QRCode.decodeMessage(image));
+            encodedMsg = null;
+            showMessageText(QRCode.decodeMessage(image));
             success = true;
         }
         catch (IOException e)
@@ -246,9 +852,18 @@ public class QRCodeApp extends JApplet implements ActionListener, WindowListener
     {
         try
         {
-            String formatName = imageFile.getName();
-            formatName = formatName.substring(formatName.lastIndexOf('.') + 1);
-            ImageIO.write(imagePanel.getImage(), formatName, imageFile);
+            //
+            // A generated QR code is displayed at module resolution, save it at full size instead.
+            //
+            BufferedImage image =
+                encodedMsg != null? QRCode.encodeMessage(encodedMsg, IMAGE_WIDTH, IMAGE_HEIGHT): imagePanel.getImage();
+            if (image == null)
+            {
+                JOptionPane.showMessageDialog(
+                    this, "There is no image to save.", QRCodeApp.PROGRAM_TITLE, JOptionPane.ERROR_MESSAGE);
+                return;
+            }
+            QRCode.writeImage(image, imageFile);
         }
         catch (IOException e)
         {
@@ -267,18 +882,82 @@ public class QRCodeApp extends JApplet implements ActionListener, WindowListener
      */
     public void setMessageText(String msg)
     {
-        msgPanel.setText(msg);
-        imagePanel.setImage(QRCode.encodeMessage(msg, IMAGE_WIDTH, IMAGE_HEIGHT));
+        liveEncoder.cancel();
+        showMessageText(msg);
+        showEncodedMessage(msg);
     }   //setMessageText
 
     /**
-     * This method starts the camera by resuming the camera thread.
+     * This method displays a text message that did not come from the user, such as a decoded message, without
+     * encoding it.
+     *
+     * @param msg specifies the message.
+     */
+    private void showMessageText(String msg)
+    {
+        settingMessageText = true;
+        try
+        {
+            msgPanel.setText(msg);
+        }
+        finally
+        {
+            settingMessageText = false;
+        }
+    }   //showMessageText
+
+    /**
+     * This method generates the QR code image of the message at module resolution and lets the image panel scale it
+     * up to fit.
+     *
+     * @param msg specifies the message.
+     */
+    private void showEncodedMessage(String msg)
+    {
+        imagePanel.setImage(QRCode.encodeMessage(msg, 0, 0), true);
+        encodedMsg = msg;
+    }   //showEncodedMessage
+
+    /**
+     * This method is called on the Event Dispatch Thread with the QR code image of the latest message typed. An
+     * empty message or one too long for a QR code clears the image, so the image never shows an older message.
+     *
+     * @param msg specifies the message.
+     * @param image specifies the QR code image at module resolution, null if the message could not be encoded.
+     */
+    private void messageEncoded(String msg, BufferedImage image)
+    {
+        imagePanel.setImage(image, true);
+        encodedMsg = image != null? msg: null;
+    }   //messageEncoded
+
+    /**
+     * This method starts the camera by resuming the camera thread. The first start brings up the camera stack and
+     * publishes the stage metrics.
      */
     public void startCamera()
     {
+        liveEncoder.cancel();
+        encodedMsg = null;
+        StageMetrics.getInstance().registerMBeans();
         imagePanel.startCamera();
     }   //startCamera
 
+    /**
+     * This method starts playing back a recording of camera frames in place of the camera, at the pace the frames
+     * were captured, over and over.
+     *
+     * @param file specifies the ring file written by a recording.
+     */
+    public void startReplay(File file)
+    {
+        liveEncoder.cancel();
+        encodedMsg = null;
+        StageMetrics.getInstance().registerMBeans();
+        imagePanel.startCamera(
+            new ReplayFrameSource(file, ReplayFrameSource.Pace.ORIGINAL, ReplayFrameSource.DEFAULT_FRAME_RATE, true));
+    }   //startReplay
+
     /**
      * This method stops the camera by suspending the camera thread.
      */
@@ -287,6 +966,73 @@ public class QRCodeApp extends JApplet implements ActionListener, WindowListener
         imagePanel.stopCamera();
     }   //stopCamera
 
+    /**
+     * This method starts recording the camera frames to a ring file holding the most recent frames.
+     *
+     * @param file specifies the ring file, replaced if it exists.
+     * @return true if recording started, false otherwise.
+     */
+    public boolean startRecording(File file)
+    {
+        boolean success = false;
+
+        try
+        {
+            success = imagePanel.startRecording(file, RECORD_CAPACITY);
+        }
+        catch (IOException e)
+        {
+            JOptionPane.showMessageDialog(
+                this,
+                "Failed to create recording file " + file,
+                QRCodeApp.PROGRAM_TITLE,
+                JOptionPane.ERROR_MESSAGE);
+        }
+
+        return success;
+    }   //startRecording
+
+    /**
+     * This method stops recording the camera frames.
+     */
+    public void stopRecording()
+    {
+        imagePanel.stopRecording();
+    }   //stopRecording
+
+    /**
+     * This method returns the scan event stream, which reports each QR code found by the live scanner or a capture
+     * once per pass.
+     *
+     * @return scan event bus.
+     */
+    public ScanEventBus getScanEvents()
+    {
+        return scanEvents;
+    }   //getScanEvents
+
+    /**
+     * This method turns the live scan mode on or off. In live scan mode, every captured frame is handed to a scanner
+     * thread and the message is updated as soon as a QR code is found.
+     *
+     * @param enabled specifies true to turn live scan on, false to turn it off.
+     */
+    public void setLiveScan(boolean enabled)
+    {
+        if (enabled && liveScanner == null)
+        {
+            liveScanner = new LiveScanner(this);
+            liveScanner.start();
+            imagePanel.setScanner(liveScanner);
+        }
+        else if (!enabled && liveScanner != null)
+        {
+            imagePanel.setScanner(null);
+            liveScanner.terminateThread();
+            liveScanner = null;
+        }
+    }   //setLiveScan
+
     /**
      * This method captures an image from the camera, decodes the QR code in the image and update the text message.
      *
@@ -297,13 +1043,40 @@ public class QRCodeApp extends JApplet implements ActionListener, WindowListener
         boolean success = false;
 
         imagePanel.captureImage();
-        BufferedImage image = imagePanel.getImage();
-        try
+        //
+        // Decode straight from the camera frame bytes if we have a frame, otherwise decode the displayed image.
+        //
+        Frame frame = imagePanel.acquireFrame();
+        Result result = null;
+
+        if (frame != null)
+        {
+            try
+            {
+                result = QRDecoderSession.getThreadSession().decode(frame);
+            }
+            finally
+            {
+                frame.release();
+            }
+        }
+        else if (imagePanel.getImage() != null)
+        {
+            result = QRDecoderSession.getThreadSession().decode(imagePanel.getImage());
+        }
+
+        if (result != null)
         {
-            msgPanel.setText(QRCode.decodeMessage(image));
+            long now = System.nanoTime();
+
+            if (!StructuredAppendAssembler.isStructuredAppend(result))
+            {
+                showMessageText(result.getText());
+            }
+            postScanEvent(new ScanResult(result, now, now));
             success = true;
         }
-        catch (RuntimeException e)
+        else
         {
             JOptionPane.showMessageDialog(
                 this, "QR code not found in image.", QRCodeApp.PROGRAM_TITLE, JOptionPane.ERROR_MESSAGE);
@@ -312,11 +1085,38 @@ public class QRCodeApp extends JApplet implements ActionListener, WindowListener
         return success;
     }   //captureImage
 
+    /**
+     * This method posts a result to the scan event stream, starting its dispatcher thread on the first post so a
+     * session that never scans does not start it.
+     *
+     * @param result specifies the scan result.
+     */
+    private void postScanEvent(ScanResult result)
+    {
+        startScanEvents();
+        scanEvents.post(result);
+    }   //postScanEvent
+
+    /**
+     * This method starts the dispatcher thread of the scan event stream if it is not started yet.
+     */
+    private synchronized void startScanEvents()
+    {
+        if (!scanEventsStarted)
+        {
+            scanEvents.start();
+            scanEventsStarted = true;
+        }
+    }   //startScanEvents
+
     /**
      * This method terminates the program by terminating the camera thread and exiting the program.
      */
     public void terminateProgram()
     {
+        setLiveScan(false);
+        liveEncoder.shutdown();
+        scanEvents.terminateThread();
         imagePanel.terminateCameraThread();
         System.exit(0);
     }   //terminateProgram
@@ -334,11 +1134,76 @@ public class QRCodeApp extends JApplet implements ActionListener, WindowListener
     public void actionPerformed(ActionEvent event)
     {
         //
-        // Message has changed, update the image.
+        // Message has changed, update the image. It is usually encoded already as the user typed it.
         //
-        imagePanel.setImage(QRCode.encodeMessage(msgPanel.getText(), IMAGE_WIDTH, IMAGE_HEIGHT));
+        liveEncoder.encode(msgPanel.getText());
     }   //actionPerformed
 
+    //
+    // Implements DocumentListener interface.
+    //
+
+    /**
+     * This method is called when the user types or pastes text into the msgPanel.
+     *
+     * @param event specifies the event that caused this callback.
+     */
+    @Override
+    public void insertUpdate(DocumentEvent event)
+    {
+        messageTyped();
+    }   //insertUpdate
+
+    /**
+     * This method is called when the user deletes text from the msgPanel.
+     *
+     * @param event specifies the event that caused this callback.
+     */
+    @Override
+    public void removeUpdate(DocumentEvent event)
+    {
+        messageTyped();
+    }   //removeUpdate
+
+    /**
+     * This method is called when attributes of the msgPanel text change, which does not change the message.
+     *
+     * @param event specifies the event that caused this callback.
+     */
+    @Override
+    public void changedUpdate(DocumentEvent event)
+    {
+    }   //changedUpdate
+
+    /**
+     * This method encodes the message as the user types it, in the background. Messages set by the program are not
+     * encoded.
+     */
+    private void messageTyped()
+    {
+        if (!settingMessageText)
+        {
+            liveEncoder.encode(msgPanel.getText());
+        }
+    }   //messageTyped
+
+    //
+    // Implements ScanListener interface.
+    //
+
+    /**
+     * This method is called on the scanner thread when a QR code is found in live scan mode. It keeps the camera at
+     * the full frame rate and posts the result to the scan event stream, which drops the repeats.
+     *
+     * @param result specifies the scan result.
+     */
+    @Override
+    public void qrCodeScanned(ScanResult result)
+    {
+        imagePanel.qrCodeInView();
+        postScanEvent(result);
+    }   //qrCodeScanned
+
     //
     // Implements WindowListener interface.
     //
@@ -0,0 +1,643 @@
+/*
+ * Copyright (c) 2018 Titan Robotics Club (http://www.titanrobotics.com)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+import java.awt.image.BufferedImage;
+import java.awt.image.ComponentSampleModel;
+import java.awt.image.DataBuffer;
+import java.awt.image.DataBufferByte;
+import java.awt.image.DataBufferInt;
+import java.awt.image.Raster;
+import java.awt.image.SinglePixelPackedSampleModel;
+import java.nio.ByteBuffer;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.Map;
+
+import com.google.zxing.BarcodeFormat;
+import com.google.zxing.Binarizer;
+import com.google.zxing.BinaryBitmap;
+import com.google.zxing.DecodeHintType;
+import com.google.zxing.LuminanceSource;
+import com.google.zxing.NotFoundException;
+import com.google.zxing.ReaderException;
+import com.google.zxing.Result;
+import com.google.zxing.ResultMetadataType;
+import com.google.zxing.ResultPoint;
+import com.google.zxing.common.BitMatrix;
+import com.google.zxing.common.DecoderResult;
+import com.google.zxing.common.DetectorResult;
+import com.google.zxing.common.GlobalHistogramBinarizer;
+import com.google.zxing.common.HybridBinarizer;
+import com.google.zxing.multi.qrcode.QRCodeMultiReader;
+import com.google.zxing.qrcode.decoder.Decoder;
+import com.google.zxing.qrcode.decoder.QRCodeDecoderMetaData;
+import com.google.zxing.qrcode.detector.Detector;
+
+/**
+ * This class implements a reusable QR code decoder. The decoder is configured once with the decode hints (QR code
+ * only, optional character set and try-harder policy) and is reused between calls. Images are converted
+ * to luminance into a buffer owned by the session, so decoding a stream of same sized images does not allocate a new
+ * luminance buffer per image. Raw camera frames are decoded in place through a FrameLuminanceSource, either whole or
+ * one region at a time with the results moved back into frame coordinates. The convert, binarize, detect and decode
+ * stages of every decode are timed in StageMetrics.
+ *
+ * A session is not thread-safe. Use one session per thread, getThreadSession() returns a lazily created session
+ * for the calling thread.
+ */
+public class QRDecoderSession
+{
+    private static final ThreadLocal<QRDecoderSession> threadSession =
+        ThreadLocal.withInitial(() -> new QRDecoderSession(null, false));
+
+    private static final Result[] NO_RESULTS = new Result[0];
+
+    private final Map<DecodeHintType, Object> hints = new EnumMap<>(DecodeHintType.class);
+    private Map<DecodeHintType, Object> tryHarderHints = null;
+    private final Decoder decoder = new Decoder();
+    private final StageMetrics metrics = StageMetrics.getInstance();
+    private QRCodeMultiReader multiReader = null;
+    private byte[] lumaBuffer = new byte[0];
+    private byte[] matrixBuffer = null;
+    private int[] rowBuffer = new int[0];
+
+    /**
+     * Constructor: Create an instance of the object.
+     *
+     * @param charset specifies the character set of the encoded messages, null to let the decoder guess.
+     * @param tryHarder specifies true to spend more time looking for a QR code, false otherwise.
+     */
+    public QRDecoderSession(String charset, boolean tryHarder)
+    {
+        hints.put(DecodeHintType.POSSIBLE_FORMATS, EnumSet.of(BarcodeFormat.QR_CODE));
+        if (charset != null)
+        {
+            hints.put(DecodeHintType.CHARACTER_SET, charset);
+        }
+        if (tryHarder)
+        {
+            hints.put(DecodeHintType.TRY_HARDER, Boolean.TRUE);
+        }
+    }   //QRDecoderSession
+
+    /**
+     * This method returns the decoder session of the calling thread, creating it on first use.
+     *
+     * @return decoder session of the calling thread.
+     */
+    public static QRDecoderSession getThreadSession()
+    {
+        return threadSession.get();
+    }   //getThreadSession
+
+    /**
+     * This method decodes the QR code from the given luminance source. Each stage is timed separately: the
+     * luminance matrix is built once and handed to the binarizer in place, then the QR code is located and decoded
+     * the way ZXing's QRCodeReader does, one step at a time.
+     *
+     * @param source specifies the luminance source.
+     * @return decode result, null if there is no QR code found.
+     */
+    public Result decode(LuminanceSource source)
+    {
+        return decode(source, false, false);
+    }   //decode
+
+    /**
+     * This method decodes the QR code from the given luminance source with the given binarizer and search effort.
+     * The global histogram binarizer is cheaper than the hybrid one but needs even lighting.
+     *
+     * @param source specifies the luminance source.
+     * @param globalBinarizer specifies true to use the global histogram binarizer, false for the hybrid binarizer.
+     * @param tryHarder specifies true to spend more time looking for a QR code even if the session was not created to
+     *        try harder, false to use the session's policy.
+     * @return decode result, null if there is no QR code found.
+     */
+    public Result decode(LuminanceSource source, boolean globalBinarizer, boolean tryHarder)
+    {
+        long startTime = System.nanoTime();
+        LuminanceSource graySource = new FrameLuminanceSource(
+            source.getMatrix(), source.getWidth(), source.getHeight(), FrameLuminanceSource.BYTES_PER_PIXEL_GRAY,
+            null);
+
+        startTime = metrics.record(StageMetrics.Stage.CONVERT, startTime);
+
+        return decodeLuminance(
+            globalBinarizer? new GlobalHistogramBinarizer(graySource): new HybridBinarizer(graySource),
+            tryHarder? getTryHarderHints(): hints, startTime);
+    }   //decode
+
+    /**
+     * This method decodes all the QR codes in the given luminance source.
+     *
+     * @param source specifies the luminance source.
+     * @return decode results, an empty array if there is no QR code found.
+     */
+    public Result[] decodeMultiple(LuminanceSource source)
+    {
+        Result[] results = NO_RESULTS;
+
+        if (multiReader == null)
+        {
+            multiReader = new QRCodeMultiReader();
+        }
+
+        try
+        {
+            long startTime = System.nanoTime();
+            BinaryBitmap bitmap = new BinaryBitmap(new HybridBinarizer(source));
+            //
+            // The bitmap keeps the black matrix, so binarizing up front only moves the work out of the reader.
+            //
+            bitmap.getBlackMatrix();
+            metrics.record(StageMetrics.Stage.BINARIZE, startTime);
+            results = dropMergedResults(multiReader.decodeMultiple(bitmap, hints));
+        }
+        catch (NotFoundException e)
+        {
+        }
+        metrics.decodeAttempted(results.length > 0);
+
+        return results;
+    }   //decodeMultiple
+
+    /**
+     * This method drops the extra result ZXing's multi reader adds when it finds Structured Append symbols: all of
+     * them joined into one text with no position, whatever sequence they belong to and without checking the parity.
+     * The symbols themselves are kept, StructuredAppendAssembler puts them back together properly.
+     *
+     * @param results specifies the results of the multi reader.
+     * @return results with a position.
+     */
+    private static Result[] dropMergedResults(Result[] results)
+    {
+        int numPositioned = 0;
+
+        for (Result result: results)
+        {
+            if (result.getResultPoints() != null && result.getResultPoints().length > 0)
+            {
+                numPositioned++;
+            }
+        }
+
+        if (numPositioned < results.length)
+        {
+            Result[] positioned = new Result[numPositioned];
+            int i = 0;
+
+            for (Result result: results)
+            {
+                if (result.getResultPoints() != null && result.getResultPoints().length > 0)
+                {
+                    positioned[i++] = result;
+                }
+            }
+            results = positioned;
+        }
+
+        return results;
+    }   //dropMergedResults
+
+    /**
+     * This method decodes the QR code from the given image.
+     *
+     * @param image specifies the image.
+     * @return decode result, null if there is no QR code found.
+     */
+    public Result decode(BufferedImage image)
+    {
+        long startTime = System.nanoTime();
+
+        toLuminance(image);
+        startTime = metrics.record(StageMetrics.Stage.CONVERT, startTime);
+
+        return decodeLuminance(
+            new HybridBinarizer(new FrameLuminanceSource(
+                lumaBuffer, image.getWidth(), image.getHeight(), FrameLuminanceSource.BYTES_PER_PIXEL_GRAY, null)),
+            hints, startTime);
+    }   //decode
+
+    /**
+     * This method decodes the QR code from a raw frame without converting it to an image first.
+     *
+     * @param data specifies the frame bytes, rows packed without padding.
+     * @param width specifies the frame width in pixels.
+     * @param height specifies the frame height in pixels.
+     * @param bytesPerPixel specifies FrameLuminanceSource.BYTES_PER_PIXEL_GRAY or BYTES_PER_PIXEL_BGR.
+     * @return decode result, null if there is no QR code found.
+     */
+    public Result decode(byte[] data, int width, int height, int bytesPerPixel)
+    {
+        if (matrixBuffer == null || matrixBuffer.length < width*height)
+        {
+            matrixBuffer = new byte[width*height];
+        }
+
+        return decode(new FrameLuminanceSource(data, width, height, bytesPerPixel, matrixBuffer));
+    }   //decode
+
+    /**
+     * This method decodes the QR code from a raw grayscale frame in a buffer, such as a frame memory mapped from a
+     * raw frame file. The frame is read straight from the buffer into the session's matrix buffer.
+     *
+     * @param frame specifies the frame bytes starting at the buffer's position, rows packed without padding.
+     * @param width specifies the frame width in pixels.
+     * @param height specifies the frame height in pixels.
+     * @return decode result, null if there is no QR code found.
+     */
+    public Result decode(ByteBuffer frame, int width, int height)
+    {
+        if (matrixBuffer == null || matrixBuffer.length < width*height)
+        {
+            matrixBuffer = new byte[width*height];
+        }
+
+        return decode(
+            new FrameLuminanceSource(frame, width, height, FrameLuminanceSource.BYTES_PER_PIXEL_GRAY, matrixBuffer));
+    }   //decode
+
+    /**
+     * This method decodes the QR code from a rectangular region of a raw frame. Only the region is binarized and
+     * searched.
+     *
+     * @param data specifies the frame bytes, rows packed without padding.
+     * @param width specifies the frame width in pixels.
+     * @param height specifies the frame height in pixels.
+     * @param bytesPerPixel specifies FrameLuminanceSource.BYTES_PER_PIXEL_GRAY or BYTES_PER_PIXEL_BGR.
+     * @param left specifies the left coordinate of the region.
+     * @param top specifies the top coordinate of the region.
+     * @param regionWidth specifies the width of the region.
+     * @param regionHeight specifies the height of the region.
+     * @return decode result with result points in frame coordinates, null if there is no QR code found.
+     */
+    public Result decodeRegion(
+        byte[] data, int width, int height, int bytesPerPixel, int left, int top, int regionWidth, int regionHeight)
+    {
+        Result result = decode(regionSource(data, width, height, bytesPerPixel, left, top, regionWidth, regionHeight));
+
+        if (result != null)
+        {
+            translateResultPoints(result, left, top);
+        }
+
+        return result;
+    }   //decodeRegion
+
+    /**
+     * This method decodes all the QR codes in a rectangular region of a raw frame. Only the region is binarized and
+     * searched.
+     *
+     * @param data specifies the frame bytes, rows packed without padding.
+     * @param width specifies the frame width in pixels.
+     * @param height specifies the frame height in pixels.
+     * @param bytesPerPixel specifies FrameLuminanceSource.BYTES_PER_PIXEL_GRAY or BYTES_PER_PIXEL_BGR.
+     * @param left specifies the left coordinate of the region.
+     * @param top specifies the top coordinate of the region.
+     * @param regionWidth specifies the width of the region.
+     * @param regionHeight specifies the height of the region.
+     * @return decode results with result points in frame coordinates, an empty array if there is no QR code found.
+     */
+    public Result[] decodeMultipleInRegion(
+        byte[] data, int width, int height, int bytesPerPixel, int left, int top, int regionWidth, int regionHeight)
+    {
+        Result[] results = decodeMultiple(
+            regionSource(data, width, height, bytesPerPixel, left, top, regionWidth, regionHeight));
+
+        for (Result result: results)
+        {
+            translateResultPoints(result, left, top);
+        }
+
+        return results;
+    }   //decodeMultipleInRegion
+
+    /**
+     * This method decodes the QR code from a camera frame. The caller must hold a reference to the frame.
+     *
+     * @param frame specifies the frame.
+     * @return decode result, null if there is no QR code found.
+     */
+    public Result decode(Frame frame)
+    {
+        return decode(frame.getData(), frame.getWidth(), frame.getHeight(), frame.getBytesPerPixel());
+    }   //decode
+
+    /**
+     * This method decodes a QR code image and returns the resulting message.
+     * Note: if there is no QR code in the image, it will throw a RuntimeException.
+     *
+     * @param image specifies the QR code image to be decoded.
+     * @return decoded message.
+     */
+    public String decodeMessage(BufferedImage image)
+    {
+        Result result = decode(image);
+
+        if (result == null)
+        {
+            throw new RuntimeException("QR code not found in image.");
+        }
+
+        return result.getText();
+    }   //decodeMessage
+
+    /**
+     * This method binarizes, locates and decodes the QR code in a luminance source that needs no conversion,
+     * recording the time of each stage.
+     *
+     * @param binarizer specifies the binarizer over the luminance source.
+     * @param decodeHints specifies the decode hints.
+     * @param startTime specifies the System.nanoTime() the binarize stage starts at.
+     * @return decode result, null if there is no QR code found.
+     */
+    private Result decodeLuminance(Binarizer binarizer, Map<DecodeHintType, ?> decodeHints, long startTime)
+    {
+        Result result = null;
+
+        try
+        {
+            BitMatrix blackMatrix = binarizer.getBlackMatrix();
+            startTime = metrics.record(StageMetrics.Stage.BINARIZE, startTime);
+
+            DetectorResult detectorResult = new Detector(blackMatrix).detect(decodeHints);
+            startTime = metrics.record(StageMetrics.Stage.DETECT, startTime);
+
+            DecoderResult decoderResult = decoder.decode(detectorResult.getBits(), decodeHints);
+            ResultPoint[] points = detectorResult.getPoints();
+
+            if (decoderResult.getOther() instanceof QRCodeDecoderMetaData)
+            {
+                ((QRCodeDecoderMetaData)decoderResult.getOther()).applyMirroredCorrection(points);
+            }
+            result = new Result(decoderResult.getText(), decoderResult.getRawBytes(), points, BarcodeFormat.QR_CODE);
+            if (decoderResult.getByteSegments() != null)
+            {
+                result.putMetadata(ResultMetadataType.BYTE_SEGMENTS, decoderResult.getByteSegments());
+            }
+            if (decoderResult.getECLevel() != null)
+            {
+                result.putMetadata(ResultMetadataType.ERROR_CORRECTION_LEVEL, decoderResult.getECLevel());
+            }
+            if (decoderResult.hasStructuredAppend())
+            {
+                result.putMetadata(
+                    ResultMetadataType.STRUCTURED_APPEND_SEQUENCE, decoderResult.getStructuredAppendSequenceNumber());
+                result.putMetadata(
+                    ResultMetadataType.STRUCTURED_APPEND_PARITY, decoderResult.getStructuredAppendParity());
+            }
+            metrics.record(StageMetrics.Stage.DECODE, startTime);
+        }
+        catch (ReaderException e)
+        {
+        }
+        metrics.decodeAttempted(result != null);
+
+        return result;
+    }   //decodeLuminance
+
+    /**
+     * This method returns the session's decode hints with try harder turned on, creating them on first use.
+     *
+     * @return try harder decode hints.
+     */
+    private Map<DecodeHintType, Object> getTryHarderHints()
+    {
+        if (tryHarderHints == null)
+        {
+            tryHarderHints = new EnumMap<>(hints);
+            tryHarderHints.put(DecodeHintType.TRY_HARDER, Boolean.TRUE);
+        }
+
+        return tryHarderHints;
+    }   //getTryHarderHints
+
+    /**
+     * This method returns a luminance source over a region of a raw frame that builds its matrix in the session
+     * buffer.
+     *
+     * @param data specifies the frame bytes, rows packed without padding.
+     * @param width specifies the frame width in pixels.
+     * @param height specifies the frame height in pixels.
+     * @param bytesPerPixel specifies FrameLuminanceSource.BYTES_PER_PIXEL_GRAY or BYTES_PER_PIXEL_BGR.
+     * @param left specifies the left coordinate of the region.
+     * @param top specifies the top coordinate of the region.
+     * @param regionWidth specifies the width of the region.
+     * @param regionHeight specifies the height of the region.
+     * @return luminance source of the region.
+     */
+    private LuminanceSource regionSource(
+        byte[] data, int width, int height, int bytesPerPixel, int left, int top, int regionWidth, int regionHeight)
+    {
+        if (matrixBuffer == null || matrixBuffer.length < regionWidth*regionHeight)
+        {
+            matrixBuffer = new byte[regionWidth*regionHeight];
+        }
+
+        LuminanceSource source = new FrameLuminanceSource(data, width, height, bytesPerPixel, matrixBuffer);
+
+        return regionWidth == width && regionHeight == height?
+            source: source.crop(left, top, regionWidth, regionHeight);
+    }   //regionSource
+
+    /**
+     * This method moves the result points of a result decoded from a region into the coordinates of the whole frame.
+     *
+     * @param result specifies the result decoded from the region.
+     * @param left specifies the left coordinate of the region in the frame.
+     * @param top specifies the top coordinate of the region in the frame.
+     */
+    private static void translateResultPoints(Result result, int left, int top)
+    {
+        ResultPoint[] points = result.getResultPoints();
+
+        if (points != null && (left != 0 || top != 0))
+        {
+            for (int i = 0; i < points.length; i++)
+            {
+                if (points[i] != null)
+                {
+                    points[i] = new ResultPoint(points[i].getX() + left, points[i].getY() + top);
+                }
+            }
+        }
+    }   //translateResultPoints
+
+    /**
+     * This method converts the image to luminance in the session buffer.
+     *
+     * @param image specifies the image.
+     */
+    private void toLuminance(BufferedImage image)
+    {
+        if (lumaBuffer.length < image.getWidth()*image.getHeight())
+        {
+            lumaBuffer = new byte[image.getWidth()*image.getHeight()];
+        }
+        toLuminance(image, lumaBuffer);
+    }   //toLuminance
+
+    /**
+     * This method converts the image to luminance, one byte per pixel with rows packed without padding. Byte
+     * interleaved and int packed images are read straight from their data buffer, anything else goes through getRGB
+     * one row at a time. The conversion matches ZXing's BufferedImageLuminanceSource, including mapping fully
+     * transparent pixels to white.
+     *
+     * @param image specifies the image.
+     * @param luma specifies the buffer to store the luminance in, at least width*height bytes.
+     */
+    public void toLuminance(BufferedImage image, byte[] luma)
+    {
+        toLuminance(image, luma, 1);
+    }   //toLuminance
+
+    /**
+     * This method converts a subsampled copy of the image to luminance, taking every step-th pixel of every step-th
+     * row. Only the sampled pixels are converted, so a step of 2 costs about a quarter of a full conversion. The
+     * result is (width/step)x(height/step) pixels, rows packed without padding.
+     *
+     * @param image specifies the image.
+     * @param luma specifies the buffer to store the luminance in.
+     * @param step specifies the sampling step, 1 to convert every pixel.
+     */
+    public void toLuminance(BufferedImage image, byte[] luma, int step)
+    {
+        int width = image.getWidth()/step;
+        int height = image.getHeight()/step;
+        Raster raster = image.getRaster();
+        DataBuffer dataBuffer = raster.getDataBuffer();
+
+        if (luma.length < width*height)
+        {
+            throw new IllegalArgumentException("Luminance buffer is smaller than " + width + "x" + height + ".");
+        }
+
+        if (raster.getParent() == null && dataBuffer instanceof DataBufferByte &&
+            raster.getSampleModel() instanceof ComponentSampleModel &&
+            (image.getType() == BufferedImage.TYPE_3BYTE_BGR || image.getType() == BufferedImage.TYPE_BYTE_GRAY))
+        {
+            ComponentSampleModel sampleModel = (ComponentSampleModel)raster.getSampleModel();
+            byte[] data = ((DataBufferByte)dataBuffer).getData();
+            int pixelStride = sampleModel.getPixelStride()*step;
+            int scanlineStride = sampleModel.getScanlineStride()*step;
+            int offset = dataBuffer.getOffset();
+
+            if (image.getType() == BufferedImage.TYPE_BYTE_GRAY && step == 1)
+            {
+                for (int y = 0; y < height; y++)
+                {
+                    System.arraycopy(data, offset + y*scanlineStride, luma, y*width, width);
+                }
+            }
+            else if (image.getType() == BufferedImage.TYPE_BYTE_GRAY)
+            {
+                int bandOffset = offset + sampleModel.getBandOffsets()[0];
+
+                for (int y = 0; y < height; y++)
+                {
+                    int src = bandOffset + y*scanlineStride;
+                    int dst = y*width;
+                    for (int x = 0; x < width; x++, src += pixelStride)
+                    {
+                        luma[dst + x] = data[src];
+                    }
+                }
+            }
+            else
+            {
+                int[] bandOffsets = sampleModel.getBandOffsets();
+                int rOffset = offset + bandOffsets[0];
+                int gOffset = offset + bandOffsets[1];
+                int bOffset = offset + bandOffsets[2];
+
+                for (int y = 0; y < height; y++)
+                {
+                    int src = y*scanlineStride;
+                    int dst = y*width;
+                    for (int x = 0; x < width; x++, src += pixelStride)
+                    {
+                        luma[dst + x] = (byte)
+                            ((306*(data[rOffset + src] & 0xff) + 601*(data[gOffset + src] & 0xff) +
+                              117*(data[bOffset + src] & 0xff) + 0x200) >> 10);
+                    }
+                }
+            }
+        }
+        else if (raster.getParent() == null && dataBuffer instanceof DataBufferInt &&
+                 raster.getSampleModel() instanceof SinglePixelPackedSampleModel &&
+                 (image.getType() == BufferedImage.TYPE_INT_RGB || image.getType() == BufferedImage.TYPE_INT_ARGB))
+        {
+            int[] data = ((DataBufferInt)dataBuffer).getData();
+            int scanlineStride = ((SinglePixelPackedSampleModel)raster.getSampleModel()).getScanlineStride()*step;
+            int offset = dataBuffer.getOffset();
+            boolean hasAlpha = image.getType() == BufferedImage.TYPE_INT_ARGB;
+
+            for (int y = 0; y < height; y++)
+            {
+                argbToLuminance(data, offset + y*scanlineStride, step, luma, y*width, width, hasAlpha);
+            }
+        }
+        else
+        {
+            if (rowBuffer.length < image.getWidth())
+            {
+                rowBuffer = new int[image.getWidth()];
+            }
+
+            for (int y = 0; y < height; y++)
+            {
+                image.getRGB(0, y*step, image.getWidth(), 1, rowBuffer, 0, image.getWidth());
+                argbToLuminance(rowBuffer, 0, step, luma, y*width, width, true);
+            }
+        }
+    }   //toLuminance
+
+    /**
+     * This method converts one row of ARGB pixels to luminance.
+     *
+     * @param pixels specifies the ARGB pixels.
+     * @param srcOffset specifies the index of the first pixel of the row.
+     * @param step specifies the sampling step.
+     * @param luma specifies the luminance buffer.
+     * @param dstOffset specifies the index in the luminance buffer to write the row to.
+     * @param width specifies the number of pixels to write.
+     * @param hasAlpha specifies true if the alpha channel is valid, false if it should be ignored.
+     */
+    private static void argbToLuminance(
+        int[] pixels, int srcOffset, int step, byte[] luma, int dstOffset, int width, boolean hasAlpha)
+    {
+        for (int x = 0, src = srcOffset; x < width; x++, src += step)
+        {
+            int pixel = pixels[src];
+
+            if (hasAlpha && (pixel & 0xff000000) == 0)
+            {
+                luma[dstOffset + x] = (byte)0xff;
+            }
+            else
+            {
+                luma[dstOffset + x] = (byte)
+                    ((306*((pixel >> 16) & 0xff) + 601*((pixel >> 8) & 0xff) + 117*(pixel & 0xff) + 0x200) >> 10);
+            }
+        }
+    }   //argbToLuminance
+
+}   //class QRDecoderSession
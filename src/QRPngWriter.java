@@ -0,0 +1,242 @@
+/*
+ * Copyright (c) 2018 Titan Robotics Club (http://www.titanrobotics.com)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+import java.awt.image.IndexColorModel;
+import java.awt.image.MultiPixelPackedSampleModel;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * This class implements a PNG writer specialised for bilevel QR code images. It writes 1-bit grayscale PNGs
+ * straight from the packed raster of a TYPE_BYTE_BINARY black and white image, which already has the PNG row
+ * layout, so there is no per-pixel conversion and no ImageIO plugin lookup or cache file. Rows are stored
+ * unfiltered: on bilevel data the PNG filters only scramble the bits, while deflate already matches a row repeated
+ * from the row above. The deflater and the row and chunk buffers are reused from one image to the next.
+ *
+ * A writer is not thread-safe, getThreadWriter() returns a lazily created writer for the calling thread.
+ */
+public class QRPngWriter
+{
+    //
+    // Measured on 640x480 QR images of 11 to 636 character messages: level 6 takes 0.3 to 0.5 ms for 370 to 1577
+    // bytes, level 1 is 4 to 8 times faster but 1.5 to 3 times larger, and level 9 is 3 to 5 times slower for a file
+    // within 2% of level 6 either way.
+    //
+    public static final int DEFAULT_COMPRESSION_LEVEL = Deflater.DEFAULT_COMPRESSION;
+
+    private static final byte[] PNG_SIGNATURE = {(byte)0x89, 'P', 'N', 'G', '\r', '\n', 0x1a, '\n'};
+    private static final int CHUNK_DATA_SIZE = 32*1024;
+    private static final int CHUNK_OVERHEAD = 12;
+    private static final byte FILTER_NONE = 0;
+
+    private static final ThreadLocal<QRPngWriter> threadWriter =
+        ThreadLocal.withInitial(() -> new QRPngWriter(DEFAULT_COMPRESSION_LEVEL));
+
+    private final Deflater deflater;
+    private final CRC32 crc = new CRC32();
+    private final byte[] chunk = new byte[CHUNK_DATA_SIZE + CHUNK_OVERHEAD];
+    private byte[] filteredRows = new byte[0];
+
+    /**
+     * Constructor: Create an instance of the object.
+     *
+     * @param compressionLevel specifies the deflate level, 0 (none) to 9 (best).
+     */
+    public QRPngWriter(int compressionLevel)
+    {
+        deflater = new Deflater(compressionLevel);
+    }   //QRPngWriter
+
+    /**
+     * This method returns the writer of the calling thread, creating it on first use.
+     *
+     * @return writer of the calling thread.
+     */
+    public static QRPngWriter getThreadWriter()
+    {
+        return threadWriter.get();
+    }   //getThreadWriter
+
+    /**
+     * This method checks if the image can be written by this writer, i.e. it is a 1-bit packed image whose color
+     * index 0 is black and 1 is white, like the images rendered by BitMatrixRenderer.
+     *
+     * @param image specifies the image.
+     * @return true if the image can be written, false otherwise.
+     */
+    public static boolean canWrite(BufferedImage image)
+    {
+        if (image.getType() != BufferedImage.TYPE_BYTE_BINARY || image.getRaster().getParent() != null ||
+            !(image.getSampleModel() instanceof MultiPixelPackedSampleModel) ||
+            image.getSampleModel().getSampleSize(0) != 1 ||
+            !(image.getColorModel() instanceof IndexColorModel))
+        {
+            return false;
+        }
+
+        IndexColorModel colorModel = (IndexColorModel)image.getColorModel();
+        MultiPixelPackedSampleModel sampleModel = (MultiPixelPackedSampleModel)image.getSampleModel();
+
+        return colorModel.getMapSize() == 2 && (colorModel.getRGB(0) & 0xffffff) == 0 &&
+               (colorModel.getRGB(1) & 0xffffff) == 0xffffff && sampleModel.getDataBitOffset() == 0 &&
+               image.getRaster().getDataBuffer().getOffset() == 0;
+    }   //canWrite
+
+    /**
+     * This method writes the image to a file through a file channel.
+     *
+     * @param image specifies the image, must pass canWrite().
+     * @param file specifies the file to write to, replaced if it exists.
+     * @throws IOException if the file cannot be written.
+     */
+    public void write(BufferedImage image, File file) throws IOException
+    {
+        try (FileChannel channel = FileChannel.open(
+                file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING))
+        {
+            write(image, Channels.newOutputStream(channel));
+        }
+    }   //write
+
+    /**
+     * This method writes the image to a stream as a 1-bit grayscale PNG. The stream is not closed. Each chunk goes
+     * out in a single write, so the stream does not need to be buffered.
+     *
+     * @param image specifies the image, must pass canWrite().
+     * @param out specifies the stream to write to.
+     * @throws IOException if the stream cannot be written.
+     */
+    public void write(BufferedImage image, OutputStream out) throws IOException
+    {
+        if (!canWrite(image))
+        {
+            throw new IllegalArgumentException("Image is not a packed black and white image.");
+        }
+
+        int width = image.getWidth();
+        int height = image.getHeight();
+        int stride = ((MultiPixelPackedSampleModel)image.getSampleModel()).getScanlineStride();
+        int rowBytes = (width + 7)/8;
+        byte[] data = ((DataBufferByte)image.getRaster().getDataBuffer()).getData();
+        int chunkLength;
+
+        out.write(PNG_SIGNATURE);
+        //
+        // IHDR: width, height, bit depth 1, color type 0 (grayscale), deflate, adaptive filtering, no interlace.
+        //
+        chunkLength = 0;
+        chunkLength = putInt(chunk, 8 + chunkLength, width) - 8;
+        chunkLength = putInt(chunk, 8 + chunkLength, height) - 8;
+        chunk[8 + chunkLength++] = 1;
+        chunk[8 + chunkLength++] = 0;
+        chunk[8 + chunkLength++] = 0;
+        chunk[8 + chunkLength++] = 0;
+        chunk[8 + chunkLength++] = 0;
+        writeChunk(out, "IHDR", chunkLength);
+        //
+        // IDAT: lay out the rows, each prefixed with its filter type, and deflate them in one go so the deflater is
+        // called once per chunk rather than once per row.
+        //
+        int filteredLength = height*(rowBytes + 1);
+        if (filteredRows.length < filteredLength)
+        {
+            filteredRows = new byte[filteredLength];
+        }
+
+        for (int y = 0, dst = 0; y < height; y++, dst += rowBytes + 1)
+        {
+            filteredRows[dst] = FILTER_NONE;
+            System.arraycopy(data, y*stride, filteredRows, dst + 1, rowBytes);
+        }
+
+        deflater.reset();
+        deflater.setInput(filteredRows, 0, filteredLength);
+        deflater.finish();
+        chunkLength = 0;
+        while (!deflater.finished())
+        {
+            chunkLength += deflater.deflate(chunk, 8 + chunkLength, CHUNK_DATA_SIZE - chunkLength);
+            if (chunkLength == CHUNK_DATA_SIZE)
+            {
+                writeChunk(out, "IDAT", chunkLength);
+                chunkLength = 0;
+            }
+        }
+        if (chunkLength > 0)
+        {
+            writeChunk(out, "IDAT", chunkLength);
+        }
+        //
+        // IEND.
+        //
+        writeChunk(out, "IEND", 0);
+    }   //write
+
+    /**
+     * This method fills in the length, type and CRC of the chunk in the chunk buffer and writes it out.
+     *
+     * @param out specifies the stream to write to.
+     * @param type specifies the four letter chunk type.
+     * @param length specifies the length of the chunk data, which starts at index 8 of the chunk buffer.
+     * @throws IOException if the stream cannot be written.
+     */
+    private void writeChunk(OutputStream out, String type, int length) throws IOException
+    {
+        putInt(chunk, 0, length);
+        for (int i = 0; i < 4; i++)
+        {
+            chunk[4 + i] = (byte)type.charAt(i);
+        }
+        crc.reset();
+        crc.update(chunk, 4, length + 4);
+        putInt(chunk, 8 + length, (int)crc.getValue());
+        out.write(chunk, 0, length + CHUNK_OVERHEAD);
+    }   //writeChunk
+
+    /**
+     * This method stores a big-endian 32-bit integer.
+     *
+     * @param buffer specifies the buffer.
+     * @param offset specifies the index to store at.
+     * @param value specifies the value.
+     * @return index following the stored value.
+     */
+    private static int putInt(byte[] buffer, int offset, int value)
+    {
+        buffer[offset] = (byte)(value >>> 24);
+        buffer[offset + 1] = (byte)(value >>> 16);
+        buffer[offset + 2] = (byte)(value >>> 8);
+        buffer[offset + 3] = (byte)value;
+
+        return offset + 4;
+    }   //putInt
+
+}   //class QRPngWriter
@@ -0,0 +1,705 @@
+/*
+ * Copyright (c) 2018 Titan Robotics Club (http://www.titanrobotics.com)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * This class implements the headless encode/decode service on the JDK's built-in HTTP server.
+ *
+ *  POST /decode            request body is an image, responds with the decoded message as UTF-8 text.
+ *  POST /encode            request body is a UTF-8 message, responds with the QR code as a PNG. The optional query
+ *                          parameters width and height give the image size, the module resolution by default.
+ *  GET  /stats             responds with the request counters and latencies, and the decode stage times, as JSON.
+ *
+ * Admission is decided on the server's dispatcher thread: a request is admitted if a worker is free or there is room
+ * in the request queue, otherwise it is answered with 503 right away without reading its body, so an overloaded
+ * server sheds load in microseconds instead of letting requests time out in a queue. Admitted requests run on a fixed
+ * pool of worker threads. Request bodies are read straight from the connection by the image reader, and PNGs are
+ * written straight to the connection by the PNG writer, so no payload is buffered twice.
+ */
+public class QRServer
+{
+    public static final String MODE_NAME = "serve";
+    public static final int DEFAULT_PORT = 8080;
+    public static final int DEFAULT_QUEUE_LIMIT = 64;
+
+    private static final int MAX_MESSAGE_BYTES = 4096;
+    private static final int MAX_IMAGE_SIZE = 4096;
+    //
+    // Decode requests are bounded by body size and by pixel count, since a small compressed image can declare a
+    // size that takes gigabytes to decode. 24 megapixels covers any camera frame worth scanning.
+    //
+    private static final long MAX_DECODE_BODY_BYTES = 32L*1024*1024;
+    private static final long MAX_DECODE_PIXELS = 24L*1024*1024;
+    private static final String ENDPOINT_DECODE = "/decode";
+    private static final String ENDPOINT_ENCODE = "/encode";
+    private static final String ENDPOINT_STATS = "/stats";
+
+    private final HttpServer server;
+    private final ThreadPoolExecutor workers;
+    private final Semaphore admission;
+    private final Endpoint decodeStats = new Endpoint();
+    private final Endpoint encodeStats = new Endpoint();
+    private final AtomicLong numRejected = new AtomicLong();
+    private final AtomicLong numBadRequests = new AtomicLong();
+    private final long startTime = System.nanoTime();
+
+    /**
+     * This class holds the counters of one endpoint.
+     */
+    private static class Endpoint
+    {
+        final AtomicLong numRequests = new AtomicLong();
+        final AtomicLong numFailed = new AtomicLong();
+        final LatencyHistogram latencies = new LatencyHistogram();
+
+    }   //class Endpoint
+
+    /**
+     * This class is thrown by a request handler to respond with an error status.
+     */
+    private static class RequestException extends Exception
+    {
+        private static final long serialVersionUID = 1L;
+        final int status;
+
+        RequestException(int status, String message)
+        {
+            super(message);
+            this.status = status;
+        }   //RequestException
+
+    }   //class RequestException
+
+    /**
+     * This class limits how many bytes can be read from a request body. Reading past the limit fails with an
+     * IOException and sets a flag, so the handler can tell an oversized body from a broken connection.
+     */
+    private static class BoundedInputStream extends FilterInputStream
+    {
+        private final long limit;
+        private long count = 0;
+        boolean exceeded = false;
+
+        BoundedInputStream(InputStream in, long limit)
+        {
+            super(in);
+            this.limit = limit;
+        }   //BoundedInputStream
+
+        @Override
+        public int read() throws IOException
+        {
+            byte[] b = new byte[1];
+            return read(b, 0, 1) == -1? -1: b[0] & 0xff;
+        }   //read
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException
+        {
+            int n = super.read(b, off, (int)Math.min(len, limit - count + 1));
+
+            if (n > 0)
+            {
+                count += n;
+                if (count > limit)
+                {
+                    exceeded = true;
+                    throw new IOException("Request body is longer than " + limit + " bytes.");
+                }
+            }
+
+            return n;
+        }   //read
+
+        @Override
+        public long skip(long n) throws IOException
+        {
+            byte[] buffer = new byte[(int)Math.min(n, 8192)];
+            int skipped = read(buffer, 0, buffer.length);
+            return Math.max(skipped, 0);
+        }   //skip
+
+    }   //class BoundedInputStream
+
+    /**
+     * This interface is implemented by the handlers of the endpoints that run on the worker threads.
+     */
+    private interface Handler
+    {
+        /**
+         * This method handles one request and sends the response.
+         *
+         * @param exchange specifies the request and response.
+         * @throws IOException if the connection failed.
+         * @throws RequestException if the request is invalid.
+         */
+        void handle(HttpExchange exchange) throws IOException, RequestException;
+
+    }   //interface Handler
+
+    /**
+     * Constructor: Create an instance of the object. The server does not accept connections until started.
+     *
+     * @param address specifies the address and port to listen on.
+     * @param numThreads specifies the number of worker threads, zero or negative to use one per processor core.
+     * @param queueLimit specifies how many admitted requests may wait for a worker.
+     * @throws IOException if the server socket cannot be bound.
+     */
+    public QRServer(InetSocketAddress address, int numThreads, int queueLimit) throws IOException
+    {
+        int poolSize = numThreads > 0? numThreads: Runtime.getRuntime().availableProcessors();
+        //
+        // Responses are small and written in a few pieces, without this every response waits out a delayed ACK.
+        //
+        System.setProperty("sun.net.httpserver.nodelay", "true");
+        server = HttpServer.create(address, 0);
+        //
+        // A permit is released while its worker is still finishing the task, before the worker takes the next one
+        // off the queue, so the queue has room for every permit and the semaphore stays the only gate.
+        //
+        workers = new ThreadPoolExecutor(
+            poolSize, poolSize, 0, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(poolSize + Math.max(0, queueLimit)));
+        admission = new Semaphore(poolSize + Math.max(0, queueLimit));
+        //
+        // Image requests are read from the connection stream. Without this, ImageIO spools every stream to a
+        // temporary file first.
+        //
+        ImageIO.setUseCache(false);
+        //
+        // Leaving the server executor unset runs the contexts on the dispatcher thread, which only does the admission
+        // check and hands the exchange over.
+        //
+        server.createContext(ENDPOINT_DECODE, exchange -> admit(exchange, "POST", decodeStats, this::handleDecode));
+        server.createContext(ENDPOINT_ENCODE, exchange -> admit(exchange, "POST", encodeStats, this::handleEncode));
+        server.createContext(ENDPOINT_STATS, this::handleStats);
+    }   //QRServer
+
+    /**
+     * This method starts accepting connections.
+     */
+    public void start()
+    {
+        server.start();
+    }   //start
+
+    /**
+     * This method stops accepting connections, waits up to the given time for the requests in progress and stops.
+     *
+     * @param delaySec specifies how long to wait for the requests in progress in seconds.
+     */
+    public void stop(int delaySec)
+    {
+        server.stop(delaySec);
+        workers.shutdown();
+    }   //stop
+
+    /**
+     * This method returns the address the server is listening on.
+     *
+     * @return server address.
+     */
+    public InetSocketAddress getAddress()
+    {
+        return server.getAddress();
+    }   //getAddress
+
+    /**
+     * This method returns the request counters and latencies as a JSON object.
+     *
+     * @return statistics in JSON.
+     */
+    public String getStats()
+    {
+        double seconds = (System.nanoTime() - startTime)/1000000000.0;
+        StringBuilder sb = new StringBuilder(256);
+
+        sb.append("{\"uptimeSec\":").append(String.format(Locale.ROOT, "%.1f", seconds));
+        sb.append(",\"inFlight\":").append(workers.getActiveCount());
+        sb.append(",\"queued\":").append(workers.getQueue().size());
+        sb.append(",\"rejected\":").append(numRejected.get());
+        sb.append(",\"badRequests\":").append(numBadRequests.get());
+        appendEndpointStats(sb, "decode", decodeStats, seconds);
+        appendEndpointStats(sb, "encode", encodeStats, seconds);
+        appendStageStats(sb);
+        sb.append('}');
+
+        return sb.toString();
+    }   //getStats
+
+    /**
+     * This method appends the counters of one endpoint to the JSON statistics.
+     *
+     * @param sb specifies the string builder.
+     * @param name specifies the endpoint name.
+     * @param endpoint specifies the endpoint counters.
+     * @param seconds specifies the server uptime in seconds.
+     */
+    private static void appendEndpointStats(StringBuilder sb, String name, Endpoint endpoint, double seconds)
+    {
+        LatencyHistogram latencies = endpoint.latencies;
+
+        sb.append(",\"").append(name).append("\":{\"requests\":").append(endpoint.numRequests.get());
+        sb.append(",\"failed\":").append(endpoint.numFailed.get());
+        sb.append(String.format(
+            Locale.ROOT, ",\"perSec\":%.1f,\"meanMs\":%.3f,\"p50Ms\":%.3f,\"p99Ms\":%.3f,\"maxMs\":%.3f}",
+            seconds > 0.0? latencies.getCount()/seconds: 0.0, latencies.getMean()/1000000.0,
+            latencies.getPercentile(50.0)/1000000.0, latencies.getPercentile(99.0)/1000000.0,
+            latencies.getMax()/1000000.0));
+    }   //appendEndpointStats
+
+    /**
+     * This method appends the times of the decode pipeline stages that have run to the JSON statistics.
+     *
+     * @param sb specifies the string builder.
+     */
+    private static void appendStageStats(StringBuilder sb)
+    {
+        StageMetrics metrics = StageMetrics.getInstance();
+        String separator = "";
+
+        sb.append(",\"stages\":{");
+        for (StageMetrics.Stage stage: StageMetrics.Stage.values())
+        {
+            LatencyHistogram latencies = metrics.getLatencies(stage);
+
+            if (latencies.getCount() > 0)
+            {
+                sb.append(separator).append('"').append(stage.getLabel()).append("\":");
+                sb.append(String.format(
+                    Locale.ROOT, "{\"count\":%d,\"p50Ms\":%.3f,\"p99Ms\":%.3f,\"maxMs\":%.3f}",
+                    latencies.getCount(), latencies.getPercentile(50.0)/1000000.0,
+                    latencies.getPercentile(99.0)/1000000.0, latencies.getMax()/1000000.0));
+                separator = ",";
+            }
+        }
+        sb.append("},\"decodeSuccesses\":").append(metrics.getDecodeSuccesses());
+        sb.append(",\"decodeFailures\":").append(metrics.getDecodeFailures());
+        sb.append(",\"attemptSuccesses\":").append(metrics.getAttemptSuccesses());
+        sb.append(",\"attemptFailures\":").append(metrics.getAttemptFailures());
+    }   //appendStageStats
+
+    /**
+     * This method is called on the dispatcher thread for each request to a work endpoint. It rejects the request
+     * with 503 if the server is at capacity, or hands it to a worker thread otherwise.
+     *
+     * @param exchange specifies the request and response.
+     * @param method specifies the HTTP method the endpoint accepts.
+     * @param endpoint specifies the endpoint counters.
+     * @param handler specifies the endpoint handler.
+     * @throws IOException if the connection failed.
+     */
+    private void admit(HttpExchange exchange, String method, Endpoint endpoint, Handler handler) throws IOException
+    {
+        long arrivalTime = System.nanoTime();
+
+        if (!exchange.getRequestMethod().equalsIgnoreCase(method))
+        {
+            numBadRequests.incrementAndGet();
+            exchange.getResponseHeaders().set("Allow", method);
+            exchange.getResponseHeaders().set("Connection", "close");
+            sendText(exchange, 405, "Method not allowed.");
+        }
+        else if (!admission.tryAcquire())
+        {
+            sendBusy(exchange);
+        }
+        else
+        {
+            try
+            {
+                execute(exchange, endpoint, handler, arrivalTime);
+            }
+            catch (RejectedExecutionException e)
+            {
+                //
+                // Should not happen with the queue sized to the permits, but if it does the permit must not leak.
+                //
+                admission.release();
+                sendBusy(exchange);
+            }
+        }
+    }   //admit
+
+    /**
+     * This method answers a request the server has no capacity for with 503.
+     *
+     * @param exchange specifies the request and response.
+     * @throws IOException if the connection failed.
+     */
+    private void sendBusy(HttpExchange exchange) throws IOException
+    {
+        numRejected.incrementAndGet();
+        //
+        // Closing the connection spares the dispatcher thread from draining a request body nobody will read.
+        //
+        exchange.getResponseHeaders().set("Retry-After", "1");
+        exchange.getResponseHeaders().set("Connection", "close");
+        sendText(exchange, 503, "Server busy.");
+    }   //sendBusy
+
+    /**
+     * This method hands an admitted request to a worker thread, which releases the admission permit when done.
+     *
+     * @param exchange specifies the request and response.
+     * @param endpoint specifies the endpoint counters.
+     * @param handler specifies the endpoint handler.
+     * @param arrivalTime specifies when the request arrived, in System.nanoTime() units.
+     */
+    private void execute(HttpExchange exchange, Endpoint endpoint, Handler handler, long arrivalTime)
+    {
+        workers.execute(() ->
+        {
+            try
+            {
+                endpoint.numRequests.incrementAndGet();
+                handler.handle(exchange);
+            }
+            catch (RequestException e)
+            {
+                endpoint.numFailed.incrementAndGet();
+                trySendText(exchange, e.status, e.getMessage());
+            }
+            catch (IOException | RuntimeException e)
+            {
+                endpoint.numFailed.incrementAndGet();
+                trySendText(exchange, 500, e.toString());
+            }
+            finally
+            {
+                exchange.close();
+                admission.release();
+                endpoint.latencies.record(System.nanoTime() - arrivalTime);
+            }
+        });
+    }   //execute
+
+    /**
+     * This method decodes the image in the request body and responds with the message.
+     *
+     * @param exchange specifies the request and response.
+     * @throws IOException if the connection failed.
+     * @throws RequestException if the body is not an image, is too large or has no QR code.
+     */
+    private void handleDecode(HttpExchange exchange) throws IOException, RequestException
+    {
+        String contentLength = exchange.getRequestHeaders().getFirst("Content-Length");
+
+        try
+        {
+            if (contentLength != null && Long.parseLong(contentLength.trim()) > MAX_DECODE_BODY_BYTES)
+            {
+                throw new RequestException(413, "Request body is longer than " + MAX_DECODE_BODY_BYTES + " bytes.");
+            }
+        }
+        catch (NumberFormatException e)
+        {
+            throw new RequestException(400, "Invalid Content-Length.");
+        }
+
+        BufferedImage image = readImage(exchange);
+
+        String text;
+        try
+        {
+            text = QRCode.decodeMessage(image);
+        }
+        catch (RuntimeException e)
+        {
+            throw new RequestException(422, e.getMessage());
+        }
+
+        sendText(exchange, 200, text);
+    }   //handleDecode
+
+    /**
+     * This method reads the image in the request body. The image size is read from the header first, and an image
+     * with more pixels than the limit is refused before any pixel is decoded.
+     *
+     * @param exchange specifies the request.
+     * @return request body image.
+     * @throws IOException if the connection failed.
+     * @throws RequestException if the body is not a supported image or is too large.
+     */
+    private static BufferedImage readImage(HttpExchange exchange) throws IOException, RequestException
+    {
+        BoundedInputStream in = new BoundedInputStream(exchange.getRequestBody(), MAX_DECODE_BODY_BYTES);
+        ImageReader reader = null;
+
+        try (ImageInputStream imageIn = ImageIO.createImageInputStream(in))
+        {
+            Iterator<ImageReader> readers = imageIn != null? ImageIO.getImageReaders(imageIn): null;
+            if (readers == null || !readers.hasNext())
+            {
+                throw new RequestException(415, "Request body is not a supported image.");
+            }
+
+            reader = readers.next();
+            reader.setInput(imageIn, true, true);
+            if ((long)reader.getWidth(0)*reader.getHeight(0) > MAX_DECODE_PIXELS)
+            {
+                throw new RequestException(413, "Image has more than " + MAX_DECODE_PIXELS + " pixels.");
+            }
+
+            return reader.read(0);
+        }
+        catch (IOException e)
+        {
+            if (in.exceeded)
+            {
+                throw new RequestException(413, e.getMessage());
+            }
+            //
+            // A truncated or malformed image is a bad request rather than a server failure.
+            //
+            throw new RequestException(415, "Request body is not a supported image: " + e.getMessage());
+        }
+        finally
+        {
+            if (reader != null)
+            {
+                reader.dispose();
+            }
+            in.close();
+        }
+    }   //readImage
+
+    /**
+     * This method encodes the message in the request body and responds with the QR code as a PNG.
+     *
+     * @param exchange specifies the request and response.
+     * @throws IOException if the connection failed.
+     * @throws RequestException if the message or image size is invalid.
+     */
+    private void handleEncode(HttpExchange exchange) throws IOException, RequestException
+    {
+        Map<String, String> params = parseQuery(exchange.getRequestURI().getRawQuery());
+        String text = readText(exchange);
+        int width, height;
+
+        if (text.isEmpty())
+        {
+            throw new RequestException(400, "Message is empty.");
+        }
+
+        try
+        {
+            width = Integer.parseInt(params.getOrDefault("width", "0"));
+            height = Integer.parseInt(params.getOrDefault("height", "0"));
+        }
+        catch (NumberFormatException e)
+        {
+            throw new RequestException(400, "Invalid image size.");
+        }
+
+        if (width < 0 || height < 0 || width > MAX_IMAGE_SIZE || height > MAX_IMAGE_SIZE)
+        {
+            throw new RequestException(400, "Image size must be between 0 and " + MAX_IMAGE_SIZE + ".");
+        }
+
+        BufferedImage image;
+        try
+        {
+            image = QRCode.encodeMessage(text, width, height);
+        }
+        catch (RuntimeException e)
+        {
+            throw new RequestException(422, e.getMessage());
+        }
+
+        exchange.getResponseHeaders().set("Content-Type", "image/png");
+        //
+        // Length 0 sends the response chunked, the PNG goes straight from the writer to the connection.
+        //
+        exchange.sendResponseHeaders(200, 0);
+        try (OutputStream out = exchange.getResponseBody())
+        {
+            if (QRPngWriter.canWrite(image))
+            {
+                QRPngWriter.getThreadWriter().write(image, out);
+            }
+            else
+            {
+                ImageIO.write(image, "png", out);
+            }
+        }
+    }   //handleEncode
+
+    /**
+     * This method responds with the statistics. It runs on the dispatcher thread and is never rejected, so the
+     * server can be watched while it is overloaded.
+     *
+     * @param exchange specifies the request and response.
+     * @throws IOException if the connection failed.
+     */
+    private void handleStats(HttpExchange exchange) throws IOException
+    {
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        sendBytes(exchange, 200, getStats().getBytes(StandardCharsets.UTF_8));
+        exchange.close();
+    }   //handleStats
+
+    /**
+     * This method reads the request body as UTF-8 text, refusing bodies longer than any QR code can hold.
+     *
+     * @param exchange specifies the request.
+     * @return request body text.
+     * @throws IOException if the connection failed.
+     * @throws RequestException if the body is too long.
+     */
+    private static String readText(HttpExchange exchange) throws IOException, RequestException
+    {
+        ByteArrayOutputStream body = new ByteArrayOutputStream(256);
+        byte[] buffer = new byte[1024];
+
+        try (InputStream in = exchange.getRequestBody())
+        {
+            int n;
+            while ((n = in.read(buffer)) != -1)
+            {
+                if (body.size() + n > MAX_MESSAGE_BYTES)
+                {
+                    throw new RequestException(413, "Message is longer than " + MAX_MESSAGE_BYTES + " bytes.");
+                }
+                body.write(buffer, 0, n);
+            }
+        }
+
+        return new String(body.toByteArray(), StandardCharsets.UTF_8);
+    }   //readText
+
+    /**
+     * This method parses a URL query string into a map of lower case parameter names to values.
+     *
+     * @param query specifies the raw query string, can be null.
+     * @return map of parameters.
+     * @throws RequestException if the query string is malformed.
+     */
+    private static Map<String, String> parseQuery(String query) throws RequestException
+    {
+        Map<String, String> params = new HashMap<>();
+
+        if (query != null && !query.isEmpty())
+        {
+            try
+            {
+                for (String param: query.split("&"))
+                {
+                    int sepIndex = param.indexOf('=');
+                    if (sepIndex > 0)
+                    {
+                        params.put(
+                            URLDecoder.decode(param.substring(0, sepIndex), "UTF-8").toLowerCase(Locale.ROOT),
+                            URLDecoder.decode(param.substring(sepIndex + 1), "UTF-8"));
+                    }
+                }
+            }
+            catch (IllegalArgumentException | IOException e)
+            {
+                throw new RequestException(400, "Malformed query string.");
+            }
+        }
+
+        return params;
+    }   //parseQuery
+
+    /**
+     * This method sends a complete plain text response.
+     *
+     * @param exchange specifies the response.
+     * @param status specifies the HTTP status code.
+     * @param text specifies the response text.
+     * @throws IOException if the connection failed.
+     */
+    private static void sendText(HttpExchange exchange, int status, String text) throws IOException
+    {
+        exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+        sendBytes(exchange, status, text.getBytes(StandardCharsets.UTF_8));
+    }   //sendText
+
+    /**
+     * This method sends a plain text error response, unless the response has already been started.
+     *
+     * @param exchange specifies the response.
+     * @param status specifies the HTTP status code.
+     * @param text specifies the response text.
+     */
+    private static void trySendText(HttpExchange exchange, int status, String text)
+    {
+        if (exchange.getResponseCode() == -1)
+        {
+            try
+            {
+                sendText(exchange, status, text != null? text: "");
+            }
+            catch (IOException e)
+            {
+                //
+                // The client is gone, there is nobody to tell.
+                //
+            }
+        }
+    }   //trySendText
+
+    /**
+     * This method sends a complete response of known length.
+     *
+     * @param exchange specifies the response.
+     * @param status specifies the HTTP status code.
+     * @param body specifies the response body.
+     * @throws IOException if the connection failed.
+     */
+    private static void sendBytes(HttpExchange exchange, int status, byte[] body) throws IOException
+    {
+        exchange.sendResponseHeaders(status, body.length);
+        try (OutputStream out = exchange.getResponseBody())
+        {
+            out.write(body);
+        }
+    }   //sendBytes
+
+}   //class QRServer
@@ -0,0 +1,153 @@
+/*
+ * Copyright (c) 2018 Titan Robotics Club (http://www.titanrobotics.com)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+import java.awt.Rectangle;
+
+import com.google.zxing.Result;
+import com.google.zxing.ResultPoint;
+
+/**
+ * This class holds one QR code found in an image together with its position. The position is taken from the result
+ * points of the decode (the finder pattern centers and, on larger versions, the alignment pattern), so the bounds
+ * enclose those points rather than the outer edge of the code.
+ */
+public class QRSymbol
+{
+    private final Result result;
+    private final Rectangle bounds;
+    private final float centerX;
+    private final float centerY;
+
+    /**
+     * Constructor: Create an instance of the object.
+     *
+     * @param result specifies the ZXing decode result with result points in image coordinates.
+     */
+    public QRSymbol(Result result)
+    {
+        ResultPoint[] points = result.getResultPoints();
+        float minX = Float.MAX_VALUE, minY = Float.MAX_VALUE;
+        float maxX = -Float.MAX_VALUE, maxY = -Float.MAX_VALUE;
+
+        if (points != null)
+        {
+            for (ResultPoint point: points)
+            {
+                if (point != null)
+                {
+                    minX = Math.min(minX, point.getX());
+                    minY = Math.min(minY, point.getY());
+                    maxX = Math.max(maxX, point.getX());
+                    maxY = Math.max(maxY, point.getY());
+                }
+            }
+        }
+
+        this.result = result;
+        if (minX <= maxX)
+        {
+            bounds = new Rectangle(
+                (int)minX, (int)minY, (int)Math.ceil(maxX) - (int)minX, (int)Math.ceil(maxY) - (int)minY);
+            centerX = (minX + maxX)/2.0f;
+            centerY = (minY + maxY)/2.0f;
+        }
+        else
+        {
+            bounds = new Rectangle();
+            centerX = centerY = 0.0f;
+        }
+    }   //QRSymbol
+
+    /**
+     * This method returns the decoded message.
+     *
+     * @return decoded message.
+     */
+    public String getText()
+    {
+        return result.getText();
+    }   //getText
+
+    /**
+     * This method returns the ZXing decode result.
+     *
+     * @return decode result.
+     */
+    public Result getResult()
+    {
+        return result;
+    }   //getResult
+
+    /**
+     * This method returns the bounding rectangle of the result points.
+     *
+     * @return bounds in image coordinates.
+     */
+    public Rectangle getBounds()
+    {
+        return new Rectangle(bounds);
+    }   //getBounds
+
+    /**
+     * This method returns the X coordinate of the center of the QR code.
+     *
+     * @return center X in image coordinates.
+     */
+    public float getCenterX()
+    {
+        return centerX;
+    }   //getCenterX
+
+    /**
+     * This method returns the Y coordinate of the center of the QR code.
+     *
+     * @return center Y in image coordinates.
+     */
+    public float getCenterY()
+    {
+        return centerY;
+    }   //getCenterY
+
+    /**
+     * This method checks if the other symbol is the same QR code found again, e.g. in an overlapping tile. It must
+     * have the same message and its center must lie within half the size of the larger of the two.
+     *
+     * @param other specifies the other symbol.
+     * @return true if both symbols are the same QR code, false otherwise.
+     */
+    public boolean isSameSymbol(QRSymbol other)
+    {
+        float dx = centerX - other.centerX;
+        float dy = centerY - other.centerY;
+        float radius = Math.max(
+            Math.max(bounds.width, bounds.height), Math.max(other.bounds.width, other.bounds.height))/2.0f;
+
+        return getText().equals(other.getText()) && dx*dx + dy*dy <= radius*radius;
+    }   //isSameSymbol
+
+    @Override
+    public String toString()
+    {
+        return String.format("%s @ (%.0f, %.0f)", getText(), centerX, centerY);
+    }   //toString
+
+}   //class QRSymbol
@@ -0,0 +1,317 @@
+/*
+ * Copyright (c) 2018 Titan Robotics Club (http://www.titanrobotics.com)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * This class reads raw 8-bit grayscale frames from a file: either binary PGM (P5) images, one or several back to
+ * back as netpbm allows, or headerless Y8 frames of a known size, one after another. Frames are not read, the file
+ * is memory mapped in large windows and each frame is returned as a read-only view of the mapping, ready to hand to
+ * a FrameLuminanceSource. Going through a capture file only costs the page faults of the frames actually looked at,
+ * no matter how big the file is.
+ *
+ * A frame view stays valid while the file is open, but the next window replaces the current one once the frames
+ * run past it, so a frame should be done with before moving on to much later frames. A reader is not thread-safe.
+ */
+public class RawFrameFile implements Closeable
+{
+    public static final String PGM_SUFFIX = "pgm";
+
+    //
+    // Windows are mapped 256MB at a time, or one frame if a frame is bigger. A PGM header is expected to fit in the
+    // first 4KB of an image.
+    //
+    private static final long MAP_WINDOW_SIZE = 256L*1024*1024;
+    private static final int MAX_HEADER_SIZE = 4096;
+
+    private final File file;
+    private final FileChannel channel;
+    private final long fileSize;
+    private final boolean pgm;
+    private MappedByteBuffer window = null;
+    private long windowOffset = 0;
+    private long offset = 0;
+    private int frameWidth;
+    private int frameHeight;
+    private int frameIndex = -1;
+
+    /**
+     * Constructor: Create an instance of the object reading PGM images.
+     *
+     * @param file specifies the PGM file.
+     * @throws IOException if the file cannot be opened.
+     */
+    public RawFrameFile(File file) throws IOException
+    {
+        this(file, 0, 0);
+    }   //RawFrameFile
+
+    /**
+     * Constructor: Create an instance of the object reading headerless Y8 frames of the given size, or PGM images if
+     * no size is given.
+     *
+     * @param file specifies the frame file.
+     * @param width specifies the frame width in pixels, zero to read PGM images.
+     * @param height specifies the frame height in pixels, zero to read PGM images.
+     * @throws IOException if the file cannot be opened or its size is not a whole number of Y8 frames.
+     */
+    public RawFrameFile(File file, int width, int height) throws IOException
+    {
+        this.file = file;
+        this.channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+        this.fileSize = channel.size();
+        this.pgm = width <= 0 || height <= 0;
+        this.frameWidth = width;
+        this.frameHeight = height;
+
+        if (!pgm && fileSize % ((long)width*height) != 0)
+        {
+            channel.close();
+            throw new IOException(file + " is not a whole number of " + width + "x" + height + " frames.");
+        }
+    }   //RawFrameFile
+
+    /**
+     * This method checks if a file name has the PGM suffix.
+     *
+     * @param name specifies the file name.
+     * @return true if the name ends with .pgm, false otherwise.
+     */
+    public static boolean isPgmFile(String name)
+    {
+        int dotIndex = name.lastIndexOf('.');
+
+        return dotIndex != -1 && name.substring(dotIndex + 1).equalsIgnoreCase(PGM_SUFFIX);
+    }   //isPgmFile
+
+    /**
+     * This method copies a grayscale frame into an image, for display.
+     *
+     * @param frame specifies the frame bytes, starting at the buffer's position.
+     * @param width specifies the frame width in pixels.
+     * @param height specifies the frame height in pixels.
+     * @return grayscale image of the frame.
+     */
+    public static BufferedImage toImage(ByteBuffer frame, int width, int height)
+    {
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_BYTE_GRAY);
+
+        frame.duplicate().get(((DataBufferByte)image.getRaster().getDataBuffer()).getData(), 0, width*height);
+
+        return image;
+    }   //toImage
+
+    /**
+     * This method returns the size of the file.
+     *
+     * @return file size in bytes.
+     */
+    public long getFileSize()
+    {
+        return fileSize;
+    }   //getFileSize
+
+    /**
+     * This method returns the width of the last frame returned, or of every frame for a Y8 file.
+     *
+     * @return frame width in pixels.
+     */
+    public int getFrameWidth()
+    {
+        return frameWidth;
+    }   //getFrameWidth
+
+    /**
+     * This method returns the height of the last frame returned, or of every frame for a Y8 file.
+     *
+     * @return frame height in pixels.
+     */
+    public int getFrameHeight()
+    {
+        return frameHeight;
+    }   //getFrameHeight
+
+    /**
+     * This method returns the index of the last frame returned.
+     *
+     * @return frame index, zero for the first frame, -1 before the first frame.
+     */
+    public int getFrameIndex()
+    {
+        return frameIndex;
+    }   //getFrameIndex
+
+    /**
+     * This method checks if there is another frame in the file.
+     *
+     * @return true if there is another frame, false at the end of the file.
+     */
+    public boolean hasNextFrame()
+    {
+        return offset < fileSize;
+    }   //hasNextFrame
+
+    /**
+     * This method returns the next frame as a read-only view of the mapped file. The view is positioned at the first
+     * pixel and its limit is the end of the frame. The frame size is available from getFrameWidth() and
+     * getFrameHeight().
+     *
+     * @return next frame, null at the end of the file.
+     * @throws IOException if the file cannot be mapped or a PGM header is malformed.
+     */
+    public ByteBuffer nextFrame() throws IOException
+    {
+        if (!hasNextFrame())
+        {
+            return null;
+        }
+
+        if (pgm)
+        {
+            readPgmHeader();
+        }
+
+        int frameSize = frameWidth*frameHeight;
+        if (offset + frameSize > fileSize)
+        {
+            throw new IOException(file + " ends in the middle of frame " + (frameIndex + 1) + ".");
+        }
+
+        mapWindow(offset, frameSize);
+        ByteBuffer frame = window.duplicate();
+        frame.position((int)(offset - windowOffset));
+        frame.limit(frame.position() + frameSize);
+        offset += frameSize;
+        frameIndex++;
+
+        return frame.slice().asReadOnlyBuffer();
+    }   //nextFrame
+
+    /**
+     * This method closes the file. The mapping stays valid until it is garbage collected.
+     *
+     * @throws IOException if the file cannot be closed.
+     */
+    @Override
+    public void close() throws IOException
+    {
+        window = null;
+        channel.close();
+    }   //close
+
+    /**
+     * This method makes sure the given range of the file is in the mapped window, mapping a new window starting at
+     * the range if it is not.
+     *
+     * @param start specifies the file offset of the range.
+     * @param length specifies the length of the range.
+     * @throws IOException if the file cannot be mapped.
+     */
+    private void mapWindow(long start, int length) throws IOException
+    {
+        if (window == null || start < windowOffset || start + length > windowOffset + window.capacity())
+        {
+            long size = Math.min(Math.max(MAP_WINDOW_SIZE, length), fileSize - start);
+
+            window = channel.map(FileChannel.MapMode.READ_ONLY, start, size);
+            windowOffset = start;
+        }
+    }   //mapWindow
+
+    /**
+     * This method parses the PGM header at the current offset and moves the offset to the first pixel.
+     *
+     * @throws IOException if the header is malformed or not an 8-bit binary PGM header.
+     */
+    private void readPgmHeader() throws IOException
+    {
+        mapWindow(offset, (int)Math.min(MAX_HEADER_SIZE, fileSize - offset));
+
+        int pos = (int)(offset - windowOffset);
+        int end = Math.min(window.capacity(), pos + MAX_HEADER_SIZE);
+
+        if (end - pos < 2 || window.get(pos) != 'P' || window.get(pos + 1) != '5')
+        {
+            throw new IOException(file + " frame " + (frameIndex + 1) + " is not a binary PGM image.");
+        }
+
+        int[] fields = new int[3];
+        pos += 2;
+        for (int i = 0; i < fields.length; i++)
+        {
+            //
+            // Skip whitespace and comments, then read the decimal number.
+            //
+            while (pos < end && (Character.isWhitespace(window.get(pos)) || window.get(pos) == '#'))
+            {
+                if (window.get(pos) == '#')
+                {
+                    while (pos < end && window.get(pos) != '\n')
+                    {
+                        pos++;
+                    }
+                }
+                pos++;
+            }
+
+            int start = pos;
+            while (pos < end && window.get(pos) >= '0' && window.get(pos) <= '9' && pos - start < 9)
+            {
+                fields[i] = fields[i]*10 + window.get(pos) - '0';
+                pos++;
+            }
+
+            if (pos == start || pos >= end || !Character.isWhitespace(window.get(pos)))
+            {
+                throw new IOException(file + " frame " + (frameIndex + 1) + " has a malformed PGM header.");
+            }
+        }
+
+        if (fields[0] <= 0 || fields[1] <= 0 || fields[2] <= 0 || fields[2] > 255)
+        {
+            throw new IOException(
+                file + " frame " + (frameIndex + 1) + " is not an 8-bit PGM image (" + fields[0] + "x" + fields[1] +
+                ", maxval " + fields[2] + ").");
+        }
+
+        if ((long)fields[0]*fields[1] > Integer.MAX_VALUE)
+        {
+            throw new IOException(file + " frame " + (frameIndex + 1) + " is too big.");
+        }
+
+        frameWidth = fields[0];
+        frameHeight = fields[1];
+        //
+        // A single whitespace character separates the header from the pixels.
+        //
+        offset = windowOffset + pos + 1;
+    }   //readPgmHeader
+
+}   //class RawFrameFile
@@ -20,33 +20,51 @@
  * SOFTWARE.
  */
 
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
 /**
- * This class implements a refresh thread that runs every refresh interval to repaint the video pane.
- * So in effect, it is playing the video from the camera.
+ * This class implements a refresh thread that runs a task every refresh interval. The task captures a frame from
+ * the camera and hands it to the video pane and the scanner, so in effect, it is playing the video from the camera.
+ *
+ * Ticks are scheduled at a fixed rate against absolute deadlines, so the time the task takes does not add to the
+ * interval. If the task overruns one or more deadlines, the missed ticks are skipped instead of being run back to
+ * back. While suspended, the thread is parked and uses no CPU at all.
+ *
+ * The rate can optionally adapt: with an idle interval set, the thread ticks at the idle interval until told that a
+ * QR code candidate is in view, then ticks at the refresh interval until no candidate has been seen for the holdoff
+ * time.
  */
 public class RefreshThread extends Thread
 {
-    private ImagePanel panel;
-    private long refreshInterval;
-    private boolean threadRunning = true;
-    private boolean threadResumed = false;
+    private final Runnable task;
+    private final long refreshIntervalNanos;
+    private volatile long idleIntervalNanos = 0;
+    private volatile long idleHoldoffNanos = 0;
+    private volatile long lastCandidateTime = 0;
+    private volatile boolean candidateSeen = false;
+    private volatile boolean threadRunning = true;
+    private volatile boolean threadResumed = false;
+    private final AtomicLong numTicks = new AtomicLong();
+    private final AtomicLong numMissedTicks = new AtomicLong();
 
     /**
      * Constructor: Create an instance of the object.
      *
-     * @param panel specifies the panel to draw the image on.
+     * @param task specifies the task to run every refresh interval.
      * @param refreshInterval specifies the refresh interval in msec.
      */
-    public RefreshThread(ImagePanel panel, long refreshInterval)
+    public RefreshThread(Runnable task, long refreshInterval)
     {
-        this.panel = panel;
-        this.refreshInterval = refreshInterval;
+        this.task = task;
+        this.refreshIntervalNanos = TimeUnit.MILLISECONDS.toNanos(refreshInterval);
     }   //RefreshThread
 
     /**
-     * This method suspends the thread.
+     * This method suspends the thread. It does not wait for a task in progress to finish.
      */
-    public synchronized void suspendThread()
+    public void suspendThread()
     {
         threadResumed = false;
     }   //suspendThread
@@ -54,41 +72,145 @@ public class RefreshThread extends Thread
     /**
      * This method resumes the thread.
      */
-    public synchronized void resumeThread()
+    public void resumeThread()
     {
         threadResumed = true;
+        LockSupport.unpark(this);
     }   //resumeThread
 
     /**
-     * This method terminates the thread.
+     * This method terminates the thread. It does not wait for a task in progress to finish.
      */
-    public synchronized void terminateThread()
+    public void terminateThread()
     {
         threadRunning = false;
+        LockSupport.unpark(this);
     }   //terminateThread
 
     /**
-     * This method runs the thread. It refresh the panel with the camera image at refresh rate.
+     * This method enables or disables the adaptive rate.
+     *
+     * @param idleInterval specifies the interval in msec to tick at while no QR code candidate is in view, zero to
+     *        always tick at the refresh interval.
+     * @param idleHoldoff specifies how long in msec to keep ticking at the refresh interval after the last candidate
+     *        was seen.
+     */
+    public void setIdleInterval(long idleInterval, long idleHoldoff)
+    {
+        idleHoldoffNanos = TimeUnit.MILLISECONDS.toNanos(idleHoldoff);
+        idleIntervalNanos = TimeUnit.MILLISECONDS.toNanos(idleInterval);
+        LockSupport.unpark(this);
+    }   //setIdleInterval
+
+    /**
+     * This method tells the thread that a QR code candidate is in view. If the thread was ticking at the idle
+     * interval, the next tick is brought forward so the rate ramps up right away.
+     */
+    public void candidateInView()
+    {
+        boolean wasIdle = isIdle(System.nanoTime());
+
+        lastCandidateTime = System.nanoTime();
+        candidateSeen = true;
+        if (wasIdle)
+        {
+            LockSupport.unpark(this);
+        }
+    }   //candidateInView
+
+    /**
+     * This method returns the number of ticks the task was run.
+     *
+     * @return number of ticks run.
+     */
+    public long getNumTicks()
+    {
+        return numTicks.get();
+    }   //getNumTicks
+
+    /**
+     * This method returns the number of ticks skipped because the task overran their deadline.
+     *
+     * @return number of ticks missed.
+     */
+    public long getNumMissedTicks()
+    {
+        return numMissedTicks.get();
+    }   //getNumMissedTicks
+
+    /**
+     * This method runs the thread. It runs the task at the current rate, parking between ticks and while suspended.
      */
     @Override
     public void run()
     {
+        long nextDeadline = System.nanoTime();
+        boolean idle = false;
+
         while (threadRunning)
         {
-            //
-            // Repaint the video pane every refreshInterval.
-            //
-            synchronized(this)
+            if (!threadResumed)
             {
-                if (threadResumed)
-                {
-                    panel.captureImage();
-                }
+                LockSupport.park(this);
+                nextDeadline = System.nanoTime();
+                continue;
+            }
+
+            long now = System.nanoTime();
+            boolean nowIdle = isIdle(now);
+            if (idle && !nowIdle)
+            {
+                //
+                // Ramping up, do not wait out the rest of the idle interval.
+                //
+                nextDeadline = Math.min(nextDeadline, now);
+            }
+            idle = nowIdle;
+
+            long waitTime = nextDeadline - now;
+            if (waitTime > 0)
+            {
+                //
+                // Recheck the state after waking up, we may have been woken early by a state change.
+                //
+                LockSupport.parkNanos(this, waitTime);
+                continue;
+            }
+
+            task.run();
+            numTicks.incrementAndGet();
+
+            long interval = idle? idleIntervalNanos: refreshIntervalNanos;
+            nextDeadline += interval;
+            now = System.nanoTime();
+            if (interval <= 0)
+            {
+                nextDeadline = now;
+            }
+            else if (nextDeadline <= now)
+            {
+                //
+                // The task overran one or more deadlines, skip the missed ticks instead of drifting or bursting.
+                //
+                long missedTicks = (now - nextDeadline)/interval + 1;
+                nextDeadline += missedTicks*interval;
+                numMissedTicks.addAndGet(missedTicks);
             }
-            sleep(refreshInterval);
         }
     }   //run
 
+    /**
+     * This method determines if the thread should tick at the idle interval.
+     *
+     * @param now specifies the current time in System.nanoTime() units.
+     * @return true if the adaptive rate is enabled and no candidate has been seen within the holdoff time.
+     */
+    private boolean isIdle(long now)
+    {
+        return idleIntervalNanos > refreshIntervalNanos &&
+               (!candidateSeen || now - lastCandidateTime > idleHoldoffNanos);
+    }   //isIdle
+
     /**
      * This method puts the current thread to sleep for the given time in msec.
      * It handles InterruptException where it recalculates the remaining time
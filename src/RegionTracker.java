@@ -0,0 +1,216 @@
+/*
+ * Copyright (c) 2018 Titan Robotics Club (http://www.titanrobotics.com)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+import com.google.zxing.Result;
+import com.google.zxing.ResultPoint;
+
+/**
+ * This class decodes consecutive frames of a live feed, remembering where the QR code was found last time. In a
+ * live feed the code barely moves from one frame to the next, so the next frame is first searched only in a padded
+ * region around the finder patterns of the last result. Binarizing and searching the region is a fraction of the
+ * cost of the whole frame. If the region fails, the whole frame is searched and the region is either moved to the
+ * new position or dropped until the code is found again.
+ */
+public class RegionTracker
+{
+    //
+    // The finder pattern centers are 3.5 modules inside the corners of the code and the quiet zone adds 4 more, so
+    // the code with its quiet zone extends about half the finder span beyond the finder centers of even the smallest
+    // version. The region adds that plus a margin for the code moving between frames.
+    //
+    private static final double REGION_PADDING = 0.5;
+    private static final int MOTION_MARGIN = 24;
+    //
+    // A region almost as big as the frame saves nothing, so the frame is searched as a whole instead.
+    //
+    private static final double MAX_REGION_FRACTION = 0.75;
+
+    private final QRDecoderSession session;
+    private int regionLeft = 0;
+    private int regionTop = 0;
+    private int regionWidth = 0;
+    private int regionHeight = 0;
+    private long numRegionHits = 0;
+    private long numRegionMisses = 0;
+    private long numFullSearches = 0;
+
+    /**
+     * Constructor: Create an instance of the object.
+     *
+     * @param session specifies the decoder session to decode with.
+     */
+    public RegionTracker(QRDecoderSession session)
+    {
+        this.session = session;
+    }   //RegionTracker
+
+    /**
+     * This method forgets the tracked region so the next frame is searched as a whole.
+     */
+    public void reset()
+    {
+        regionWidth = regionHeight = 0;
+    }   //reset
+
+    /**
+     * This method checks if there is a tracked region to search first.
+     *
+     * @return true if a region is being tracked, false otherwise.
+     */
+    public boolean hasRegion()
+    {
+        return regionWidth > 0 && regionHeight > 0;
+    }   //hasRegion
+
+    /**
+     * This method returns the number of frames decoded from the tracked region alone.
+     *
+     * @return number of region hits.
+     */
+    public long getNumRegionHits()
+    {
+        return numRegionHits;
+    }   //getNumRegionHits
+
+    /**
+     * This method returns the number of frames the tracked region was searched without finding the QR code.
+     *
+     * @return number of region misses.
+     */
+    public long getNumRegionMisses()
+    {
+        return numRegionMisses;
+    }   //getNumRegionMisses
+
+    /**
+     * This method returns the number of frames searched as a whole.
+     *
+     * @return number of full frame searches.
+     */
+    public long getNumFullSearches()
+    {
+        return numFullSearches;
+    }   //getNumFullSearches
+
+    /**
+     * This method decodes the QR code from a camera frame, searching the tracked region first. The caller must hold
+     * a reference to the frame.
+     *
+     * @param frame specifies the frame.
+     * @return decode result with result points in frame coordinates, null if there is no QR code found.
+     */
+    public Result decode(Frame frame)
+    {
+        return decode(frame.getData(), frame.getWidth(), frame.getHeight(), frame.getBytesPerPixel());
+    }   //decode
+
+    /**
+     * This method decodes the QR code from a raw frame, searching the tracked region first.
+     *
+     * @param data specifies the frame bytes, rows packed without padding.
+     * @param width specifies the frame width in pixels.
+     * @param height specifies the frame height in pixels.
+     * @param bytesPerPixel specifies FrameLuminanceSource.BYTES_PER_PIXEL_GRAY or BYTES_PER_PIXEL_BGR.
+     * @return decode result with result points in frame coordinates, null if there is no QR code found.
+     */
+    public Result decode(byte[] data, int width, int height, int bytesPerPixel)
+    {
+        Result result = null;
+
+        if (hasRegion() && regionLeft + regionWidth <= width && regionTop + regionHeight <= height)
+        {
+            result = session.decodeRegion(
+                data, width, height, bytesPerPixel, regionLeft, regionTop, regionWidth, regionHeight);
+            if (result != null)
+            {
+                numRegionHits++;
+            }
+            else
+            {
+                numRegionMisses++;
+            }
+        }
+
+        if (result == null)
+        {
+            numFullSearches++;
+            result = session.decode(data, width, height, bytesPerPixel);
+        }
+
+        if (result != null)
+        {
+            trackRegion(result.getResultPoints(), width, height);
+        }
+        else
+        {
+            reset();
+        }
+
+        return result;
+    }   //decode
+
+    /**
+     * This method sets the region to search in the next frame around the given result points.
+     *
+     * @param points specifies the result points in frame coordinates.
+     * @param width specifies the frame width in pixels.
+     * @param height specifies the frame height in pixels.
+     */
+    private void trackRegion(ResultPoint[] points, int width, int height)
+    {
+        if (points == null || points.length < 3)
+        {
+            reset();
+            return;
+        }
+
+        float minX = Float.MAX_VALUE, minY = Float.MAX_VALUE;
+        float maxX = -Float.MAX_VALUE, maxY = -Float.MAX_VALUE;
+
+        for (ResultPoint point: points)
+        {
+            minX = Math.min(minX, point.getX());
+            minY = Math.min(minY, point.getY());
+            maxX = Math.max(maxX, point.getX());
+            maxY = Math.max(maxY, point.getY());
+        }
+
+        int padding = (int)(REGION_PADDING*Math.max(maxX - minX, maxY - minY)) + MOTION_MARGIN;
+        int left = Math.max(0, (int)minX - padding);
+        int top = Math.max(0, (int)minY - padding);
+        int right = Math.min(width, (int)Math.ceil(maxX) + padding);
+        int bottom = Math.min(height, (int)Math.ceil(maxY) + padding);
+
+        if (right <= left || bottom <= top || (right - left)*(bottom - top) > MAX_REGION_FRACTION*width*height)
+        {
+            reset();
+        }
+        else
+        {
+            regionLeft = left;
+            regionTop = top;
+            regionWidth = right - left;
+            regionHeight = bottom - top;
+        }
+    }   //trackRegion
+
+}   //class RegionTracker
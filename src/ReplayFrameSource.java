@@ -0,0 +1,341 @@
+/*
+ * Copyright (c) 2018 Titan Robotics Club (http://www.titanrobotics.com)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * This class implements a stand-in camera that plays back a ring file written by FrameRecorder, oldest frame
+ * first. It can play the frames at the pace they were captured, at a fixed frame rate, or as fast as they are read.
+ *
+ * When paced, the source behaves like a camera: frames come due on the replay clock whether or not anybody reads
+ * them. A read returns the newest frame that is due, skipping the older ones, and waits for the next frame if none
+ * is due yet. A read never returns the same frame twice, so reading slower than the recorded rate drops frames and
+ * reading faster blocks, just like a camera. Unpaced, every frame is returned in order without waiting, so a run
+ * sees exactly the same frames every time. The ring file is memory mapped read-only and each read is a single copy
+ * from the mapping into the caller's frame.
+ */
+public class ReplayFrameSource implements FrameSource
+{
+    public enum Pace
+    {
+        //
+        // Play the frames at the intervals they were captured at.
+        //
+        ORIGINAL,
+        //
+        // Play the frames at a fixed frame rate.
+        //
+        FIXED,
+        //
+        // Play every frame as soon as it is read.
+        //
+        MAX
+
+    }   //enum Pace
+
+    public static final double DEFAULT_FRAME_RATE = 30.0;
+
+    private final File file;
+    private final Pace pace;
+    private final long frameIntervalNanos;
+    private final boolean loop;
+    private FileChannel channel = null;
+    private MappedByteBuffer[] windows = null;
+    private int width = 0;
+    private int height = 0;
+    private int bytesPerPixel = 0;
+    private int capacity = 0;
+    private int firstSlot = 0;
+    private long[] frameTimes = null;
+    private long loopNanos = 0;
+    private long startTime = 0;
+    private long nextSequence = 0;
+    private long numPlayed = 0;
+    private long numSkipped = 0;
+
+    /**
+     * Constructor: Create an instance of the object.
+     *
+     * @param file specifies the ring file written by FrameRecorder.
+     * @param pace specifies how fast to play the frames.
+     * @param frameRate specifies the frame rate of the FIXED pace in frames per second, also used as the interval
+     *        between the last frame and the first when an ORIGINAL paced recording of a single frame loops.
+     * @param loop specifies true to start over after the last frame, false to stop.
+     */
+    public ReplayFrameSource(File file, Pace pace, double frameRate, boolean loop)
+    {
+        if (!(frameRate > 0.0))
+        {
+            throw new IllegalArgumentException("Frame rate must be positive.");
+        }
+
+        this.file = file;
+        this.pace = pace;
+        this.frameIntervalNanos = Math.max(1L, (long)(TimeUnit.SECONDS.toNanos(1)/frameRate));
+        this.loop = loop;
+    }   //ReplayFrameSource
+
+    /**
+     * This method opens the ring file, maps it and rewinds to the oldest frame.
+     *
+     * @return true if the file holds at least one frame, false otherwise.
+     */
+    @Override
+    public boolean open()
+    {
+        close();
+        try
+        {
+            channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+
+            long fileSize = channel.size();
+            ByteBuffer header = fileSize >= FrameRecorder.HEADER_SIZE?
+                channel.map(FileChannel.MapMode.READ_ONLY, 0, FrameRecorder.HEADER_SIZE): null;
+            if (header == null || header.getInt(0) != FrameRecorder.MAGIC || header.getInt(4) != FrameRecorder.VERSION)
+            {
+                throw new IOException(file + " is not a frame ring file.");
+            }
+
+            width = header.getInt(FrameRecorder.WIDTH_OFFSET);
+            height = header.getInt(FrameRecorder.HEIGHT_OFFSET);
+            bytesPerPixel = header.getInt(FrameRecorder.BYTES_PER_PIXEL_OFFSET);
+            capacity = header.getInt(FrameRecorder.CAPACITY_OFFSET);
+            long numRecorded = header.getLong(FrameRecorder.NUM_RECORDED_OFFSET);
+            long frameSize = (long)width*height*bytesPerPixel;
+
+            if (width <= 0 || height <= 0 || bytesPerPixel <= 0 || capacity <= 0 || numRecorded < 0 ||
+                frameSize > Integer.MAX_VALUE - FrameRecorder.TIMESTAMP_SIZE ||
+                fileSize < FrameRecorder.HEADER_SIZE + capacity*(FrameRecorder.TIMESTAMP_SIZE + frameSize))
+            {
+                throw new IOException(file + " has a corrupted header or is truncated.");
+            }
+
+            if (numRecorded == 0)
+            {
+                close();
+                return false;
+            }
+
+            windows = FrameRecorder.mapSlots(channel, FileChannel.MapMode.READ_ONLY, (int)frameSize, capacity);
+            firstSlot = numRecorded > capacity? (int)(numRecorded%capacity): 0;
+            frameTimes = new long[(int)Math.min(numRecorded, capacity)];
+            for (int i = 0; i < frameTimes.length; i++)
+            {
+                frameTimes[i] = getSlot(i).getLong();
+            }
+            //
+            // A loop lasts from the first frame to the last plus one average frame interval. Frames recorded with
+            // the same timestamp would make a loop take no time at all, so a loop lasts at least one fixed interval.
+            //
+            long lastTime = frameTimes[frameTimes.length - 1] - frameTimes[0];
+            loopNanos = Math.max(
+                frameTimes.length > 1? lastTime + lastTime/(frameTimes.length - 1): 0L, frameIntervalNanos);
+        }
+        catch (IOException e)
+        {
+            System.err.println("Failed to open the frame ring file: " + e.getMessage());
+            close();
+            return false;
+        }
+
+        startTime = 0;
+        nextSequence = 0;
+        numPlayed = 0;
+        numSkipped = 0;
+
+        return true;
+    }   //open
+
+    @Override
+    public void close()
+    {
+        windows = null;
+        if (channel != null)
+        {
+            try
+            {
+                channel.close();
+            }
+            catch (IOException e)
+            {
+            }
+            channel = null;
+        }
+    }   //close
+
+    @Override
+    public int getFrameWidth()
+    {
+        return width;
+    }   //getFrameWidth
+
+    @Override
+    public int getFrameHeight()
+    {
+        return height;
+    }   //getFrameHeight
+
+    @Override
+    public int getBytesPerPixel()
+    {
+        return bytesPerPixel;
+    }   //getBytesPerPixel
+
+    /**
+     * This method checks if the last frame has been played and the source does not loop.
+     *
+     * @return true if there are no more frames, false otherwise.
+     */
+    @Override
+    public boolean isAtEnd()
+    {
+        return windows != null && !loop && nextSequence >= frameTimes.length;
+    }   //isAtEnd
+
+    /**
+     * This method returns the number of frames in the recording.
+     *
+     * @return number of frames, zero if the source is not open.
+     */
+    public int getNumFrames()
+    {
+        return frameTimes != null? frameTimes.length: 0;
+    }   //getNumFrames
+
+    /**
+     * This method returns the number of frames played.
+     *
+     * @return number of frames played.
+     */
+    public long getNumPlayed()
+    {
+        return numPlayed;
+    }   //getNumPlayed
+
+    /**
+     * This method returns the number of frames skipped because they were already past due when read.
+     *
+     * @return number of frames skipped.
+     */
+    public long getNumSkipped()
+    {
+        return numSkipped;
+    }   //getNumSkipped
+
+    /**
+     * This method copies the next frame due into the given frame, waiting for it if the source is paced. The replay
+     * clock starts at the first read after the source is opened.
+     *
+     * @param frame specifies the frame to fill in.
+     * @return true if the frame was filled in, false if the source is not open, has no more frames or the frame is
+     *         not of the source size.
+     */
+    @Override
+    public boolean readFrame(Frame frame)
+    {
+        if (windows == null || isAtEnd() || frame.getWidth() != width || frame.getHeight() != height ||
+            frame.getBytesPerPixel() != bytesPerPixel)
+        {
+            return false;
+        }
+
+        long sequence = nextSequence;
+        if (pace != Pace.MAX)
+        {
+            long now = System.nanoTime();
+
+            if (startTime == 0)
+            {
+                startTime = now;
+            }
+            //
+            // Skip to the newest frame already due, then wait for it if it is not due yet. Skipping more than a loop
+            // worth of frames shows nothing new, so a replay far behind catches up over several reads instead.
+            //
+            long maxSequence = sequence + frameTimes.length;
+            while ((loop || sequence + 1 < frameTimes.length) && sequence < maxSequence &&
+                   startTime + getDueTime(sequence + 1) <= now)
+            {
+                sequence++;
+                numSkipped++;
+            }
+
+            long dueTime = startTime + getDueTime(sequence);
+            while (now < dueTime)
+            {
+                LockSupport.parkNanos(dueTime - now);
+                now = System.nanoTime();
+            }
+        }
+
+        ByteBuffer slot = getSlot((int)(sequence%frameTimes.length));
+        slot.position(slot.position() + FrameRecorder.TIMESTAMP_SIZE);
+        frame.setTimestamp(System.nanoTime());
+        slot.get(frame.getData());
+        nextSequence = sequence + 1;
+        numPlayed++;
+
+        return true;
+    }   //readFrame
+
+    /**
+     * This method returns when a frame comes due on the replay clock.
+     *
+     * @param sequence specifies the frame sequence number, counting on across loops.
+     * @return due time in nsec from the start of the replay.
+     */
+    private long getDueTime(long sequence)
+    {
+        long dueTime;
+
+        if (pace == Pace.FIXED)
+        {
+            dueTime = sequence*frameIntervalNanos;
+        }
+        else
+        {
+            int index = (int)(sequence%frameTimes.length);
+            dueTime = sequence/frameTimes.length*loopNanos + frameTimes[index] - frameTimes[0];
+        }
+
+        return dueTime;
+    }   //getDueTime
+
+    /**
+     * This method returns a view of the slot of a frame, positioned at its capture time.
+     *
+     * @param index specifies the frame index, zero for the oldest frame.
+     * @return slot view.
+     */
+    private ByteBuffer getSlot(int index)
+    {
+        return FrameRecorder.getSlot(windows, width*height*bytesPerPixel, (firstSlot + index)%capacity);
+    }   //getSlot
+
+}   //class ReplayFrameSource
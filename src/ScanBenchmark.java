@@ -0,0 +1,251 @@
+/*
+ * Copyright (c) 2018 Titan Robotics Club (http://www.titanrobotics.com)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * This class implements the headless live scan benchmark. It runs the same capture and decode stages as the live
+ * scan mode of the user interface (a refresh thread driving a frame grabber, handing frames to a live scanner) but
+ * takes its frames from a stand-in frame source, so the capture to result latency can be measured without a camera.
+ * The frames captured can also be recorded to a ring file, and a recording played back by a ReplayFrameSource ends
+ * the run early when it reaches its last frame.
+ */
+public class ScanBenchmark implements ScanListener
+{
+    public static final String MODE_NAME = "scan-bench";
+
+    private final FrameSource source;
+    private final long refreshInterval;
+    private final long idleInterval;
+    private final boolean trackRegion;
+    private final double changeThreshold;
+    private final CountDownLatch sourceEnded = new CountDownLatch(1);
+    private File recordFile = null;
+    private int recordCapacity = 0;
+    private FrameRecorder recorder = null;
+    private FrameGrabber grabber = null;
+    private LiveScanner scanner = null;
+    private RefreshThread refreshThread = null;
+    private ScanEventBus scanEvents = null;
+    private long elapsedNanos = 0;
+
+    /**
+     * Constructor: Create an instance of the object.
+     *
+     * @param source specifies the frame source, not yet opened.
+     * @param refreshInterval specifies the capture interval in msec.
+     * @param idleInterval specifies the capture interval in msec while no QR code is in view, zero to always
+     *        capture at the refresh interval.
+     * @param trackRegion specifies true to search around the previous QR code first, false to always search the
+     *        whole frame.
+     * @param changeThreshold specifies the change threshold of the live scanner, zero to decode every frame.
+     */
+    public ScanBenchmark(
+        FrameSource source, long refreshInterval, long idleInterval, boolean trackRegion, double changeThreshold)
+    {
+        this.source = source;
+        this.refreshInterval = refreshInterval;
+        this.idleInterval = idleInterval;
+        this.trackRegion = trackRegion;
+        this.changeThreshold = changeThreshold;
+    }   //ScanBenchmark
+
+    /**
+     * This method records the frames captured during the run to a ring file.
+     *
+     * @param file specifies the ring file, replaced if it exists.
+     * @param capacity specifies the number of frames the file holds, the most recent frames are kept.
+     */
+    public void setRecording(File file, int capacity)
+    {
+        this.recordFile = file;
+        this.recordCapacity = capacity;
+    }   //setRecording
+
+    /**
+     * This method runs the pipeline for the given duration, or until the frame source runs out of frames.
+     *
+     * @param durationMsec specifies how long to run in msec.
+     * @return true if the benchmark ran, false if the frame source could not be opened.
+     * @throws IOException if the recording file cannot be created or written.
+     */
+    public boolean run(long durationMsec) throws IOException
+    {
+        if (!source.open())
+        {
+            return false;
+        }
+
+        grabber = new FrameGrabber(source);
+        scanner = new LiveScanner(this, trackRegion, changeThreshold);
+        grabber.addFrameListener(scanner);
+        if (recordFile != null)
+        {
+            try
+            {
+                recorder = new FrameRecorder(
+                    recordFile, source.getFrameWidth(), source.getFrameHeight(), source.getBytesPerPixel(),
+                    recordCapacity);
+            }
+            catch (IOException e)
+            {
+                source.close();
+                throw e;
+            }
+            grabber.addFrameListener(recorder);
+        }
+        scanEvents = new ScanEventBus();
+
+        refreshThread = new RefreshThread(this::grabFrame, refreshInterval);
+        refreshThread.setIdleInterval(idleInterval, 10*refreshInterval);
+        long startTime = System.nanoTime();
+
+        scanEvents.start();
+        scanner.start();
+        refreshThread.start();
+        refreshThread.resumeThread();
+        try
+        {
+            sourceEnded.await(durationMsec, TimeUnit.MILLISECONDS);
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+        }
+        refreshThread.terminateThread();
+        joinThread(refreshThread);
+        scanner.terminateThread();
+        joinThread(scanner);
+        scanEvents.terminateThread();
+        joinThread(scanEvents);
+        elapsedNanos = System.nanoTime() - startTime;
+        source.close();
+        if (recorder != null)
+        {
+            recorder.close();
+        }
+
+        return true;
+    }   //run
+
+    /**
+     * This method is called on the refresh thread every tick. It captures a frame and ends the run if the frame
+     * source has run out of frames.
+     */
+    private void grabFrame()
+    {
+        grabber.grabFrame();
+        if (source.isAtEnd())
+        {
+            sourceEnded.countDown();
+        }
+    }   //grabFrame
+
+    /**
+     * This method prints the counters and latency of the last run.
+     *
+     * @param out specifies the stream to print to.
+     */
+    public void printSummary(PrintStream out)
+    {
+        double seconds = elapsedNanos/1000000000.0;
+
+        out.printf(
+            "Captured %d frames in %.3f sec (%.1f fps), %d ticks missed, %d skipped (ring full), %d dropped (stale)\n",
+            grabber.getNumCaptured(), seconds, grabber.getNumCaptured()/seconds, refreshThread.getNumMissedTicks(),
+            grabber.getNumSkipped(), scanner.getNumDropped());
+        out.printf(
+            "Scanned %d frames (%.1f fps), %d skipped as unchanged, QR code found in %d\n",
+            scanner.getNumDecoded(), scanner.getNumDecoded()/seconds, scanner.getNumUnchanged(),
+            scanner.getNumFound());
+        if (scanner.getCpuTimeNanos() >= 0)
+        {
+            out.printf(
+                "Scanner CPU time: %.3f sec (%.1f%% of one core)\n",
+                scanner.getCpuTimeNanos()/1000000000.0, 100.0*scanner.getCpuTimeNanos()/elapsedNanos);
+        }
+        out.println("Capture to result latency: " + scanner.getLatencies());
+        out.println("Decode time: " + scanner.getDecodeTimes());
+
+        out.printf(
+            "Scan events: %d posted, %d duplicates dropped, %d delivered, %d posts blocked\n",
+            scanEvents.getNumPosted(), scanEvents.getNumDuplicates(), scanEvents.getNumDelivered(),
+            scanEvents.getNumBlocked());
+
+        RegionTracker tracker = scanner.getRegionTracker();
+        if (tracker != null)
+        {
+            out.printf(
+                "Region tracking: %d region hits, %d region misses, %d full frame searches\n",
+                tracker.getNumRegionHits(), tracker.getNumRegionMisses(), tracker.getNumFullSearches());
+        }
+        if (recorder != null)
+        {
+            out.printf(
+                "Recorded %d frames, the last %d kept in %s\n",
+                recorder.getNumRecorded(), Math.min(recorder.getNumRecorded(), recorder.getCapacity()), recordFile);
+        }
+        if (source instanceof ReplayFrameSource)
+        {
+            ReplayFrameSource replay = (ReplayFrameSource)source;
+            out.printf(
+                "Replayed %d frames of a %d frame recording, %d skipped (past due)\n",
+                replay.getNumPlayed(), replay.getNumFrames(), replay.getNumSkipped());
+        }
+        StageMetrics.getInstance().printSummary(out);
+    }   //printSummary
+
+    /**
+     * This method is called on the scanner thread when a QR code is found. It keeps the capture at full rate and
+     * posts the result to the scan event stream.
+     *
+     * @param result specifies the scan result.
+     */
+    @Override
+    public void qrCodeScanned(ScanResult result)
+    {
+        refreshThread.candidateInView();
+        scanEvents.post(result);
+    }   //qrCodeScanned
+
+    /**
+     * This method waits for a thread to die.
+     *
+     * @param thread specifies the thread.
+     */
+    private static void joinThread(Thread thread)
+    {
+        try
+        {
+            thread.join();
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+        }
+    }   //joinThread
+
+}   //class ScanBenchmark
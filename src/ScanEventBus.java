@@ -0,0 +1,278 @@
+/*
+ * Copyright (c) 2018 Titan Robotics Club (http://www.titanrobotics.com)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.google.zxing.Result;
+
+/**
+ * This class implements the scan event stream. Scan results are posted to it from any thread, typically the live
+ * scanner, and it delivers one event per QR code per pass to its subscribers. A result whose message was already
+ * posted within the time to live is a duplicate and is dropped, and every sighting restarts the time to live, so a
+ * code held in view fires once no matter how many frames it is found in, and fires again only after it has been out
+ * of view for the whole time to live.
+ *
+ * Events are delivered on the bus's own dispatcher thread, never on the poster's thread or the Event Dispatch Thread.
+ * Events wait in a bounded queue. When the subscribers fall behind and the queue is full, post() blocks until there is
+ * room, so a slow consumer slows the scanner down (which then drops stale frames) rather than piling up events.
+ */
+public class ScanEventBus extends Thread implements ScanListener
+{
+    public static final long DEFAULT_TTL_MSEC = 2000;
+    public static final int DEFAULT_QUEUE_CAPACITY = 256;
+
+    private static final int MAX_TRACKED_MESSAGES = 4096;
+    private static final long POLL_INTERVAL_MSEC = 100;
+
+    private final ExpiringSet recentMessages;
+    private final BlockingQueue<ScanResult> queue;
+    private volatile ScanListener[] listeners = new ScanListener[0];
+    private final AtomicLong numPosted = new AtomicLong();
+    private final AtomicLong numDuplicates = new AtomicLong();
+    private final AtomicLong numDelivered = new AtomicLong();
+    private final AtomicLong numBlocked = new AtomicLong();
+    private volatile boolean threadRunning = true;
+
+    /**
+     * Constructor: Create an instance of the object.
+     *
+     * @param ttlMsec specifies how long a message must go unseen before it fires again, in msec.
+     * @param queueCapacity specifies how many events may wait for delivery before post() blocks.
+     */
+    public ScanEventBus(long ttlMsec, int queueCapacity)
+    {
+        super("ScanEventBus");
+        this.recentMessages = new ExpiringSet(TimeUnit.MILLISECONDS.toNanos(ttlMsec), MAX_TRACKED_MESSAGES);
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+        setDaemon(true);
+    }   //ScanEventBus
+
+    /**
+     * Constructor: Create an instance of the object with the default time to live and queue capacity.
+     */
+    public ScanEventBus()
+    {
+        this(DEFAULT_TTL_MSEC, DEFAULT_QUEUE_CAPACITY);
+    }   //ScanEventBus
+
+    /**
+     * This method terminates the dispatcher thread after it delivers the events already queued.
+     */
+    public void terminateThread()
+    {
+        threadRunning = false;
+        interrupt();
+    }   //terminateThread
+
+    /**
+     * This method subscribes a listener to the scan events. Listeners are called on the dispatcher thread in the
+     * order they subscribed.
+     *
+     * @param listener specifies the listener.
+     */
+    public synchronized void addScanListener(ScanListener listener)
+    {
+        ScanListener[] newListeners = Arrays.copyOf(listeners, listeners.length + 1);
+        newListeners[listeners.length] = listener;
+        listeners = newListeners;
+    }   //addScanListener
+
+    /**
+     * This method unsubscribes a listener from the scan events.
+     *
+     * @param listener specifies the listener.
+     */
+    public synchronized void removeScanListener(ScanListener listener)
+    {
+        for (int i = 0; i < listeners.length; i++)
+        {
+            if (listeners[i] == listener)
+            {
+                ScanListener[] newListeners = new ScanListener[listeners.length - 1];
+                System.arraycopy(listeners, 0, newListeners, 0, i);
+                System.arraycopy(listeners, i + 1, newListeners, i, listeners.length - i - 1);
+                listeners = newListeners;
+                break;
+            }
+        }
+    }   //removeScanListener
+
+    /**
+     * This method returns the number of results posted.
+     *
+     * @return number of results posted.
+     */
+    public long getNumPosted()
+    {
+        return numPosted.get();
+    }   //getNumPosted
+
+    /**
+     * This method returns the number of results dropped as duplicates.
+     *
+     * @return number of duplicates.
+     */
+    public long getNumDuplicates()
+    {
+        return numDuplicates.get();
+    }   //getNumDuplicates
+
+    /**
+     * This method returns the number of events delivered to the listeners.
+     *
+     * @return number of events delivered.
+     */
+    public long getNumDelivered()
+    {
+        return numDelivered.get();
+    }   //getNumDelivered
+
+    /**
+     * This method returns the number of posts that had to wait for room in the queue.
+     *
+     * @return number of blocked posts.
+     */
+    public long getNumBlocked()
+    {
+        return numBlocked.get();
+    }   //getNumBlocked
+
+    /**
+     * This method posts a scan result. A duplicate is dropped right away, anything else is queued for delivery,
+     * waiting for room in the queue if necessary.
+     *
+     * @param result specifies the scan result.
+     * @return true if the result was queued as an event, false if it was a duplicate or the bus is terminated.
+     */
+    public boolean post(ScanResult result)
+    {
+        boolean isNew;
+
+        numPosted.incrementAndGet();
+        synchronized (recentMessages)
+        {
+            isNew = recentMessages.add(getEventKey(result), result.getCaptureTime());
+        }
+
+        if (!isNew)
+        {
+            numDuplicates.incrementAndGet();
+            return false;
+        }
+
+        boolean queued = queue.offer(result);
+        if (!queued)
+        {
+            numBlocked.incrementAndGet();
+            try
+            {
+                while (threadRunning && !queued)
+                {
+                    queued = queue.offer(result, POLL_INTERVAL_MSEC, TimeUnit.MILLISECONDS);
+                }
+            }
+            catch (InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        return queued;
+    }   //post
+
+    /**
+     * This method returns what tells a scan result apart from the others, normally its message. The symbols of a
+     * Structured Append sequence are told apart by their place in the sequence as well, since two of them may carry
+     * the same text.
+     *
+     * @param result specifies the scan result.
+     * @return key of the result.
+     */
+    private static String getEventKey(ScanResult result)
+    {
+        Result zxingResult = result.getResult();
+
+        return StructuredAppendAssembler.isStructuredAppend(zxingResult)?
+            String.format(
+                "%d/%d/%d:%s", StructuredAppendAssembler.getSequenceIndex(zxingResult),
+                StructuredAppendAssembler.getSequenceTotal(zxingResult),
+                StructuredAppendAssembler.getSequenceParity(zxingResult), result.getText()):
+            result.getText();
+    }   //getEventKey
+
+    /**
+     * This method is called by the live scanner for every QR code found. It posts the result.
+     *
+     * @param result specifies the scan result.
+     */
+    @Override
+    public void qrCodeScanned(ScanResult result)
+    {
+        post(result);
+    }   //qrCodeScanned
+
+    /**
+     * This method runs the dispatcher thread. It delivers the queued events to the listeners one at a time.
+     */
+    @Override
+    public void run()
+    {
+        while (threadRunning || !queue.isEmpty())
+        {
+            ScanResult event;
+
+            try
+            {
+                event = threadRunning? queue.take(): queue.poll();
+            }
+            catch (InterruptedException e)
+            {
+                continue;
+            }
+
+            if (event != null)
+            {
+                ScanListener[] currListeners = listeners;
+                for (int i = 0; i < currListeners.length; i++)
+                {
+                    //
+                    // A failing listener must not stop the delivery to the others or end the stream.
+                    //
+                    try
+                    {
+                        currListeners[i].qrCodeScanned(event);
+                    }
+                    catch (RuntimeException e)
+                    {
+                        System.err.println("Scan listener failed: " + e);
+                    }
+                }
+                numDelivered.incrementAndGet();
+            }
+        }
+    }   //run
+
+}   //class ScanEventBus
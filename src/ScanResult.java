@@ -0,0 +1,94 @@
+/*
+ * Copyright (c) 2018 Titan Robotics Club (http://www.titanrobotics.com)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+import com.google.zxing.Result;
+
+/**
+ * This class holds a QR code found by the live scanner together with the timing of the frame it was found in.
+ */
+public class ScanResult
+{
+    private final Result result;
+    private final long captureTime;
+    private final long resultTime;
+
+    /**
+     * Constructor: Create an instance of the object.
+     *
+     * @param result specifies the ZXing decode result.
+     * @param captureTime specifies when the frame was captured, in System.nanoTime() units.
+     * @param resultTime specifies when the QR code was decoded, in System.nanoTime() units.
+     */
+    public ScanResult(Result result, long captureTime, long resultTime)
+    {
+        this.result = result;
+        this.captureTime = captureTime;
+        this.resultTime = resultTime;
+    }   //ScanResult
+
+    /**
+     * This method returns the decoded message.
+     *
+     * @return decoded message.
+     */
+    public String getText()
+    {
+        return result.getText();
+    }   //getText
+
+    /**
+     * This method returns the ZXing decode result, which also holds the QR code position in the frame.
+     *
+     * @return decode result.
+     */
+    public Result getResult()
+    {
+        return result;
+    }   //getResult
+
+    /**
+     * This method returns when the frame was captured.
+     *
+     * @return capture time in System.nanoTime() units.
+     */
+    public long getCaptureTime()
+    {
+        return captureTime;
+    }   //getCaptureTime
+
+    /**
+     * This method returns the time from frame capture to decoded result.
+     *
+     * @return capture to result latency in nanoseconds.
+     */
+    public long getLatencyNanos()
+    {
+        return resultTime - captureTime;
+    }   //getLatencyNanos
+
+    @Override
+    public String toString()
+    {
+        return String.format("%s (%.3f ms)", getText(), getLatencyNanos()/1000000.0);
+    }   //toString
+
+}   //class ScanResult
@@ -0,0 +1,148 @@
+/*
+ * Copyright (c) 2018 Titan Robotics Club (http://www.titanrobotics.com)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Constructor;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * This class emits the flight recorder event for each completed stage of the scan pipeline. The program is built
+ * against the Java 8 class library, which has no flight recorder API, so the event type is defined at run time
+ * through jdk.jfr.EventFactory by reflection. On a runtime without the flight recorder, create() returns null and
+ * no events are emitted.
+ *
+ * The event is named QRCodeApp.Stage and has two fields: the stage name and the time it took. Checking whether a
+ * recording has the event enabled costs a single call, so nothing is allocated while no one is recording.
+ */
+public class StageEvent
+{
+    public static final String EVENT_NAME = "QRCodeApp.Stage";
+
+    private final Object eventType;
+    private final MethodHandle isEnabled;
+    private final MethodHandle newEvent;
+    private final MethodHandle setField;
+    private final MethodHandle commit;
+
+    /**
+     * Constructor: Create an instance of the object.
+     *
+     * @param factory specifies the jdk.jfr.EventFactory of the event.
+     * @throws ReflectiveOperationException if the flight recorder API does not look as expected.
+     */
+    private StageEvent(Object factory) throws ReflectiveOperationException
+    {
+        MethodHandles.Lookup lookup = MethodHandles.publicLookup();
+        Class<?> factoryClass = Class.forName("jdk.jfr.EventFactory");
+        Class<?> eventClass = Class.forName("jdk.jfr.Event");
+        Class<?> eventTypeClass = Class.forName("jdk.jfr.EventType");
+
+        eventType = factoryClass.getMethod("getEventType").invoke(factory);
+        isEnabled = lookup.findVirtual(eventTypeClass, "isEnabled", MethodType.methodType(boolean.class))
+            .bindTo(eventType);
+        newEvent = lookup.findVirtual(factoryClass, "newEvent", MethodType.methodType(eventClass)).bindTo(factory);
+        setField = lookup.findVirtual(
+            eventClass, "set", MethodType.methodType(void.class, int.class, Object.class));
+        commit = lookup.findVirtual(eventClass, "commit", MethodType.methodType(void.class));
+    }   //StageEvent
+
+    /**
+     * This method defines the event type with the flight recorder.
+     *
+     * @return event emitter, null if the runtime has no flight recorder.
+     */
+    public static StageEvent create()
+    {
+        StageEvent stageEvent = null;
+
+        try
+        {
+            Class<?> annotationClass = Class.forName("jdk.jfr.AnnotationElement");
+            Class<?> valueClass = Class.forName("jdk.jfr.ValueDescriptor");
+            Constructor<?> newAnnotation = annotationClass.getConstructor(Class.class, Object.class);
+            Constructor<?> newValue = valueClass.getConstructor(Class.class, String.class, List.class);
+
+            List<Object> eventAnnotations = Arrays.asList(
+                newAnnotation.newInstance(Class.forName("jdk.jfr.Name"), EVENT_NAME),
+                newAnnotation.newInstance(Class.forName("jdk.jfr.Label"), "Scan Stage"),
+                newAnnotation.newInstance(Class.forName("jdk.jfr.Category"), new String[] {"QRCodeApp"}),
+                newAnnotation.newInstance(
+                    Class.forName("jdk.jfr.Description"), "Time taken by one stage of the scan pipeline"),
+                newAnnotation.newInstance(Class.forName("jdk.jfr.StackTrace"), Boolean.FALSE));
+            List<Object> fields = Arrays.asList(
+                newValue.newInstance(
+                    String.class, "stage",
+                    Collections.singletonList(newAnnotation.newInstance(Class.forName("jdk.jfr.Label"), "Stage"))),
+                newValue.newInstance(
+                    long.class, "latency",
+                    Arrays.asList(
+                        newAnnotation.newInstance(Class.forName("jdk.jfr.Label"), "Latency"),
+                        newAnnotation.newInstance(Class.forName("jdk.jfr.Timespan"), "NANOSECONDS"))));
+            Object factory = Class.forName("jdk.jfr.EventFactory")
+                .getMethod("create", List.class, List.class).invoke(null, eventAnnotations, fields);
+
+            stageEvent = new StageEvent(factory);
+        }
+        catch (ClassNotFoundException | LinkageError e)
+        {
+            //
+            // No flight recorder in this runtime.
+            //
+        }
+        catch (ReflectiveOperationException e)
+        {
+            throw new RuntimeException("Failed to define the " + EVENT_NAME + " event.", e);
+        }
+
+        return stageEvent;
+    }   //create
+
+    /**
+     * This method commits an event for a completed stage if a recording has the event enabled.
+     *
+     * @param stage specifies the stage name.
+     * @param latency specifies the time the stage took in nanoseconds.
+     */
+    public void emit(String stage, long latency)
+    {
+        try
+        {
+            if ((boolean)isEnabled.invokeExact())
+            {
+                Object event = newEvent.invoke();
+
+                setField.invoke(event, 0, (Object)stage);
+                setField.invoke(event, 1, (Object)latency);
+                commit.invoke(event);
+            }
+        }
+        catch (Throwable e)
+        {
+            throw new RuntimeException("Failed to emit the " + EVENT_NAME + " event.", e);
+        }
+    }   //emit
+
+}   //class StageEvent
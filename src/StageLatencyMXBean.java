@@ -0,0 +1,64 @@
+/*
+ * Copyright (c) 2018 Titan Robotics Club (http://www.titanrobotics.com)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+/**
+ * This interface is the management interface of the latency of one stage of the scan pipeline. Times are in
+ * milliseconds so they read naturally in a JMX console.
+ */
+public interface StageLatencyMXBean
+{
+    /**
+     * This method returns the number of times the stage ran.
+     *
+     * @return number of samples.
+     */
+    long getCount();
+
+    /**
+     * This method returns the mean time of the stage.
+     *
+     * @return mean time in msec.
+     */
+    double getMeanMillis();
+
+    /**
+     * This method returns the median time of the stage.
+     *
+     * @return 50th percentile time in msec.
+     */
+    double getP50Millis();
+
+    /**
+     * This method returns the 99th percentile time of the stage.
+     *
+     * @return 99th percentile time in msec.
+     */
+    double getP99Millis();
+
+    /**
+     * This method returns the longest time of the stage.
+     *
+     * @return maximum time in msec.
+     */
+    double getMaxMillis();
+
+}   //interface StageLatencyMXBean
@@ -0,0 +1,316 @@
+/*
+ * Copyright (c) 2018 Titan Robotics Club (http://www.titanrobotics.com)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * This class implements the per-stage timers of the scan pipeline: capture, convert, binarize, detect, decode and
+ * render. Each stage keeps a lock-free latency histogram, and the pipeline keeps counters of the frames dropped and
+ * of the decode successes and failures. Recording a sample costs a few atomic adds, so the timers stay on all the
+ * time.
+ *
+ * Once registerMBeans() is called, the counters are published as QRCodeApp:type=StageMetrics and each stage as
+ * QRCodeApp:type=Stage,name=<stage>. If the runtime has the flight recorder, every sample is also emitted as a
+ * QRCodeApp.Stage event while a recording has the event enabled.
+ */
+public class StageMetrics implements StageMetricsMXBean
+{
+    public static final String OBJECT_NAME = "QRCodeApp:type=StageMetrics";
+    public static final String STAGE_OBJECT_NAME = "QRCodeApp:type=Stage,name=";
+
+    /**
+     * This specifies the stages of the scan pipeline.
+     */
+    public enum Stage
+    {
+        //
+        // Reading a frame from the frame source.
+        //
+        CAPTURE,
+        //
+        // Converting the frame or image to luminance.
+        //
+        CONVERT,
+        //
+        // Thresholding the luminance into a black and white matrix.
+        //
+        BINARIZE,
+        //
+        // Locating the finder patterns and sampling the QR code grid.
+        //
+        DETECT,
+        //
+        // Error correcting and decoding the sampled grid into the message.
+        //
+        DECODE,
+        //
+        // Painting the image on the screen.
+        //
+        RENDER;
+
+        private final String label = name().toLowerCase(Locale.ROOT);
+
+        /**
+         * This method returns the stage name as used in the object names and events.
+         *
+         * @return lower case stage name.
+         */
+        public String getLabel()
+        {
+            return label;
+        }   //getLabel
+
+    }   //enum Stage
+
+    /**
+     * This class publishes the latency histogram of one stage.
+     */
+    private static class StageLatency implements StageLatencyMXBean
+    {
+        final LatencyHistogram histogram = new LatencyHistogram();
+
+        @Override
+        public long getCount()
+        {
+            return histogram.getCount();
+        }   //getCount
+
+        @Override
+        public double getMeanMillis()
+        {
+            return histogram.getMean()/1000000.0;
+        }   //getMeanMillis
+
+        @Override
+        public double getP50Millis()
+        {
+            return histogram.getPercentile(50.0)/1000000.0;
+        }   //getP50Millis
+
+        @Override
+        public double getP99Millis()
+        {
+            return histogram.getPercentile(99.0)/1000000.0;
+        }   //getP99Millis
+
+        @Override
+        public double getMaxMillis()
+        {
+            return histogram.getMax()/1000000.0;
+        }   //getMaxMillis
+
+    }   //class StageLatency
+
+    private static final StageMetrics instance = new StageMetrics();
+
+    private final StageLatency[] stages = new StageLatency[Stage.values().length];
+    private final AtomicLong numFramesDropped = new AtomicLong();
+    private final AtomicLong numDecodeSuccesses = new AtomicLong();
+    private final AtomicLong numDecodeFailures = new AtomicLong();
+    private final AtomicLong numAttemptSuccesses = new AtomicLong();
+    private final AtomicLong numAttemptFailures = new AtomicLong();
+    private final StageEvent stageEvent = StageEvent.create();
+    private boolean registered = false;
+
+    /**
+     * Constructor: Create an instance of the object.
+     */
+    private StageMetrics()
+    {
+        for (int i = 0; i < stages.length; i++)
+        {
+            stages[i] = new StageLatency();
+        }
+    }   //StageMetrics
+
+    /**
+     * This method returns the metrics shared by the whole program.
+     *
+     * @return stage metrics.
+     */
+    public static StageMetrics getInstance()
+    {
+        return instance;
+    }   //getInstance
+
+    /**
+     * This method publishes the metrics on the platform MBean server. Calling it again does nothing.
+     */
+    public synchronized void registerMBeans()
+    {
+        if (!registered)
+        {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+
+            try
+            {
+                server.registerMBean(this, new ObjectName(OBJECT_NAME));
+                for (Stage stage: Stage.values())
+                {
+                    server.registerMBean(
+                        stages[stage.ordinal()], new ObjectName(STAGE_OBJECT_NAME + stage.getLabel()));
+                }
+            }
+            catch (JMException e)
+            {
+                throw new RuntimeException("Failed to register the stage metrics MBeans.", e);
+            }
+            registered = true;
+        }
+    }   //registerMBeans
+
+    /**
+     * This method records the time a stage took, from the given start time to now.
+     *
+     * @param stage specifies the stage.
+     * @param startTime specifies the System.nanoTime() the stage started at.
+     * @return the current System.nanoTime(), the start time of the next stage when stages run back to back.
+     */
+    public long record(Stage stage, long startTime)
+    {
+        long now = System.nanoTime();
+
+        stages[stage.ordinal()].histogram.record(now - startTime);
+        if (stageEvent != null)
+        {
+            stageEvent.emit(stage.getLabel(), now - startTime);
+        }
+
+        return now;
+    }   //record
+
+    /**
+     * This method returns the latency histogram of a stage.
+     *
+     * @param stage specifies the stage.
+     * @return latency histogram.
+     */
+    public LatencyHistogram getLatencies(Stage stage)
+    {
+        return stages[stage.ordinal()].histogram;
+    }   //getLatencies
+
+    /**
+     * This method counts dropped frames.
+     *
+     * @param count specifies the number of frames dropped.
+     */
+    public void framesDropped(long count)
+    {
+        numFramesDropped.addAndGet(count);
+    }   //framesDropped
+
+    /**
+     * This method counts a decode of an image or frame, once no matter how many attempts it took.
+     *
+     * @param found specifies true if a QR code was found, false otherwise.
+     */
+    public void decodeCompleted(boolean found)
+    {
+        (found? numDecodeSuccesses: numDecodeFailures).incrementAndGet();
+    }   //decodeCompleted
+
+    /**
+     * This method counts a decode attempt. Every attempt counts, so a frame searched again at a larger region or a
+     * finer pyramid level counts a failure for each miss before the hit.
+     *
+     * @param found specifies true if a QR code was found, false otherwise.
+     */
+    public void decodeAttempted(boolean found)
+    {
+        (found? numAttemptSuccesses: numAttemptFailures).incrementAndGet();
+    }   //decodeAttempted
+
+    @Override
+    public long getFramesDropped()
+    {
+        return numFramesDropped.get();
+    }   //getFramesDropped
+
+    @Override
+    public long getDecodeSuccesses()
+    {
+        return numDecodeSuccesses.get();
+    }   //getDecodeSuccesses
+
+    @Override
+    public long getDecodeFailures()
+    {
+        return numDecodeFailures.get();
+    }   //getDecodeFailures
+
+    @Override
+    public long getAttemptSuccesses()
+    {
+        return numAttemptSuccesses.get();
+    }   //getAttemptSuccesses
+
+    @Override
+    public long getAttemptFailures()
+    {
+        return numAttemptFailures.get();
+    }   //getAttemptFailures
+
+    @Override
+    public void reset()
+    {
+        for (StageLatency stage: stages)
+        {
+            stage.histogram.reset();
+        }
+        numFramesDropped.set(0);
+        numDecodeSuccesses.set(0);
+        numDecodeFailures.set(0);
+        numAttemptSuccesses.set(0);
+        numAttemptFailures.set(0);
+    }   //reset
+
+    /**
+     * This method prints one line per stage that has run, plus the counters.
+     *
+     * @param out specifies the stream to print to.
+     */
+    public void printSummary(PrintStream out)
+    {
+        for (Stage stage: Stage.values())
+        {
+            LatencyHistogram histogram = stages[stage.ordinal()].histogram;
+
+            if (histogram.getCount() > 0)
+            {
+                out.printf("Stage %-8s %s\n", stage.getLabel() + ":", histogram);
+            }
+        }
+        out.printf(
+            "Decodes: %d found, %d not found (attempts: %d found, %d not found), %d frames dropped\n",
+            getDecodeSuccesses(), getDecodeFailures(), getAttemptSuccesses(), getAttemptFailures(),
+            getFramesDropped());
+    }   //printSummary
+
+}   //class StageMetrics
@@ -0,0 +1,70 @@
+/*
+ * Copyright (c) 2018 Titan Robotics Club (http://www.titanrobotics.com)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+/**
+ * This interface is the management interface of the scan counters published by StageMetrics.
+ */
+public interface StageMetricsMXBean
+{
+    /**
+     * This method returns the number of frames dropped, either skipped because no frame was free to capture into or
+     * replaced by a newer frame before they could be decoded.
+     *
+     * @return number of frames dropped.
+     */
+    long getFramesDropped();
+
+    /**
+     * This method returns the number of images or frames decoded that had a QR code found.
+     *
+     * @return number of successful decodes.
+     */
+    long getDecodeSuccesses();
+
+    /**
+     * This method returns the number of images or frames decoded that had no QR code found.
+     *
+     * @return number of failed decodes.
+     */
+    long getDecodeFailures();
+
+    /**
+     * This method returns the number of decode attempts that found a QR code. A decode can make several attempts,
+     * e.g. one per pyramid level or tier.
+     *
+     * @return number of successful attempts.
+     */
+    long getAttemptSuccesses();
+
+    /**
+     * This method returns the number of decode attempts that found no QR code.
+     *
+     * @return number of failed attempts.
+     */
+    long getAttemptFailures();
+
+    /**
+     * This method clears the counters and the latency histograms of all stages.
+     */
+    void reset();
+
+}   //interface StageMetricsMXBean
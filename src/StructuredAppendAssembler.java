@@ -0,0 +1,378 @@
+/*
+ * Copyright (c) 2018 Titan Robotics Club (http://www.titanrobotics.com)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.google.zxing.Result;
+import com.google.zxing.ResultMetadataType;
+
+/**
+ * This class implements the Structured Append reassembler. Decode results are fed to it one at a time in any order,
+ * from any number of images or frames, and it hands back each message as soon as the last symbol of its sequence
+ * turns up. A result that is not part of a sequence is a message on its own and is handed straight back.
+ *
+ * Each symbol is stored as it arrives, so the only work left when a sequence completes is one copy and the parity
+ * check. Sequences are told apart by their parity and length, the only identity the symbols carry. The pending
+ * sequences are bounded in number and in bytes, and when either bound is exceeded the sequence that has gone
+ * longest without a new symbol is dropped. A sequence whose parity does not match its payload is dropped as well.
+ *
+ * The payload is put back together from the raw bytes of the byte mode segments rather than the decoded text,
+ * because a sequence can be split in the middle of a multi-byte character. The reassembled payload is decoded as
+ * UTF-8, which is what StructuredAppendEncoder writes.
+ */
+public class StructuredAppendAssembler
+{
+    public static final int DEFAULT_MAX_SEQUENCES = 16;
+    public static final int DEFAULT_MAX_BYTES = 1024*1024;
+
+    private final int maxSequences;
+    private final int maxBytes;
+    //
+    // In access order, so the first entry is the sequence that has gone longest without a new symbol.
+    //
+    private final LinkedHashMap<Integer, Sequence> sequences = new LinkedHashMap<>(16, 0.75f, true);
+    private int numBufferedBytes = 0;
+    private final AtomicLong numSymbols = new AtomicLong();
+    private final AtomicLong numDuplicates = new AtomicLong();
+    private final AtomicLong numAssembled = new AtomicLong();
+    private final AtomicLong numParityErrors = new AtomicLong();
+    private final AtomicLong numEvicted = new AtomicLong();
+
+    /**
+     * This class holds the symbols of a sequence received so far.
+     */
+    private static class Sequence
+    {
+        final int parity;
+        final byte[][] segments;
+        int numReceived = 0;
+        int numBytes = 0;
+
+        Sequence(int parity, int total)
+        {
+            this.parity = parity;
+            this.segments = new byte[total][];
+        }   //Sequence
+
+    }   //class Sequence
+
+    /**
+     * Constructor: Create an instance of the object.
+     *
+     * @param maxSequences specifies the most sequences to keep pending at a time.
+     * @param maxBytes specifies the most payload bytes to keep pending at a time.
+     */
+    public StructuredAppendAssembler(int maxSequences, int maxBytes)
+    {
+        this.maxSequences = maxSequences;
+        this.maxBytes = maxBytes;
+    }   //StructuredAppendAssembler
+
+    /**
+     * Constructor: Create an instance of the object with the default bounds.
+     */
+    public StructuredAppendAssembler()
+    {
+        this(DEFAULT_MAX_SEQUENCES, DEFAULT_MAX_BYTES);
+    }   //StructuredAppendAssembler
+
+    /**
+     * This method checks if a decode result is a symbol of a Structured Append sequence.
+     *
+     * @param result specifies the decode result.
+     * @return true if the result is part of a sequence, false otherwise.
+     */
+    public static boolean isStructuredAppend(Result result)
+    {
+        Map<ResultMetadataType, Object> metadata = result.getResultMetadata();
+
+        return metadata != null && metadata.containsKey(ResultMetadataType.STRUCTURED_APPEND_SEQUENCE) &&
+               metadata.containsKey(ResultMetadataType.STRUCTURED_APPEND_PARITY);
+    }   //isStructuredAppend
+
+    /**
+     * This method returns the position of a symbol in its sequence.
+     *
+     * @param result specifies the decode result of a Structured Append symbol.
+     * @return symbol index, starting at 0.
+     */
+    public static int getSequenceIndex(Result result)
+    {
+        return ((Integer)result.getResultMetadata().get(ResultMetadataType.STRUCTURED_APPEND_SEQUENCE) >> 4) & 0xf;
+    }   //getSequenceIndex
+
+    /**
+     * This method returns the number of symbols in the sequence of a symbol.
+     *
+     * @param result specifies the decode result of a Structured Append symbol.
+     * @return number of symbols in the sequence.
+     */
+    public static int getSequenceTotal(Result result)
+    {
+        return ((Integer)result.getResultMetadata().get(ResultMetadataType.STRUCTURED_APPEND_SEQUENCE) & 0xf) + 1;
+    }   //getSequenceTotal
+
+    /**
+     * This method returns the parity of the whole payload carried by a symbol.
+     *
+     * @param result specifies the decode result of a Structured Append symbol.
+     * @return parity byte.
+     */
+    public static int getSequenceParity(Result result)
+    {
+        return (Integer)result.getResultMetadata().get(ResultMetadataType.STRUCTURED_APPEND_PARITY) & 0xff;
+    }   //getSequenceParity
+
+    /**
+     * This method returns the number of Structured Append symbols added.
+     *
+     * @return number of symbols.
+     */
+    public long getNumSymbols()
+    {
+        return numSymbols.get();
+    }   //getNumSymbols
+
+    /**
+     * This method returns the number of symbols added again after they had already been received.
+     *
+     * @return number of duplicate symbols.
+     */
+    public long getNumDuplicates()
+    {
+        return numDuplicates.get();
+    }   //getNumDuplicates
+
+    /**
+     * This method returns the number of sequences reassembled and handed back.
+     *
+     * @return number of reassembled messages.
+     */
+    public long getNumAssembled()
+    {
+        return numAssembled.get();
+    }   //getNumAssembled
+
+    /**
+     * This method returns the number of complete sequences dropped because their parity did not match.
+     *
+     * @return number of parity errors.
+     */
+    public long getNumParityErrors()
+    {
+        return numParityErrors.get();
+    }   //getNumParityErrors
+
+    /**
+     * This method returns the number of incomplete sequences dropped to stay within the bounds.
+     *
+     * @return number of evicted sequences.
+     */
+    public long getNumEvicted()
+    {
+        return numEvicted.get();
+    }   //getNumEvicted
+
+    /**
+     * This method returns the number of sequences still waiting for symbols.
+     *
+     * @return number of pending sequences.
+     */
+    public synchronized int getNumPending()
+    {
+        return sequences.size();
+    }   //getNumPending
+
+    /**
+     * This method returns the payload bytes held by the pending sequences.
+     *
+     * @return number of buffered bytes.
+     */
+    public synchronized int getNumBufferedBytes()
+    {
+        return numBufferedBytes;
+    }   //getNumBufferedBytes
+
+    /**
+     * This method adds a decode result. A symbol of a sequence is stored until the rest of the sequence arrives.
+     *
+     * @param result specifies the decode result.
+     * @return message of the result if it is not part of a sequence, the reassembled message if it completes a
+     *         sequence with a matching parity, null otherwise.
+     */
+    public synchronized String add(Result result)
+    {
+        if (!isStructuredAppend(result))
+        {
+            return result.getText();
+        }
+
+        int index = getSequenceIndex(result);
+        int total = getSequenceTotal(result);
+        int parity = getSequenceParity(result);
+        Integer key = (parity << 4) | (total - 1);
+        byte[] segment = getSegmentBytes(result);
+        Sequence sequence = sequences.get(key);
+        String msg = null;
+
+        numSymbols.incrementAndGet();
+        if (index >= total)
+        {
+            return null;
+        }
+
+        if (sequence == null)
+        {
+            sequence = new Sequence(parity, total);
+            sequences.put(key, sequence);
+        }
+
+        byte[] previous = sequence.segments[index];
+        if (previous == null)
+        {
+            sequence.numReceived++;
+        }
+        else if (Arrays.equals(previous, segment))
+        {
+            numDuplicates.incrementAndGet();
+            return null;
+        }
+        else
+        {
+            //
+            // Another message with the same parity and length has turned up. Keep the newest symbol and leave it to
+            // the parity check to catch a mix of the two.
+            //
+            sequence.numBytes -= previous.length;
+            numBufferedBytes -= previous.length;
+        }
+        sequence.segments[index] = segment;
+        sequence.numBytes += segment.length;
+        numBufferedBytes += segment.length;
+
+        if (sequence.numReceived == total)
+        {
+            sequences.remove(key);
+            numBufferedBytes -= sequence.numBytes;
+            msg = assemble(sequence);
+        }
+        else
+        {
+            evictSequences();
+        }
+
+        return msg;
+    }   //add
+
+    /**
+     * This method removes all pending sequences.
+     */
+    public synchronized void clear()
+    {
+        sequences.clear();
+        numBufferedBytes = 0;
+    }   //clear
+
+    /**
+     * This method joins the symbols of a complete sequence and checks the parity.
+     *
+     * @param sequence specifies the complete sequence.
+     * @return reassembled message, null if the parity does not match.
+     */
+    private String assemble(Sequence sequence)
+    {
+        byte[] payload = new byte[sequence.numBytes];
+        int offset = 0;
+
+        for (byte[] segment: sequence.segments)
+        {
+            System.arraycopy(segment, 0, payload, offset, segment.length);
+            offset += segment.length;
+        }
+
+        if (StructuredAppendEncoder.computeParity(payload) != sequence.parity)
+        {
+            numParityErrors.incrementAndGet();
+            return null;
+        }
+
+        numAssembled.incrementAndGet();
+        return new String(payload, StandardCharsets.UTF_8);
+    }   //assemble
+
+    /**
+     * This method drops the sequences that have gone longest without a new symbol until the pending sequences are
+     * within the bounds.
+     */
+    private void evictSequences()
+    {
+        Iterator<Sequence> iter = sequences.values().iterator();
+
+        while ((sequences.size() > maxSequences || numBufferedBytes > maxBytes) && iter.hasNext())
+        {
+            numBufferedBytes -= iter.next().numBytes;
+            iter.remove();
+            numEvicted.incrementAndGet();
+        }
+    }   //evictSequences
+
+    /**
+     * This method returns the payload bytes of a symbol, the bytes of its byte mode segments. A symbol with no byte
+     * mode segment (numeric or alphanumeric only) carries its payload as plain ASCII text.
+     *
+     * @param result specifies the decode result of a Structured Append symbol.
+     * @return payload bytes of the symbol.
+     */
+    private static byte[] getSegmentBytes(Result result)
+    {
+        @SuppressWarnings("unchecked")
+        List<byte[]> byteSegments = (List<byte[]>)result.getResultMetadata().get(ResultMetadataType.BYTE_SEGMENTS);
+
+        if (byteSegments == null)
+        {
+            return result.getText().getBytes(StandardCharsets.ISO_8859_1);
+        }
+
+        int length = 0;
+        for (byte[] byteSegment: byteSegments)
+        {
+            length += byteSegment.length;
+        }
+
+        byte[] bytes = new byte[length];
+        int offset = 0;
+        for (byte[] byteSegment: byteSegments)
+        {
+            System.arraycopy(byteSegment, 0, bytes, offset, byteSegment.length);
+            offset += byteSegment.length;
+        }
+
+        return bytes;
+    }   //getSegmentBytes
+
+}   //class StructuredAppendAssembler
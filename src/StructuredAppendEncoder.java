@@ -0,0 +1,804 @@
+/*
+ * Copyright (c) 2018 Titan Robotics Club (http://www.titanrobotics.com)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+import java.awt.image.BufferedImage;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+import com.google.zxing.common.BitArray;
+import com.google.zxing.common.BitMatrix;
+import com.google.zxing.common.reedsolomon.GenericGF;
+import com.google.zxing.common.reedsolomon.ReedSolomonEncoder;
+import com.google.zxing.qrcode.decoder.ErrorCorrectionLevel;
+import com.google.zxing.qrcode.decoder.Version;
+
+/**
+ * This class implements the Structured Append encoder. A payload too large for one QR code is split into a sequence
+ * of up to 16 QR codes, each carrying its position in the sequence, the length of the sequence and the parity (XOR)
+ * of the whole payload, so a reader can put the pieces back together in any order and check the result. The symbols
+ * of a sequence do not depend on each other and are encoded in parallel on a fork-join pool.
+ *
+ * ZXing reads Structured Append but cannot write it, so this class builds the symbols itself: the bit stream, the
+ * error correction codewords, the module placement and the mask selection follow ISO/IEC 18004, using the version
+ * tables and Reed-Solomon encoder of ZXing. The payload is carried as UTF-8 bytes in byte mode behind a UTF-8 ECI.
+ */
+public class StructuredAppendEncoder
+{
+    public static final int MAX_SYMBOLS = 16;
+    public static final int MAX_VERSION = 40;
+
+    private static final int MODE_STRUCTURED_APPEND = 0x3;
+    private static final int MODE_ECI = 0x7;
+    private static final int MODE_BYTE = 0x4;
+    private static final int ECI_UTF8 = 26;
+    //
+    // Structured Append header (mode, index, count, parity), ECI header (mode, designator) and byte mode indicator.
+    //
+    private static final int HEADER_BITS = 4 + 4 + 4 + 8 + 4 + 8 + 4;
+    private static final int QUIET_ZONE = 4;
+    private static final int NUM_MASKS = 8;
+    private static final int FORMAT_INFO_POLY = 0x537;
+    private static final int FORMAT_INFO_MASK = 0x5412;
+    private static final int VERSION_INFO_POLY = 0x1f25;
+    private static final int[][] FORMAT_INFO_COORDINATES =
+    {
+        {8, 0}, {8, 1}, {8, 2}, {8, 3}, {8, 4}, {8, 5}, {8, 7}, {8, 8},
+        {7, 8}, {5, 8}, {4, 8}, {3, 8}, {2, 8}, {1, 8}, {0, 8}
+    };
+
+    private final ErrorCorrectionLevel ecLevel;
+    private final int maxVersion;
+    private final ForkJoinPool pool;
+    private final int[] capacities;
+
+    /**
+     * Constructor: Create an instance of the object.
+     *
+     * @param ecLevel specifies the error correction level of the symbols.
+     * @param maxVersion specifies the largest symbol version to use, a smaller one gives more symbols that are each
+     *        easier to scan.
+     * @param pool specifies the fork-join pool to encode the symbols on.
+     */
+    public StructuredAppendEncoder(ErrorCorrectionLevel ecLevel, int maxVersion, ForkJoinPool pool)
+    {
+        if (maxVersion < 1 || maxVersion > MAX_VERSION)
+        {
+            throw new IllegalArgumentException("Symbol version must be between 1 and " + MAX_VERSION + ".");
+        }
+
+        this.ecLevel = ecLevel;
+        this.maxVersion = maxVersion;
+        this.pool = pool;
+        this.capacities = new int[maxVersion + 1];
+        for (int i = 1; i <= maxVersion; i++)
+        {
+            capacities[i] = getCapacity(i, ecLevel);
+        }
+    }   //StructuredAppendEncoder
+
+    /**
+     * Constructor: Create an instance of the object with the lowest error correction level (the ZXing default) and
+     * symbols up to the largest version, on the common fork-join pool.
+     */
+    public StructuredAppendEncoder()
+    {
+        this(ErrorCorrectionLevel.L, MAX_VERSION, ForkJoinPool.commonPool());
+    }   //StructuredAppendEncoder
+
+    /**
+     * This method returns how many payload bytes one symbol of a sequence holds.
+     *
+     * @param version specifies the symbol version.
+     * @param ecLevel specifies the error correction level.
+     * @return payload capacity in bytes.
+     */
+    public static int getCapacity(int version, ErrorCorrectionLevel ecLevel)
+    {
+        int countBits = version < 10? 8: 16;
+
+        return (8*getNumDataCodewords(Version.getVersionForNumber(version), ecLevel) - HEADER_BITS - countBits)/8;
+    }   //getCapacity
+
+    /**
+     * This method returns the parity of a payload, the XOR of all its bytes.
+     *
+     * @param data specifies the payload.
+     * @return parity byte.
+     */
+    public static int computeParity(byte[] data)
+    {
+        int parity = 0;
+
+        for (byte b: data)
+        {
+            parity ^= b;
+        }
+
+        return parity & 0xff;
+    }   //computeParity
+
+    /**
+     * This method returns the largest payload a sequence can hold.
+     *
+     * @return maximum payload size in bytes.
+     */
+    public int getMaxPayload()
+    {
+        return MAX_SYMBOLS*capacities[maxVersion];
+    }   //getMaxPayload
+
+    /**
+     * This method returns the number of symbols a payload is split into.
+     *
+     * @param numBytes specifies the payload size in bytes.
+     * @return number of symbols, more than MAX_SYMBOLS if the payload is too large.
+     */
+    public int getNumSymbols(int numBytes)
+    {
+        return Math.max(1, (numBytes + capacities[maxVersion] - 1)/capacities[maxVersion]);
+    }   //getNumSymbols
+
+    /**
+     * This method encodes a message as UTF-8 into a Structured Append sequence and returns the symbol images in
+     * sequence order. Like QRCode.encodeMessage, a width and height of zero give images at module resolution.
+     * Note: if the message is larger than the sequence capacity, it will throw a RuntimeException.
+     *
+     * @param msg specifies the message to be encoded.
+     * @param width specifies the image width in pixels.
+     * @param height specifies the image height in pixels.
+     * @return QR code images in sequence order.
+     */
+    public List<BufferedImage> encodeMessage(String msg, int width, int height)
+    {
+        List<BitMatrix> symbols = encode(msg.getBytes(StandardCharsets.UTF_8), width, height);
+        List<BufferedImage> images = new ArrayList<>(symbols.size());
+
+        for (BitMatrix symbol: symbols)
+        {
+            images.add(BitMatrixRenderer.toBufferedImage(symbol));
+        }
+
+        return images;
+    }   //encodeMessage
+
+    /**
+     * This method encodes a payload into a Structured Append sequence. The payload is spread evenly over the fewest
+     * symbols that hold it, and each symbol is encoded as a separate task on the fork-join pool.
+     * Note: if the payload is larger than the sequence capacity, it will throw a RuntimeException.
+     *
+     * @param data specifies the payload.
+     * @param width specifies the width in pixels of each symbol.
+     * @param height specifies the height in pixels of each symbol.
+     * @return symbols in sequence order.
+     */
+    public List<BitMatrix> encode(byte[] data, int width, int height)
+    {
+        int numSymbols = getNumSymbols(data.length);
+
+        if (numSymbols > MAX_SYMBOLS)
+        {
+            throw new RuntimeException(String.format(
+                "Failed to encode message: %d bytes is more than the %d bytes of a structured append sequence.",
+                data.length, getMaxPayload()));
+        }
+
+        int parity = computeParity(data);
+        List<ForkJoinTask<BitMatrix>> tasks = new ArrayList<>(numSymbols);
+        List<BitMatrix> symbols = new ArrayList<>(numSymbols);
+
+        for (int i = 0; i < numSymbols; i++)
+        {
+            int index = i;
+            //
+            // Segment sizes differ by one byte at most, so the symbols come out the same version instead of full
+            // ones followed by a nearly empty one.
+            //
+            int start = (int)((long)i*data.length/numSymbols);
+            int end = (int)((long)(i + 1)*data.length/numSymbols);
+
+            tasks.add(pool.submit(
+                () -> encodeSymbol(data, start, end - start, index, numSymbols, parity, width, height)));
+        }
+
+        for (ForkJoinTask<BitMatrix> task: tasks)
+        {
+            symbols.add(task.join());
+        }
+
+        return symbols;
+    }   //encode
+
+    /**
+     * This method encodes one symbol of a sequence.
+     *
+     * @param data specifies the payload.
+     * @param offset specifies the start of the segment of this symbol in the payload.
+     * @param length specifies the length of the segment.
+     * @param index specifies the position of the symbol in the sequence, starting at 0.
+     * @param total specifies the number of symbols in the sequence.
+     * @param parity specifies the parity of the whole payload.
+     * @param width specifies the width in pixels of the symbol.
+     * @param height specifies the height in pixels of the symbol.
+     * @return symbol.
+     */
+    private BitMatrix encodeSymbol(
+        byte[] data, int offset, int length, int index, int total, int parity, int width, int height)
+    {
+        Version version = chooseVersion(length);
+        int numDataCodewords = getNumDataCodewords(version, ecLevel);
+        BitArray bits = new BitArray();
+
+        bits.appendBits(MODE_STRUCTURED_APPEND, 4);
+        bits.appendBits(index, 4);
+        bits.appendBits(total - 1, 4);
+        bits.appendBits(parity, 8);
+        bits.appendBits(MODE_ECI, 4);
+        bits.appendBits(ECI_UTF8, 8);
+        bits.appendBits(MODE_BYTE, 4);
+        bits.appendBits(length, version.getVersionNumber() < 10? 8: 16);
+        for (int i = 0; i < length; i++)
+        {
+            bits.appendBits(data[offset + i] & 0xff, 8);
+        }
+        //
+        // Terminator, padding to a byte boundary, then the alternating pad codewords up to the data capacity.
+        //
+        for (int i = 0; i < 4 && bits.getSize() < 8*numDataCodewords; i++)
+        {
+            bits.appendBit(false);
+        }
+        while ((bits.getSize() & 7) != 0)
+        {
+            bits.appendBit(false);
+        }
+        for (int i = 0, numPadCodewords = numDataCodewords - bits.getSizeInBytes(); i < numPadCodewords; i++)
+        {
+            bits.appendBits((i & 1) == 0? 0xec: 0x11, 8);
+        }
+
+        return render(buildMatrix(version, addErrorCorrection(bits, version)), width, height);
+    }   //encodeSymbol
+
+    /**
+     * This method returns the smallest version that holds a segment.
+     *
+     * @param length specifies the segment length in bytes.
+     * @return symbol version.
+     */
+    private Version chooseVersion(int length)
+    {
+        int version = 1;
+
+        while (capacities[version] < length)
+        {
+            version++;
+        }
+
+        return Version.getVersionForNumber(version);
+    }   //chooseVersion
+
+    /**
+     * This method returns the number of data codewords of a symbol.
+     *
+     * @param version specifies the symbol version.
+     * @param ecLevel specifies the error correction level.
+     * @return number of data codewords.
+     */
+    private static int getNumDataCodewords(Version version, ErrorCorrectionLevel ecLevel)
+    {
+        return version.getTotalCodewords() - version.getECBlocksForLevel(ecLevel).getTotalECCodewords();
+    }   //getNumDataCodewords
+
+    /**
+     * This method splits the data codewords into error correction blocks, computes the Reed-Solomon codewords of
+     * each block and interleaves the blocks into the final codeword sequence.
+     *
+     * @param bits specifies the data codewords.
+     * @param version specifies the symbol version.
+     * @return interleaved data and error correction codewords.
+     */
+    private byte[] addErrorCorrection(BitArray bits, Version version)
+    {
+        Version.ECBlocks ecBlocks = version.getECBlocksForLevel(ecLevel);
+        int numEcCodewords = ecBlocks.getECCodewordsPerBlock();
+        int[][] blocks = new int[ecBlocks.getNumBlocks()][];
+        int[] numBlockDataCodewords = new int[blocks.length];
+        byte[] dataCodewords = new byte[bits.getSizeInBytes()];
+        byte[] codewords = new byte[version.getTotalCodewords()];
+        //
+        // The encoder caches its generator polynomials without locking, so every symbol task gets its own.
+        //
+        ReedSolomonEncoder rsEncoder = new ReedSolomonEncoder(GenericGF.QR_CODE_FIELD_256);
+        int blockIndex = 0;
+        int dataOffset = 0;
+        int maxBlockDataCodewords = 0;
+
+        bits.toBytes(0, dataCodewords, 0, dataCodewords.length);
+        for (Version.ECB ecb: ecBlocks.getECBlocks())
+        {
+            for (int i = 0; i < ecb.getCount(); i++, blockIndex++)
+            {
+                int numData = ecb.getDataCodewords();
+                int[] block = new int[numData + numEcCodewords];
+
+                for (int j = 0; j < numData; j++)
+                {
+                    block[j] = dataCodewords[dataOffset + j] & 0xff;
+                }
+                rsEncoder.encode(block, numEcCodewords);
+                blocks[blockIndex] = block;
+                numBlockDataCodewords[blockIndex] = numData;
+                dataOffset += numData;
+                maxBlockDataCodewords = Math.max(maxBlockDataCodewords, numData);
+            }
+        }
+
+        int k = 0;
+        for (int j = 0; j < maxBlockDataCodewords; j++)
+        {
+            for (int i = 0; i < blocks.length; i++)
+            {
+                if (j < numBlockDataCodewords[i])
+                {
+                    codewords[k++] = (byte)blocks[i][j];
+                }
+            }
+        }
+        for (int j = 0; j < numEcCodewords; j++)
+        {
+            for (int i = 0; i < blocks.length; i++)
+            {
+                codewords[k++] = (byte)blocks[i][numBlockDataCodewords[i] + j];
+            }
+        }
+
+        return codewords;
+    }   //addErrorCorrection
+
+    /**
+     * This method lays out the symbol: the function patterns, the codewords masked with each of the eight masks in
+     * turn, and the format information of the mask. It keeps the layout with the lowest penalty score.
+     *
+     * @param version specifies the symbol version.
+     * @param codewords specifies the interleaved codewords.
+     * @return modules of the symbol indexed by row then column, 1 for dark.
+     */
+    private byte[][] buildMatrix(Version version, byte[] codewords)
+    {
+        byte[][] template = buildFunctionPatterns(version);
+        BitMatrix functionPatterns = buildFunctionPatternAreas(version);
+        byte[][] best = null;
+        int bestPenalty = Integer.MAX_VALUE;
+
+        for (int mask = 0; mask < NUM_MASKS; mask++)
+        {
+            byte[][] modules = new byte[template.length][];
+
+            for (int y = 0; y < template.length; y++)
+            {
+                modules[y] = template[y].clone();
+            }
+            placeFormatInfo(modules, mask);
+            placeData(modules, functionPatterns, codewords, mask);
+
+            int penalty = computePenalty(modules);
+            if (penalty < bestPenalty)
+            {
+                best = modules;
+                bestPenalty = penalty;
+            }
+        }
+
+        return best;
+    }   //buildMatrix
+
+    /**
+     * This method lays out the function patterns that do not depend on the mask: the finder patterns with their
+     * separators, the alignment patterns, the timing patterns, the dark module and the version information.
+     *
+     * @param version specifies the symbol version.
+     * @return modules of the function patterns indexed by row then column, everything else light.
+     */
+    private static byte[][] buildFunctionPatterns(Version version)
+    {
+        int dimension = version.getDimensionForVersion();
+        byte[][] modules = new byte[dimension][dimension];
+        int[] centers = version.getAlignmentPatternCenters();
+
+        placeSquarePattern(modules, 3, 3, 3, 2);
+        placeSquarePattern(modules, dimension - 4, 3, 3, 2);
+        placeSquarePattern(modules, 3, dimension - 4, 3, 2);
+        for (int i = 0; i < centers.length; i++)
+        {
+            for (int j = 0; j < centers.length; j++)
+            {
+                //
+                // Skip the three positions that would land on a finder pattern.
+                //
+                boolean firstRow = i == 0, firstColumn = j == 0;
+                boolean lastRow = i == centers.length - 1, lastColumn = j == centers.length - 1;
+
+                if (!(firstRow && firstColumn) && !(firstRow && lastColumn) && !(lastRow && firstColumn))
+                {
+                    placeSquarePattern(modules, centers[j], centers[i], 2, 1);
+                }
+            }
+        }
+        for (int i = 8; i < dimension - 8; i++)
+        {
+            //
+            // Timing patterns run between the finder patterns and agree with the alignment patterns they cross.
+            //
+            modules[6][i] = modules[i][6] = (byte)((i + 1) & 1);
+        }
+        modules[dimension - 8][8] = 1;
+
+        if (version.getVersionNumber() >= 7)
+        {
+            int versionInfo = (version.getVersionNumber() << 12) |
+                              computeBchCode(version.getVersionNumber(), VERSION_INFO_POLY);
+
+            for (int k = 0; k < 18; k++)
+            {
+                byte bit = (byte)((versionInfo >> k) & 1);
+
+                modules[dimension - 11 + k%3][k/3] = bit;
+                modules[k/3][dimension - 11 + k%3] = bit;
+            }
+        }
+
+        return modules;
+    }   //buildFunctionPatterns
+
+    /**
+     * This method marks the modules taken by function patterns and format and version information, the modules data
+     * codewords must skip. ZXing keeps the equivalent method of its Version class to itself.
+     *
+     * @param version specifies the symbol version.
+     * @return function pattern areas.
+     */
+    private static BitMatrix buildFunctionPatternAreas(Version version)
+    {
+        int dimension = version.getDimensionForVersion();
+        int[] centers = version.getAlignmentPatternCenters();
+        BitMatrix areas = new BitMatrix(dimension);
+
+        areas.setRegion(0, 0, 9, 9);
+        areas.setRegion(dimension - 8, 0, 8, 9);
+        areas.setRegion(0, dimension - 8, 9, 8);
+        for (int i = 0; i < centers.length; i++)
+        {
+            for (int j = 0; j < centers.length; j++)
+            {
+                boolean firstRow = i == 0, firstColumn = j == 0;
+                boolean lastRow = i == centers.length - 1, lastColumn = j == centers.length - 1;
+
+                if (!(firstRow && firstColumn) && !(firstRow && lastColumn) && !(lastRow && firstColumn))
+                {
+                    areas.setRegion(centers[j] - 2, centers[i] - 2, 5, 5);
+                }
+            }
+        }
+        areas.setRegion(6, 9, 1, dimension - 17);
+        areas.setRegion(9, 6, dimension - 17, 1);
+
+        if (version.getVersionNumber() >= 7)
+        {
+            areas.setRegion(dimension - 11, 0, 3, 6);
+            areas.setRegion(0, dimension - 11, 6, 3);
+        }
+
+        return areas;
+    }   //buildFunctionPatternAreas
+
+    /**
+     * This method lays out a finder or alignment pattern: concentric squares, dark except for the ring at the given
+     * distance from the center.
+     *
+     * @param modules specifies the modules indexed by row then column.
+     * @param centerX specifies the column of the pattern center.
+     * @param centerY specifies the row of the pattern center.
+     * @param radius specifies the distance from the center to the outer ring.
+     * @param lightRing specifies the distance from the center of the light ring.
+     */
+    private static void placeSquarePattern(byte[][] modules, int centerX, int centerY, int radius, int lightRing)
+    {
+        for (int dy = -radius; dy <= radius; dy++)
+        {
+            for (int dx = -radius; dx <= radius; dx++)
+            {
+                modules[centerY + dy][centerX + dx] =
+                    (byte)(Math.max(Math.abs(dx), Math.abs(dy)) == lightRing? 0: 1);
+            }
+        }
+    }   //placeSquarePattern
+
+    /**
+     * This method lays out both copies of the format information, the error correction level and mask.
+     *
+     * @param modules specifies the modules indexed by row then column.
+     * @param mask specifies the mask pattern.
+     */
+    private void placeFormatInfo(byte[][] modules, int mask)
+    {
+        int dimension = modules.length;
+        int formatInfo = (ecLevel.getBits() << 3) | mask;
+
+        formatInfo = ((formatInfo << 10) | computeBchCode(formatInfo, FORMAT_INFO_POLY)) ^ FORMAT_INFO_MASK;
+        for (int i = 0; i < FORMAT_INFO_COORDINATES.length; i++)
+        {
+            byte bit = (byte)((formatInfo >> i) & 1);
+
+            modules[FORMAT_INFO_COORDINATES[i][1]][FORMAT_INFO_COORDINATES[i][0]] = bit;
+            if (i < 8)
+            {
+                modules[8][dimension - 1 - i] = bit;
+            }
+            else
+            {
+                modules[dimension - 15 + i][8] = bit;
+            }
+        }
+    }   //placeFormatInfo
+
+    /**
+     * This method places the codewords in the two module wide columns running up and down from the bottom right
+     * corner, skipping the function patterns, and applies the mask. Modules left over after the last codeword are
+     * remainder bits and stay zero before masking.
+     *
+     * @param modules specifies the modules indexed by row then column.
+     * @param functionPatterns specifies the function pattern areas of the version.
+     * @param codewords specifies the interleaved codewords.
+     * @param mask specifies the mask pattern.
+     */
+    private static void placeData(byte[][] modules, BitMatrix functionPatterns, byte[] codewords, int mask)
+    {
+        int dimension = modules.length;
+        int numBits = 8*codewords.length;
+        int bitIndex = 0;
+        int direction = -1;
+        int y = dimension - 1;
+
+        for (int x = dimension - 1; x > 0; x -= 2)
+        {
+            if (x == 6)
+            {
+                //
+                // The vertical timing pattern takes a whole column, the column pairs resume to its left.
+                //
+                x--;
+            }
+
+            for (; y >= 0 && y < dimension; y += direction)
+            {
+                for (int xx = x; xx > x - 2; xx--)
+                {
+                    if (!functionPatterns.get(xx, y))
+                    {
+                        int bit = bitIndex < numBits? (codewords[bitIndex >> 3] >> (7 - (bitIndex & 7))) & 1: 0;
+
+                        bitIndex++;
+                        modules[y][xx] = (byte)(isMasked(mask, xx, y)? bit ^ 1: bit);
+                    }
+                }
+            }
+            direction = -direction;
+            y += direction;
+        }
+    }   //placeData
+
+    /**
+     * This method checks if a data module is flipped by the mask.
+     *
+     * @param mask specifies the mask pattern.
+     * @param x specifies the module column.
+     * @param y specifies the module row.
+     * @return true if the module is flipped, false otherwise.
+     */
+    private static boolean isMasked(int mask, int x, int y)
+    {
+        switch (mask)
+        {
+            case 0:
+                return ((x + y) & 1) == 0;
+
+            case 1:
+                return (y & 1) == 0;
+
+            case 2:
+                return x%3 == 0;
+
+            case 3:
+                return (x + y)%3 == 0;
+
+            case 4:
+                return ((y/2 + x/3) & 1) == 0;
+
+            case 5:
+                return ((x*y) & 1) + (x*y)%3 == 0;
+
+            case 6:
+                return ((((x*y) & 1) + (x*y)%3) & 1) == 0;
+
+            default:
+                return (((x*y)%3 + ((x + y) & 1)) & 1) == 0;
+        }
+    }   //isMasked
+
+    /**
+     * This method computes the mask penalty score of a layout: runs of five or more modules of the same color, two
+     * by two blocks of the same color, finder-like patterns next to light areas, and imbalance of dark and light.
+     * Columns are scored as the rows of a transposed copy, which is much faster than walking down the columns.
+     *
+     * @param modules specifies the modules indexed by row then column.
+     * @return penalty score, lower is better.
+     */
+    private static int computePenalty(byte[][] modules)
+    {
+        int dimension = modules.length;
+        byte[][] columns = new byte[dimension][dimension];
+        int penalty = 0;
+        int numDark = 0;
+
+        for (int y = 0; y < dimension; y++)
+        {
+            byte[] row = modules[y];
+
+            for (int x = 0; x < dimension; x++)
+            {
+                columns[x][y] = row[x];
+                numDark += row[x];
+                if (y > 0 && x > 0 && row[x] == row[x - 1] && row[x] == modules[y - 1][x] &&
+                    row[x] == modules[y - 1][x - 1])
+                {
+                    penalty += 3;
+                }
+            }
+        }
+        penalty += computeLinePenalty(modules) + computeLinePenalty(columns);
+
+        return penalty + Math.abs(2*numDark - dimension*dimension)*10/(dimension*dimension)*10;
+    }   //computePenalty
+
+    /**
+     * This method computes the penalty score of the runs and finder-like patterns along lines of modules. A run of
+     * five or more modules of the same color scores 3 plus one per module over five. A 1:1:3:1:1 dark-light-dark-
+     * light-dark pattern with four light modules on either side scores 40.
+     *
+     * @param lines specifies the lines of modules.
+     * @return penalty score.
+     */
+    private static int computeLinePenalty(byte[][] lines)
+    {
+        int penalty = 0;
+
+        for (byte[] line: lines)
+        {
+            int run = 1;
+
+            for (int i = 1; i <= line.length; i++)
+            {
+                if (i < line.length && line[i] == line[i - 1])
+                {
+                    run++;
+                }
+                else
+                {
+                    if (run >= 5)
+                    {
+                        penalty += run - 2;
+                    }
+                    run = 1;
+                }
+            }
+
+            for (int i = 0; i + 6 < line.length; i++)
+            {
+                if (line[i] == 1 && line[i + 1] == 0 && line[i + 2] == 1 && line[i + 3] == 1 && line[i + 4] == 1 &&
+                    line[i + 5] == 0 && line[i + 6] == 1 && (isLight(line, i - 4, i) || isLight(line, i + 7, i + 11)))
+                {
+                    penalty += 40;
+                }
+            }
+        }
+
+        return penalty;
+    }   //computeLinePenalty
+
+    /**
+     * This method checks if a stretch of a line is light, counting modules outside the symbol as light.
+     *
+     * @param line specifies the line of modules.
+     * @param from specifies the start of the stretch.
+     * @param to specifies the end of the stretch, exclusive.
+     * @return true if all the modules of the stretch are light, false otherwise.
+     */
+    private static boolean isLight(byte[] line, int from, int to)
+    {
+        for (int i = Math.max(from, 0); i < Math.min(to, line.length); i++)
+        {
+            if (line[i] != 0)
+            {
+                return false;
+            }
+        }
+
+        return true;
+    }   //isLight
+
+    /**
+     * This method computes the BCH error correction bits of the format or version information.
+     *
+     * @param value specifies the information bits.
+     * @param poly specifies the generator polynomial.
+     * @return BCH code bits.
+     */
+    private static int computeBchCode(int value, int poly)
+    {
+        int degree = 31 - Integer.numberOfLeadingZeros(poly);
+
+        value <<= degree;
+        while (31 - Integer.numberOfLeadingZeros(value) >= degree)
+        {
+            value ^= poly << (31 - Integer.numberOfLeadingZeros(value) - degree);
+        }
+
+        return value;
+    }   //computeBchCode
+
+    /**
+     * This method scales the modules into a bit matrix of the requested size with a quiet zone around them, the same
+     * way ZXing renders a QR code, so the symbols of a sequence look like any other QR code of this class.
+     *
+     * @param modules specifies the modules indexed by row then column.
+     * @param width specifies the width in pixels, zero for module resolution.
+     * @param height specifies the height in pixels, zero for module resolution.
+     * @return rendered symbol.
+     */
+    private static BitMatrix render(byte[][] modules, int width, int height)
+    {
+        int dimension = modules.length;
+        int outputWidth = Math.max(width, dimension + 2*QUIET_ZONE);
+        int outputHeight = Math.max(height, dimension + 2*QUIET_ZONE);
+        int scale = Math.min(outputWidth, outputHeight)/(dimension + 2*QUIET_ZONE);
+        int left = (outputWidth - dimension*scale)/2;
+        int top = (outputHeight - dimension*scale)/2;
+        BitMatrix output = new BitMatrix(outputWidth, outputHeight);
+
+        for (int y = 0; y < dimension; y++)
+        {
+            for (int x = 0; x < dimension; x++)
+            {
+                if (modules[y][x] != 0)
+                {
+                    output.setRegion(left + x*scale, top + y*scale, scale, scale);
+                }
+            }
+        }
+
+        return output;
+    }   //render
+
+}   //class StructuredAppendEncoder
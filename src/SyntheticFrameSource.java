@@ -0,0 +1,196 @@
+/*
+ * Copyright (c) 2018 Titan Robotics Club (http://www.titanrobotics.com)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+import java.awt.Color;
+import java.awt.GradientPaint;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * This class implements a stand-in camera that plays a short loop of pre-rendered BGR frames. Each frame has a
+ * shaded background with a little sensor noise and, if a message is given, the QR code of the message either
+ * drifting across it or held still in the middle. All frames are rendered up front so reading a frame is a single
+ * array copy, which makes the source suitable for measuring the rest of the pipeline without a camera. The noise is
+ * seeded so runs are reproducible. Given a frame rate, the source paces itself like a camera: frames come due at
+ * the rate whether or not they are read, and a read waits for the next one.
+ */
+public class SyntheticFrameSource implements FrameSource
+{
+    private static final long NOISE_SEED = 492L;
+    private static final int NOISE_AMPLITUDE = 6;
+
+    private final byte[][] frames;
+    private final int width;
+    private final int height;
+    private final long frameIntervalNanos;
+    private int nextFrame = 0;
+    private long nextFrameTime = 0;
+
+    /**
+     * Constructor: Create an instance of the object.
+     *
+     * @param msg specifies the message to show as a QR code, null or empty for frames without a QR code.
+     * @param width specifies the frame width in pixels.
+     * @param height specifies the frame height in pixels.
+     * @param numFrames specifies the number of frames in the loop.
+     * @param drift specifies true to move the QR code around from frame to frame, false to hold it still.
+     * @param frameRate specifies the frame rate to deliver frames at in frames per second, zero to deliver a frame
+     *        as soon as it is read.
+     */
+    public SyntheticFrameSource(String msg, int width, int height, int numFrames, boolean drift, double frameRate)
+    {
+        Random random = new Random(NOISE_SEED);
+        int codeSize = Math.min(width, height)/2;
+        BufferedImage code = msg != null && !msg.isEmpty()? QRCode.encodeMessage(msg, codeSize, codeSize): null;
+
+        this.frames = new byte[numFrames][];
+        this.width = width;
+        this.height = height;
+        this.frameIntervalNanos = frameRate > 0.0? (long)(TimeUnit.SECONDS.toNanos(1)/frameRate): 0;
+
+        for (int i = 0; i < numFrames; i++)
+        {
+            Frame frame = new Frame(width, height, FrameLuminanceSource.BYTES_PER_PIXEL_BGR);
+            Graphics2D g = frame.getImage().createGraphics();
+
+            g.setPaint(new GradientPaint(0, 0, Color.DARK_GRAY, width, height, Color.LIGHT_GRAY));
+            g.fillRect(0, 0, width, height);
+            if (code != null)
+            {
+                double phase = 2.0*Math.PI*i/numFrames;
+                double amplitude = drift? 0.25: 0.0;
+                int x = (int)((width - codeSize)*(0.5 + amplitude*Math.cos(phase)));
+                int y = (int)((height - codeSize)*(0.5 + amplitude*Math.sin(phase)));
+                g.drawImage(code, x, y, null);
+            }
+            g.dispose();
+
+            byte[] data = frame.getData();
+            for (int j = 0; j < data.length; j++)
+            {
+                int noise = random.nextInt(2*NOISE_AMPLITUDE + 1) - NOISE_AMPLITUDE;
+                data[j] = (byte)Math.max(0, Math.min(255, (data[j] & 0xff) + noise));
+            }
+            frames[i] = data;
+        }
+    }   //SyntheticFrameSource
+
+    /**
+     * Constructor: Create an instance of the object delivering frames as fast as they are read.
+     *
+     * @param msg specifies the message to show as a QR code, null or empty for frames without a QR code.
+     * @param width specifies the frame width in pixels.
+     * @param height specifies the frame height in pixels.
+     * @param numFrames specifies the number of frames in the loop.
+     * @param drift specifies true to move the QR code around from frame to frame, false to hold it still.
+     */
+    public SyntheticFrameSource(String msg, int width, int height, int numFrames, boolean drift)
+    {
+        this(msg, width, height, numFrames, drift, 0.0);
+    }   //SyntheticFrameSource
+
+    @Override
+    public boolean open()
+    {
+        nextFrame = 0;
+        nextFrameTime = 0;
+        return true;
+    }   //open
+
+    @Override
+    public void close()
+    {
+    }   //close
+
+    @Override
+    public int getFrameWidth()
+    {
+        return width;
+    }   //getFrameWidth
+
+    @Override
+    public int getFrameHeight()
+    {
+        return height;
+    }   //getFrameHeight
+
+    @Override
+    public int getBytesPerPixel()
+    {
+        return FrameLuminanceSource.BYTES_PER_PIXEL_BGR;
+    }   //getBytesPerPixel
+
+    /**
+     * This method checks if the source has run out of frames. The loop never ends, so it never does.
+     *
+     * @return false.
+     */
+    @Override
+    public boolean isAtEnd()
+    {
+        return false;
+    }   //isAtEnd
+
+    /**
+     * This method copies the next frame of the loop into the given frame. If the source is paced, it first waits for
+     * the next frame to come due. A reader that falls behind does not get the missed frames back to back.
+     *
+     * @param frame specifies the frame to fill in.
+     * @return true if the frame was filled in, false if the frame is not of the source size.
+     */
+    @Override
+    public boolean readFrame(Frame frame)
+    {
+        if (frame.getWidth() != width || frame.getHeight() != height ||
+            frame.getBytesPerPixel() != FrameLuminanceSource.BYTES_PER_PIXEL_BGR)
+        {
+            return false;
+        }
+
+        if (frameIntervalNanos > 0)
+        {
+            long now = System.nanoTime();
+
+            if (nextFrameTime == 0)
+            {
+                nextFrameTime = now;
+            }
+
+            while (now < nextFrameTime)
+            {
+                LockSupport.parkNanos(nextFrameTime - now);
+                now = System.nanoTime();
+            }
+            nextFrameTime += ((now - nextFrameTime)/frameIntervalNanos + 1)*frameIntervalNanos;
+        }
+
+        frame.setTimestamp(System.nanoTime());
+        System.arraycopy(frames[nextFrame], 0, frame.getData(), 0, frames[nextFrame].length);
+        nextFrame = (nextFrame + 1)%frames.length;
+
+        return true;
+    }   //readFrame
+
+}   //class SyntheticFrameSource
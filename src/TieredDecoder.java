@@ -0,0 +1,488 @@
+/*
+ * Copyright (c) 2018 Titan Robotics Club (http://www.titanrobotics.com)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+import java.awt.image.BufferedImage;
+import java.io.PrintStream;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import com.google.zxing.LuminanceSource;
+import com.google.zxing.Result;
+import com.google.zxing.ResultPoint;
+
+/**
+ * This class implements a tiered decode strategy. The tiers are tried from cheap to expensive and the search stops
+ * at the first tier that finds a QR code, so easy images cost little and hard images still get a second chance:
+ * a global histogram binarizer on a half size image, then the hybrid binarizer at full size, then try harder, then
+ * the inverted and rotated image. The total time spent on an image is capped: once the cap is reached, no further
+ * tier is started, although a tier already running is not interrupted.
+ *
+ * Each tier keeps its attempts, successes and time. With adaptation on, every so many decodes the tiers are
+ * reordered by their recent cost per success, so a tier that rarely pays off on the real image mix moves behind the
+ * ones that do. A tier with too few recent attempts to tell its cost keeps its configured position, so a tier that
+ * has not been needed lately is never promoted on no evidence. Every few decodes the tiers are tried in their
+ * configured order again, so a demoted tier that starts working is noticed.
+ *
+ * A tiered decoder is thread-safe. Each thread decodes with its own decoder session and luminance buffers, the
+ * statistics and the tier order are shared.
+ */
+public class TieredDecoder
+{
+    public static final long DEFAULT_TIME_LIMIT_MSEC = 250;
+
+    /**
+     * This specifies the decode tiers, from cheap to expensive.
+     */
+    public enum Tier
+    {
+        //
+        // Global histogram binarizer on a half size image.
+        //
+        DOWNSCALED_GLOBAL,
+        //
+        // Hybrid binarizer on the full size image.
+        //
+        HYBRID,
+        //
+        // Hybrid binarizer with try harder on the full size image.
+        //
+        TRY_HARDER,
+        //
+        // Try harder on the inverted image, then on the image rotated 90 degrees.
+        //
+        INVERTED_ROTATED
+    }   //enum Tier
+
+    //
+    // The image is only downscaled for the first tier if the half size image is still at least this big.
+    //
+    private static final int MIN_DOWNSCALED_SIZE = 240;
+    //
+    // Every so many decodes the tiers are reordered and the recent statistics are halved, and every so many decodes
+    // the tiers are tried in the configured order.
+    //
+    private static final int ADAPT_INTERVAL = 64;
+    private static final int PROBE_INTERVAL = 16;
+    //
+    // A tier needs this many recent attempts before its cost is trusted for reordering.
+    //
+    private static final int MIN_RECENT_ATTEMPTS = 8;
+
+    /**
+     * This class holds the luminance buffers of one thread.
+     */
+    private static class Buffers
+    {
+        byte[] full = new byte[0];
+        byte[] downscaled = new byte[0];
+        boolean fullBuilt;
+        boolean downscaledBuilt;
+    }   //class Buffers
+
+    private final Tier[] tiers;
+    private final long timeLimitNanos;
+    private final boolean adaptive;
+    private final ThreadLocal<Buffers> threadBuffers = ThreadLocal.withInitial(Buffers::new);
+    private final AtomicLongArray numAttempts = new AtomicLongArray(Tier.values().length);
+    private final AtomicLongArray numSuccesses = new AtomicLongArray(Tier.values().length);
+    private final AtomicLongArray tierNanos = new AtomicLongArray(Tier.values().length);
+    private final AtomicLongArray recentAttempts = new AtomicLongArray(Tier.values().length);
+    private final AtomicLongArray recentSuccesses = new AtomicLongArray(Tier.values().length);
+    private final AtomicLongArray recentNanos = new AtomicLongArray(Tier.values().length);
+    private final AtomicLong numDecodes = new AtomicLong();
+    private final AtomicLong numFailures = new AtomicLong();
+    private final AtomicLong numTimeouts = new AtomicLong();
+    private volatile Tier[] order;
+
+    /**
+     * Constructor: Create an instance of the object.
+     *
+     * @param tiers specifies the tiers to try, in order.
+     * @param timeLimit specifies the time limit per image in msec, zero for no limit.
+     * @param adaptive specifies true to reorder the tiers by their recent cost per success, false to keep the order.
+     */
+    public TieredDecoder(List<Tier> tiers, long timeLimit, boolean adaptive)
+    {
+        if (tiers.isEmpty())
+        {
+            throw new IllegalArgumentException("No decode tiers.");
+        }
+
+        this.tiers = tiers.toArray(new Tier[0]);
+        this.timeLimitNanos = timeLimit > 0? TimeUnit.MILLISECONDS.toNanos(timeLimit): Long.MAX_VALUE;
+        this.adaptive = adaptive;
+        this.order = this.tiers;
+    }   //TieredDecoder
+
+    /**
+     * Constructor: Create an instance of the object with all the tiers, the default time limit and adaptation on.
+     */
+    public TieredDecoder()
+    {
+        this(Arrays.asList(Tier.values()), DEFAULT_TIME_LIMIT_MSEC, true);
+    }   //TieredDecoder
+
+    /**
+     * This method parses a comma separated list of tier names, case insensitive.
+     *
+     * @param names specifies the tier names, such as "hybrid,try_harder".
+     * @return tiers in the given order.
+     * @throws IllegalArgumentException if a name is not a tier.
+     */
+    public static List<Tier> parseTiers(String names)
+    {
+        Tier[] tiers = Arrays.stream(names.split(","))
+            .map(name -> Tier.valueOf(name.trim().toUpperCase(Locale.ROOT)))
+            .toArray(Tier[]::new);
+
+        return Arrays.asList(tiers);
+    }   //parseTiers
+
+    /**
+     * This method returns the current tier order.
+     *
+     * @return tiers in the order they are tried.
+     */
+    public List<Tier> getOrder()
+    {
+        return Arrays.asList(order.clone());
+    }   //getOrder
+
+    /**
+     * This method returns the number of times a tier was tried.
+     *
+     * @param tier specifies the tier.
+     * @return number of attempts.
+     */
+    public long getNumAttempts(Tier tier)
+    {
+        return numAttempts.get(tier.ordinal());
+    }   //getNumAttempts
+
+    /**
+     * This method returns the number of images a tier found the QR code in.
+     *
+     * @param tier specifies the tier.
+     * @return number of successes.
+     */
+    public long getNumSuccesses(Tier tier)
+    {
+        return numSuccesses.get(tier.ordinal());
+    }   //getNumSuccesses
+
+    /**
+     * This method returns the average time of one attempt of a tier.
+     *
+     * @param tier specifies the tier.
+     * @return mean time per attempt in nanoseconds, zero if the tier was never tried.
+     */
+    public double getMeanNanos(Tier tier)
+    {
+        long attempts = numAttempts.get(tier.ordinal());
+        return attempts > 0? (double)tierNanos.get(tier.ordinal())/attempts: 0.0;
+    }   //getMeanNanos
+
+    /**
+     * This method returns the number of images no tier found a QR code in.
+     *
+     * @return number of failed decodes.
+     */
+    public long getNumFailures()
+    {
+        return numFailures.get();
+    }   //getNumFailures
+
+    /**
+     * This method returns the number of images given up on because the time limit was reached.
+     *
+     * @return number of decodes cut short.
+     */
+    public long getNumTimeouts()
+    {
+        return numTimeouts.get();
+    }   //getNumTimeouts
+
+    /**
+     * This method prints one line per tier that was tried, plus the failure count and the current order.
+     *
+     * @param out specifies the stream to print to.
+     */
+    public void printSummary(PrintStream out)
+    {
+        for (Tier tier: tiers)
+        {
+            long attempts = getNumAttempts(tier);
+
+            if (attempts > 0)
+            {
+                out.printf(
+                    Locale.ROOT, "Tier %-17s %d attempts, %d found (%.1f%%), mean %.3f ms\n",
+                    tier.name().toLowerCase(Locale.ROOT) + ":", attempts, getNumSuccesses(tier),
+                    100.0*getNumSuccesses(tier)/attempts, getMeanNanos(tier)/1000000.0);
+            }
+        }
+        out.printf(
+            "Tiers: %d not found, %d cut short by the time limit, order %s\n",
+            getNumFailures(), getNumTimeouts(), getOrder().toString().toLowerCase(Locale.ROOT));
+    }   //printSummary
+
+    /**
+     * This method decodes the QR code from the given image, trying the tiers in order until one finds it or the time
+     * limit is reached.
+     *
+     * @param image specifies the image.
+     * @return decode result with result points in image coordinates, null if there is no QR code found.
+     */
+    public Result decode(BufferedImage image)
+    {
+        long startTime = System.nanoTime();
+        long decodeCount = numDecodes.incrementAndGet();
+        Tier[] currOrder = decodeCount % PROBE_INTERVAL == 0? tiers: order;
+        Buffers buffers = threadBuffers.get();
+        Result result = null;
+
+        buffers.fullBuilt = false;
+        buffers.downscaledBuilt = false;
+        for (int i = 0; result == null && i < currOrder.length; i++)
+        {
+            long tierStartTime = System.nanoTime();
+
+            if (tierStartTime - startTime >= timeLimitNanos)
+            {
+                numTimeouts.incrementAndGet();
+                break;
+            }
+
+            Tier tier = currOrder[i];
+            result = decodeTier(image, tier, buffers, startTime);
+
+            long elapsedTime = System.nanoTime() - tierStartTime;
+            numAttempts.incrementAndGet(tier.ordinal());
+            tierNanos.addAndGet(tier.ordinal(), elapsedTime);
+            recentAttempts.incrementAndGet(tier.ordinal());
+            recentNanos.addAndGet(tier.ordinal(), elapsedTime);
+            if (result != null)
+            {
+                numSuccesses.incrementAndGet(tier.ordinal());
+                recentSuccesses.incrementAndGet(tier.ordinal());
+            }
+        }
+
+        if (result == null)
+        {
+            numFailures.incrementAndGet();
+        }
+        StageMetrics.getInstance().decodeCompleted(result != null);
+
+        if (adaptive && decodeCount % ADAPT_INTERVAL == 0)
+        {
+            adaptOrder();
+        }
+
+        return result;
+    }   //decode
+
+    /**
+     * This method decodes a QR code image and returns the resulting message.
+     * Note: if there is no QR code in the image, it will throw a RuntimeException.
+     *
+     * @param image specifies the QR code image to be decoded.
+     * @return decoded message.
+     */
+    public String decodeMessage(BufferedImage image)
+    {
+        Result result = decode(image);
+
+        if (result == null)
+        {
+            throw new RuntimeException("QR code not found in image.");
+        }
+
+        return result.getText();
+    }   //decodeMessage
+
+    /**
+     * This method tries one tier.
+     *
+     * @param image specifies the image.
+     * @param tier specifies the tier.
+     * @param buffers specifies the luminance buffers of the calling thread.
+     * @param startTime specifies the System.nanoTime() the decode of the image started at.
+     * @return decode result with result points in image coordinates, null if there is no QR code found.
+     */
+    private Result decodeTier(BufferedImage image, Tier tier, Buffers buffers, long startTime)
+    {
+        QRDecoderSession session = QRDecoderSession.getThreadSession();
+        int width = image.getWidth();
+        int height = image.getHeight();
+        Result result = null;
+
+        if (tier == Tier.DOWNSCALED_GLOBAL && Math.min(width, height)/2 >= MIN_DOWNSCALED_SIZE)
+        {
+            if (!buffers.downscaledBuilt)
+            {
+                buffers.downscaled = ensureCapacity(buffers.downscaled, (width/2)*(height/2));
+                session.toLuminance(image, buffers.downscaled, 2);
+                buffers.downscaledBuilt = true;
+            }
+
+            result = session.decode(
+                new FrameLuminanceSource(
+                    buffers.downscaled, width/2, height/2, FrameLuminanceSource.BYTES_PER_PIXEL_GRAY, null),
+                true, false);
+            if (result != null)
+            {
+                transformResultPoints(result, 2, 0);
+            }
+        }
+        else
+        {
+            if (!buffers.fullBuilt)
+            {
+                buffers.full = ensureCapacity(buffers.full, width*height);
+                session.toLuminance(image, buffers.full);
+                buffers.fullBuilt = true;
+            }
+
+            LuminanceSource source = new FrameLuminanceSource(
+                buffers.full, width, height, FrameLuminanceSource.BYTES_PER_PIXEL_GRAY, null);
+
+            switch (tier)
+            {
+                case DOWNSCALED_GLOBAL:
+                    //
+                    // Too small to downscale, use the global binarizer at full size.
+                    //
+                    result = session.decode(source, true, false);
+                    break;
+
+                case HYBRID:
+                    result = session.decode(source, false, false);
+                    break;
+
+                case TRY_HARDER:
+                    result = session.decode(source, false, true);
+                    break;
+
+                case INVERTED_ROTATED:
+                    result = session.decode(source.invert(), false, true);
+                    if (result == null && System.nanoTime() - startTime < timeLimitNanos)
+                    {
+                        result = session.decode(source.rotateCounterClockwise(), false, true);
+                        if (result != null)
+                        {
+                            transformResultPoints(result, 1, width);
+                        }
+                    }
+                    break;
+            }
+        }
+
+        return result;
+    }   //decodeTier
+
+    /**
+     * This method reorders the tiers by their recent cost per success, cheapest first, then halves the recent
+     * statistics so the order follows the current image mix. The cost is the time per attempt divided by the success
+     * rate, infinite for a tier that never succeeds. A tier with fewer than MIN_RECENT_ATTEMPTS recent attempts has
+     * no known cost and stays at its configured position, the tiers with a known cost are sorted among the other
+     * positions. Tiers with the same cost keep their configured order.
+     */
+    private void adaptOrder()
+    {
+        double[] costs = new double[Tier.values().length];
+
+        for (Tier tier: tiers)
+        {
+            int index = tier.ordinal();
+            long attempts = recentAttempts.get(index);
+            long successes = recentSuccesses.get(index);
+
+            costs[index] = attempts < MIN_RECENT_ATTEMPTS? Double.NaN:
+                           successes == 0? Double.POSITIVE_INFINITY: (double)recentNanos.get(index)/successes;
+            recentAttempts.set(index, attempts/2);
+            recentNanos.set(index, recentNanos.get(index)/2);
+            recentSuccesses.set(index, successes/2);
+        }
+
+        Tier[] known = Arrays.stream(tiers).filter(tier -> !Double.isNaN(costs[tier.ordinal()])).toArray(Tier[]::new);
+        Arrays.sort(known, Comparator.comparingDouble(tier -> costs[tier.ordinal()]));
+
+        Tier[] newOrder = tiers.clone();
+        for (int i = 0, next = 0; i < newOrder.length; i++)
+        {
+            if (!Double.isNaN(costs[tiers[i].ordinal()]))
+            {
+                newOrder[i] = known[next++];
+            }
+        }
+        order = newOrder;
+    }   //adaptOrder
+
+    /**
+     * This method moves the result points of a result decoded from a downscaled or rotated view back into image
+     * coordinates.
+     *
+     * @param result specifies the decode result.
+     * @param scale specifies the scale of the image relative to the view.
+     * @param rotatedWidth specifies the image width if the view was rotated 90 degrees counterclockwise, zero if it
+     *        was not rotated.
+     */
+    private static void transformResultPoints(Result result, int scale, int rotatedWidth)
+    {
+        ResultPoint[] points = result.getResultPoints();
+
+        if (points != null)
+        {
+            for (int i = 0; i < points.length; i++)
+            {
+                if (points[i] != null)
+                {
+                    float x = points[i].getX()*scale;
+                    float y = points[i].getY()*scale;
+                    //
+                    // The top row of the rotated view is the rightmost column of the image.
+                    //
+                    points[i] = rotatedWidth > 0? new ResultPoint(rotatedWidth - 1 - y, x): new ResultPoint(x, y);
+                }
+            }
+        }
+    }   //transformResultPoints
+
+    /**
+     * This method returns a buffer of at least the given size, reusing the given one if it is big enough.
+     *
+     * @param buffer specifies the current buffer.
+     * @param size specifies the required size.
+     * @return buffer of at least the required size.
+     */
+    private static byte[] ensureCapacity(byte[] buffer, int size)
+    {
+        return buffer.length >= size? buffer: new byte[size];
+    }   //ensureCapacity
+
+}   //class TieredDecoder
@@ -0,0 +1,236 @@
+/*
+ * Copyright (c) 2018 Titan Robotics Club (http://www.titanrobotics.com)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+import com.google.zxing.Result;
+
+/**
+ * This class finds every QR code in an image, such as a photo of a pallet or a sheet of labels. The image is
+ * converted to luminance once and split into overlapping square tiles. The tiles are searched in parallel on a
+ * fork-join pool, each worker with its own decoder session, and symbols found in more than one tile are reported
+ * once. As long as the overlap is at least the size of the largest QR code, every code lies wholly within some tile.
+ * Images no bigger than a tile are searched as a whole on the calling thread.
+ */
+public class TiledDecoder
+{
+    public static final int DEFAULT_TILE_SIZE = 1024;
+    public static final int DEFAULT_TILE_OVERLAP = 384;
+
+    private final ForkJoinPool pool;
+    private final int tileSize;
+    private final int tileOverlap;
+
+    /**
+     * This class searches a range of tiles, splitting the range in half until there is one tile left.
+     */
+    private static class TileSearch extends RecursiveTask<List<Result>>
+    {
+        private static final long serialVersionUID = 1L;
+
+        private final byte[] luma;
+        private final int width;
+        private final int height;
+        private final int[][] tiles;
+        private final int from;
+        private final int to;
+
+        /**
+         * Constructor: Create an instance of the object.
+         *
+         * @param luma specifies the luminance of the image.
+         * @param width specifies the image width.
+         * @param height specifies the image height.
+         * @param tiles specifies the tile rectangles as {left, top, width, height}.
+         * @param from specifies the first tile to search.
+         * @param to specifies one past the last tile to search.
+         */
+        TileSearch(byte[] luma, int width, int height, int[][] tiles, int from, int to)
+        {
+            this.luma = luma;
+            this.width = width;
+            this.height = height;
+            this.tiles = tiles;
+            this.from = from;
+            this.to = to;
+        }   //TileSearch
+
+        @Override
+        protected List<Result> compute()
+        {
+            List<Result> results;
+
+            if (to - from == 1)
+            {
+                int[] tile = tiles[from];
+
+                results = new ArrayList<>();
+                for (Result result: QRDecoderSession.getThreadSession().decodeMultipleInRegion(
+                         luma, width, height, FrameLuminanceSource.BYTES_PER_PIXEL_GRAY,
+                         tile[0], tile[1], tile[2], tile[3]))
+                {
+                    results.add(result);
+                }
+            }
+            else
+            {
+                int mid = (from + to) >>> 1;
+                TileSearch right = new TileSearch(luma, width, height, tiles, mid, to);
+
+                right.fork();
+                results = new TileSearch(luma, width, height, tiles, from, mid).compute();
+                results.addAll(right.join());
+            }
+
+            return results;
+        }   //compute
+
+    }   //class TileSearch
+
+    /**
+     * Constructor: Create an instance of the object.
+     *
+     * @param pool specifies the fork-join pool to search the tiles on.
+     * @param tileSize specifies the width and height of the tiles in pixels.
+     * @param tileOverlap specifies how many pixels adjacent tiles overlap, at least the size of the largest QR code.
+     */
+    public TiledDecoder(ForkJoinPool pool, int tileSize, int tileOverlap)
+    {
+        if (tileOverlap < 0 || tileOverlap >= tileSize)
+        {
+            throw new IllegalArgumentException("Tile overlap must be between 0 and the tile size.");
+        }
+
+        this.pool = pool;
+        this.tileSize = tileSize;
+        this.tileOverlap = tileOverlap;
+    }   //TiledDecoder
+
+    /**
+     * Constructor: Create an instance of the object on the common fork-join pool with the default tile size.
+     */
+    public TiledDecoder()
+    {
+        this(ForkJoinPool.commonPool(), DEFAULT_TILE_SIZE, DEFAULT_TILE_OVERLAP);
+    }   //TiledDecoder
+
+    /**
+     * This method finds all the QR codes in the image.
+     *
+     * @param image specifies the image.
+     * @return QR codes found in tile order, an empty list if there is none.
+     */
+    public List<QRSymbol> decodeAll(BufferedImage image)
+    {
+        int width = image.getWidth();
+        int height = image.getHeight();
+        //
+        // The luminance belongs to this call rather than to a session, the tiles may be searched on any thread.
+        //
+        byte[] luma = new byte[width*height];
+        QRDecoderSession.getThreadSession().toLuminance(image, luma);
+
+        int[][] tiles = splitTiles(width, height);
+        List<Result> results = tiles.length == 1?
+            new TileSearch(luma, width, height, tiles, 0, 1).compute():
+            pool.invoke(new TileSearch(luma, width, height, tiles, 0, tiles.length));
+        List<QRSymbol> symbols = new ArrayList<>(results.size());
+
+        for (Result result: results)
+        {
+            QRSymbol symbol = new QRSymbol(result);
+            boolean duplicate = false;
+
+            for (QRSymbol found: symbols)
+            {
+                if (found.isSameSymbol(symbol))
+                {
+                    duplicate = true;
+                    break;
+                }
+            }
+
+            if (!duplicate)
+            {
+                symbols.add(symbol);
+            }
+        }
+
+        return symbols;
+    }   //decodeAll
+
+    /**
+     * This method splits the image into overlapping tiles. The last tile of each row and column is aligned with the
+     * edge of the image, so no tile extends beyond it.
+     *
+     * @param width specifies the image width.
+     * @param height specifies the image height.
+     * @return tile rectangles as {left, top, width, height}, row by row.
+     */
+    private int[][] splitTiles(int width, int height)
+    {
+        int[] lefts = tileOrigins(width);
+        int[] tops = tileOrigins(height);
+        int[][] tiles = new int[lefts.length*tops.length][];
+        int i = 0;
+
+        for (int top: tops)
+        {
+            for (int left: lefts)
+            {
+                tiles[i++] = new int[] {left, top, Math.min(tileSize, width), Math.min(tileSize, height)};
+            }
+        }
+
+        return tiles;
+    }   //splitTiles
+
+    /**
+     * This method returns the tile origins along one axis of the image.
+     *
+     * @param length specifies the image width or height.
+     * @return tile origins.
+     */
+    private int[] tileOrigins(int length)
+    {
+        if (length <= tileSize)
+        {
+            return new int[] {0};
+        }
+
+        int step = tileSize - tileOverlap;
+        int count = (length - tileOverlap + step - 1)/step;
+        int[] origins = new int[count];
+
+        for (int i = 0; i < count; i++)
+        {
+            origins[i] = Math.min(i*step, length - tileSize);
+        }
+
+        return origins;
+    }   //tileOrigins
+
+}   //class TiledDecoder